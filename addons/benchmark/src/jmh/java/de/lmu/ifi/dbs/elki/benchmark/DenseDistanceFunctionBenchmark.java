@@ -0,0 +1,121 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark the most common distance functions on dense vectors.
+ * <p>
+ * Each invocation computes the distances of {@link #PAIRS} consecutive pairs,
+ * so the reported time is per distance computation.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DenseDistanceFunctionBenchmark {
+  /**
+   * Number of vector pairs per invocation.
+   */
+  static final int PAIRS = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "3", "32", "512" })
+  int dim;
+
+  /**
+   * Vectors.
+   */
+  DoubleVector[] vecs;
+
+  /**
+   * Generic Lp norm, with a non-integer p to avoid the fast paths.
+   */
+  LPNormDistanceFunction lp = new LPNormDistanceFunction(1.5);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    vecs = SyntheticData.denseVectors(PAIRS + 1, dim, SyntheticData.SEED);
+  }
+
+  /**
+   * Compute all consecutive distances.
+   *
+   * @param df Distance function
+   * @return Sum of distances (to prevent dead code elimination)
+   */
+  private double run(NumberVectorDistanceFunction<? super DoubleVector> df) {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += df.distance(vecs[i], vecs[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double squaredEuclidean() {
+    return run(SquaredEuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double euclidean() {
+    return run(EuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double lpNorm() {
+    return run(lp);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double cosine() {
+    return run(CosineDistanceFunction.STATIC);
+  }
+}
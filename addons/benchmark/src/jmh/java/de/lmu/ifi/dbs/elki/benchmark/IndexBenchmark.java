@@ -0,0 +1,206 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.graph.HNSW;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Benchmark construction and querying of the main in-memory index structures,
+ * including the approximate HNSW graph.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+public class IndexBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  static final int QUERIES = 100;
+
+  /**
+   * Index structure to benchmark.
+   */
+  @Param({ "rstar", "rstar-str", "mtree", "covertree", "kdtree", "kdtree-minimal", "hnsw" })
+  String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000" })
+  int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * Query radius.
+   */
+  @Param({ "0.02" })
+  double radius;
+
+  /**
+   * Data relation.
+   */
+  Relation<DoubleVector> relation;
+
+  /**
+   * Index factory.
+   */
+  IndexFactory<DoubleVector> factory;
+
+  /**
+   * Query points.
+   */
+  DoubleVector[] queries;
+
+  /**
+   * kNN query on the prebuilt index.
+   */
+  KNNQuery<DoubleVector> knnq;
+
+  /**
+   * Range query on the prebuilt index.
+   */
+  RangeQuery<DoubleVector> rangeq;
+
+  /**
+   * Generate the data, and build the index for the query benchmarks.
+   */
+  @Setup
+  public void setup() {
+    relation = SyntheticData.makeRelation(SyntheticData.gaussianBlobs(size, dim, SyntheticData.SEED));
+    queries = SyntheticData.denseVectors(QUERIES, dim, SyntheticData.SEED + 1);
+    factory = makeFactory(index);
+    Index idx = factory.instantiate(relation);
+    idx.initialize();
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(relation);
+    @SuppressWarnings("unchecked")
+    KNNIndex<DoubleVector> kidx = (KNNIndex<DoubleVector>) idx;
+    @SuppressWarnings("unchecked")
+    RangeIndex<DoubleVector> ridx = (RangeIndex<DoubleVector>) idx;
+    knnq = kidx.getKNNQuery(dq, k);
+    rangeq = ridx.getRangeQuery(dq, radius);
+    if(knnq == null || rangeq == null) {
+      throw new IllegalStateException("Index " + index + " did not support the queries.");
+    }
+  }
+
+  /**
+   * Build the index factory.
+   *
+   * @param name Index name
+   * @return Factory
+   */
+  @SuppressWarnings("unchecked")
+  private static IndexFactory<DoubleVector> makeFactory(String name) {
+    switch(name){
+    case "rstar":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4000).build();
+    case "rstar-str":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4000) //
+          .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class).build();
+    case "mtree":
+      return new ELKIBuilder<>(MTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4000).build();
+    case "covertree":
+      return new ELKIBuilder<>(CoverTree.Factory.class) //
+          .with(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
+    case "kdtree":
+      return new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
+    case "kdtree-minimal":
+      return new ELKIBuilder<>(MinimalisticMemoryKDTree.Factory.class).build();
+    case "hnsw":
+      return new ELKIBuilder<>(HNSW.Factory.class).build();
+    default:
+      throw new IllegalArgumentException("Unknown index: " + name);
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Index build() {
+    Index idx = factory.instantiate(relation);
+    idx.initialize();
+    return idx;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void knnQuery(Blackhole bh) {
+    for(DoubleVector v : queries) {
+      bh.consume(knnq.getKNNForObject(v, k));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void rangeQuery(Blackhole bh) {
+    for(DoubleVector v : queries) {
+      bh.consume(rangeq.getRangeForObject(v, radius));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Benchmark inserting candidates into a {@link KNNHeap}, as done by every
+ * linear scan and most index queries.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KNNHeapBenchmark {
+  /**
+   * Number of candidates per invocation.
+   */
+  static final int SIZE = 100000;
+
+  /**
+   * Heap size.
+   */
+  @Param({ "1", "10", "100" })
+  int k;
+
+  /**
+   * Candidate order: random, ascending (every candidate is rejected after the
+   * first k), or descending (every candidate is accepted).
+   */
+  @Param({ "random", "ascending", "descending" })
+  String order;
+
+  /**
+   * Candidate distances.
+   */
+  double[] dists;
+
+  /**
+   * Candidate ids.
+   */
+  DBIDRange ids;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    dists = new double[SIZE];
+    Random rnd = new Random(SyntheticData.SEED);
+    for(int i = 0; i < SIZE; i++) {
+      dists[i] = "ascending".equals(order) ? i : "descending".equals(order) ? SIZE - i : rnd.nextDouble();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double insert() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    double kdist = Double.POSITIVE_INFINITY;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final double d = dists[it.getOffset()];
+      if(d <= kdist) {
+        kdist = heap.insert(d, it);
+      }
+    }
+    return kdist;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public KNNList insertToList() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      heap.insert(dists[it.getOffset()], it);
+    }
+    return heap.toKNNList();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Benchmark the linear scan kNN query implementations, which are the baseline
+ * for all index structures.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LinearScanKNNQueryBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  static final int QUERIES = 100;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000" })
+  int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "50" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * Query points.
+   */
+  DoubleVector[] queries;
+
+  /**
+   * Specialized Euclidean query.
+   */
+  KNNQuery<DoubleVector> euclidean;
+
+  /**
+   * Primitive distance query.
+   */
+  KNNQuery<DoubleVector> primitive;
+
+  /**
+   * Generic distance query.
+   */
+  KNNQuery<DoubleVector> generic;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    Relation<DoubleVector> rel = SyntheticData.makeRelation(SyntheticData.gaussianBlobs(size, dim, SyntheticData.SEED));
+    queries = SyntheticData.denseVectors(QUERIES, dim, SyntheticData.SEED + 1);
+    PrimitiveDistanceQuery<DoubleVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    euclidean = new LinearScanEuclideanDistanceKNNQuery<>(dq);
+    primitive = new LinearScanPrimitiveDistanceKNNQuery<>(dq);
+    generic = new LinearScanDistanceKNNQuery<>(dq);
+  }
+
+  /**
+   * Run all queries.
+   *
+   * @param q Query
+   * @param bh Blackhole
+   */
+  private void run(KNNQuery<DoubleVector> q, Blackhole bh) {
+    for(DoubleVector v : queries) {
+      bh.consume(q.getKNNForObject(v, k));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void euclidean(Blackhole bh) {
+    run(euclidean, bh);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void primitive(Blackhole bh) {
+    run(primitive, bh);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void generic(Blackhole bh) {
+    run(generic, bh);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+
+/**
+ * Benchmark the throughput of the default text parser.
+ * <p>
+ * The reported time is per parsed line.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NumberVectorLabelParserBenchmark {
+  /**
+   * Number of lines.
+   */
+  static final int SIZE = 10000;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "3", "30" })
+  int dim;
+
+  /**
+   * Serialized data.
+   */
+  byte[] text;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    text = SyntheticData.asText(SyntheticData.gaussianBlobs(SIZE, dim, SyntheticData.SEED));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public MultipleObjectsBundle parse() {
+    return new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(text));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark distance functions on sparse vectors, comparing the generic
+ * implementations to the sparse-specific ones.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SparseDistanceFunctionBenchmark {
+  /**
+   * Number of vector pairs per invocation.
+   */
+  static final int PAIRS = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "1000", "100000" })
+  int dim;
+
+  /**
+   * Number of non-zero values.
+   */
+  @Param({ "10", "100" })
+  int nonzero;
+
+  /**
+   * Vectors.
+   */
+  SparseDoubleVector[] vecs;
+
+  /**
+   * Generic Lp norm.
+   */
+  LPNormDistanceFunction lp = new LPNormDistanceFunction(1.5);
+
+  /**
+   * Sparse Lp norm.
+   */
+  SparseLPNormDistanceFunction sparselp = new SparseLPNormDistanceFunction(1.5);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    vecs = SyntheticData.sparseVectors(PAIRS + 1, dim, nonzero, SyntheticData.SEED);
+  }
+
+  /**
+   * Compute all consecutive distances.
+   *
+   * @param df Distance function
+   * @return Sum of distances (to prevent dead code elimination)
+   */
+  private double run(PrimitiveDistanceFunction<? super SparseDoubleVector> df) {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += df.distance(vecs[i], vecs[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double squaredEuclidean() {
+    return run(SquaredEuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseEuclidean() {
+    return run(SparseEuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double lpNorm() {
+    return run(lp);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseLPNorm() {
+    return run(sparselp);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double cosine() {
+    return run(CosineDistanceFunction.STATIC);
+  }
+}
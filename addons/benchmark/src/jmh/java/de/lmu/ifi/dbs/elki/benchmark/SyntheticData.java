@@ -0,0 +1,187 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+
+/**
+ * Synthetic data generators shared by the benchmarks.
+ * <p>
+ * All generators are seeded, so that repeated runs (and runs on different
+ * revisions) operate on exactly the same data, and differences in the timings
+ * can be attributed to the code rather than the input.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public final class SyntheticData {
+  /**
+   * Fixed seed for all generators.
+   */
+  public static final long SEED = 0x5EED_E1C1L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private SyntheticData() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate a data set of Gaussian blobs, to get a somewhat realistic
+   * structure for index benchmarks (uniform data is the worst case for most
+   * indexes, which is not what we want to detect regressions).
+   *
+   * @param size Number of points
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data array
+   */
+  public static double[][] gaussianBlobs(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    final int numc = 10;
+    double[][] centers = new double[numc][dim];
+    for(double[] c : centers) {
+      for(int d = 0; d < dim; d++) {
+        c[d] = rnd.nextDouble();
+      }
+    }
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      final double[] c = centers[rnd.nextInt(numc)], row = data[i];
+      for(int d = 0; d < dim; d++) {
+        row[d] = c[d] + rnd.nextGaussian() * 0.05;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate dense vectors with uniform values.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Vectors
+   */
+  public static DoubleVector[] denseVectors(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    DoubleVector[] vecs = new DoubleVector[size];
+    for(int i = 0; i < size; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      vecs[i] = DoubleVector.wrap(v);
+    }
+    return vecs;
+  }
+
+  /**
+   * Generate sparse vectors with a given number of non-zero entries.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param nonzero Number of non-zero entries per vector
+   * @param seed Random seed
+   * @return Vectors
+   */
+  public static SparseDoubleVector[] sparseVectors(int size, int dim, int nonzero, long seed) {
+    assert nonzero <= dim;
+    Random rnd = new Random(seed);
+    SparseDoubleVector[] vecs = new SparseDoubleVector[size];
+    int[] scratch = new int[dim];
+    for(int d = 0; d < dim; d++) {
+      scratch[d] = d;
+    }
+    for(int i = 0; i < size; i++) {
+      // Partial Fisher-Yates shuffle to choose the non-zero dimensions:
+      for(int j = 0; j < nonzero; j++) {
+        int r = j + rnd.nextInt(dim - j);
+        int tmp = scratch[j];
+        scratch[j] = scratch[r];
+        scratch[r] = tmp;
+      }
+      int[] idx = Arrays.copyOf(scratch, nonzero);
+      Arrays.sort(idx);
+      double[] val = new double[nonzero];
+      for(int j = 0; j < nonzero; j++) {
+        val[j] = rnd.nextDouble();
+      }
+      vecs[i] = new SparseDoubleVector(idx, val, dim);
+    }
+    return vecs;
+  }
+
+  /**
+   * Serialize data as whitespace separated text, with a trailing label, as
+   * read by the default number vector parser.
+   *
+   * @param data Data
+   * @return Text, encoded as UTF-8
+   */
+  public static byte[] asText(double[][] data) {
+    StringBuilder buf = new StringBuilder(data.length * (data.length > 0 ? data[0].length * 20 : 1));
+    for(int i = 0; i < data.length; i++) {
+      for(double v : data[i]) {
+        buf.append(v).append(' ');
+      }
+      buf.append("obj").append(i).append('\n');
+    }
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Build an in-memory database.
+   *
+   * @param data Data to load
+   * @param index Index factory, may be {@code null}
+   * @return Initialized database
+   */
+  public static Database makeDatabase(double[][] data, IndexFactory<?> index) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), //
+        index != null ? Collections.<IndexFactory<?>> singletonList(index) : null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Build an in-memory relation of vectors.
+   *
+   * @param data Data to load
+   * @return Relation
+   */
+  public static Relation<DoubleVector> makeRelation(double[][] data) {
+    return makeDatabase(data, null).getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+}
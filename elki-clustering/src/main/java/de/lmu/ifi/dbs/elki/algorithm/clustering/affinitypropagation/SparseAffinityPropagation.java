@@ -0,0 +1,471 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.MutableProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Affinity propagation on a sparse similarity graph, consisting of the k
+ * nearest neighbors of each object.
+ * <p>
+ * Instead of three dense matrixes, the similarities, responsibilities, and
+ * availabilities are only stored for the edges of the kNN graph (plus the
+ * preference of each object), in compressed sparse row format. The
+ * responsibilities are updated row-wise and the availabilities column-wise,
+ * both in parallel. Memory and time per iteration are thus linear in the
+ * number of edges, and the kNN graph can be computed with any index (or
+ * obtained from a materialized kNN preprocessor).
+ * <p>
+ * The preference (diagonal) is chosen as a quantile of the similarities in
+ * the kNN graph. Because these are all similarities to close neighbors, this
+ * will usually yield more clusters than the dense variant with the same
+ * quantile.
+ * <p>
+ * Reference:
+ * <p>
+ * B. J. Frey, D. Dueck<br>
+ * Clustering by Passing Messages Between Data Points<br>
+ * Science Vol 315
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <O> object type
+ */
+@Title("Sparse Affinity Propagation on the kNN Graph")
+@Reference(title = "Clustering by Passing Messages Between Data Points", //
+    authors = "B. J. Frey, D. Dueck", //
+    booktitle = "Science Vol 315", //
+    url = "https://doi.org/10.1126/science.1136800", //
+    bibkey = "doi:10.1126/science.1136800")
+public class SparseAffinityPropagation<O> extends AbstractAlgorithm<Clustering<MedoidModel>> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(SparseAffinityPropagation.class);
+
+  /**
+   * Number of rows or columns processed in one block.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Distance function.
+   */
+  DistanceFunction<? super O> distance;
+
+  /**
+   * Number of neighbors.
+   */
+  int k;
+
+  /**
+   * Quantile of the similarities to use as preference.
+   */
+  double quantile;
+
+  /**
+   * Damping factor lambda.
+   */
+  double lambda = 0.5;
+
+  /**
+   * Terminate after this many iterations with no changes.
+   */
+  int convergence;
+
+  /**
+   * Maximum number of iterations.
+   */
+  int maxiter = 1000;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of neighbors
+   * @param quantile Quantile of the similarities to use as preference
+   * @param lambda Damping factor
+   * @param convergence Termination threshold (Number of stable iterations)
+   * @param maxiter Maximum number of iterations
+   */
+  public SparseAffinityPropagation(DistanceFunction<? super O> distance, int k, double quantile, double lambda, int convergence, int maxiter) {
+    super();
+    this.distance = distance;
+    this.k = k;
+    this.quantile = quantile;
+    this.lambda = lambda;
+    this.convergence = convergence;
+    this.maxiter = maxiter;
+  }
+
+  /**
+   * Perform affinity propagation clustering.
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering result
+   */
+  public Clustering<MedoidModel> run(Database db, Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final Graph g = buildGraph(db, relation, ids);
+    LOG.statistics(new LongStatistic(SparseAffinityPropagation.class.getName() + ".edges", g.col.length));
+    final int[] rowstart = g.rowstart, col = g.col, colstart = g.colstart, coledge = g.coledge;
+    final double[] s = g.s, r = new double[s.length], a = new double[s.length];
+    final double lambda = this.lambda;
+    final int[] assignment = new int[size];
+    final int[] changes = new int[(size + BLOCKSIZE - 1) / BLOCKSIZE];
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Affinity Propagation Iteration", LOG) : null;
+    MutableProgress aprog = LOG.isVerbose() ? new MutableProgress("Stable assignments", size + 1, LOG) : null;
+
+    int inactive = 0;
+    for(int iteration = 0; iteration < maxiter && inactive < convergence; iteration++) {
+      // Update responsibilities, row by row:
+      ParallelExecutor.runBlocks(size, BLOCKSIZE, (start, end) -> {
+        for(int i = start; i < end; i++) {
+          final int rs = rowstart[i], re = rowstart[i + 1];
+          // Find the two largest values
+          double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+          int maxe = -1;
+          for(int e = rs; e < re; e++) {
+            double val = a[e] + s[e];
+            if(val > max1) {
+              max2 = max1;
+              max1 = val;
+              maxe = e;
+            }
+            else if(val > max2) {
+              max2 = val;
+            }
+          }
+          // With the maximum value known, update r:
+          for(int e = rs; e < re; e++) {
+            double val = s[e] - ((e != maxe) ? max1 : max2);
+            r[e] = r[e] * lambda + val * (1. - lambda);
+          }
+        }
+      });
+      // Update availabilities, column by column:
+      ParallelExecutor.runBlocks(size, BLOCKSIZE, (start, end) -> {
+        for(int c = start; c < end; c++) {
+          final int cs = colstart[c], ce = colstart[c + 1], self = rowstart[c];
+          // Compute sum of max(0, r_ik) for all i.
+          // For r_kk, don't apply the max.
+          double colposum = 0.;
+          for(int j = cs; j < ce; j++) {
+            final int e = coledge[j];
+            if(e == self || r[e] > 0.) {
+              colposum += r[e];
+            }
+          }
+          for(int j = cs; j < ce; j++) {
+            final int e = coledge[j];
+            double val = colposum;
+            // Adjust column sum by the one extra term.
+            if(e == self || r[e] > 0.) {
+              val -= r[e];
+            }
+            if(e != self && val > 0.) { // min
+              val = 0.;
+            }
+            a[e] = a[e] * lambda + val * (1 - lambda);
+          }
+        }
+      });
+      // Update the assignment:
+      ParallelExecutor.runBlocks(size, BLOCKSIZE, (start, end) -> {
+        int changed = 0;
+        for(int i = start; i < end; i++) {
+          final int rs = rowstart[i], re = rowstart[i + 1];
+          // The first entry of each row is the object itself.
+          double max = a[rs] + r[rs];
+          int maxe = rs;
+          for(int e = rs + 1; e < re; e++) {
+            double v = a[e] + r[e];
+            if(v > max) {
+              max = v;
+              maxe = e;
+            }
+          }
+          if(assignment[i] != col[maxe]) {
+            changed += 1;
+            assignment[i] = col[maxe];
+          }
+        }
+        changes[start / BLOCKSIZE] = changed;
+      });
+      int changed = 0;
+      for(int c : changes) {
+        changed += c;
+      }
+      inactive = (changed > 0) ? 0 : (inactive + 1);
+      LOG.incrementProcessed(prog);
+      if(aprog != null) {
+        aprog.setProcessed(size - changed, LOG);
+      }
+    }
+    if(aprog != null) {
+      aprog.setProcessed(aprog.getTotal(), LOG);
+    }
+    LOG.setCompleted(prog);
+    return AffinityPropagationClusteringAlgorithm.buildClustering(ids, assignment);
+  }
+
+  /**
+   * Build the sparse similarity graph from the k nearest neighbors.
+   *
+   * @param db Database
+   * @param relation Relation
+   * @param ids Object IDs
+   * @return Similarity graph
+   */
+  private Graph buildGraph(Database db, Relation<O> relation, ArrayDBIDs ids) {
+    final int size = ids.size();
+    KNNQuery<O> knnq = db.getKNNQuery(db.getDistanceQuery(relation, distance), k + 1);
+    List<? extends KNNList> knns = knnq.getKNNForBulkDBIDs(ids, k + 1);
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    // Count the edges of each row, and of each column.
+    final int[] rowstart = new int[size + 1], colstart = new int[size + 1];
+    for(int i = 0; i < size; i++) {
+      int cnt = 1; // The object itself
+      for(DoubleDBIDListIter it = knns.get(i).iter(); it.valid(); it.advance()) {
+        final int j = offsets.intValue(it);
+        if(j >= 0 && j != i) {
+          ++cnt;
+          ++colstart[j + 1];
+        }
+      }
+      rowstart[i + 1] = rowstart[i] + cnt;
+      ++colstart[i + 1];
+    }
+    for(int i = 0; i < size; i++) {
+      colstart[i + 1] += colstart[i];
+    }
+    final int nnz = rowstart[size];
+    final int[] col = new int[nnz], coledge = new int[nnz];
+    final double[] s = new double[nnz], flat = new double[nnz - size];
+    final int[] colpos = new int[size];
+    System.arraycopy(colstart, 0, colpos, 0, size);
+    for(int i = 0, e = 0, f = 0; i < size; i++) {
+      col[e] = i; // Similarity is set to the preference below.
+      coledge[colpos[i]++] = e++;
+      for(DoubleDBIDListIter it = knns.get(i).iter(); it.valid(); it.advance()) {
+        final int j = offsets.intValue(it);
+        if(j >= 0 && j != i) {
+          col[e] = j;
+          flat[f++] = s[e] = -it.doubleValue();
+          coledge[colpos[j]++] = e++;
+        }
+      }
+    }
+    offsets.destroy();
+    // On the diagonal, we place the quantile
+    final double preference = flat.length > 0 ? QuickSelect.quantile(flat, quantile) : 0.;
+    for(int i = 0; i < size; i++) {
+      s[rowstart[i]] = preference;
+    }
+    return new Graph(rowstart, col, s, colstart, coledge);
+  }
+
+  /**
+   * Sparse similarity graph, in compressed sparse row format, with an
+   * additional column index.
+   *
+   * @author agent
+   */
+  private static class Graph {
+    /**
+     * Start of each row; the first edge of each row is the object itself.
+     */
+    final int[] rowstart;
+
+    /**
+     * Column of each edge.
+     */
+    final int[] col;
+
+    /**
+     * Similarity of each edge.
+     */
+    final double[] s;
+
+    /**
+     * Start of each column in {@link #coledge}.
+     */
+    final int[] colstart;
+
+    /**
+     * Edges, ordered by column.
+     */
+    final int[] coledge;
+
+    /**
+     * Constructor.
+     *
+     * @param rowstart Row starts
+     * @param col Column of each edge
+     * @param s Similarities
+     * @param colstart Column starts
+     * @param coledge Edges by column
+     */
+    Graph(int[] rowstart, int[] col, double[] s, int[] colstart, int[] coledge) {
+      this.rowstart = rowstart;
+      this.col = col;
+      this.s = s;
+      this.colstart = colstart;
+      this.coledge = coledge;
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> object type
+   */
+  public static class Parameterizer<O> extends AbstractParameterizer {
+    /**
+     * Parameter for the number of neighbors.
+     */
+    public static final OptionID K_ID = new OptionID("ap.knn", "Number of nearest neighbors to use as similarities.");
+
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    int k;
+
+    /**
+     * Quantile to use.
+     */
+    double quantile;
+
+    /**
+     * Dampening parameter.
+     */
+    double lambda = .5;
+
+    /**
+     * Number of stable iterations for convergence.
+     */
+    int convergence;
+
+    /**
+     * Maximum number of iterations.
+     */
+    int maxiter;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<DistanceFunction<? super O>> distP = new ObjectParameter<>(DistanceBasedInitializationWithMedian.Parameterizer.DISTANCE_ID, DistanceFunction.class, SquaredEuclideanDistanceFunction.class);
+      if(config.grab(distP)) {
+        distance = distP.instantiateClass(config);
+      }
+      IntParameter kP = new IntParameter(K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+      DoubleParameter quantileP = new DoubleParameter(AffinityPropagationInitialization.QUANTILE_ID, .5);
+      if(config.grab(quantileP)) {
+        quantile = quantileP.doubleValue();
+      }
+      final DoubleParameter lambdaP = new DoubleParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.LAMBDA_ID, .5) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE);
+      if(config.grab(lambdaP)) {
+        lambda = lambdaP.doubleValue();
+      }
+      final IntParameter convergenceP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.CONVERGENCE_ID, 15) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(convergenceP)) {
+        convergence = convergenceP.intValue();
+      }
+      final IntParameter maxiterP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.MAXITER_ID, 1000);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.intValue();
+      }
+    }
+
+    @Override
+    protected SparseAffinityPropagation<O> makeInstance() {
+      return new SparseAffinityPropagation<>(distance, k, quantile, lambda, convergence, maxiter);
+    }
+  }
+}
@@ -107,6 +107,17 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator, c.f. {@link #newEAccumulator()}.
+   *
+   * @param dim Dimensionality
+   */
+  private DiagonalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -136,6 +147,27 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newEAccumulator() {
+    return new DiagonalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += o.variances[i] + delta * delta * g;
+      mean[i] = wsum > 0. ? mean[i] + delta * f : o.mean[i];
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
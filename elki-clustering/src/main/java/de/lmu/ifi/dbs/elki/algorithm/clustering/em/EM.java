@@ -117,37 +117,37 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
   /**
    * Number of clusters
    */
-  private int k;
+  protected int k;
 
   /**
    * Delta parameter
    */
-  private double delta;
+  protected double delta;
 
   /**
    * Factory for producing the initial cluster model.
    */
-  private EMClusterModelFactory<V, M> mfactory;
+  protected EMClusterModelFactory<V, M> mfactory;
 
   /**
    * Maximum number of iterations to allow
    */
-  private int maxiter;
+  protected int maxiter;
 
   /**
    * Prior to enable MAP estimation (use 0 for MLE)
    */
-  private double prior = 0.;
+  protected double prior = 0.;
 
   /**
    * Retain soft assignments.
    */
-  private boolean soft;
+  protected boolean soft;
 
   /**
    * Minimum loglikelihood to avoid -infinity.
    */
-  private static final double MIN_LOGLIKELIHOOD = -100000;
+  protected static final double MIN_LOGLIKELIHOOD = -100000;
 
   /**
    * Soft assignment result type.
@@ -361,14 +361,27 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    * @return Result
    */
   private static double logSumExp(double[] x) {
-    double max = x[0];
-    for(int i = 1; i < x.length; i++) {
+    return logSumExp(x, 0, x.length);
+  }
+
+  /**
+   * Compute log(sum(exp(x_i)), with attention to numerical issues, for a range
+   * of an array.
+   * 
+   * @param x Input
+   * @param start First index (inclusive)
+   * @param end Last index (exclusive)
+   * @return Result
+   */
+  protected static double logSumExp(double[] x, int start, int end) {
+    double max = x[start];
+    for(int i = start + 1; i < end; i++) {
       final double v = x[i];
       max = v > max ? v : max;
     }
     final double cutoff = max - 35.350506209; // log_e(2**51)
     double acc = 0.;
-    for(int i = 0; i < x.length; i++) {
+    for(int i = start; i < end; i++) {
       final double v = x[i];
       if(v > cutoff) {
         acc += v < max ? FastMath.exp(v - max) : 1.;
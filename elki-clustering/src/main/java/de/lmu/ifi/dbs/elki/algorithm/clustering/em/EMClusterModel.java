@@ -81,6 +81,27 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void finalizeEStep(double weight, double prior);
 
+  /**
+   * Create an empty accumulator, to process a part of the data in the E step
+   * (c.f. {@link #updateE}) independently, e.g. in a different thread. The
+   * accumulated statistics are combined using {@link #mergeE}.
+   * <p>
+   * For two-pass models, this must be called after the first pass.
+   *
+   * @return Empty accumulator
+   */
+  EMClusterModel<M> newEAccumulator();
+
+  /**
+   * Merge the statistics of an accumulator into the current E step.
+   * <p>
+   * This must only be called with an accumulator obtained from
+   * {@link #newEAccumulator()} of this model.
+   *
+   * @param other Accumulator to merge, from {@link #newEAccumulator()}
+   */
+  void mergeE(EMClusterModel<M> other);
+
   /**
    * Estimate the log likelihood of a vector.
    * 
@@ -115,6 +115,17 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     updateCholesky();
   }
 
+  /**
+   * Constructor for an empty accumulator, c.f. {@link #newEAccumulator()}.
+   *
+   * @param dim Dimensionality
+   */
+  private MultivariateGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -155,6 +166,38 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel newEAccumulator() {
+    return new MultivariateGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final int dim = mean.length;
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, g = wsum * f;
+    // Difference of the means:
+    for(int i = 0; i < dim; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    // Combine the (lower half of the) scatter matrixes:
+    for(int i = 0; i < dim; i++) {
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      final double delta_i = nmea[i] * g;
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] + delta_i * nmea[j];
+      }
+    }
+    for(int i = 0; i < dim; i++) {
+      mean[i] = wsum > 0. ? mean[i] + nmea[i] * f : o.mean[i];
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
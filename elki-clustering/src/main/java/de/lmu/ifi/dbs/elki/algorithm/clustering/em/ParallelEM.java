@@ -0,0 +1,370 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of clustering by expectation maximization (EM-Algorithm),
+ * also known as Gaussian Mixture Modeling (GMM).
+ * <p>
+ * The data is split into consecutive blocks, which are processed in parallel.
+ * In the expectation step, the cluster probabilities of each block are stored
+ * in a flat matrix per block (rather than one array per object), and the
+ * log-likelihood of each block is summed up. For updating the models, every
+ * block accumulates its own weighted means and scatter matrixes (c.f.
+ * {@link EMClusterModel#newEAccumulator()}), which are then merged in the
+ * order of the blocks. Because the block size only depends on the data set
+ * size, the result does not depend on the number of threads used.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelEM.class.getName();
+
+  /**
+   * Minimum number of objects in a block.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Maximum number of blocks, to bound the memory used by the accumulators.
+   */
+  private static final int MAX_BLOCKS = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, double prior, boolean soft) {
+    super(k, delta, mfactory, maxiter, prior, soft);
+  }
+
+  @Override
+  public Clustering<M> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    // initial models
+    List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), blocksize = blockSize(size);
+    // Cluster probabilities, one k-column matrix per block.
+    final double[][] probs = new double[(size + blocksize - 1) / blocksize][];
+    for(int b = 0; b < probs.length; b++) {
+      probs[b] = new double[(Math.min(size, (b + 1) * blocksize) - b * blocksize) * k];
+    }
+    double loglikelihood = assignProbabilitiesToInstances(relation, ids, models, probs, blocksize);
+    DoubleStatistic likestat = LOG.isStatistics() ? new DoubleStatistic(KEY + ".loglikelihood") : null;
+    if(LOG.isStatistics()) {
+      LOG.statistics(likestat.setDouble(loglikelihood));
+    }
+
+    // iteration unless no change
+    int it = 0, lastimprovement = 0;
+    double bestloglikelihood = loglikelihood; // For detecting instabilities.
+    for(++it; it < maxiter || maxiter < 0; it++) {
+      final double oldloglikelihood = loglikelihood;
+      recomputeCovarianceMatrices(relation, ids, models, probs, blocksize, prior);
+      // reassign probabilities
+      loglikelihood = assignProbabilitiesToInstances(relation, ids, models, probs, blocksize);
+
+      if(LOG.isStatistics()) {
+        LOG.statistics(likestat.setDouble(loglikelihood));
+      }
+      if(loglikelihood - bestloglikelihood > delta) {
+        lastimprovement = it;
+        bestloglikelihood = loglikelihood;
+      }
+      if(Math.abs(loglikelihood - oldloglikelihood) <= delta || lastimprovement < it >> 1) {
+        break;
+      }
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+    }
+
+    // fill result with clusters and models
+    List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      hardClusters.add(DBIDUtil.newArray());
+    }
+    WritableDataStore<double[]> probClusterIGivenX = isSoft() ? DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class) : null;
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      final int offset = iditer.getOffset();
+      final double[] p = probs[offset / blocksize];
+      final int start = (offset % blocksize) * k;
+      // provide a hard clustering
+      int best = 0;
+      for(int i = 1; i < k; i++) {
+        best = p[start + i] > p[start + best] ? i : best;
+      }
+      hardClusters.get(best).add(iditer);
+      if(probClusterIGivenX != null) {
+        probClusterIGivenX.put(iditer, Arrays.copyOfRange(p, start, start + k));
+      }
+    }
+    Clustering<M> result = new Clustering<>("EM Clustering", "em-clustering");
+    // provide models within the result
+    for(int i = 0; i < k; i++) {
+      result.addToplevelCluster(new Cluster<>(hardClusters.get(i), models.get(i).finalizeCluster()));
+    }
+    if(probClusterIGivenX != null) {
+      result.addChildResult(new MaterializedRelation<>("cluster assignments", "em-soft-score", SOFT_TYPE, probClusterIGivenX, relation.getDBIDs()));
+    }
+    return result;
+  }
+
+  /**
+   * Choose the block size. It must only depend on the data size, to obtain
+   * deterministic results.
+   *
+   * @param size Data set size
+   * @return Block size
+   */
+  protected static int blockSize(int size) {
+    return Math.max(MIN_BLOCKSIZE, (size + MAX_BLOCKS - 1) / MAX_BLOCKS);
+  }
+
+  /**
+   * Recompute the covariance matrixes.
+   *
+   * @param relation Vector data
+   * @param ids Object IDs, in processing order
+   * @param models Cluster models to update
+   * @param probs Cluster probabilities, one matrix per block
+   * @param blocksize Block size
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  public static <M extends MeanModel> void recomputeCovarianceMatrices(Relation<? extends NumberVector> relation, ArrayDBIDs ids, List<? extends EMClusterModel<M>> models, double[][] probs, int blocksize, double prior) {
+    final int k = models.size(), size = ids.size();
+    boolean needsTwoPass = false;
+    for(EMClusterModel<?> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+    }
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        final int offset = iditer.getOffset();
+        final double[] p = probs[offset / blocksize];
+        final int start = (offset % blocksize) * k;
+        NumberVector instance = relation.get(iditer);
+        for(int i = 0; i < k; i++) {
+          final double prob = p[start + i];
+          if(prob > 1e-10) {
+            models.get(i).firstPassE(instance, prob);
+          }
+        }
+      }
+      for(EMClusterModel<?> m : models) {
+        m.finalizeFirstPassE();
+      }
+    }
+    // Accumulators for each block.
+    final List<List<EMClusterModel<M>>> accs = new ArrayList<>(probs.length);
+    for(int b = 0; b < probs.length; b++) {
+      accs.add(newEAccumulators(models));
+    }
+    final double[][] wsums = new double[probs.length][k];
+    ParallelExecutor.runBlocks(size, blocksize, (start, end) -> {
+      final int b = start / blocksize;
+      updateE(relation, ids.iter().seek(start), end, accs.get(b), probs[b], wsums[b]);
+    });
+    for(List<EMClusterModel<M>> acc : accs) {
+      for(int i = 0; i < k; i++) {
+        models.get(i).mergeE(acc.get(i));
+      }
+    }
+    for(int i = 0; i < k; i++) {
+      double wsum = 0.;
+      for(int b = 0; b < wsums.length; b++) {
+        wsum += wsums[b][i];
+      }
+      // MLE / MAP
+      final double weight = prior <= 0. ? wsum / size : (wsum + prior - 1) / (size + prior * k - k);
+      models.get(i).finalizeEStep(weight, prior);
+    }
+  }
+
+  /**
+   * Create empty accumulators for all models.
+   *
+   * @param models Cluster models
+   * @return Accumulators, in the same order as the models
+   */
+  private static <M extends MeanModel> List<EMClusterModel<M>> newEAccumulators(List<? extends EMClusterModel<M>> models) {
+    List<EMClusterModel<M>> acc = new ArrayList<>(models.size());
+    for(EMClusterModel<M> model : models) {
+      final EMClusterModel<M> a = model.newEAccumulator();
+      assert a != model && a.getClass() == model.getClass() : "Accumulators must be new instances of the same model type.";
+      acc.add(a);
+    }
+    return acc;
+  }
+
+  /**
+   * Process one block of objects in the E step.
+   *
+   * @param relation Vector data
+   * @param iditer Iterator, positioned at the start of the block
+   * @param end End offset (exclusive)
+   * @param acc Accumulators to update
+   * @param p Cluster probabilities of this block
+   * @param wsum Output of the cluster weight sums
+   */
+  private static void updateE(Relation<? extends NumberVector> relation, DBIDArrayIter iditer, int end, List<? extends EMClusterModel<?>> acc, double[] p, double[] wsum) {
+    final int k = acc.size();
+    for(int off = 0; iditer.getOffset() < end; iditer.advance(), off += k) {
+      NumberVector instance = relation.get(iditer);
+      for(int i = 0; i < k; i++) {
+        final double prob = p[off + i];
+        if(prob > 1e-10) {
+          acc.get(i).updateE(instance, prob);
+        }
+        wsum[i] += prob;
+      }
+    }
+  }
+
+  /**
+   * Assigns the current probability values to the instances in the database and
+   * compute the expectation value of the current mixture of distributions.
+   *
+   * @param relation the database used for assignment to instances
+   * @param ids Object IDs, in processing order
+   * @param models Cluster models
+   * @param probs Output storage for cluster probabilities, one matrix per block
+   * @param blocksize Block size
+   * @return the expectation value of the current mixture of distributions
+   */
+  public static double assignProbabilitiesToInstances(Relation<? extends NumberVector> relation, ArrayDBIDs ids, List<? extends EMClusterModel<?>> models, double[][] probs, int blocksize) {
+    final int k = models.size(), size = ids.size();
+    final double[] sums = new double[probs.length];
+    ParallelExecutor.runBlocks(size, blocksize, (start, end) -> {
+      final double[] p = probs[start / blocksize];
+      double emSum = 0.;
+      DBIDArrayIter iditer = ids.iter().seek(start);
+      for(int off = 0; iditer.getOffset() < end; iditer.advance(), off += k) {
+        NumberVector vec = relation.get(iditer);
+        for(int i = 0; i < k; i++) {
+          double v = models.get(i).estimateLogDensity(vec);
+          p[off + i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+        }
+        final double logP = logSumExp(p, off, off + k);
+        for(int i = 0; i < k; i++) {
+          p[off + i] = FastMath.exp(p[off + i] - logP);
+        }
+        emSum += logP;
+      }
+      sums[start / blocksize] = emSum;
+    });
+    double emSum = 0.;
+    for(double s : sums) {
+      emSum += s;
+    }
+    return emSum / size;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    /**
+     * Flag to keep the soft assignments as a result.
+     */
+    public static final OptionID SOFT_ID = new OptionID("em.soft", //
+        "Retain the soft cluster assignments in the result.");
+
+    /**
+     * Retain soft assignments.
+     */
+    protected boolean soft = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag softF = new Flag(SOFT_ID);
+      if(config.grab(softF)) {
+        soft = softF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, prior, soft);
+    }
+  }
+}
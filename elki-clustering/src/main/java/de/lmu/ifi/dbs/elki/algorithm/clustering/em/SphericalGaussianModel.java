@@ -94,6 +94,16 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty accumulator, c.f. {@link #newEAccumulator()}.
+   *
+   * @param dim Dimensionality
+   */
+  private SphericalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -122,6 +132,29 @@ public class SphericalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newEAccumulator() {
+    return new SphericalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    SphericalGaussianModel o = (SphericalGaussianModel) other;
+    if(!(o.wsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + o.wsum;
+    final double f = o.wsum / nwsum, g = wsum * f;
+    double agg = 0.;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      agg += delta * delta;
+      mean[i] = wsum > 0. ? mean[i] + delta * f : o.mean[i];
+    }
+    variance += o.variance + agg * g;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
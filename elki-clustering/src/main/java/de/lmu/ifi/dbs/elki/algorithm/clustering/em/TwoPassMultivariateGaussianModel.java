@@ -118,6 +118,17 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
     updateCholesky();
   }
 
+  /**
+   * Constructor for an empty accumulator, c.f. {@link #newEAccumulator()}.
+   *
+   * @param mean Mean from the first pass (not modified)
+   */
+  private TwoPassMultivariateGaussianModel(double[] mean) {
+    this.mean = mean;
+    this.tmp = new double[mean.length];
+    this.covariance = new double[mean.length][mean.length];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -185,6 +196,26 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<EMModel>
     // Should we assert that the weight sum matches the first step?
   }
 
+  @Override
+  public TwoPassMultivariateGaussianModel newEAccumulator() {
+    return new TwoPassMultivariateGaussianModel(mean);
+  }
+
+  /**
+   * Merge the second pass of an accumulator. The weight sum is already known
+   * from the first pass.
+   */
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other) {
+    TwoPassMultivariateGaussianModel o = (TwoPassMultivariateGaussianModel) other;
+    for(int i = 0; i < covariance.length; i++) {
+      final double[] cov_i = covariance[i], ocov_i = o.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j];
+      }
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     this.weight = weight;
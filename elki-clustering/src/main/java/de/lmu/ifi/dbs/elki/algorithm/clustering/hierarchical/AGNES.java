@@ -38,9 +38,11 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -117,6 +119,11 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  boolean singlePrecision = false;
+
   /**
    * Constructor.
    *
@@ -124,8 +131,20 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   public AGNES(DistanceFunction<? super O> distanceFunction, Linkage linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public AGNES(DistanceFunction<? super O> distanceFunction, Linkage linkage, boolean singlePrecision) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.singlePrecision = singlePrecision;
   }
 
   /**
@@ -144,7 +163,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
 
     // Compute the initial (lower triangular) distance matrix.
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     initializeDistanceMatrix(mat, dq, linkage);
 
     // Initialize space for result:
@@ -192,23 +211,17 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final TriangularMatrix matrix = mat.matrix;
     final boolean issquare = dq.getDistanceFunction().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    long pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       final int x = ix.getOffset();
       assert (pos == MatrixParadigm.triangleSize(x));
       for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
+        matrix.set(pos++, linkage.initial(dq.distance(ix, iy), issquare));
       }
-      if(prog != null) {
-        prog.setProcessed(pos, LOG);
-      }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
+      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
   }
@@ -224,11 +237,12 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
   protected int findMerge(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     assert (end > 0);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final TriangularMatrix matrix = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
-    for(int ox = 0, xbase = 0; ox < end; xbase += ox++) {
+    long xbase = 0;
+    for(int ox = 0; ox < end; xbase += ox++) {
       // Skip if object has already joined a cluster:
       if(builder.isLinked(ix.seek(ox))) {
         continue;
@@ -239,7 +253,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final double dist = matrix[xbase + oy];
+        final double dist = matrix.get(xbase + oy);
         if(dist <= mindist) { // Prefer later on ==, to truncate more often.
           mindist = dist;
           x = ox;
@@ -293,9 +307,9 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   protected void updateMatrix(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: y < x
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
-    double[] scratch = mat.matrix;
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
+    TriangularMatrix scratch = mat.matrix;
     DBIDArrayIter ij = mat.ix;
 
     // Write to (y, j), with j < y
@@ -305,18 +319,18 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       assert (j < y); // Otherwise, ybase + j is the wrong position!
-      final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], builder.getSize(ij), mindist);
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), builder.getSize(ij), mindist));
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
+    long jbase = MatrixParadigm.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), builder.getSize(ij), mindist));
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -324,8 +338,8 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), builder.getSize(ij), mindist));
     }
   }
 
@@ -355,11 +369,22 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Flag to store the distance matrix with single precision, to reduce
+     * memory usage by half.
+     */
+    public static final OptionID SINGLE_PRECISION_ID = new OptionID("hierarchical.float", "Store the distance matrix with single precision, to reduce memory usage.");
+
     /**
      * Current linkage in use.
      */
     protected Linkage linkage;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean singlePrecision = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -373,11 +398,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag singleP = new Flag(SINGLE_PRECISION_ID);
+      if(config.grab(singleP)) {
+        singlePrecision = singleP.isTrue();
+      }
     }
 
     @Override
     protected AGNES<O> makeInstance() {
-      return new AGNES<>(distanceFunction, linkage);
+      return new AGNES<>(distanceFunction, linkage, singlePrecision);
     }
   }
 }
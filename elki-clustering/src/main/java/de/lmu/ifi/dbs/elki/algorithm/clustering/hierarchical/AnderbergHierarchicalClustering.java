@@ -40,8 +40,10 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -88,6 +90,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  boolean singlePrecision = false;
+
   /**
    * Constructor.
    *
@@ -95,8 +102,20 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage, boolean singlePrecision) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.singlePrecision = singlePrecision;
   }
 
   /**
@@ -112,7 +131,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
@@ -146,16 +165,17 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(TriangularMatrix scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
-    for(int x = 0, p = 0; x < size; x++) {
+    long p = 0;
+    for(int x = 0; x < size; x++) {
       assert (p == MatrixParadigm.triangleSize(x));
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
+        final double v = scratch.get(p);
         if(v < bestd[y]) {
           bestd[y] = v;
           besti[y] = x;
@@ -256,10 +276,10 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, TriangularMatrix scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -268,21 +288,23 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, scratch.get(yb));
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
+    long jbase = MatrixParadigm.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, scratch.get(jb));
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -291,9 +313,10 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      updateCache(size, scratch, bestd, besti, x, y, j, scratch.get(jb));
     }
   }
 
@@ -307,9 +330,9 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param x First cluster
    * @param y Second cluster, {@code y < x}
    * @param j Updated value d(y, j)
-   * @param d New distance
+   * @param d New distance, as stored in the (possibly single precision) matrix
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private void updateCache(int size, TriangularMatrix scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
@@ -322,27 +345,29 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = MatrixParadigm.triangleSize(j);
+  protected void findBest(int size, TriangularMatrix scratch, double[] bestd, int[] besti, int j) {
+    final long jbase = MatrixParadigm.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = jbase; i < j; i++, o++) {
+    long o = jbase;
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
       }
     }
-    for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
+    o = jbase + j + j;
+    for(int i = j + 1; i < size; o += i, i++) {
       // assert(o == MatrixParadigm.triangleSize(i) + j);
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
@@ -378,6 +403,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
      */
     protected Linkage linkage;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean singlePrecision = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -391,11 +421,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag singleP = new Flag(AGNES.Parameterizer.SINGLE_PRECISION_ID);
+      if(config.grab(singleP)) {
+        singlePrecision = singleP.isTrue();
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, singlePrecision);
     }
   }
 }
@@ -0,0 +1,651 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * HDBSCAN clustering, computing the minimum spanning tree with Borůvka's
+ * algorithm accelerated by a k-d-tree.
+ * <p>
+ * Instead of evaluating all O(n²) mutual reachability distances (as
+ * {@link HDBSCANLinearMemory} does), every Borůvka round searches the tree for
+ * the nearest point of each component that belongs to a different component.
+ * Subtrees are pruned using their bounding boxes and the smallest core
+ * distance they contain, and skipped entirely when all their points already
+ * belong to the component of the query. The core distances are computed with
+ * the same tree, and both steps are run in parallel.
+ * <p>
+ * Since the single-linkage hierarchy of a graph does not depend on which of
+ * the minimum spanning trees is found, the result is the same as with
+ * {@link HDBSCANLinearMemory}.
+ * <p>
+ * This implementation does <em>not</em> include the cluster extraction, which
+ * is provided in a separate step.
+ * <p>
+ * References:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, J. Sander<br>
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br>
+ * Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ * <p>
+ * W. B. March, P. Ram, A. G. Gray<br>
+ * Fast Euclidean minimum spanning tree: algorithm, analysis, and
+ * applications<br>
+ * Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has PointerDensityHierarchyRepresentationResult
+ * @apiviz.composedOf Node
+ *
+ * @param <O> Object type
+ */
+@Title("HDBSCAN with Borůvka's Minimum Spanning Tree")
+@Description("Density-Based Clustering Based on Hierarchical Density Estimates, using a tree-accelerated Borůvka minimum spanning tree.")
+@Reference(authors = "R. J. G. B. Campello, D. Moulavi, J. Sander", //
+    title = "Density-Based Clustering Based on Hierarchical Density Estimates", //
+    booktitle = "Pacific-Asia Conf. Advances in Knowledge Discovery and Data Mining (PAKDD)", //
+    url = "https://doi.org/10.1007/978-3-642-37456-2_14", //
+    bibkey = "DBLP:conf/pakdd/CampelloMS13")
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+@Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+    title = "Fast Euclidean minimum spanning tree: algorithm, analysis, and applications", //
+    booktitle = "Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/1835804.1835882", //
+    bibkey = "DBLP:conf/kdd/MarchRG10")
+public class HDBSCANBoruvka<O extends NumberVector> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Maximum number of points in a leaf.
+   */
+  private static final int LEAF_SIZE = 16;
+
+  /**
+   * Number of queries processed by each thread at once.
+   */
+  private static final int QUERY_BLOCK = 256;
+
+  /**
+   * Distance function, with bounding box support.
+   */
+  private SpatialPrimitiveDistanceFunction<? super O> distance;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public HDBSCANBoruvka(SpatialPrimitiveDistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+    this.distance = distanceFunction;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Objects in tree order, and their offsets in ids:
+    final List<O> objs = new ArrayList<>(size);
+    final int[] perm = new int[size];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      objs.add(relation.get(it));
+      perm[it.getOffset()] = it.getOffset();
+    }
+    final List<Node> nodes = new ArrayList<>();
+    if(size > 0) {
+      buildTree(nodes, objs, perm, 0, size, RelationUtil.dimensionality(relation));
+    }
+
+    // 1. Compute the core distances
+    final double[] core = computeCoreDists(nodes, objs);
+    WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < size; i++) {
+      coredists.putDouble(it.seek(perm[i]), core[i]);
+    }
+    for(int i = nodes.size() - 1; i >= 0; i--) {
+      Node node = nodes.get(i);
+      node.mincore = node.left == null ? min(core, node.start, node.end) : //
+          Math.min(node.left.mincore, node.right.mincore);
+    }
+
+    // 2. Build spanning tree.
+    final int numedges = size - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges > 0 ? numedges : 1);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges > 0 ? numedges : 0, LOG) : null;
+    new Boruvka(nodes, objs, core, perm, new HeapMSTCollector(heap, mprog, LOG)).run();
+    LOG.ensureCompleted(mprog);
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, distance.isSquared(), coredists);
+  }
+
+  /**
+   * Build the k-d-tree, splitting at the median of the widest dimension.
+   *
+   * @param nodes Output node list, in preorder
+   * @param objs Objects, will be reordered
+   * @param perm Object offsets, reordered alongside
+   * @param start Interval start
+   * @param end Interval end (exclusive)
+   * @param dim Dimensionality
+   * @return Node
+   */
+  private Node buildTree(List<Node> nodes, List<O> objs, int[] perm, int start, int end, int dim) {
+    double[] min = new double[dim], max = new double[dim];
+    Arrays.fill(min, Double.POSITIVE_INFINITY);
+    Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    for(int i = start; i < end; i++) {
+      final O obj = objs.get(i);
+      for(int d = 0; d < dim; d++) {
+        final double v = obj.doubleValue(d);
+        min[d] = v < min[d] ? v : min[d];
+        max[d] = v > max[d] ? v : max[d];
+      }
+    }
+    Node node = new Node(start, end, new HyperBoundingBox(min, max));
+    nodes.add(node);
+    int axis = 0;
+    for(int d = 1; d < dim; d++) {
+      axis = max[d] - min[d] > max[axis] - min[axis] ? d : axis;
+    }
+    if(end - start <= LEAF_SIZE || !(max[axis] > min[axis])) {
+      return node;
+    }
+    final int middle = (start + end) >>> 1, split = axis;
+    QuickSelect.quickSelect(objs, new QuickSelect.Adapter<List<O>>() {
+      @Override
+      public void swap(List<O> data, int i, int j) {
+        data.set(i, data.set(j, data.get(i)));
+        final int tmp = perm[i];
+        perm[i] = perm[j];
+        perm[j] = tmp;
+      }
+
+      @Override
+      public boolean compareGreater(List<O> data, int i, int j) {
+        return data.get(i).doubleValue(split) > data.get(j).doubleValue(split);
+      }
+    }, start, end, middle);
+    node.left = buildTree(nodes, objs, perm, start, middle, dim);
+    node.right = buildTree(nodes, objs, perm, middle, end, dim);
+    return node;
+  }
+
+  /**
+   * Compute the core distances (the distance to the minPts nearest neighbor,
+   * including the point itself) using the tree.
+   *
+   * @param nodes Tree nodes
+   * @param objs Objects, in tree order
+   * @return Core distances, in tree order
+   */
+  private double[] computeCoreDists(List<Node> nodes, List<O> objs) {
+    final int size = objs.size();
+    final double[] core = new double[size];
+    FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Computing core sizes", size, LOG) : null;
+    ParallelExecutor.runBlocks(size, QUERY_BLOCK, (start, end) -> {
+      DoubleMaxHeap heap = new DoubleMaxHeap(minPts);
+      for(int i = start; i < end; i++) {
+        heap.clear();
+        knnSearch(nodes.get(0), objs, objs.get(i), heap);
+        core[i] = heap.size() >= minPts ? heap.peek() : Double.POSITIVE_INFINITY;
+      }
+      if(cprog != null) {
+        cprog.incrementProcessed(end - start, LOG);
+      }
+    });
+    LOG.ensureCompleted(cprog);
+    return core;
+  }
+
+  /**
+   * Find the distances to the minPts nearest neighbors.
+   *
+   * @param node Current node
+   * @param objs Objects, in tree order
+   * @param obj Query object
+   * @param heap Output heap of distances
+   */
+  private void knnSearch(Node node, List<O> objs, O obj, DoubleMaxHeap heap) {
+    if(node.left == null) {
+      for(int j = node.start; j < node.end; j++) {
+        final double d = distance.distance(obj, objs.get(j));
+        if(heap.size() < minPts || d < heap.peek()) {
+          heap.add(d, minPts);
+        }
+      }
+      return;
+    }
+    final double dl = distance.minDist(obj, node.left.box);
+    final double dr = distance.minDist(obj, node.right.box);
+    final Node first = dl <= dr ? node.left : node.right;
+    final Node second = dl <= dr ? node.right : node.left;
+    knnSearch(first, objs, obj, heap);
+    if(heap.size() < minPts || (dl <= dr ? dr : dl) <= heap.peek()) {
+      knnSearch(second, objs, obj, heap);
+    }
+  }
+
+  /**
+   * Minimum of an array interval.
+   *
+   * @param data Data
+   * @param start Start
+   * @param end End (exclusive)
+   * @return Minimum
+   */
+  private static double min(double[] data, int start, int end) {
+    double min = Double.POSITIVE_INFINITY;
+    for(int i = start; i < end; i++) {
+      min = data[i] < min ? data[i] : min;
+    }
+    return min;
+  }
+
+  /**
+   * State of the Borůvka algorithm.
+   *
+   * @author agent
+   */
+  private class Boruvka {
+    /**
+     * Tree nodes, in preorder.
+     */
+    private List<Node> nodes;
+
+    /**
+     * Objects, in tree order.
+     */
+    private List<O> objs;
+
+    /**
+     * Core distances, in tree order.
+     */
+    private double[] core;
+
+    /**
+     * Object offsets in the output.
+     */
+    private int[] perm;
+
+    /**
+     * Union-find parent pointers, and current component of each point.
+     */
+    private int[] parent, comp;
+
+    /**
+     * Output collector.
+     */
+    private HeapMSTCollector collector;
+
+    /**
+     * Constructor.
+     *
+     * @param nodes Tree nodes, in preorder
+     * @param objs Objects, in tree order
+     * @param core Core distances, in tree order
+     * @param perm Object offsets in the output
+     * @param collector Output collector
+     */
+    Boruvka(List<Node> nodes, List<O> objs, double[] core, int[] perm, HeapMSTCollector collector) {
+      this.nodes = nodes;
+      this.objs = objs;
+      this.core = core;
+      this.perm = perm;
+      this.collector = collector;
+      final int size = objs.size();
+      this.parent = new int[size];
+      this.comp = new int[size];
+      for(int i = 0; i < size; i++) {
+        parent[i] = i;
+      }
+    }
+
+    /**
+     * Run Borůvka's algorithm.
+     */
+    void run() {
+      final int size = objs.size();
+      // Nearest other component found for each point:
+      final double[] best = new double[size];
+      final int[] cand = new int[size];
+      // Points ordered by component:
+      final int[] order = new int[size], count = new int[size + 1];
+      // Best edge of each component:
+      final double[] cbest = new double[size];
+      final int[] cfrom = new int[size], cto = new int[size];
+      int numcomp = size;
+      while(numcomp > 1) {
+        // Update the component labels of points and nodes:
+        for(int i = 0; i < size; i++) {
+          comp[i] = find(i);
+        }
+        for(int i = nodes.size() - 1; i >= 0; i--) {
+          Node node = nodes.get(i);
+          if(node.left == null) {
+            int c = comp[node.start];
+            for(int j = node.start + 1; j < node.end && c >= 0; j++) {
+              c = comp[j] == c ? c : -1;
+            }
+            node.comp = c;
+          }
+          else {
+            node.comp = node.left.comp == node.right.comp ? node.left.comp : -1;
+          }
+        }
+        // Counting sort by component, preserving the tree order:
+        Arrays.fill(count, 0);
+        for(int i = 0; i < size; i++) {
+          ++count[comp[i] + 1];
+        }
+        for(int c = 0; c < size; c++) {
+          count[c + 1] += count[c];
+        }
+        for(int i = 0; i < size; i++) {
+          order[count[comp[i]]++] = i;
+        }
+        // Find the nearest other component of each point, in parallel:
+        ParallelExecutor.runBlocks(size, QUERY_BLOCK, (start, end) -> {
+          int curcomp = -1;
+          double bound = Double.POSITIVE_INFINITY;
+          boolean found = false;
+          for(int k = start; k < end; k++) {
+            final int i = order[k];
+            if(comp[i] != curcomp) {
+              curcomp = comp[i];
+              bound = Double.POSITIVE_INFINITY;
+              found = false;
+            }
+            cand[i] = -1;
+            // No edge of this point can improve on the component bound:
+            if(found && core[i] >= bound) {
+              continue;
+            }
+            best[i] = found ? bound : Double.POSITIVE_INFINITY;
+            search(nodes.get(0), i, objs.get(i), best, cand);
+            if(cand[i] >= 0) {
+              bound = best[i];
+              found = true;
+            }
+          }
+        });
+        // Choose the best edge of each component:
+        Arrays.fill(cfrom, -1);
+        for(int i = 0; i < size; i++) {
+          final int c = comp[i];
+          if(cand[i] >= 0 && (cfrom[c] < 0 || best[i] < cbest[c])) {
+            cbest[c] = best[i];
+            cfrom[c] = i;
+            cto[c] = cand[i];
+          }
+        }
+        // Add edges in ascending order, as in Kruskal's algorithm, to break
+        // ties consistently:
+        DoubleLongHeap edges = new DoubleLongMinHeap(numcomp);
+        for(int c = 0; c < size; c++) {
+          if(cfrom[c] >= 0) {
+            edges.add(cbest[c], (((long) cfrom[c]) << 31) | cto[c]);
+          }
+        }
+        for(; !edges.isEmpty(); edges.poll()) {
+          final long pair = edges.peekValue();
+          final int i = (int) (pair >>> 31), j = (int) (pair & 0x7FFFFFFFL);
+          final int ri = find(i), rj = find(j);
+          if(ri != rj) {
+            parent[ri] = rj;
+            collector.addEdge(edges.peekKey(), perm[i], perm[j]);
+            --numcomp;
+          }
+        }
+      }
+    }
+
+    /**
+     * Find the nearest point of a different component, by mutual
+     * reachability distance.
+     * <p>
+     * Only candidates better than the initial value of {@code best[i]} are
+     * reported. If it is infinite, the first candidate is accepted even if its
+     * distance is infinite, too (e.g. with less than minPts points).
+     *
+     * @param node Current node
+     * @param i Query point
+     * @param obj Query object
+     * @param best Best distance found so far (input and output)
+     * @param cand Best candidate found so far (output)
+     */
+    private void search(Node node, int i, O obj, double[] best, int[] cand) {
+      final int c = comp[i];
+      if(node.comp == c) {
+        return; // Only points of the same component.
+      }
+      if(node.left == null) {
+        final double corei = core[i];
+        for(int j = node.start; j < node.end; j++) {
+          if(comp[j] == c || core[j] >= best[i] && best[i] < Double.POSITIVE_INFINITY) {
+            continue;
+          }
+          final double d = Math.max(Math.max(corei, core[j]), distance.distance(obj, objs.get(j)));
+          if(d < best[i] || cand[i] < 0 && best[i] == Double.POSITIVE_INFINITY) {
+            best[i] = d;
+            cand[i] = j;
+          }
+        }
+        return;
+      }
+      final double dl = bound(node.left, i, obj);
+      final double dr = bound(node.right, i, obj);
+      final Node first = dl <= dr ? node.left : node.right;
+      final Node second = dl <= dr ? node.right : node.left;
+      if((dl <= dr ? dl : dr) < best[i] || best[i] == Double.POSITIVE_INFINITY) {
+        search(first, i, obj, best, cand);
+      }
+      if((dl <= dr ? dr : dl) < best[i] || best[i] == Double.POSITIVE_INFINITY) {
+        search(second, i, obj, best, cand);
+      }
+    }
+
+    /**
+     * Lower bound of the mutual reachability distance to a node.
+     *
+     * @param node Node
+     * @param i Query point
+     * @param obj Query object
+     * @return Lower bound
+     */
+    private double bound(Node node, int i, O obj) {
+      return Math.max(Math.max(core[i], node.mincore), distance.minDist(obj, node.box));
+    }
+
+    /**
+     * Find the component of a point, with path halving.
+     *
+     * @param i Point
+     * @return Component representative
+     */
+    private int find(int i) {
+      while(parent[i] != i) {
+        i = parent[i] = parent[parent[i]];
+      }
+      return i;
+    }
+  }
+
+  /**
+   * Node of the k-d-tree.
+   *
+   * @author agent
+   */
+  private static class Node {
+    /**
+     * Interval of the points in the node.
+     */
+    final int start, end;
+
+    /**
+     * Bounding box.
+     */
+    final HyperBoundingBox box;
+
+    /**
+     * Child nodes, {@code null} for leaves.
+     */
+    Node left, right;
+
+    /**
+     * Smallest core distance in the node.
+     */
+    double mincore;
+
+    /**
+     * Component of all points in this node, or -1 if mixed.
+     */
+    int comp = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param start Interval start
+     * @param end Interval end (exclusive)
+     * @param box Bounding box
+     */
+    Node(int start, int end, HyperBoundingBox box) {
+      this.start = start;
+      this.end = end;
+      this.box = box;
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Option ID for the minimum number of points.
+     */
+    public static final OptionID MIN_PTS_ID = AbstractHDBSCAN.Parameterizer.MIN_PTS_ID;
+
+    /**
+     * The distance function to use.
+     */
+    protected SpatialPrimitiveDistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Minimum size of core.
+     */
+    protected int minPts;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<SpatialPrimitiveDistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DistanceBasedAlgorithm.DISTANCE_FUNCTION_ID, SpatialPrimitiveDistanceFunction.class, EuclideanDistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      IntParameter minptsP = new IntParameter(MIN_PTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(minptsP)) {
+        minPts = minptsP.getValue();
+      }
+    }
+
+    @Override
+    protected HDBSCANBoruvka<O> makeInstance() {
+      return new HDBSCANBoruvka<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -25,7 +25,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 
 /**
  * Shared code for algorithms that work on a strict matrix paradigm.
@@ -36,7 +36,9 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * the matrix view (indexed by integers 0...n-1).
  *
  * While this will usually store (merge-) distances when clustering, it can
- * store arbitrary doubles.
+ * store arbitrary doubles. The matrix is stored in chunks, so it can exceed the
+ * maximum Java array size; to reduce memory, it can be stored in single
+ * precision.
  *
  * @author Erich Schubert
  */
@@ -49,7 +51,7 @@ public class MatrixParadigm {
   /**
    * Distance matrix (<b>modifiable</b>).
    */
-  public final double[] matrix;
+  public final TriangularMatrix matrix;
 
   /**
    * Number of rows/columns.
@@ -62,16 +64,21 @@ public class MatrixParadigm {
    * @param ids Database ids.
    */
   public MatrixParadigm(DBIDs ids) {
+    this(ids, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param singlePrecision Store the matrix with single precision
+   */
+  public MatrixParadigm(DBIDs ids, boolean singlePrecision) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
     ix = aids.iter();
     iy = aids.iter();
-    matrix = new double[triangleSize(size)];
+    matrix = TriangularMatrix.newMatrix(size, singlePrecision, false);
   }
 
   /**
@@ -80,8 +87,8 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return TriangularMatrix.triangleSize(x);
   }
 
   /**
@@ -95,9 +102,7 @@ public class MatrixParadigm {
    * @return Distance
    */
   public double get(int x, int y) {
-    return (x == y) ? 0 : (x < y) //
-        ? matrix[MatrixParadigm.triangleSize(y) + x] //
-        : matrix[MatrixParadigm.triangleSize(x) + y];
+    return matrix.get(x, y);
   }
 
   /**
@@ -108,13 +113,13 @@ public class MatrixParadigm {
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
     final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
+    final TriangularMatrix matrix = this.matrix;
+    long pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       final int x = ix.getOffset();
       assert (pos == triangleSize(x));
       for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+        matrix.set(pos++, dq.distance(ix, iy));
       }
     }
     return this;
@@ -31,7 +31,9 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
@@ -95,8 +97,8 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(size);
 
     // Allocate working space:
+    ArrayModifiableDBIDs prots = newPrototypeArray(size);
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
     initializeMatrices(mat, prots, dq);
 
     DBIDArrayMIter protiter = prots.iter();
@@ -111,6 +113,22 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
     return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
   }
 
+  /**
+   * Allocate the prototype storage, one DBID per matrix entry.
+   *
+   * @param size Number of objects
+   * @return Prototype array
+   */
+  protected static ArrayModifiableDBIDs newPrototypeArray(int size) {
+    final long tsize = MatrixParadigm.triangleSize(size);
+    if(tsize > Integer.MAX_VALUE) {
+      throw new AbortException("MiniMax clustering stores one prototype per pair of objects, and does not scale to data sets larger than " + //
+          0x10000 // = 65536
+          + " instances, at which point the Java maximum array size is reached.");
+    }
+    return DBIDUtil.newArray((int) tsize);
+  }
+
   /**
    * Initializes the inter-cluster distance matrix of possible merges
    * 
@@ -119,11 +137,11 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     int pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos] = dq.distance(ix, iy);
+        distances.set(pos, dq.distance(ix, iy));
         prots.add(iy);
         pos++;
       }
@@ -143,7 +161,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
    */
   protected static int findMerge(int end, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
 
@@ -152,7 +170,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
       if(builder.isLinked(ix.seek(dx))) {
         continue;
       }
-      final int xoffset = MatrixParadigm.triangleSize(dx);
+      final long xoffset = MatrixParadigm.triangleSize(dx);
 
       for(int dy = 0; dy < dx; dy++) {
         // Skip if object is already linked
@@ -160,7 +178,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
           continue;
         }
 
-        double dist = distances[xoffset + dy];
+        double dist = distances.get(xoffset + dy);
         if(dist < mindist) {
           mindist = dist;
           x = dx;
@@ -190,11 +208,11 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
   protected static void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final TriangularMatrix distances = mat.matrix;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -214,7 +232,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, distances.get(offset), iy, prots.seek(offset));
 
     updateMatrices(size, mat, prots, builder, clusters, dq, y);
   }
@@ -270,7 +288,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
   protected static void updateEntry(MatrixParadigm mat, DBIDArrayMIter prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
@@ -293,8 +311,8 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
       prototype.set(ix);
     }
 
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
+    distances.set(offset, minMaxDist);
     prots.seek(offset).setDBID(prototype);
   }
 
@@ -34,6 +34,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -93,8 +94,8 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>();
 
     // Compute the initial (lower triangular) distance matrix.
+    ArrayModifiableDBIDs prots = MiniMax.newPrototypeArray(size);
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
     DBIDArrayMIter protiter = prots.iter();
 
     MiniMax.initializeMatrices(mat, prots, dq);
@@ -123,16 +124,17 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(TriangularMatrix scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
-    for(int x = 0, p = 0; x < size; x++) {
+    long p = 0;
+    for(int x = 0; x < size; x++) {
       assert (p == MatrixParadigm.triangleSize(x));
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
+        final double v = scratch.get(p);
         if(v < bestd[y]) {
           bestd[y] = v;
           besti[y] = x;
@@ -205,13 +207,13 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
    */
   protected void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<O> dq, double[] bestd, int[] besti, int x, int y) {
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final TriangularMatrix distances = mat.matrix;
+    final int offset = (int) (MatrixParadigm.triangleSize(x) + y);
 
     assert (y < x);
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -230,7 +232,7 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, distances.get(offset), iy, prots.seek(offset));
 
     // Deactivate x in cache:
     besti[x] = -1;
@@ -257,21 +259,21 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
    */
   private void updateMatrices(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<O> dq, double[] bestd, int[] besti, int x, int y) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     // c is the new cluster.
     // Update entries (at (a,b) with a > b) in the matrix where a = y or b = y
 
     // Update entries at (y,b) with b < y
     int a = y, b = 0;
     ix.seek(a);
-    final int yoffset = MatrixParadigm.triangleSize(y);
+    final long yoffset = MatrixParadigm.triangleSize(y);
     for(; b < a; b++) {
       // Skip entry if already merged
       if(builder.isLinked(iy.seek(b))) {
         continue;
       }
       MiniMax.updateEntry(mat, prots, clusters, dq, a, b);
-      updateCache(size, distances, bestd, besti, x, y, b, distances[yoffset + b]);
+      updateCache(size, distances, bestd, besti, x, y, b, distances.get(yoffset + b));
     }
 
     // Update entries at (a,y) with a > y
@@ -284,7 +286,7 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
         continue;
       }
       MiniMax.updateEntry(mat, prots, clusters, dq, a, b);
-      updateCache(size, distances, bestd, besti, x, y, a, distances[MatrixParadigm.triangleSize(a) + y]);
+      updateCache(size, distances, bestd, besti, x, y, a, distances.get(MatrixParadigm.triangleSize(a) + y));
     }
   }
 
@@ -300,7 +302,7 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private void updateCache(int size, TriangularMatrix scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
@@ -313,27 +315,29 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
     }
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = MatrixParadigm.triangleSize(j);
+  protected void findBest(int size, TriangularMatrix scratch, double[] bestd, int[] besti, int j) {
+    final long jbase = MatrixParadigm.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = jbase; i < j; i++, o++) {
+    long o = jbase;
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist < bestdj) {
         bestdj = dist;
         bestij = i;
       }
     }
-    for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
+    o = jbase + j + j;
+    for(int i = j + 1; i < size; o += i, i++) {
       // assert(o == MatrixParadigm.triangleSize(i) + j);
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist < bestdj) {
         bestdj = dist;
         bestij = i;
@@ -32,6 +32,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -94,8 +95,8 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(ids.size());
 
+    ArrayModifiableDBIDs prots = MiniMax.newPrototypeArray(ids.size());
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(ids.size()));
 
     MiniMax.initializeMatrices(mat, prots, dq);
 
@@ -116,7 +117,7 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
    */
   private void nnChainCore(MatrixParadigm mat, DBIDArrayMIter prots, DistanceQuery<O> dq, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -151,10 +152,10 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -163,7 +164,7 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.TriangularMatrix;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -75,6 +76,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distanceFunction, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, Linkage linkage, boolean singlePrecision) {
+    super(distanceFunction, linkage, singlePrecision);
+  }
+
   /**
    * Run the algorithm
    * 
@@ -88,7 +100,7 @@ public class NNChain<O> extends AGNES<O> {
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
 
     // Compute the initial (lower triangular) distance matrix.
     initializeDistanceMatrix(mat, dq, linkage);
@@ -109,7 +121,7 @@ public class NNChain<O> extends AGNES<O> {
    */
   private void nnChainCore(MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final TriangularMatrix distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -144,10 +156,10 @@ public class NNChain<O> extends AGNES<O> {
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -156,7 +168,7 @@ public class NNChain<O> extends AGNES<O> {
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -222,7 +234,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
     @Override
     protected NNChain<O> makeInstance() {
-      return new NNChain<>(distanceFunction, linkage);
+      return new NNChain<>(distanceFunction, linkage, singlePrecision);
     }
   }
 }
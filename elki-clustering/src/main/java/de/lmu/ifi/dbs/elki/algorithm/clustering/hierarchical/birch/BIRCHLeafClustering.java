@@ -20,7 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.birch;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -36,6 +38,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -45,6 +48,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
  * BIRCH-based clustering algorithm that simply treats the leafs of the CFTree
  * as clusters.
  * <p>
+ * With {@link #run(BundleStreamSource)}, the data can also be summarized from
+ * a stream, without materializing a database.
+ * <p>
  * References:
  * <p>
  * T. Zhang, R. Ramakrishnan, M. Livny<br>
@@ -123,6 +129,26 @@ public class BIRCHLeafClustering extends AbstractAlgorithm<Clustering<MeanModel>
     return result;
   }
 
+  /**
+   * Summarize a stream of vectors in a single pass, without materializing a
+   * database, c.f. {@link CFTree.Factory#newTree(BundleStreamSource)}.
+   * <p>
+   * As the objects are not stored, the result only consists of the leaf
+   * entries, i.e., the number of objects, linear sum, and sum of squares of
+   * each cluster.
+   *
+   * @param source Stream source, containing exactly one vector column
+   * @return Leaf entries
+   */
+  public List<ClusteringFeature> run(BundleStreamSource source) {
+    CFTree tree = cffactory.newTree(source);
+    List<ClusteringFeature> leaves = new ArrayList<>(tree.leaves);
+    for(CFTree.LeafIterator iter = tree.leafIterator(); iter.valid(); iter.advance()) {
+      leaves.add(iter.get());
+    }
+    return leaves;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -24,13 +24,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.Iter;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -47,15 +53,20 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * Important differences:
  * <ol>
  * <li>Leaf nodes and directory nodes have the same capacity</li>
- * <li>Condensing and memory limits are not implemented</li>
+ * <li>Memory limits are approximated by a maximum number of leaves</li>
  * <li>Merging refinement (merge-resplit) is not implemented</li>
  * </ol>
  * Because we want to be able to track the cluster assignments of all data
  * points easily, we need to store the point IDs, and it is not possible to
  * implement the originally proposed page size management at the same time.
  * <p>
- * Condensing and merging refinement are possible, and improvements to this code
- * are welcome - please send a pull request!
+ * Trees can also be built from a stream with
+ * {@link Factory#newTree(BundleStreamSource)}, using a fixed number of partial
+ * trees that are built in parallel and merged by absorbing their leaf entries
+ * ({@link #absorb}).
+ * <p>
+ * Merging refinement is possible, and improvements to this code are welcome -
+ * please send a pull request!
  * <p>
  * References:
  * <p>
@@ -166,7 +177,6 @@ public class CFTree {
    * Rebuild the CFTree to condense it to approximately half the size.
    */
   protected void rebuildTree() {
-    final int dim = root.getDimensionality();
     double t = estimateThreshold(root) / leaves;
     t *= t;
     // Never decrease the threshold.
@@ -175,26 +185,73 @@ public class CFTree {
 
     LeafIterator iter = new LeafIterator(root); // Will keep the old root.
     assert (iter.valid());
-    ClusteringFeature first = iter.get();
-
     leaves = 0;
-    // Make a new root node:
-    root = new TreeNode(dim, capacity);
-    root.children[0] = first;
-    root.addToStatistics(first);
-    ++leaves;
-    for(iter.advance(); iter.valid(); iter.advance()) {
-      TreeNode other = insert(root, iter.get());
-      // Handle root overflow:
-      if(other != null) {
-        TreeNode newnode = new TreeNode(dim, capacity);
-        newnode.addToStatistics(newnode.children[0] = root);
-        newnode.addToStatistics(newnode.children[1] = other);
-        root = newnode;
+    root = null;
+    for(; iter.valid(); iter.advance()) {
+      insertLeaf(iter.get());
+    }
+  }
+
+  /**
+   * Absorb all leaf entries of another tree into this tree, e.g., to combine
+   * trees built independently on different parts of the data. The threshold
+   * becomes the larger threshold of both trees.
+   * <p>
+   * The leaf entries of the other tree are reused, so the other tree must not
+   * be used anymore afterwards.
+   *
+   * @param other Other tree
+   */
+  public void absorb(CFTree other) {
+    thresholdsq = other.thresholdsq > thresholdsq ? other.thresholdsq : thresholdsq;
+    if(other.root == null) {
+      return;
+    }
+    for(LeafIterator iter = other.leafIterator(); iter.valid(); iter.advance()) {
+      insertLeaf(iter.get());
+    }
+  }
+
+  /**
+   * Rebuild the tree until it has at most the given number of leaves, or the
+   * threshold cannot be increased anymore.
+   *
+   * @param max Maximum number of leaves
+   */
+  protected void condense(double max) {
+    while(leaves > max) {
+      final int before = leaves;
+      rebuildTree();
+      if(leaves >= before) {
+        break; // No progress.
       }
     }
   }
 
+  /**
+   * Insert a leaf entry, and handle the root node.
+   *
+   * @param leaf Leaf entry
+   */
+  private void insertLeaf(ClusteringFeature leaf) {
+    // No root created yet:
+    if(root == null) {
+      root = new TreeNode(leaf.getDimensionality(), capacity);
+      root.children[0] = leaf;
+      root.addToStatistics(leaf);
+      ++leaves;
+      return;
+    }
+    TreeNode other = insert(root, leaf);
+    // Handle root overflow:
+    if(other != null) {
+      TreeNode newnode = new TreeNode(root.getDimensionality(), capacity);
+      newnode.addToStatistics(newnode.children[0] = root);
+      newnode.addToStatistics(newnode.children[1] = other);
+      root = newnode;
+    }
+  }
+
   private double estimateThreshold(TreeNode current) {
     ClusteringFeature[] children = current.children;
     double total = 0.;
@@ -600,6 +657,24 @@ public class CFTree {
    * @author Erich Schubert
    */
   public static class Factory {
+    /**
+     * Default number of objects inserted into each tree per batch, when
+     * building from a stream.
+     */
+    static final int BLOCKSIZE = 1024;
+
+    /**
+     * Maximum number of partial trees when building from a stream. This does
+     * not depend on the number of processors, so neither does the result.
+     */
+    private static final int NUMTREES = 8;
+
+    /**
+     * Leaf budget required for each partial tree. Merging many coarse partial
+     * trees gives a much coarser summary than a single tree.
+     */
+    private static final int PARTIAL_LEAVES = 4;
+
     /**
      * BIRCH distance function to use
      */
@@ -625,6 +700,12 @@ public class CFTree {
      */
     double maxleaves;
 
+    /**
+     * Number of objects inserted into each tree per batch, when building from
+     * a stream.
+     */
+    int blocksize;
+
     /**
      * Constructor.
      *
@@ -635,11 +716,26 @@ public class CFTree {
      * @param maxleaves Maximum number of leaves
      */
     public Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves) {
+      this(distance, absorption, threshold, branchingFactor, maxleaves, BLOCKSIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance to use
+     * @param absorption Absorption criterion (diameter, distance).
+     * @param threshold Distance threshold
+     * @param branchingFactor Maximum branching factor.
+     * @param maxleaves Maximum number of leaves
+     * @param blocksize Objects per tree and batch when building from a stream
+     */
+    Factory(BIRCHDistance distance, BIRCHAbsorptionCriterion absorption, double threshold, int branchingFactor, double maxleaves, int blocksize) {
       this.distance = distance;
       this.absorption = absorption;
       this.threshold = threshold;
       this.branchingFactor = branchingFactor;
       this.maxleaves = maxleaves;
+      this.blocksize = blocksize;
     }
 
     /**
@@ -667,6 +763,136 @@ public class CFTree {
       return tree;
     }
 
+    /**
+     * Build a tree from a stream of vectors, in a single pass, without
+     * materializing a database.
+     * <p>
+     * The stream is read in batches, which are split into one block per
+     * partial tree, and block i of each batch is inserted into partial tree i,
+     * in parallel. The number of partial trees is chosen from the leaf budget
+     * when the first batch is complete: one tree per {@value #PARTIAL_LEAVES}
+     * leaves of the budget, but at most {@value #NUMTREES}, so small budgets
+     * use a single tree as when building from a relation. Each partial tree is
+     * rebuilt with an increased threshold when it exceeds the full leaf budget,
+     * because splitting the budget would force much higher thresholds, and the
+     * merged tree inherits the largest threshold. Hence, memory use may
+     * temporarily be up to {@value #NUMTREES} times the budget. In the end,
+     * the trees are merged by absorbing their leaf entries, and the merged tree
+     * is condensed to the leaf budget. As the stream is not known in advance, a
+     * relative maximum number of leaves refers to the number of objects read
+     * so far; use an absolute value to bound the memory use.
+     * <p>
+     * The result depends neither on the number of threads nor on the
+     * scheduling.
+     *
+     * @param source Stream source, containing exactly one vector column
+     * @return New tree
+     */
+    public CFTree newTree(BundleStreamSource source) {
+      NumberVector[] batch = new NumberVector[NUMTREES * blocksize];
+      CFTree[] trees = null;
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Building tree", LOG) : null;
+      int col = -1, fill = 0;
+      long total = 0;
+      loop: while(true) {
+        switch(source.nextEvent()){
+        case END_OF_STREAM:
+          break loop;
+        case META_CHANGED:
+          col = source.getMeta().findUniqueColumn(TypeUtil.NUMBER_VECTOR_FIELD);
+          break;
+        case NEXT_OBJECT:
+          if(col < 0) {
+            throw new AbortException("No vector column available.");
+          }
+          batch[fill++] = (NumberVector) source.data(col);
+          if(fill == batch.length) {
+            total += fill;
+            trees = trees != null ? trees : makePartialTrees(maxLeaves(total));
+            insertBatch(trees, batch, fill, maxLeaves(total));
+            fill = 0;
+            if(prog != null) {
+              prog.incrementProcessed(batch.length, LOG);
+            }
+          }
+          break;
+        }
+      }
+      if(fill > 0) {
+        total += fill;
+        trees = trees != null ? trees : makePartialTrees(maxLeaves(total));
+        insertBatch(trees, batch, fill, maxLeaves(total));
+        if(prog != null) {
+          prog.incrementProcessed(fill, LOG);
+        }
+      }
+      LOG.setCompleted(prog);
+      if(total == 0) {
+        throw new AbortException("The stream did not contain any objects.");
+      }
+      // Merge the partial trees:
+      CFTree tree = trees[0];
+      for(int i = 1; i < trees.length; i++) {
+        tree.absorb(trees[i]);
+        trees[i] = null;
+      }
+      tree.condense(maxLeaves(total));
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(CFTree.class.getName() + ".stream-size", total));
+        LOG.statistics(new LongStatistic(CFTree.class.getName() + ".partial-trees", trees.length));
+        LOG.statistics(new LongStatistic(CFTree.class.getName() + ".leaves", tree.leaves));
+      }
+      return tree;
+    }
+
+    /**
+     * Make the partial trees for building from a stream.
+     *
+     * @param max Maximum number of leaves
+     * @return Partial trees
+     */
+    private CFTree[] makePartialTrees(double max) {
+      final int num = Math.max(1, Math.min(NUMTREES, (int) (max / PARTIAL_LEAVES)));
+      CFTree[] trees = new CFTree[num];
+      for(int i = 0; i < num; i++) {
+        trees[i] = new CFTree(distance, absorption, threshold, branchingFactor);
+      }
+      return trees;
+    }
+
+    /**
+     * Insert a batch of vectors into the partial trees. The batch is split
+     * into one consecutive block per tree, and block i is always inserted into
+     * tree i.
+     *
+     * @param trees Partial trees
+     * @param batch Batch of vectors
+     * @param size Batch size
+     * @param max Maximum number of leaves of each tree
+     */
+    private static void insertBatch(CFTree[] trees, NumberVector[] batch, int size, double max) {
+      final int block = (size + trees.length - 1) / trees.length;
+      ParallelExecutor.runBlocks(size, block, (start, end) -> {
+        CFTree tree = trees[start / block];
+        for(int i = start; i < end; i++) {
+          tree.insert(batch[i]);
+          if(tree.leaves > max) {
+            tree.rebuildTree();
+          }
+        }
+      });
+    }
+
+    /**
+     * Maximum number of leaves.
+     *
+     * @param size Number of objects
+     * @return Maximum number of leaves
+     */
+    private double maxLeaves(long size) {
+      return maxleaves <= 1 ? maxleaves * size : maxleaves;
+    }
+
     /**
      * Parameterization class for CFTrees.
      *
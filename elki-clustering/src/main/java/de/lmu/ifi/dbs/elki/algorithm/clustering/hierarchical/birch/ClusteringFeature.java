@@ -92,6 +92,15 @@ public class ClusteringFeature {
     ss = 0;
   }
 
+  /**
+   * Number of objects summarized by this clustering feature.
+   *
+   * @return Number of objects
+   */
+  public int getWeight() {
+    return n;
+  }
+
   /**
    * Centroid value in dimension i.
    * 
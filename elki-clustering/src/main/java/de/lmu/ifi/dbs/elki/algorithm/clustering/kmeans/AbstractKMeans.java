@@ -40,6 +40,7 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.relation.DenseNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
@@ -120,6 +121,10 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
       cluster.clear();
     }
     final NumberVectorDistanceFunction<?> df = getDistanceFunction();
+    if(relation instanceof DenseNumberVectorRelation && df instanceof SquaredEuclideanDistanceFunction //
+        && ((DenseNumberVectorRelation) relation).getDimensionality() == means[0].length) {
+      return assignToNearestClusterDense((DenseNumberVectorRelation) relation, means, clusters, assignment, varsum);
+    }
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       double mindist = Double.POSITIVE_INFINITY;
       NumberVector fv = relation.get(iditer);
@@ -138,6 +143,44 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     return changed;
   }
 
+  /**
+   * Assign to the nearest cluster, for squared Euclidean distance on a dense
+   * data block.
+   *
+   * @param relation the database to cluster
+   * @param means a list of k means
+   * @param clusters cluster assignment
+   * @param assignment Current cluster assignment
+   * @param varsum Variance sum output
+   * @return true when the object was reassigned
+   */
+  private boolean assignToNearestClusterDense(DenseNumberVectorRelation relation, double[][] means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] varsum) {
+    final double[] data = relation.getData();
+    final int dim = relation.getDimensionality();
+    boolean changed = false;
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      final int off = relation.getOffset(iditer);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        final double[] mean = means[i];
+        double dist = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double delta = data[off + d] - mean[d];
+          dist += delta * delta;
+        }
+        if(dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      varsum[minIndex] += mindist;
+      clusters.get(minIndex).add(iditer);
+      changed |= assignment.putInt(iditer, minIndex) != minIndex;
+    }
+    return changed;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(new CombinedTypeInformation(TypeUtil.NUMBER_VECTOR_FIELD, getDistanceFunction().getInputTypeRestriction()));
@@ -178,6 +221,10 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
         newMeans[i] = means[i];
         continue;
       }
+      if(relation instanceof DenseNumberVectorRelation) {
+        newMeans[i] = denseMean(list, (DenseNumberVectorRelation) relation);
+        continue;
+      }
       DBIDIter iter = list.iter();
       // Initialize with first.
       double[] sum = relation.get(iter).toArray();
@@ -190,6 +237,26 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     return newMeans;
   }
 
+  /**
+   * Compute the mean of a non-empty cluster directly from a dense data block.
+   *
+   * @param ids Cluster members
+   * @param relation Data relation
+   * @return Mean vector
+   */
+  private static double[] denseMean(DBIDs ids, DenseNumberVectorRelation relation) {
+    final double[] data = relation.getData();
+    final int dim = relation.getDimensionality();
+    double[] sum = new double[dim];
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final int off = relation.getOffset(iter);
+      for(int d = 0; d < dim; d++) {
+        sum[d] += data[off + d];
+      }
+    }
+    return timesEquals(sum, 1.0 / ids.size());
+  }
+
   /**
    * Similar to VMath.plusEquals, but accepts a number vector.
    *
@@ -38,6 +38,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -53,6 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * sets based on PAM, partitioning around medoids ({@link KMedoidsPAM}) based on
  * sampling.
  * <p>
+ * When independent samples are drawn (i.e., the previous medoids are not kept
+ * in the sample), the samples are processed concurrently.
+ * <p>
  * Reference:
  * <p>
  * L. Kaufman, P. J. Rousseeuw<br>
@@ -142,25 +146,54 @@ public class CLARA<V> extends KMedoidsPAM<V> {
 
     Random rnd = random.getSingleThreadedRandom();
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
-    for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
-      // FIXME: precompute and use a distance matrix for this sample!
-
-      // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      double score = new /* PAM */Instance(distQ, rids, assignment).run(medoids, maxiter) //
-          + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
+    if(!keepmed && numsamples > 1) {
+      // Independent samples: draw the samples and the initial medoids first,
+      // then process the samples concurrently.
+      final DBIDs[] samples = new DBIDs[numsamples];
+      final ArrayModifiableDBIDs[] medoids = new ArrayModifiableDBIDs[numsamples];
+      final WritableIntegerDataStore[] assignments = new WritableIntegerDataStore[numsamples];
+      final double[] scores = new double[numsamples];
+      for(int j = 0; j < numsamples; j++) {
+        samples[j] = DBIDUtil.randomSample(ids, samplesize, rnd);
+        medoids[j] = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, samples[j], distQ));
+        assignments[j] = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
       }
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
+      ParallelExecutor.runBlocks(numsamples, 1, (start, end) -> {
+        for(int j = start; j < end; j++) {
+          scores[j] = processSample(distQ, ids, samples[j], medoids[j], assignments[j]);
+          LOG.incrementProcessed(prog);
+        }
+      });
+      // Choose the best sample, in sample order for determinism.
+      for(int j = 0; j < numsamples; j++) {
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", scores[j]));
+        }
+        if(scores[j] < best) {
+          best = scores[j];
+          bestmedoids = medoids[j];
+          bestclusters = assignments[j];
+        }
+      }
+    }
+    else {
+      for(int j = 0; j < numsamples; j++) {
+        DBIDs rids = randomSample(ids, samplesize, rnd, keepmed ? bestmedoids : null);
+        // Choose initial medoids
+        ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
+        // Setup cluster assignment store
+        WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+        double score = processSample(distQ, ids, rids, medoids, assignment);
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(getClass().getName() + ".sample-" + j + ".cost", score));
+        }
+        if(score < best) {
+          best = score;
+          bestmedoids = medoids;
+          bestclusters = assignment;
+        }
+        LOG.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
     if(LOG.isStatistics()) {
@@ -178,6 +211,22 @@ public class CLARA<V> extends KMedoidsPAM<V> {
     return result;
   }
 
+  /**
+   * Run PAM on a single sample, and assign the remaining objects.
+   *
+   * @param distQ Distance query
+   * @param ids All object IDs
+   * @param rids Sample
+   * @param medoids Initial medoids, will be modified
+   * @param assignment Cluster assignment output
+   * @return Total cost
+   */
+  protected double processSample(DistanceQuery<V> distQ, DBIDs ids, DBIDs rids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    // FIXME: precompute and use a distance matrix for this sample!
+    return new /* PAM */Instance(distQ, rids, assignment).run(medoids, maxiter) //
+        + assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
+  }
+
   /**
    * Draw a random sample of the desired size.
    * 
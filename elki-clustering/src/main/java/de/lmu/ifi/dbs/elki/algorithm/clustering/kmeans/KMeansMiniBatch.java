@@ -0,0 +1,523 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Mini-batch k-means, which updates the means using small random samples of
+ * the data only.
+ * <p>
+ * In every iteration, a batch of objects is sampled (with replacement), each
+ * object is assigned to its nearest mean, and then the means are moved towards
+ * the objects with a per-center learning rate of 1 / (number of objects
+ * assigned to this center so far). This converges to a solution close to the
+ * one of k-means, but each iteration only costs O(batch size * k).
+ * <p>
+ * Optionally, a final pass assigns all objects to their nearest mean. If this
+ * pass is skipped, the resulting clusters only carry the means, but no
+ * objects. With {@link #run(BundleStreamSource)}, the means can also be
+ * learned from a stream without materializing a database.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Sculley<br>
+ * Web-scale k-means clustering<br>
+ * Proc. 19th Int. Conf. on World Wide Web, WWW 2010
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+    title = "Web-scale k-means clustering", //
+    booktitle = "Proc. 19th Int. Conf. on World Wide Web, WWW 2010", //
+    url = "https://doi.org/10.1145/1772690.1772862", //
+    bibkey = "DBLP:conf/www/Sculley10")
+public class KMeansMiniBatch<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansMiniBatch.class.getName();
+
+  /**
+   * Number of batches buffered to initialize the means from a stream.
+   */
+  private static final int INIT_BATCHES = 10;
+
+  /**
+   * Number of objects per batch.
+   */
+  int batchsize;
+
+  /**
+   * Stop when no mean moved more than this distance within one batch.
+   */
+  double tolerance;
+
+  /**
+   * Perform a final assignment of all objects.
+   */
+  boolean assign;
+
+  /**
+   * Random generator for sampling.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maximum number of batches (0 for no limit, requires a
+   *        tolerance)
+   * @param initializer Initialization method
+   * @param batchsize Number of objects per batch
+   * @param tolerance Convergence tolerance (0 to disable)
+   * @param assign Perform a final assignment of all objects
+   * @param random Random generator for sampling
+   */
+  public KMeansMiniBatch(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, double tolerance, boolean assign, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.tolerance = tolerance;
+    this.assign = assign;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    if(maxiter <= 0 && !(tolerance > 0)) {
+      throw new AbortException("Without a maximum number of iterations, a convergence tolerance is required.");
+    }
+    // Choose initial means
+    LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final Random rnd = random.getSingleThreadedRandom();
+    // Per-center object counts, for the learning rates.
+    long[] counts = new long[k];
+    NumberVector[] batch = new NumberVector[batchsize];
+    int[] nearest = new int[batchsize];
+    DBIDArrayIter it = ids.iter();
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Mini-batch k-means iteration", LOG) : null;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      for(int i = 0; i < batchsize; i++) {
+        batch[i] = relation.get(it.seek(rnd.nextInt(size)));
+      }
+      double moved = processBatch(batch, batchsize, nearest, means, counts);
+      if(tolerance > 0 && moved <= tolerance) {
+        ++iteration;
+        break;
+      }
+    }
+    LOG.setCompleted(prog);
+    LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    return assign ? assignAll(relation, ids, means) : meansOnly(means);
+  }
+
+  /**
+   * Learn the means from a stream of vectors, in a single pass, without
+   * materializing a database.
+   * <p>
+   * The first {@value #INIT_BATCHES} batches are buffered, and the means are
+   * chosen by the initialization method from this buffer, rather than from the
+   * first batch only. The buffer is then shuffled and processed, followed by
+   * the remainder of the stream in batches of the configured size. Because
+   * the stream is read only once, the iteration limit is not used. If the
+   * stream is sorted, clusters that do not occur in the buffer will not get
+   * an initial mean.
+   *
+   * @param source Stream source, containing exactly one vector column
+   * @return Cluster means
+   */
+  @SuppressWarnings("unchecked")
+  public double[][] run(BundleStreamSource source) {
+    final Random rnd = random.getSingleThreadedRandom();
+    long[] counts = new long[k];
+    NumberVector[] buffer = new NumberVector[INIT_BATCHES * batchsize];
+    NumberVector[] batch = new NumberVector[batchsize];
+    int[] nearest = new int[batchsize];
+    double[][] means = null;
+    SimpleTypeInformation<V> type = null;
+    int col = -1, fill = 0, buffered = 0;
+    long total = 0;
+    loop: while(true) {
+      switch(source.nextEvent()){
+      case END_OF_STREAM:
+        break loop;
+      case META_CHANGED:
+        col = source.getMeta().findUniqueColumn(TypeUtil.NUMBER_VECTOR_FIELD);
+        type = col >= 0 ? (SimpleTypeInformation<V>) source.getMeta().get(col) : null;
+        break;
+      case NEXT_OBJECT:
+        if(col < 0) {
+          throw new AbortException("No vector column available.");
+        }
+        ++total;
+        if(means == null) {
+          buffer[buffered++] = (NumberVector) source.data(col);
+          if(buffered == buffer.length) {
+            means = initialMeans(type, buffer, buffered);
+            processBuffer(buffer, buffered, batch, nearest, means, counts, rnd);
+          }
+          break;
+        }
+        batch[fill++] = (NumberVector) source.data(col);
+        if(fill == batchsize) {
+          processBatch(batch, fill, nearest, means, counts);
+          fill = 0;
+        }
+        break;
+      }
+    }
+    if(means == null) {
+      if(buffered == 0) {
+        throw new AbortException("The stream did not contain any objects.");
+      }
+      means = initialMeans(type, buffer, buffered);
+      processBuffer(buffer, buffered, batch, nearest, means, counts, rnd);
+    }
+    if(fill > 0) {
+      processBatch(batch, fill, nearest, means, counts);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".stream-size", total));
+    }
+    return means;
+  }
+
+  /**
+   * Shuffle the buffered beginning of a stream, and process it in batches.
+   *
+   * @param buffer Buffered objects, will be shuffled
+   * @param size Number of buffered objects
+   * @param batch Batch storage
+   * @param nearest Scratch storage for the nearest means
+   * @param means Means, will be modified
+   * @param counts Per-center counts, will be modified
+   * @param rnd Random generator
+   */
+  private void processBuffer(NumberVector[] buffer, int size, NumberVector[] batch, int[] nearest, double[][] means, long[] counts, Random rnd) {
+    // Fisher-Yates shuffle, as streams are often sorted.
+    for(int i = size - 1; i > 0; i--) {
+      final int j = rnd.nextInt(i + 1);
+      NumberVector tmp = buffer[j];
+      buffer[j] = buffer[i];
+      buffer[i] = tmp;
+    }
+    for(int start = 0; start < size; start += batchsize) {
+      final int len = Math.min(batchsize, size - start);
+      System.arraycopy(buffer, start, batch, 0, len);
+      processBatch(batch, len, nearest, means, counts);
+    }
+  }
+
+  /**
+   * Choose initial means from the beginning of a stream, using the configured
+   * initialization method.
+   *
+   * @param type Vector type of the stream
+   * @param buffer Buffered objects
+   * @param size Number of buffered objects
+   * @return Initial means
+   */
+  @SuppressWarnings("unchecked")
+  private double[][] initialMeans(SimpleTypeInformation<V> type, NumberVector[] buffer, int size) {
+    if(size < k) {
+      throw new AbortException("The stream has less than k objects.");
+    }
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    WritableDataStore<V> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, NumberVector.class);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      store.put(it, (V) buffer[it.getOffset()]);
+    }
+    Relation<V> rel = new MaterializedRelation<>("Stream sample", "stream-sample", type, store, ids);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    return initializer.chooseInitialMeans(new ProxyDatabase(ids, rel), rel, k, getDistanceFunction());
+  }
+
+  /**
+   * Process a single batch: assign all objects to the nearest mean, then
+   * update the means with per-center learning rates.
+   *
+   * @param batch Batch of objects
+   * @param size Number of objects in the batch
+   * @param nearest Scratch storage for the nearest means
+   * @param means Means, will be modified
+   * @param counts Per-center counts, will be modified
+   * @return Maximum distance moved by a mean
+   */
+  protected double processBatch(NumberVector[] batch, int size, int[] nearest, double[][] means, long[] counts) {
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    // Assign to the means before this batch
+    for(int i = 0; i < size; i++) {
+      final NumberVector fv = batch[i];
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int j = 0; j < k; j++) {
+        final double dist = df.distance(fv, DoubleVector.wrap(means[j]));
+        if(dist < mindist) {
+          minIndex = j;
+          mindist = dist;
+        }
+      }
+      nearest[i] = minIndex;
+    }
+    // Keep the means before this batch, to measure how far they moved.
+    final double[][] old = new double[k][];
+    for(int j = 0; j < k; j++) {
+      old[j] = means[j].clone();
+    }
+    // Gradient steps
+    final int dim = means[0].length;
+    for(int i = 0; i < size; i++) {
+      final NumberVector fv = batch[i];
+      final int c = nearest[i];
+      final double eta = 1. / ++counts[c];
+      final double[] mean = means[c];
+      for(int d = 0; d < dim; d++) {
+        mean[d] += eta * (fv.doubleValue(d) - mean[d]);
+      }
+    }
+    double max = 0.;
+    for(int j = 0; j < k; j++) {
+      final double[] mean = means[j], o = old[j];
+      double m = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double v = mean[d] - o[d];
+        m += v * v;
+      }
+      max = m > max ? m : max;
+    }
+    return FastMath.sqrt(max);
+  }
+
+  /**
+   * Final pass, assigning every object to the nearest mean.
+   *
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param means Final means
+   * @return Clustering
+   */
+  protected Clustering<KMeansModel> assignAll(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    List<ModifiableDBIDs> clusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newArray((int) (ids.size() * 2. / k)));
+    }
+    double[] varsum = new double[k];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Final assignment", ids.size(), LOG) : null;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      final V fv = relation.get(it);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int j = 0; j < k; j++) {
+        final double dist = df.distance(fv, DoubleVector.wrap(means[j]));
+        if(dist < mindist) {
+          minIndex = j;
+          mindist = dist;
+        }
+      }
+      clusters.get(minIndex).add(it);
+      varsum[minIndex] += mindist;
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    if(LOG.isStatistics()) {
+      logVarstat(new DoubleStatistic(KEY + ".variance-sum"), varsum);
+    }
+    return buildResult(clusters, means, varsum);
+  }
+
+  /**
+   * Build a result without object assignments.
+   *
+   * @param means Final means
+   * @return Clustering
+   */
+  protected Clustering<KMeansModel> meansOnly(double[][] means) {
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < k; i++) {
+      result.addToplevelCluster(new Cluster<>(DBIDUtil.EMPTYDBIDS, new KMeansModel(means[i], Double.NaN)));
+    }
+    return result;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of objects sampled for each mini-batch.");
+
+    /**
+     * Parameter for the convergence tolerance.
+     */
+    public static final OptionID TOLERANCE_ID = new OptionID("kmeans.minibatch.tolerance", "Stop when no mean moved more than this distance during a batch. 0 disables this criterion.");
+
+    /**
+     * Flag to skip the final assignment.
+     */
+    public static final OptionID NOASSIGN_ID = new OptionID("kmeans.minibatch.noassign", "Skip the final assignment of all objects; the clusters will then only contain the means.");
+
+    /**
+     * Random source for sampling.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random source for sampling the batches.");
+
+    /**
+     * Number of objects per batch.
+     */
+    int batchsize;
+
+    /**
+     * Convergence tolerance.
+     */
+    double tolerance;
+
+    /**
+     * Perform a final assignment of all objects.
+     */
+    boolean assign = true;
+
+    /**
+     * Random generator for sampling.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchP = new IntParameter(BATCHSIZE_ID, 1000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchP)) {
+        batchsize = batchP.intValue();
+      }
+      DoubleParameter tolP = new DoubleParameter(TOLERANCE_ID, 0.) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+      if(config.grab(tolP)) {
+        tolerance = tolP.doubleValue();
+      }
+      Flag noassignF = new Flag(NOASSIGN_ID);
+      if(config.grab(noassignF)) {
+        assign = noassignF.isFalse();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected void getParameterMaxIter(Parameterization config) {
+      IntParameter maxiterP = new IntParameter(MAXITER_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansMiniBatch<V> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, maxiter, initializer, batchsize, tolerance, assign, random);
+    }
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * FasterPAM: k-medoids clustering with eager swapping.
+ * <p>
+ * For each object, the distances to the nearest and second nearest medoid are
+ * cached. From these, the loss of removing each medoid is computed once, and
+ * the change in cost of all k possible swaps with a candidate object is then
+ * obtained in a single pass over the data. Rather than searching for the best
+ * swap, every swap that improves the result is performed immediately, and the
+ * caches are updated incrementally.
+ * <p>
+ * Candidates are evaluated in parallel batches. As the first improving
+ * candidate (in data order) of each batch is swapped, and the evaluation then
+ * continues after it, the result is the same as for the sequential algorithm,
+ * independent of the number of threads.
+ * <p>
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br>
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br>
+ * Proc. 12th Int. Conf. Similarity Search and Applications (SISAP'2019)
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br>
+ * Fast and Eager k-Medoids Clustering: O(k) Runtime Improvement of the PAM,
+ * CLARA, and CLARANS Algorithms<br>
+ * Information Systems 101
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <V> vector datatype
+ */
+@Title("FasterPAM")
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+    title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+    booktitle = "Proc. 12th Int. Conf. Similarity Search and Applications (SISAP'2019)", //
+    url = "https://doi.org/10.1007/978-3-030-32047-8_16", //
+    bibkey = "DBLP:conf/sisap/SchubertR19")
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+    title = "Fast and Eager k-Medoids Clustering: O(k) Runtime Improvement of the PAM, CLARA, and CLARANS Algorithms", //
+    booktitle = "Information Systems 101", //
+    url = "https://doi.org/10.1016/j.is.2021.101804", //
+    bibkey = "DBLP:journals/is/SchubertR21")
+public class KMedoidsFasterPAM<V> extends KMedoidsPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMedoidsFasterPAM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMedoidsFasterPAM.class.getName();
+
+  /**
+   * Number of objects processed in one block, when updating the caches.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public KMedoidsFasterPAM(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void run(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    if(medoids.size() == 1) {
+      // Removal losses are infinite for k=1, use the regular PAM.
+      super.run(distQ, ids, medoids, assignment);
+      return;
+    }
+    new Instance(distQ, ids, assignment).run(medoids, maxiter);
+  }
+
+  /**
+   * Instance for a single dataset. All caches are stored in arrays, indexed by
+   * the offset in the DBID array.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  protected static class Instance {
+    /**
+     * Ids to process.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Distance function to use.
+     */
+    DistanceQuery<?> distQ;
+
+    /**
+     * Cluster mapping output.
+     */
+    WritableIntegerDataStore assignment;
+
+    /**
+     * Nearest and second nearest medoid of each object.
+     */
+    int[] nearest, second;
+
+    /**
+     * Distance to the nearest and second nearest medoid.
+     */
+    double[] dnearest, dsecond;
+
+    /**
+     * Loss of removing each medoid.
+     */
+    double[] loss;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids IDs to process
+     * @param assignment Cluster assignment
+     */
+    public Instance(DistanceQuery<?> distQ, DBIDs ids, WritableIntegerDataStore assignment) {
+      this.distQ = distQ;
+      this.ids = DBIDUtil.ensureArray(ids);
+      this.assignment = assignment;
+      final int size = ids.size();
+      this.nearest = new int[size];
+      this.second = new int[size];
+      this.dnearest = new double[size];
+      this.dsecond = new double[size];
+    }
+
+    /**
+     * Run the FasterPAM optimization phase.
+     *
+     * @param medoids Medoids list
+     * @param maxiter Maximum number of passes over the data
+     * @return final cost
+     */
+    protected double run(ArrayModifiableDBIDs medoids, int maxiter) {
+      final int k = medoids.size(), size = ids.size();
+      this.loss = new double[k];
+      double tc = assignToNearestCluster(medoids);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + 0 + ".cost", tc));
+      }
+      final boolean metric = distQ.getDistanceFunction().isMetric();
+      final int batchsize = ParallelCore.getCore().getParallelism();
+      final double[] gain = new double[batchsize];
+      final int[] bestm = new int[batchsize];
+
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("FasterPAM iteration", LOG) : null;
+      int iteration = 0, lastswap = -1;
+      long swaps = 0;
+      passes: while(maxiter <= 0 || iteration < maxiter) {
+        ++iteration;
+        LOG.incrementProcessed(prog);
+        for(int c = 0; c < size;) {
+          final int start = c, end = Math.min(c + batchsize, size);
+          // Stop when we reach the last swap, without finding another one.
+          final int stop = lastswap >= start && lastswap < end ? lastswap : end;
+          ParallelExecutor.runBlocks(stop - start, 1, (s, e) -> {
+            DBIDArrayIter xc = ids.iter(), o = ids.iter(), m = medoids.iter();
+            double[] delta = new double[k];
+            for(int j = s; j < e; j++) {
+              xc.seek(start + j);
+              final int i = xc.getOffset();
+              // Skip medoids, and duplicates of medoids:
+              if((metric && dnearest[i] <= 0.) || DBIDUtil.equal(m.seek(nearest[i]), xc)) {
+                gain[j] = Double.POSITIVE_INFINITY;
+                continue;
+              }
+              gain[j] = computeSwapGain(xc, o, delta);
+              bestm[j] = argmin(delta);
+            }
+          });
+          int found = -1;
+          for(int j = start; j < stop; j++) {
+            if(gain[j - start] < -1e-12 * tc) {
+              found = j;
+              break;
+            }
+          }
+          if(found < 0) {
+            if(stop < end) {
+              break passes; // Converged.
+            }
+            c = end;
+            continue;
+          }
+          final double expect = gain[found - start];
+          tc = swap(medoids, bestm[found - start], found);
+          ++swaps;
+          lastswap = found;
+          c = found + 1;
+          if(LOG.isDebuggingFine()) {
+            LOG.debugFine("Swap " + swaps + " expected change: " + expect + " new cost: " + tc);
+          }
+        }
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", tc));
+        }
+        if(lastswap < 0) {
+          break; // No swap in the first pass.
+        }
+      }
+      LOG.setCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+        LOG.statistics(new LongStatistic(KEY + ".swaps", swaps));
+      }
+      // Store the final assignment.
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        assignment.putInt(it, nearest[it.getOffset()]);
+      }
+      return tc;
+    }
+
+    /**
+     * Compute the change in cost for swapping a candidate with each medoid, in
+     * a single pass over the data.
+     *
+     * @param xc Candidate to become medoid
+     * @param o Iterator to use
+     * @param delta Output: cost change for replacing each medoid, except for
+     *        the common part returned
+     * @return Cost change of the best swap
+     */
+    protected double computeSwapGain(DBIDArrayIter xc, DBIDArrayIter o, double[] delta) {
+      System.arraycopy(loss, 0, delta, 0, loss.length);
+      double acc = 0.;
+      for(o.seek(0); o.valid(); o.advance()) {
+        final int i = o.getOffset();
+        final double d = distQ.distance(xc, o), dn = dnearest[i];
+        if(d < dn) {
+          // The candidate becomes the nearest, for any removed medoid:
+          acc += d - dn;
+          // Removing the nearest does not cause the removal loss then.
+          delta[nearest[i]] += dn - dsecond[i];
+        }
+        else if(d < dsecond[i]) {
+          // If the nearest is removed, the candidate is used instead:
+          delta[nearest[i]] += d - dsecond[i];
+        }
+      }
+      return acc + delta[argmin(delta)];
+    }
+
+    /**
+     * Find the smallest value.
+     *
+     * @param delta Values
+     * @return Index of the smallest value
+     */
+    private static int argmin(double[] delta) {
+      int best = 0;
+      for(int m = 1; m < delta.length; m++) {
+        best = delta[m] < delta[best] ? m : best;
+      }
+      return best;
+    }
+
+    /**
+     * Replace a medoid, and update the caches.
+     *
+     * @param medoids Medoids
+     * @param b Medoid to replace
+     * @param c Offset of the new medoid
+     * @return New cost
+     */
+    protected double swap(ArrayModifiableDBIDs medoids, int b, int c) {
+      medoids.set(b, ids.iter().seek(c));
+      ParallelExecutor.runBlocks(ids.size(), BLOCKSIZE, (start, end) -> {
+        DBIDArrayIter o = ids.iter().seek(start), xc = ids.iter().seek(c), m = medoids.iter();
+        for(; o.getOffset() < end; o.advance()) {
+          final int i = o.getOffset();
+          final double d = distQ.distance(xc, o);
+          if(nearest[i] == b) {
+            if(d < dsecond[i]) {
+              dnearest[i] = d; // Still the nearest, second unchanged.
+            }
+            else {
+              updateNearest(o, m, i);
+            }
+          }
+          else if(d < dnearest[i]) {
+            second[i] = nearest[i];
+            dsecond[i] = dnearest[i];
+            nearest[i] = b;
+            dnearest[i] = d;
+          }
+          else if(d < dsecond[i]) {
+            second[i] = b;
+            dsecond[i] = d;
+          }
+          else if(second[i] == b) {
+            updateSecond(o, m, i);
+          }
+        }
+      });
+      return updateLoss();
+    }
+
+    /**
+     * Recompute the nearest and second nearest medoid of an object.
+     *
+     * @param o Object
+     * @param m Medoid iterator
+     * @param i Object offset
+     */
+    private void updateNearest(DBIDArrayIter o, DBIDArrayIter m, int i) {
+      double mindist = Double.POSITIVE_INFINITY,
+          mindist2 = Double.POSITIVE_INFINITY;
+      int minindx = -1, minindx2 = -1;
+      for(m.seek(0); m.valid(); m.advance()) {
+        final double dist = distQ.distance(o, m);
+        if(dist < mindist) {
+          mindist2 = mindist;
+          minindx2 = minindx;
+          mindist = dist;
+          minindx = m.getOffset();
+        }
+        else if(dist < mindist2) {
+          mindist2 = dist;
+          minindx2 = m.getOffset();
+        }
+      }
+      if(minindx < 0) {
+        throw new AbortException("Too many infinite distances. Cannot assign objects.");
+      }
+      nearest[i] = minindx;
+      dnearest[i] = mindist;
+      second[i] = minindx2;
+      dsecond[i] = mindist2;
+    }
+
+    /**
+     * Recompute the second nearest medoid of an object.
+     *
+     * @param o Object
+     * @param m Medoid iterator
+     * @param i Object offset
+     */
+    private void updateSecond(DBIDArrayIter o, DBIDArrayIter m, int i) {
+      double mindist2 = Double.POSITIVE_INFINITY;
+      int minindx2 = -1;
+      for(m.seek(0); m.valid(); m.advance()) {
+        if(m.getOffset() == nearest[i]) {
+          continue;
+        }
+        final double dist = distQ.distance(o, m);
+        if(dist < mindist2) {
+          mindist2 = dist;
+          minindx2 = m.getOffset();
+        }
+      }
+      second[i] = minindx2;
+      dsecond[i] = mindist2;
+    }
+
+    /**
+     * Recompute the removal loss of each medoid.
+     *
+     * @return Total cost
+     */
+    private double updateLoss() {
+      Arrays.fill(loss, 0.);
+      double cost = 0.;
+      for(int i = 0; i < nearest.length; i++) {
+        loss[nearest[i]] += dsecond[i] - dnearest[i];
+        cost += dnearest[i];
+      }
+      return cost;
+    }
+
+    /**
+     * Assign each object to the nearest medoid, and compute the removal loss
+     * of each medoid.
+     *
+     * @param medoids Medoids
+     * @return Assignment cost
+     */
+    protected double assignToNearestCluster(ArrayDBIDs medoids) {
+      ParallelExecutor.runBlocks(ids.size(), BLOCKSIZE, (start, end) -> {
+        DBIDArrayIter o = ids.iter().seek(start), m = medoids.iter();
+        for(; o.getOffset() < end; o.advance()) {
+          updateNearest(o, m, o.getOffset());
+        }
+      });
+      return updateLoss();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends KMedoidsPAM.Parameterizer<V> {
+    @Override
+    protected KMedoidsFasterPAM<V> makeInstance() {
+      return new KMedoidsFasterPAM<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,434 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Abstract base class for parallel k-means variants that maintain bounds for
+ * each point, such as the variants of Elkan and Hamerly.
+ * <p>
+ * The data is split into consecutive blocks, which are processed in parallel.
+ * Every block accumulates its own changes to the cluster sums, and these
+ * partial sums are then added in the order of the blocks. Because the block
+ * size only depends on the data set size, the result does not depend on the
+ * number of threads used, nor on the scheduling of the blocks.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has Instance
+ * @apiviz.composedOf Partial
+ *
+ * @param <V> vector datatype
+ */
+public abstract class AbstractParallelKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * Minimum number of objects in a block.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Maximum number of blocks, to bound the memory used for partial sums.
+   */
+  private static final int MAX_BLOCKS = 256;
+
+  /**
+   * Flag whether to compute the final variance statistic.
+   */
+  protected boolean varstat = false;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public AbstractParallelKMeans(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.varstat = varstat;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    final Logging log = getLogger();
+    final String key = getClass().getName();
+    // Choose initial means
+    log.statistics(new StringStatistic(key + ".initialization", initializer.toString()));
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final Instance inst = instantiate(relation, ids, means);
+
+    final int size = ids.size(), blocksize = blockSize(size);
+    final int dim = means[0].length;
+    double[][] newmeans = new double[k][dim];
+
+    IndefiniteProgress prog = log.isVerbose() ? new IndefiniteProgress("K-Means iteration", log) : null;
+    LongStatistic rstat = log.isStatistics() ? new LongStatistic(key + ".reassignments") : null;
+    LongStatistic diststat = log.isStatistics() ? new LongStatistic(key + ".distance-computations") : null;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      log.incrementProcessed(prog);
+      final boolean initial = iteration == 0;
+      if(!initial) {
+        inst.prepare(diststat);
+      }
+      final Partial[] partials = new Partial[(size + blocksize - 1) / blocksize];
+      ParallelExecutor.runBlocks(size, blocksize, (start, end) -> {
+        Partial p = new Partial(k, dim);
+        if(initial) {
+          inst.initialAssign(start, end, p);
+        }
+        else {
+          inst.assign(start, end, p);
+        }
+        partials[start / blocksize] = p;
+      });
+      final int changed = inst.reduce(partials, diststat);
+      log.statistics(rstat != null ? rstat.setLong(changed) : null);
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+      // Recompute means.
+      for(int i = 0; i < k; i++) {
+        if(inst.sizes[i] > 0) {
+          VMath.overwriteTimes(newmeans[i], inst.sums[i], 1. / inst.sizes[i]);
+        }
+        else {
+          System.arraycopy(means[i], 0, newmeans[i], 0, dim);
+        }
+      }
+      inst.delta = movedDistance(means, newmeans, inst.moved);
+      ParallelExecutor.runBlocks(size, blocksize, inst::updateBounds);
+      for(int i = 0; i < k; i++) {
+        System.arraycopy(newmeans[i], 0, means[i], 0, dim);
+      }
+    }
+    log.setCompleted(prog);
+    log.statistics(new LongStatistic(key + ".iterations", iteration));
+    log.statistics(diststat);
+    return buildResult(inst.clusters(), means, varstat, relation, diststat);
+  }
+
+  /**
+   * Choose the block size. It must only depend on the data size, to obtain
+   * deterministic results.
+   *
+   * @param size Data set size
+   * @return Block size
+   */
+  protected static int blockSize(int size) {
+    return Math.max(MIN_BLOCKSIZE, (size + MAX_BLOCKS - 1) / MAX_BLOCKS);
+  }
+
+  /**
+   * Create the per-run state of the algorithm.
+   *
+   * @param relation Data relation
+   * @param ids Object IDs, in processing order
+   * @param means Initial means
+   * @return Instance
+   */
+  protected abstract Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means);
+
+  /**
+   * Per-run state of the parallel k-means algorithms. Per-object data is
+   * stored in arrays, indexed by the offset in the DBID array.
+   *
+   * @author agent
+   */
+  protected abstract class Instance {
+    /**
+     * Data relation.
+     */
+    protected final Relation<V> relation;
+
+    /**
+     * Object IDs.
+     */
+    protected final ArrayDBIDs ids;
+
+    /**
+     * Current means.
+     */
+    protected final double[][] means;
+
+    /**
+     * Running sums of the new means.
+     */
+    protected final double[][] sums;
+
+    /**
+     * Cluster sizes.
+     */
+    protected final int[] sizes;
+
+    /**
+     * Cluster assignment.
+     */
+    protected final int[] assignment;
+
+    /**
+     * Upper bounds.
+     */
+    protected final double[] upper;
+
+    /**
+     * Distance moved by each mean in the last iteration.
+     */
+    protected final double[] moved;
+
+    /**
+     * Maximum distance moved by a mean.
+     */
+    protected double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public Instance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      this.relation = relation;
+      this.ids = ids;
+      this.means = means;
+      this.sums = new double[k][means[0].length];
+      this.sizes = new int[k];
+      this.assignment = new int[ids.size()];
+      this.upper = new double[ids.size()];
+      this.moved = new double[k];
+    }
+
+    /**
+     * Prepare the next iteration, e.g. by computing the separation of means.
+     *
+     * @param diststat Distance statistics
+     */
+    protected void prepare(LongStatistic diststat) {
+      // Nothing to do by default.
+    }
+
+    /**
+     * Perform the initial assignment of a block of objects.
+     *
+     * @param start First offset (inclusive)
+     * @param end Last offset (exclusive)
+     * @param p Partial result of this block
+     */
+    protected abstract void initialAssign(int start, int end, Partial p);
+
+    /**
+     * Reassign a block of objects, avoiding unnecessary computations based on
+     * their bounds.
+     *
+     * @param start First offset (inclusive)
+     * @param end Last offset (exclusive)
+     * @param p Partial result of this block
+     */
+    protected abstract void assign(int start, int end, Partial p);
+
+    /**
+     * Update the bounds of a block of objects, after the means have moved by
+     * {@link #moved} (maximum {@link #delta}).
+     *
+     * @param start First offset (inclusive)
+     * @param end Last offset (exclusive)
+     */
+    protected abstract void updateBounds(int start, int end);
+
+    /**
+     * Combine the partial results, in order.
+     *
+     * @param partials Partial results
+     * @param diststat Distance statistics
+     * @return Number of reassigned objects
+     */
+    protected int reduce(Partial[] partials, LongStatistic diststat) {
+      int changed = 0;
+      long dists = 0;
+      for(Partial p : partials) {
+        changed += p.changed;
+        dists += p.dists;
+        for(int i = 0; i < k; i++) {
+          if(p.sums[i] != null) {
+            VMath.plusEquals(sums[i], p.sums[i]);
+            sizes[i] += p.sizes[i];
+          }
+        }
+      }
+      if(diststat != null) {
+        diststat.increment(dists);
+      }
+      return changed;
+    }
+
+    /**
+     * Build the final clusters.
+     *
+     * @return Clusters
+     */
+    protected List<ModifiableDBIDs> clusters() {
+      List<ModifiableDBIDs> clusters = new ArrayList<>(k);
+      for(int i = 0; i < k; i++) {
+        clusters.add(DBIDUtil.newArray(sizes[i]));
+      }
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        clusters.get(assignment[it.getOffset()]).add(it);
+      }
+      return clusters;
+    }
+  }
+
+  /**
+   * Changes to the clusters made while processing a single block.
+   *
+   * @author agent
+   */
+  protected static class Partial {
+    /**
+     * Changes to the cluster sums, allocated on demand.
+     */
+    final double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    final int[] sizes;
+
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Number of objects reassigned.
+     */
+    int changed;
+
+    /**
+     * Number of distance computations.
+     */
+    long dists;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of clusters
+     * @param dim Dimensionality
+     */
+    protected Partial(int k, int dim) {
+      this.sums = new double[k][];
+      this.sizes = new int[k];
+      this.dim = dim;
+    }
+
+    /**
+     * Get the sum of a cluster.
+     *
+     * @param c Cluster
+     * @return Sum array
+     */
+    private double[] sum(int c) {
+      double[] s = sums[c];
+      return s != null ? s : (sums[c] = new double[dim]);
+    }
+
+    /**
+     * Add an object to a cluster.
+     *
+     * @param c Cluster
+     * @param fv Object
+     */
+    protected void add(int c, NumberVector fv) {
+      plusEquals(sum(c), fv);
+      ++sizes[c];
+      ++changed;
+    }
+
+    /**
+     * Move an object from one cluster to another.
+     *
+     * @param from Previous cluster
+     * @param to New cluster
+     * @param fv Object
+     */
+    protected void move(int from, int to, NumberVector fv) {
+      plusMinusEquals(sum(to), sum(from), fv);
+      ++sizes[to];
+      --sizes[from];
+      ++changed;
+    }
+
+    /**
+     * Count distance computations.
+     *
+     * @param n Number of distance computations
+     */
+    protected void countDistances(int n) {
+      dists += n;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public abstract static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      super.getParameterVarstat(config);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansAnnulus;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the Annulus k-means algorithm, a variant of Hamerly with
+ * an additional bound based on comparing the norm of the mean and the norm of
+ * the points.
+ * <p>
+ * Reference:
+ * <p>
+ * J. Drake<br>
+ * Faster k-means clustering<br>
+ * Masters Thesis
+ * <p>
+ * G. Hamerly and J. Drake<br>
+ * Accelerating Lloyd’s Algorithm for k-Means Clustering<br>
+ * Partitional Clustering Algorithms
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @see KMeansAnnulus
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "J. Drake", //
+    title = "Faster k-means clustering", //
+    booktitle = "Faster k-means clustering", //
+    url = "http://hdl.handle.net/2104/8826", //
+    bibkey = "mathesis/Drake13")
+@Reference(authors = "G. Hamerly and J. Drake", //
+    title = "Accelerating Lloyd’s Algorithm for k-Means Clustering", //
+    booktitle = "Partitional Clustering Algorithms", //
+    url = "https://doi.org/10.1007/978-3-319-09259-1_2", //
+    bibkey = "book/partclust15/HamerlyD15")
+public class ParallelKMeansAnnulus<V extends NumberVector> extends ParallelKMeansHamerly<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansAnnulus.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansAnnulus(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    return new AnnulusInstance(relation, ids, means);
+  }
+
+  /**
+   * Per-run state for the annulus algorithm.
+   *
+   * @author agent
+   */
+  protected class AnnulusInstance extends HamerlyInstance {
+    /**
+     * Second nearest cluster.
+     */
+    protected final int[] second;
+
+    /**
+     * Norms of the cluster means, sorted.
+     */
+    protected final double[] cdist;
+
+    /**
+     * Cluster numbers, in order of their norm.
+     */
+    protected final int[] cnum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public AnnulusInstance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      super(relation, ids, means);
+      this.second = new int[ids.size()];
+      this.cdist = new double[k];
+      this.cnum = new int[k];
+    }
+
+    @Override
+    protected void prepare(LongStatistic diststat) {
+      final boolean issquared = distanceFunction.isSquared();
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 0; i < k; i++) {
+        cdist[i] = VMath.euclideanLength(means[i]);
+        cnum[i] = i;
+        DoubleVector mi = DoubleVector.wrap(means[i]);
+        for(int j = 0; j < i; j++) {
+          double d = distanceFunction.distance(mi, DoubleVector.wrap(means[j]));
+          d = 0.5 * (issquared ? FastMath.sqrt(d) : d);
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+      DoubleIntegerArrayQuickSort.sort(cdist, cnum, k);
+      if(diststat != null) {
+        diststat.increment((k * (k - 1)) >> 1);
+      }
+    }
+
+    @Override
+    protected void initialAssign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        V fv = relation.get(it);
+        // Find closest center, and distance to two closest centers
+        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = -1, secIndex = -1;
+        for(int i = 0; i < k; i++) {
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[i]));
+          if(dist < min1) {
+            secIndex = minIndex;
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            secIndex = i;
+            min2 = dist;
+          }
+        }
+        // Assign to nearest cluster.
+        assignment[o] = minIndex;
+        second[o] = secIndex;
+        p.add(minIndex, fv);
+        upper[o] = issquared ? FastMath.sqrt(min1) : min1;
+        lower[o] = issquared ? FastMath.sqrt(min2) : min2;
+      }
+      p.countDistances(k * (end - start));
+    }
+
+    @Override
+    protected void assign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      int dists = 0;
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        final int cur = assignment[o];
+        // Compute the current bound:
+        final double z = lower[o];
+        final double sa = sep[cur];
+        double u = upper[o];
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        // Update the upper bound
+        V fv = relation.get(it);
+        double curd2 = distanceFunction.distance(fv, DoubleVector.wrap(means[cur]));
+        ++dists;
+        upper[o] = u = issquared ? FastMath.sqrt(curd2) : curd2;
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        final int sec = second[o];
+        double secd2 = distanceFunction.distance(fv, DoubleVector.wrap(means[sec]));
+        ++dists;
+        double secd = issquared ? FastMath.sqrt(secd2) : secd2;
+        double r = u > secd ? u : secd;
+        final double norm = EuclideanDistanceFunction.STATIC.norm(fv);
+        // Find closest center, and distance to two closest centers
+        double min1 = curd2, min2 = secd2;
+        int minIndex = cur, secIndex = sec;
+        if(curd2 > secd2) {
+          min1 = secd2;
+          min2 = curd2;
+          minIndex = sec;
+          secIndex = cur;
+        }
+        for(int i = 0; i < k; i++) {
+          int c = cnum[i];
+          if(c == cur || c == sec) {
+            continue;
+          }
+          double d = cdist[i] - norm;
+          if(-d > r) {
+            continue; // Not yet a candidate
+          }
+          if(d > r) {
+            break; // No longer a candidate
+          }
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[c]));
+          ++dists;
+          if(dist < min1) {
+            secIndex = minIndex;
+            minIndex = c;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            secIndex = c;
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          assignment[o] = minIndex;
+          second[o] = secIndex;
+          p.move(cur, minIndex, fv);
+          upper[o] = issquared ? FastMath.sqrt(min1) : min1;
+        }
+        lower[o] = issquared ? FastMath.sqrt(min2) : min2;
+      }
+      p.countDistances(dists);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends ParallelKMeansHamerly.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelKMeansAnnulus<V> makeInstance() {
+      return new ParallelKMeansAnnulus<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Elkan's fast k-means by exploiting the triangle
+ * inequality.
+ * <p>
+ * This variant needs O(n*k) additional memory to store bounds.
+ * <p>
+ * Reference:
+ * <p>
+ * C. Elkan<br>
+ * Using the triangle inequality to accelerate k-means<br>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @see KMeansElkan
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "C. Elkan", //
+    title = "Using the triangle inequality to accelerate k-means", //
+    booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", //
+    url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php", //
+    bibkey = "DBLP:conf/icml/Elkan03")
+public class ParallelKMeansElkan<V extends NumberVector> extends AbstractParallelKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansElkan.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansElkan(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    return new ElkanInstance(relation, ids, means);
+  }
+
+  /**
+   * Per-run state for Elkan's algorithm.
+   *
+   * @author agent
+   */
+  protected class ElkanInstance extends Instance {
+    /**
+     * Lower bounds, k per object.
+     */
+    protected final double[][] lower;
+
+    /**
+     * Separation of means.
+     */
+    protected final double[] sep;
+
+    /**
+     * Center-to-center distances (half).
+     */
+    protected final double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public ElkanInstance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      super(relation, ids, means);
+      this.lower = new double[ids.size()][k];
+      this.sep = new double[k];
+      this.cdist = new double[k][k];
+    }
+
+    @Override
+    protected void prepare(LongStatistic diststat) {
+      recomputeSeperation(means, sep, cdist, diststat);
+    }
+
+    @Override
+    protected void initialAssign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        V fv = relation.get(it);
+        double[] l = lower[o];
+        // Check all (other) means:
+        double best = Double.POSITIVE_INFINITY;
+        int minIndex = -1;
+        for(int j = 0; j < k; j++) {
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[j]));
+          dist = issquared ? FastMath.sqrt(dist) : dist;
+          l[j] = dist;
+          if(dist < best) {
+            minIndex = j;
+            best = dist;
+          }
+        }
+        // Assign to nearest cluster.
+        assignment[o] = minIndex;
+        upper[o] = best;
+        p.add(minIndex, fv);
+      }
+      p.countDistances(k * (end - start));
+    }
+
+    @Override
+    protected void assign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      int dists = 0;
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        final int orig = assignment[o];
+        double u = upper[o];
+        // Upper bound check (#2):
+        if(u <= sep[orig]) {
+          continue;
+        }
+        boolean recompute_u = true; // Elkan's r(x)
+        V fv = relation.get(it);
+        double[] l = lower[o];
+        // Check all (other) means:
+        int cur = orig;
+        for(int j = 0; j < k; j++) {
+          if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+            continue; // Condition #3 i-iii not satisfied
+          }
+          if(recompute_u) { // Need to update bound? #3a
+            u = distanceFunction.distance(fv, DoubleVector.wrap(means[cur]));
+            ++dists;
+            upper[o] = u = issquared ? FastMath.sqrt(u) : u;
+            recompute_u = false; // Once only
+            if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+              continue;
+            }
+          }
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[j]));
+          ++dists;
+          dist = issquared ? FastMath.sqrt(dist) : dist;
+          l[j] = dist;
+          if(dist < u) {
+            cur = j;
+            u = dist;
+          }
+        }
+        // Object is to be reassigned.
+        if(cur != orig) {
+          upper[o] = u; // Remember bound.
+          assignment[o] = cur;
+          p.move(orig, cur, fv);
+        }
+      }
+      p.countDistances(dists);
+    }
+
+    @Override
+    protected void updateBounds(int start, int end) {
+      for(int o = start; o < end; o++) {
+        upper[o] += moved[assignment[o]];
+        VMath.minusEquals(lower[o], moved);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParallelKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        LOG.warning("Elkan k-means requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    protected ParallelKMeansElkan<V> makeInstance() {
+      return new ParallelKMeansElkan<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
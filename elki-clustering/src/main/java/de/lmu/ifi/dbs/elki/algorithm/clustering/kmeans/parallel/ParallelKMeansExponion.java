@@ -0,0 +1,197 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansExponion;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Newling's exponion k-means algorithm, exploiting the
+ * triangle inequality.
+ * <p>
+ * As {@link KMeansExponion}, this is <b>not</b> a complete implementation, the
+ * approximative sorting part is missing.
+ * <p>
+ * Reference:
+ * <p>
+ * J. Newling<br>
+ * Fast k-means with accurate bounds<br>
+ * Proc. 33nd Int. Conf. on Machine Learning, ICML 2016
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @see KMeansExponion
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "J. Newling", //
+    title = "Fast k-means with accurate bounds", //
+    booktitle = "Proc. 33nd Int. Conf. on Machine Learning, ICML 2016", //
+    url = "http://jmlr.org/proceedings/papers/v48/newling16.html", //
+    bibkey = "DBLP:conf/icml/NewlingF16")
+public class ParallelKMeansExponion<V extends NumberVector> extends ParallelKMeansHamerly<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansExponion.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansExponion(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    return new ExponionInstance(relation, ids, means);
+  }
+
+  /**
+   * Per-run state for the exponion algorithm.
+   *
+   * @author agent
+   */
+  protected class ExponionInstance extends HamerlyInstance {
+    /**
+     * Center-to-center distances (half).
+     */
+    protected final double[][] cdist;
+
+    /**
+     * Sorted nearest centers.
+     */
+    protected final int[][] cnum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public ExponionInstance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      super(relation, ids, means);
+      this.cdist = new double[k][k];
+      this.cnum = new int[k][k - 1];
+    }
+
+    @Override
+    protected void prepare(LongStatistic diststat) {
+      recomputeSeperation(means, sep, cdist, diststat);
+      nearestMeans(cdist, cnum);
+    }
+
+    @Override
+    protected void assign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      int dists = 0;
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        final int cur = assignment[o];
+        // Compute the current bound:
+        final double z = lower[o];
+        final double sa = sep[cur];
+        double u = upper[o];
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        // Update the upper bound
+        V fv = relation.get(it);
+        double cdis2 = distanceFunction.distance(fv, DoubleVector.wrap(means[cur]));
+        ++dists;
+        upper[o] = u = issquared ? FastMath.sqrt(cdis2) : cdis2;
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+        // Find closest center, and distance to two closest centers
+        double min1 = cdis2, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = cur;
+        for(int i = 0; i < k - 1; i++) {
+          int c = cnum[cur][i];
+          if(cdist[cur][c] > r) {
+            break;
+          }
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[c]));
+          ++dists;
+          if(dist < min1) {
+            minIndex = c;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          assignment[o] = minIndex;
+          p.move(cur, minIndex, fv);
+          upper[o] = issquared ? FastMath.sqrt(min1) : min1;
+        }
+        lower[o] = issquared ? FastMath.sqrt(min2) : min2;
+      }
+      p.countDistances(dists);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends ParallelKMeansHamerly.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelKMeansExponion<V> makeInstance() {
+      return new ParallelKMeansExponion<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
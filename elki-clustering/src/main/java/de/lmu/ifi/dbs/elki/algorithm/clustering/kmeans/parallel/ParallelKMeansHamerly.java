@@ -0,0 +1,241 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Hamerly's fast k-means by exploiting the triangle
+ * inequality.
+ * <p>
+ * Reference:
+ * <p>
+ * G. Hamerly<br>
+ * Making k-means even faster<br>
+ * Proc. 2010 SIAM International Conference on Data Mining
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @see KMeansHamerly
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "G. Hamerly", //
+    title = "Making k-means even faster", //
+    booktitle = "Proc. 2010 SIAM International Conference on Data Mining", //
+    url = "https://doi.org/10.1137/1.9781611972801.12", //
+    bibkey = "DBLP:conf/sdm/Hamerly10")
+public class ParallelKMeansHamerly<V extends NumberVector> extends AbstractParallelKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansHamerly.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansHamerly(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    return new HamerlyInstance(relation, ids, means);
+  }
+
+  /**
+   * Per-run state for Hamerly's algorithm.
+   *
+   * @author agent
+   */
+  protected class HamerlyInstance extends Instance {
+    /**
+     * Lower bounds.
+     */
+    protected final double[] lower;
+
+    /**
+     * Separation of means.
+     */
+    protected final double[] sep;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public HamerlyInstance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      super(relation, ids, means);
+      this.lower = new double[ids.size()];
+      this.sep = new double[k];
+    }
+
+    @Override
+    protected void prepare(LongStatistic diststat) {
+      recomputeSeperation(means, sep, diststat);
+    }
+
+    @Override
+    protected void initialAssign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        V fv = relation.get(it);
+        // Find closest center, and distance to two closest centers
+        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = -1;
+        for(int i = 0; i < k; i++) {
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[i]));
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        // Assign to nearest cluster.
+        assignment[o] = minIndex;
+        p.add(minIndex, fv);
+        upper[o] = issquared ? FastMath.sqrt(min1) : min1;
+        lower[o] = issquared ? FastMath.sqrt(min2) : min2;
+      }
+      p.countDistances(k * (end - start));
+    }
+
+    @Override
+    protected void assign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      int dists = 0;
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        final int cur = assignment[o];
+        // Compute the current bound:
+        final double z = lower[o];
+        final double sa = sep[cur];
+        double u = upper[o];
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        // Update the upper bound
+        V fv = relation.get(it);
+        double curd2 = distanceFunction.distance(fv, DoubleVector.wrap(means[cur]));
+        ++dists;
+        upper[o] = u = issquared ? FastMath.sqrt(curd2) : curd2;
+        if(u <= z || u <= sa) {
+          continue;
+        }
+        // Find closest center, and distance to two closest centers
+        double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = cur;
+        for(int i = 0; i < k; i++) {
+          if(i == cur) {
+            continue;
+          }
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[i]));
+          ++dists;
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          assignment[o] = minIndex;
+          p.move(cur, minIndex, fv);
+          upper[o] = min1 == curd2 ? u : issquared ? FastMath.sqrt(min1) : min1;
+        }
+        lower[o] = min2 == curd2 ? u : issquared ? FastMath.sqrt(min2) : min2;
+      }
+      p.countDistances(dists);
+    }
+
+    @Override
+    protected void updateBounds(int start, int end) {
+      for(int o = start; o < end; o++) {
+        upper[o] += moved[assignment[o]];
+        lower[o] -= delta;
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParallelKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        LOG.warning("Hamerly k-means requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    protected ParallelKMeansHamerly<V> makeInstance() {
+      return new ParallelKMeansHamerly<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
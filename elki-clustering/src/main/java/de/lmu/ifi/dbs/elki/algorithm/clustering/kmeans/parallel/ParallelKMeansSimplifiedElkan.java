@@ -0,0 +1,174 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansSimplifiedElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the simplified Elkan k-means, which does not use the
+ * pairwise separation of the means for pruning.
+ * <p>
+ * Reference:
+ * <p>
+ * J. Newling<br>
+ * Fast k-means with accurate bounds<br>
+ * Proc. 33nd Int. Conf. on Machine Learning, ICML 2016
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @see KMeansSimplifiedElkan
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "J. Newling", //
+    title = "Fast k-means with accurate bounds", //
+    booktitle = "Proc. 33nd Int. Conf. on Machine Learning, ICML 2016", //
+    url = "http://jmlr.org/proceedings/papers/v48/newling16.html", //
+    bibkey = "DBLP:conf/icml/NewlingF16")
+public class ParallelKMeansSimplifiedElkan<V extends NumberVector> extends ParallelKMeansElkan<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansSimplifiedElkan.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansSimplifiedElkan(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+    return new SimplifiedElkanInstance(relation, ids, means);
+  }
+
+  /**
+   * Per-run state for the simplified Elkan algorithm.
+   *
+   * @author agent
+   */
+  protected class SimplifiedElkanInstance extends ElkanInstance {
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param means Initial means
+     */
+    public SimplifiedElkanInstance(Relation<V> relation, ArrayDBIDs ids, double[][] means) {
+      super(relation, ids, means);
+    }
+
+    @Override
+    protected void prepare(LongStatistic diststat) {
+      // No separation needed.
+    }
+
+    @Override
+    protected void assign(int start, int end, Partial p) {
+      final boolean issquared = distanceFunction.isSquared();
+      int dists = 0;
+      DBIDArrayIter it = ids.iter().seek(start);
+      for(int o = start; o < end; o++, it.advance()) {
+        final int orig = assignment[o];
+        double u = upper[o];
+        boolean recompute_u = true; // Elkan's r(x)
+        V fv = relation.get(it);
+        double[] l = lower[o];
+        // Check all (other) means:
+        int cur = orig;
+        for(int j = 0; j < k; j++) {
+          if(orig == j || u <= l[j]) {
+            continue; // Condition #3 i-iii not satisfied
+          }
+          if(recompute_u) { // Need to update bound? #3a
+            u = distanceFunction.distance(fv, DoubleVector.wrap(means[cur]));
+            ++dists;
+            upper[o] = u = issquared ? FastMath.sqrt(u) : u;
+            recompute_u = false; // Once only
+            if(u <= l[j]) { // #3b
+              continue;
+            }
+          }
+          double dist = distanceFunction.distance(fv, DoubleVector.wrap(means[j]));
+          ++dists;
+          dist = issquared ? FastMath.sqrt(dist) : dist;
+          l[j] = dist;
+          if(dist < u) {
+            cur = j;
+            u = dist;
+          }
+        }
+        // Object is to be reassigned.
+        if(cur != orig) {
+          upper[o] = u; // Remember bound.
+          assignment[o] = cur;
+          p.move(orig, cur, fv);
+        }
+      }
+      p.countDistances(dists);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends ParallelKMeansElkan.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelKMeansSimplifiedElkan<V> makeInstance() {
+      return new ParallelKMeansSimplifiedElkan<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -0,0 +1,710 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.pq;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ModelUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ChainedParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackParameters;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.TrackedParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ClassParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Parameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Product quantization index.
+ * <p>
+ * The dimensions are split into a number of subspaces, and each subspace is
+ * quantized with k-means into at most 256 centroids, so every vector is stored
+ * as one byte per subspace. Queries use asymmetric distance computation: the
+ * distances of the query to all centroids are computed once per query, and
+ * the distance to the quantized vector is then a sum of table lookups.
+ * <p>
+ * In contrast to the original publication, we also store the quantization
+ * error of each vector. By the triangle inequality, this gives lower and upper
+ * bounds of the exact distance, so that the index can filter candidates like
+ * a VA-file, and refine them to exact results. Because these bounds are weak
+ * on noisy data, kNN queries can alternatively re-rank only a short list of
+ * the candidates with the smallest asymmetric distance, as in the original
+ * publication; results are then approximate.
+ * <p>
+ * Reference:
+ * <p>
+ * H. Jégou, M. Douze, C. Schmid<br>
+ * Product Quantization for Nearest Neighbor Search<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has ProductQuantizationKNNQuery
+ * @apiviz.has ProductQuantizationRangeQuery
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Jégou, M. Douze, C. Schmid", //
+    title = "Product Quantization for Nearest Neighbor Search", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)", //
+    url = "https://doi.org/10.1109/TPAMI.2010.57", //
+    bibkey = "DBLP:journals/pami/JegouDS11")
+public class ProductQuantizationIndex<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ProductQuantizationIndex.class);
+
+  /**
+   * Number of subspaces.
+   */
+  int numsub;
+
+  /**
+   * Maximum number of centroids per subspace.
+   */
+  int numcent;
+
+  /**
+   * Training sample size (if &gt; 1) or rate.
+   */
+  double sample;
+
+  /**
+   * Configures a new k-means with the given k, to train the quantizers.
+   */
+  IntFunction<KMeans<DoubleVector, ?>> kmeans;
+
+  /**
+   * Random generator for sampling.
+   */
+  RandomFactory rnd;
+
+  /**
+   * Short list size for kNN queries, as multiple of k; 0 for exact queries.
+   */
+  int shortlist;
+
+  /**
+   * Indexed objects, in code order.
+   */
+  ArrayDBIDs ids;
+
+  /**
+   * First dimension of each subspace, plus the dimensionality.
+   */
+  int[] bounds;
+
+  /**
+   * Centroids, by subspace.
+   */
+  double[][][] centroids;
+
+  /**
+   * Quantization codes, by subspace.
+   */
+  byte[][] codes;
+
+  /**
+   * Quantization error of each object.
+   */
+  float[] errors;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param numsub Number of subspaces
+   * @param numcent Maximum number of centroids per subspace
+   * @param sample Training sample size (if &gt; 1) or rate
+   * @param kmeans Configures a new k-means with the given k, using squared
+   *        Euclidean distance, to train the quantizers
+   * @param rnd Random generator for sampling
+   * @param shortlist Short list size for kNN queries, as multiple of k; 0 for
+   *        exact queries
+   */
+  public ProductQuantizationIndex(Relation<V> relation, int numsub, int numcent, double sample, IntFunction<KMeans<DoubleVector, ?>> kmeans, RandomFactory rnd, int shortlist) {
+    super(relation);
+    this.numsub = numsub;
+    this.numcent = numcent;
+    this.sample = sample;
+    this.kmeans = kmeans;
+    this.rnd = rnd;
+    this.shortlist = shortlist;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int dim = RelationUtil.dimensionality(relation);
+    final int m = Math.max(1, Math.min(numsub, dim));
+    bounds = new int[m + 1];
+    for(int i = 0; i <= m; i++) {
+      bounds[i] = (int) (i * (long) dim / m);
+    }
+    centroids = new double[m][][];
+    if(ids.size() == 0) {
+      codes = new byte[m][0];
+      errors = new float[0];
+      return;
+    }
+    DBIDs trainids = DBIDUtil.randomSample(ids, sample, rnd);
+    FiniteProgress tprog = LOG.isVerbose() ? new FiniteProgress("Training sub-quantizers", m, LOG) : null;
+    for(int i = 0; i < m; i++) {
+      centroids[i] = train(trainids, bounds[i], bounds[i + 1]);
+      LOG.incrementProcessed(tprog);
+    }
+    LOG.ensureCompleted(tprog);
+    codes = new byte[m][ids.size()];
+    errors = new float[ids.size()];
+    FiniteProgress eprog = LOG.isVerbose() ? new FiniteProgress("Encoding vectors", ids.size(), LOG) : null;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      encode(it.getOffset(), relation.get(it));
+      LOG.incrementProcessed(eprog);
+    }
+    LOG.ensureCompleted(eprog);
+  }
+
+  /**
+   * Train the quantizer of a single subspace.
+   *
+   * @param trainids Training sample
+   * @param start First dimension
+   * @param end End dimension (exclusive)
+   * @return Centroids
+   */
+  private double[][] train(DBIDs trainids, int start, int end) {
+    WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(trainids, DataStoreFactory.HINT_TEMP, DoubleVector.class);
+    for(DBIDIter it = trainids.iter(); it.valid(); it.advance()) {
+      final V v = relation.get(it);
+      double[] sub = new double[end - start];
+      for(int d = start; d < end; d++) {
+        sub[d - start] = v.doubleValue(d);
+      }
+      store.put(it, DoubleVector.wrap(sub));
+    }
+    Relation<DoubleVector> rel = new MaterializedRelation<>("Product quantization subspace", "pq-subspace", new VectorFieldTypeInformation<>(DoubleVector.FACTORY, end - start), store, trainids);
+    Clustering<?> clustering = kmeans.apply(Math.min(numcent, trainids.size())).run(new ProxyDatabase(trainids, rel), rel);
+    double[][] means = new double[clustering.getAllClusters().size()][];
+    int k = 0;
+    for(Cluster<?> cluster : clustering.getAllClusters()) {
+      if(cluster.size() > 0) {
+        means[k++] = ModelUtil.getPrototype(cluster.getModel(), rel).toArray();
+      }
+    }
+    return k < means.length ? Arrays.copyOf(means, k) : means;
+  }
+
+  /**
+   * Encode a vector.
+   *
+   * @param off Offset
+   * @param v Vector
+   */
+  private void encode(int off, V v) {
+    double err = 0.;
+    for(int i = 0; i < centroids.length; i++) {
+      final int start = bounds[i], end = bounds[i + 1];
+      final double[][] cents = centroids[i];
+      double best = Double.POSITIVE_INFINITY;
+      int bestc = 0;
+      for(int c = 0; c < cents.length; c++) {
+        final double[] cent = cents[c];
+        double sum = 0.;
+        for(int d = start; d < end; d++) {
+          final double delta = v.doubleValue(d) - cent[d - start];
+          sum += delta * delta;
+        }
+        if(sum < best) {
+          best = sum;
+          bestc = c;
+        }
+      }
+      codes[i][off] = (byte) bestc;
+      err += best;
+    }
+    // Round up, to obtain valid bounds:
+    errors[off] = Math.nextUp((float) Math.sqrt(err));
+  }
+
+  /**
+   * Compute the lookup table of squared distances from the query to all
+   * centroids.
+   *
+   * @param query Query vector
+   * @return Lookup table
+   */
+  protected double[][] lookupTable(NumberVector query) {
+    double[][] table = new double[centroids.length][];
+    for(int i = 0; i < centroids.length; i++) {
+      final int start = bounds[i], end = bounds[i + 1];
+      final double[][] cents = centroids[i];
+      final double[] row = table[i] = new double[cents.length];
+      for(int c = 0; c < cents.length; c++) {
+        final double[] cent = cents[c];
+        double sum = 0.;
+        for(int d = start; d < end; d++) {
+          final double delta = query.doubleValue(d) - cent[d - start];
+          sum += delta * delta;
+        }
+        row[c] = sum;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Asymmetric distance to a quantized vector, i.e. the squared Euclidean
+   * distance between the query and the reconstructed vector.
+   *
+   * @param table Lookup table
+   * @param off Offset
+   * @return Squared distance
+   */
+  protected double asymmetricDistance(double[][] table, int off) {
+    double sum = 0.;
+    for(int i = 0; i < table.length; i++) {
+      sum += table[i][codes[i][off] & 0xFF];
+    }
+    return sum;
+  }
+
+  @Override
+  public Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public String getLongName() {
+    return "Product quantization index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "pq-index";
+  }
+
+  @Override
+  public KNNQuery<V> getKNNQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+    DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction || df instanceof SquaredEuclideanDistanceFunction) {
+      return new ProductQuantizationKNNQuery(distanceQuery, df instanceof SquaredEuclideanDistanceFunction);
+    }
+    // Not supported.
+    return null;
+  }
+
+  @Override
+  public RangeQuery<V> getRangeQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+    DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction || df instanceof SquaredEuclideanDistanceFunction) {
+      return new ProductQuantizationRangeQuery(distanceQuery, df instanceof SquaredEuclideanDistanceFunction);
+    }
+    // Not supported.
+    return null;
+  }
+
+  /**
+   * kNN query for this index.
+   *
+   * @author agent
+   */
+  public class ProductQuantizationKNNQuery extends AbstractRefiningIndex<V>.AbstractKNNQuery {
+    /**
+     * Distance function is squared Euclidean.
+     */
+    final boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query object
+     * @param squared Distance function is squared Euclidean
+     */
+    public ProductQuantizationKNNQuery(DistanceQuery<V> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public KNNList getKNNForObject(V query, int k) {
+      final double[][] table = lookupTable(query);
+      if(shortlist > 0) {
+        return getKNNForShortlist(table, query, k);
+      }
+      // Heap for the kth smallest upper bound
+      DoubleMaxHeap maxHeap = new DoubleMaxHeap(k + 1);
+      double maxBound = Double.POSITIVE_INFINITY;
+      // Candidates with lower bound <= kth upper bound
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int off = it.getOffset();
+        final double d = Math.sqrt(asymmetricDistance(table, off)), err = errors[off];
+        final double minDist = d > err ? d - err : 0.;
+        if(minDist > maxBound) {
+          continue;
+        }
+        candidates.add(squared ? minDist * minDist : minDist, it);
+        final double maxDist = d + err;
+        maxHeap.add(squared ? maxDist * maxDist : maxDist, k);
+        if(maxHeap.size() >= k) {
+          maxBound = squared ? Math.sqrt(maxHeap.peek()) : maxHeap.peek();
+        }
+      }
+      // sort candidates by lower bound
+      candidates.sort();
+
+      // refinement step
+      KNNHeap result = DBIDUtil.newHeap(k);
+      for(DoubleDBIDListIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        // Stop when we are sure to have all elements
+        if(result.size() >= k && iter.doubleValue() > result.getKNNDistance()) {
+          break;
+        }
+        result.insert(refine(iter, query), iter);
+      }
+      return result.toKNNList();
+    }
+
+    /**
+     * Approximate kNN search, refining the objects with the smallest
+     * asymmetric distance only.
+     *
+     * @param table Lookup table
+     * @param query Query object
+     * @param k Number of neighbors
+     * @return Approximate kNN
+     */
+    private KNNList getKNNForShortlist(double[][] table, V query, int k) {
+      KNNHeap candidates = DBIDUtil.newHeap(k * shortlist);
+      double maxDist = Double.POSITIVE_INFINITY;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final double d = asymmetricDistance(table, it.getOffset());
+        if(d <= maxDist) {
+          maxDist = candidates.insert(d, it);
+        }
+      }
+      KNNHeap result = DBIDUtil.newHeap(k);
+      for(DoubleDBIDListIter iter = candidates.unorderedIterator(); iter.valid(); iter.advance()) {
+        result.insert(refine(iter, query), iter);
+      }
+      return result.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for this index.
+   *
+   * @author agent
+   */
+  public class ProductQuantizationRangeQuery extends AbstractRefiningIndex<V>.AbstractRangeQuery {
+    /**
+     * Distance function is squared Euclidean.
+     */
+    final boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query object
+     * @param squared Distance function is squared Euclidean
+     */
+    public ProductQuantizationRangeQuery(DistanceQuery<V> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public void getRangeForObject(V query, double range, ModifiableDoubleDBIDList result) {
+      final double[][] table = lookupTable(query);
+      final double eps = squared ? Math.sqrt(range) : range;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int off = it.getOffset();
+        if(Math.sqrt(asymmetricDistance(table, off)) - errors[off] > eps) {
+          continue;
+        }
+        final double dist = refine(it, query);
+        if(dist <= range) {
+          result.add(dist, it);
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory class.
+   *
+   * @author agent
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has ProductQuantizationIndex
+   *
+   * @param <V> Vector type
+   */
+  public static class Factory<V extends NumberVector> implements IndexFactory<V> {
+    /**
+     * Number of subspaces.
+     */
+    int numsub;
+
+    /**
+     * Maximum number of centroids per subspace.
+     */
+    int numcent;
+
+    /**
+     * Training sample size (if &gt; 1) or rate.
+     */
+    double sample;
+
+    /**
+     * Configures a new k-means with the given k, to train the quantizers.
+     */
+    IntFunction<KMeans<DoubleVector, ?>> kmeans;
+
+    /**
+     * Random generator for sampling.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Short list size for kNN queries, as multiple of k; 0 for exact queries.
+     */
+    int shortlist;
+
+    /**
+     * Constructor.
+     *
+     * @param numsub Number of subspaces
+     * @param numcent Maximum number of centroids per subspace
+     * @param sample Training sample size (if &gt; 1) or rate
+     * @param kmeans Configures a new k-means with the given k, using squared
+     *        Euclidean distance, to train the quantizers
+     * @param rnd Random generator for sampling
+     * @param shortlist Short list size for kNN queries, as multiple of k; 0
+     *        for exact queries
+     */
+    public Factory(int numsub, int numcent, double sample, IntFunction<KMeans<DoubleVector, ?>> kmeans, RandomFactory rnd, int shortlist) {
+      super();
+      this.numsub = numsub;
+      this.numcent = numcent;
+      this.sample = sample;
+      this.kmeans = kmeans;
+      this.rnd = rnd;
+      this.shortlist = shortlist;
+    }
+
+    @Override
+    public ProductQuantizationIndex<V> instantiate(Relation<V> relation) {
+      return new ProductQuantizationIndex<>(relation, numsub, numcent, sample, kmeans, rnd, shortlist);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      /**
+       * Number of subspaces.
+       */
+      public static final OptionID SUBSPACES_ID = new OptionID("pq.subspaces", "Number of subspaces to quantize independently.");
+
+      /**
+       * Number of centroids per subspace.
+       */
+      public static final OptionID CENTROIDS_ID = new OptionID("pq.centroids", "Number of centroids per subspace, at most 256.");
+
+      /**
+       * Training sample size.
+       */
+      public static final OptionID SAMPLE_ID = new OptionID("pq.sample", "Training sample size (if > 1) or sampling rate (if <= 1).");
+
+      /**
+       * k-means variant.
+       */
+      public static final OptionID KMEANS_ID = new OptionID("pq.kmeans", "k-means variant to train the sub-quantizers.");
+
+      /**
+       * Random generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("pq.seed", "Random generator seed for sampling.");
+
+      /**
+       * Short list size.
+       */
+      public static final OptionID SHORTLIST_ID = new OptionID("pq.shortlist", "Refine only this multiple of k candidates with the smallest approximate distance. 0 gives exact results.");
+
+      /**
+       * Number of subspaces.
+       */
+      int numsub;
+
+      /**
+       * Maximum number of centroids per subspace.
+       */
+      int numcent;
+
+      /**
+       * Training sample size (if &gt; 1) or rate.
+       */
+      double sample;
+
+      /**
+       * Configures a new k-means with the given k, to train the quantizers.
+       */
+      IntFunction<KMeans<DoubleVector, ?>> kmeans;
+
+      /**
+       * Random generator for sampling.
+       */
+      RandomFactory rnd;
+
+      /**
+       * Short list size for kNN queries, as multiple of k; 0 for exact
+       * queries.
+       */
+      int shortlist;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter numsubP = new IntParameter(SUBSPACES_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(numsubP)) {
+          numsub = numsubP.intValue();
+        }
+        IntParameter numcentP = new IntParameter(CENTROIDS_ID, 256) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .addConstraint(new LessEqualConstraint(256)); // Byte codes
+        if(config.grab(numcentP)) {
+          numcent = numcentP.intValue();
+        }
+        DoubleParameter sampleP = new DoubleParameter(SAMPLE_ID, 10000) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(sampleP)) {
+          sample = sampleP.doubleValue();
+        }
+        ClassParameter<KMeans<DoubleVector, ?>> kmeansP = new ClassParameter<>(KMEANS_ID, KMeans.class, KMeansLloyd.class);
+        if(config.grab(kmeansP)) {
+          ListParameterization kmeansParameters = new ListParameterization();
+          // k and the distance are always set by the index.
+          kmeansParameters.addParameter(KMeans.K_ID, 2);
+          kmeansParameters.addParameter(KMeans.DISTANCE_FUNCTION_ID, SquaredEuclideanDistanceFunction.class);
+          ChainedParameterization combinedConfig = new ChainedParameterization(kmeansParameters, config);
+          combinedConfig.errorsTo(config);
+          // Validate the k-means configuration, and remember the given values:
+          TrackParameters track = new TrackParameters(combinedConfig);
+          if(kmeansP.instantiateClass(track) != null) {
+            kmeans = makeKMeans(kmeansP.getValue(), track);
+          }
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        IntParameter shortlistP = new IntParameter(SHORTLIST_ID, 0) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if(config.grab(shortlistP)) {
+          shortlist = shortlistP.intValue();
+        }
+      }
+
+      /**
+       * Make a function to configure a new k-means for every training run,
+       * as k-means instances are not thread safe, and k varies.
+       *
+       * @param cls k-means class
+       * @param track Tracked k-means parameters
+       * @return Function to configure a k-means with the given k
+       */
+      private static IntFunction<KMeans<DoubleVector, ?>> makeKMeans(Class<?> cls, TrackParameters track) {
+        // Never consumed, only copied:
+        ListParameterization given = new ListParameterization();
+        for(TrackedParameter p : track.getAllParameters()) {
+          final Parameter<?> opt = p.getParameter();
+          if(opt.isDefined() && !opt.tookDefaultValue() && opt.getOptionID() != KMeans.K_ID && opt.getOptionID() != KMeans.DISTANCE_FUNCTION_ID) {
+            given.addParameter(opt.getOptionID(), opt.getValue());
+          }
+        }
+        return k -> {
+          ListParameterization params = new ListParameterization(given.getRemainingParameters());
+          params.addParameter(KMeans.K_ID, k);
+          params.addParameter(KMeans.DISTANCE_FUNCTION_ID, SquaredEuclideanDistanceFunction.STATIC);
+          return ClassGenericsUtil.parameterizeOrAbort(cls, params);
+        };
+      }
+
+      @Override
+      protected Factory<?> makeInstance() {
+        return new Factory<>(numsub, numcent, sample, kmeans, rnd, shortlist);
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Performs a full parallel EM run, and compares the result with a clustering
+ * derived from the data set labels. The expected results are the same as for
+ * the sequential EM, c.f. {@link EMTest}.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ParallelEMTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testParallelEMMLEMultivariate() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .build().run(db);
+    testFMeasure(db, result, 0.967410486);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testParallelEMMAPMultivariate() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.PRIOR_ID, 10) //
+        .with(EM.Parameterizer.K_ID, 5) //
+        .build().run(db);
+    testFMeasure(db, result, 0.958843);
+    testClusterSizes(result, new int[] { 3, 95, 97, 202, 313 });
+  }
+
+  @Test
+  public void testParallelEMMLETwoPass() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .with(EM.Parameterizer.INIT_ID, TwoPassMultivariateGaussianModelFactory.class) //
+        .build().run(db);
+    testFMeasure(db, result, 0.967410486);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testParallelEMMLETextbook() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .with(EM.Parameterizer.INIT_ID, TextbookMultivariateGaussianModelFactory.class) //
+        .build().run(db);
+    testFMeasure(db, result, 0.967410486);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  @Test
+  public void testParallelEMMLEDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Parameterizer.K_ID, 5) //
+        .with(EM.Parameterizer.INIT_ID, DiagonalGaussianModelFactory.class) //
+        .build().run(db);
+    testFMeasure(db, result, 0.9681384);
+    testClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  @Test
+  public void testParallelEMMAPDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 3) //
+        .with(EM.Parameterizer.K_ID, 5) //
+        .with(EM.Parameterizer.INIT_ID, DiagonalGaussianModelFactory.class) //
+        .with(EM.Parameterizer.PRIOR_ID, 10) //
+        .build().run(db);
+    testFMeasure(db, result, 0.949566);
+    testClusterSizes(result, new int[] { 6, 97, 98, 202, 307 });
+  }
+
+  @Test
+  public void testParallelEMMLESpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(EM.Parameterizer.K_ID, 4) //
+        .with(EM.Parameterizer.INIT_ID, SphericalGaussianModelFactory.class) //
+        .build().run(db);
+    testFMeasure(db, result, 0.811247176);
+    testClusterSizes(result, new int[] { 8, 95, 198, 409 });
+  }
+
+  @Test
+  public void testParallelEMMAPSpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 1) //
+        .with(EM.Parameterizer.K_ID, 4) //
+        .with(EM.Parameterizer.INIT_ID, SphericalGaussianModelFactory.class) //
+        .with(EM.Parameterizer.PRIOR_ID, 10) //
+        .build().run(db);
+    testFMeasure(db, result, 0.9357286);
+    testClusterSizes(result, new int[] { 103, 104, 208, 295 });
+  }
+
+  @Test
+  public void testParallelEMSoft() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<ParallelEM<DoubleVector, ?>>(ParallelEM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Parameterizer.K_ID, 6) //
+        .with(ParallelEM.Parameterizer.SOFT_ID) //
+        .build().run(db);
+    testFMeasure(db, result, 0.967410486);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+    Relation<?> soft = ResultUtil.<Relation<?>> filterResults(result.getHierarchy(), result, Relation.class).get(0);
+    assertEquals("Soft assignments missing", 710, soft.size());
+    for(DBIDIter it = soft.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Probabilities do not sum to 1", 1., VMath.sum((double[]) soft.get(it)), 1e-10);
+    }
+  }
+}
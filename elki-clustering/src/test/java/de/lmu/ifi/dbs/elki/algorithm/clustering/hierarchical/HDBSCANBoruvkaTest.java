@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Perform HDBSCAN unit test, using the Borůvka spanning tree
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class HDBSCANBoruvkaTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testHDBSCAN() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+    testFMeasure(db, clustering, 0.686953412);
+    testClusterSizes(clustering, new int[] { 1, 200, 437 });
+  }
+
+  /**
+   * Compare the spanning tree to the linear memory implementation.
+   */
+  @Test
+  public void testCompareToLinearMemory() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    PointerDensityHierarchyRepresentationResult r1 = new ELKIBuilder<HDBSCANLinearMemory<DoubleVector>>(HDBSCANLinearMemory.class) //
+        .with(HDBSCANLinearMemory.Parameterizer.MIN_PTS_ID, 5) //
+        .build().run(db);
+    PointerDensityHierarchyRepresentationResult r2 = new ELKIBuilder<HDBSCANBoruvka<DoubleVector>>(HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Parameterizer.MIN_PTS_ID, 5) //
+        .build().run(db);
+    DBIDs ids = r1.getDBIDs();
+    double[] l1 = new double[ids.size()], l2 = new double[ids.size()];
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      assertEquals("Core distances differ.", r1.getCoreDistanceStore().doubleValue(it), r2.getCoreDistanceStore().doubleValue(it), 0.);
+      l1[i] = r1.getParentDistanceStore().doubleValue(it);
+      l2[i] = r2.getParentDistanceStore().doubleValue(it);
+    }
+    Arrays.sort(l1);
+    Arrays.sort(l2);
+    assertArrayEquals("Spanning tree edges differ.", l1, l2, 0.);
+  }
+
+  /**
+   * Regression test against github #46O
+   */
+  @Test
+  public void testHDBSCANCornerCase() {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 1, 0 }, { 0, 1 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+    db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 0 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3) //
+        .with(AbstractAlgorithm.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Parameterizer.MIN_PTS_ID, 20) //
+        .build().run(db);
+  }
+}
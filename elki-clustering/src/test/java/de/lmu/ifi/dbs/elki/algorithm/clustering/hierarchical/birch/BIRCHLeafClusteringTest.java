@@ -20,11 +20,30 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.birch;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.trivial.ByLabelClustering;
+import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
+import de.lmu.ifi.dbs.elki.evaluation.clustering.ClusterContingencyTable;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
 /**
@@ -113,4 +132,134 @@ public class BIRCHLeafClusteringTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, clustering, 0.82023);
     testClusterSizes(clustering, new int[] { 158, 224, 256 });
   }
+
+  @Test
+  public void testStream() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    CFTree.Factory f = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Parameterizer.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Parameterizer.MAXLEAVES_ID, 32) //
+        .build();
+    // Small blocks, so that all 8 partial trees are used, in several batches:
+    CFTree.Factory factory = new CFTree.Factory(f.distance, f.absorption, f.threshold, f.branchingFactor, f.maxleaves, 16);
+    testStream(db, factory, 32);
+  }
+
+  @Test
+  public void testStreamSmallBudget() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    CFTree.Factory f = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Parameterizer.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Parameterizer.MAXLEAVES_ID, 4) //
+        .build();
+    CFTree.Factory factory = new CFTree.Factory(f.distance, f.absorption, f.threshold, f.branchingFactor, f.maxleaves, 16);
+    // A small budget uses a single tree, as when building from a relation.
+    Clustering<?> clustering = testStream(db, factory, 4);
+    testFMeasure(db, clustering, 0.93866);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Summarize the database as a stream, and compare the leaf count and
+   * F-measure to building the tree from the relation.
+   *
+   * @param db Database
+   * @param factory Tree factory
+   * @param maxleaves Maximum number of leaves
+   * @return Clustering obtained by assigning the objects to the leaves
+   */
+  private Clustering<?> testStream(Database db, CFTree.Factory factory, int maxleaves) {
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Stream too small to use all partial trees.", rel.size() > 8 * factory.blocksize);
+    List<DoubleVector> data = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      data.add(rel.get(it));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data);
+    List<ClusteringFeature> leaves = new BIRCHLeafClustering(factory).run(new StreamFromBundle(bundle));
+    assertTrue("Too many leaves.", leaves.size() <= maxleaves);
+    int total = 0;
+    for(ClusteringFeature leaf : leaves) {
+      total += leaf.getWeight();
+    }
+    assertEquals("Not all objects were summarized.", 638, total);
+
+    // Compare to building the tree from the relation:
+    Clustering<?> reference = new BIRCHLeafClustering(factory).run(db);
+    final int refleaves = reference.getAllClusters().size();
+    assertTrue("Leaf count " + leaves.size() + " differs from " + refleaves, //
+        leaves.size() * 2 >= refleaves && leaves.size() <= refleaves * 2);
+    Clustering<?> clustering = assignToLeaves(rel, leaves);
+    Clustering<Model> bylabel = new ByLabelClustering().run(db);
+    ClusterContingencyTable rct = new ClusterContingencyTable(true, false);
+    rct.process(reference, bylabel);
+    ClusterContingencyTable sct = new ClusterContingencyTable(true, false);
+    sct.process(clustering, bylabel);
+    final double expected = rct.getPaircount().f1Measure(), score = sct.getPaircount().f1Measure();
+    assertTrue("Stream F-measure " + score + " much worse than " + expected, score >= expected - 0.05);
+    return clustering;
+  }
+
+  /**
+   * Assign each object to the nearest leaf centroid.
+   *
+   * @param rel Data relation
+   * @param leaves Leaf entries
+   * @return Clustering
+   */
+  private static Clustering<?> assignToLeaves(Relation<DoubleVector> rel, List<ClusteringFeature> leaves) {
+    List<ModifiableDBIDs> ids = new ArrayList<>(leaves.size());
+    for(int i = 0; i < leaves.size(); i++) {
+      ids.add(DBIDUtil.newArray());
+    }
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector v = rel.get(it);
+      double best = Double.POSITIVE_INFINITY;
+      int bi = -1;
+      for(int i = 0; i < leaves.size(); i++) {
+        ClusteringFeature leaf = leaves.get(i);
+        double d = 0.;
+        for(int j = 0; j < v.getDimensionality(); j++) {
+          final double delta = v.doubleValue(j) - leaf.centroid(j);
+          d += delta * delta;
+        }
+        if(d < best) {
+          best = d;
+          bi = i;
+        }
+      }
+      ids.get(bi).add(it);
+    }
+    Clustering<Model> result = new Clustering<>("BIRCH-stream", "BIRCH stream");
+    for(ModifiableDBIDs c : ids) {
+      if(!c.isEmpty()) {
+        result.addToplevelCluster(new Cluster<Model>(c, ClusterModel.CLUSTER));
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testAbsorb() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Parameterizer.ABSORPTION_ID, DiameterCriterion.class) //
+        .with(CFTree.Factory.Parameterizer.MAXLEAVES_ID, 4) //
+        .build();
+    CFTree first = new CFTree(factory.distance, factory.absorption, factory.threshold, factory.branchingFactor);
+    CFTree second = new CFTree(factory.distance, factory.absorption, factory.threshold, factory.branchingFactor);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      CFTree tree = (i & 1) == 0 ? first : second;
+      tree.insert(rel.get(it));
+      if(tree.leaves > 2) {
+        tree.rebuildTree();
+      }
+    }
+    first.absorb(second);
+    first.condense(4);
+    assertTrue("Too many leaves.", first.leaves <= 4);
+    assertEquals("Not all objects were summarized.", 638, first.root.getWeight());
+  }
 }
@@ -58,4 +58,21 @@ public class CLARATest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, result, 0.998005);
     testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run CLARA with independent samples, which are processed concurrently.
+   */
+  @Test
+  public void testCLARAIndependent() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<CLARA<DoubleVector>>(CLARA.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(CLARA.Parameterizer.RANDOM_ID, 1) //
+        .with(CLARA.Parameterizer.NUMSAMPLES_ID, 4) //
+        .with(CLARA.Parameterizer.SAMPLESIZE_ID, 50) //
+        .with(CLARA.Parameterizer.NOKEEPMED_ID) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
 }
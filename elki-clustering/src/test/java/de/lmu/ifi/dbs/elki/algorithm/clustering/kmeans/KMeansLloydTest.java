@@ -26,7 +26,11 @@ import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
  * Performs a full KMeans run, and compares the result with a clustering derived
@@ -53,4 +57,21 @@ public class KMeansLloydTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, result, 0.998005);
     testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run KMeans with fixed parameters on a dense vector relation.
+   */
+  @Test
+  public void testKMeansLloydDense() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addFlag(StaticArrayDatabase.Parameterizer.DENSE_ID);
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000, params);
+    Clustering<?> result = new ELKIBuilder<KMeansLloyd<DoubleVector>>(KMeansLloyd.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
 }
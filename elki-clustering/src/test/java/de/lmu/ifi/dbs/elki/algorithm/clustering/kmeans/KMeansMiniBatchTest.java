@@ -0,0 +1,89 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for mini-batch k-means.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class KMeansMiniBatchTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = new ELKIBuilder<KMeansMiniBatch<DoubleVector>>(KMeansMiniBatch.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100) //
+        .with(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testKMeansMiniBatchStream() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    List<DoubleVector> data = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      data.add(rel.get(it));
+    }
+    // The file is sorted by cluster, which is unusual for a stream.
+    Collections.shuffle(data, new Random(0));
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data);
+    KMeansMiniBatch<DoubleVector> kmeans = new ELKIBuilder<KMeansMiniBatch<DoubleVector>>(KMeansMiniBatch.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 50) //
+        .with(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0) //
+        .build();
+    double[][] means = kmeans.run(new StreamFromBundle(bundle));
+    assertEquals("Wrong number of means.", 5, means.length);
+    assertEquals("Wrong dimensionality.", 2, means[0].length);
+    // Assign the objects to the means learned from the stream:
+    Clustering<?> result = kmeans.assignAll(rel, DBIDUtil.ensureArray(rel.getDBIDs()), means);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+}
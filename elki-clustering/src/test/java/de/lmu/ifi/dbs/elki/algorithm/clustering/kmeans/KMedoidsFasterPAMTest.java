@@ -0,0 +1,69 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Performs a full FasterPAM run, and compares the result with a clustering
+ * derived from the data set labels.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class KMedoidsFasterPAMTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run FasterPAM with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMedoidsFasterPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<KMedoidsFasterPAM<DoubleVector>>(KMedoidsFasterPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Run FasterPAM with a random initialization, which requires many swaps.
+   */
+  @Test
+  public void testKMedoidsFasterPAMRandom() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> result = new ELKIBuilder<KMedoidsFasterPAM<DoubleVector>>(KMedoidsFasterPAM.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.INIT_ID, RandomlyChosenInitialMeans.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .build().run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+}
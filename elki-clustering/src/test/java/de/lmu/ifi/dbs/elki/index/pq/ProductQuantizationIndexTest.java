@@ -0,0 +1,67 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.pq;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the product quantization index.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ProductQuantizationIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link ProductQuantizationIndex} using a file based database
+   * connection.
+   */
+  @Test
+  public void testProductQuantization() {
+    ProductQuantizationIndex.Factory<?> factory = new ELKIBuilder<>(ProductQuantizationIndex.Factory.class) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.SUBSPACES_ID, 2) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.CENTROIDS_ID, 16) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.SEED_ID, 0L).build();
+    testExactEuclidean(factory, ProductQuantizationIndex.ProductQuantizationKNNQuery.class, ProductQuantizationIndex.ProductQuantizationRangeQuery.class);
+    testSinglePoint(factory, ProductQuantizationIndex.ProductQuantizationKNNQuery.class, ProductQuantizationIndex.ProductQuantizationRangeQuery.class);
+    testBulkKNN(factory, ProductQuantizationIndex.ProductQuantizationKNNQuery.class);
+  }
+
+  /**
+   * Test {@link ProductQuantizationIndex} with a configured k-means variant,
+   * which is instantiated anew for every subspace.
+   */
+  @Test
+  public void testProductQuantizationKMeans() {
+    ProductQuantizationIndex.Factory<?> factory = new ELKIBuilder<>(ProductQuantizationIndex.Factory.class) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.SUBSPACES_ID, 3) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.CENTROIDS_ID, 16) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.KMEANS_ID, KMeansHamerly.class) //
+        .with(KMeans.MAXITER_ID, 5) //
+        .with(KMeans.SEED_ID, 0L) //
+        .with(ProductQuantizationIndex.Factory.Parameterizer.SEED_ID, 0L).build();
+    testExactEuclidean(factory, ProductQuantizationIndex.ProductQuantizationKNNQuery.class, ProductQuantizationIndex.ProductQuantizationRangeQuery.class);
+  }
+}
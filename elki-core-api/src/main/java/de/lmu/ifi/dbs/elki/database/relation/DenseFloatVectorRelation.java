@@ -0,0 +1,72 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Relation of fixed-dimensional number vectors, stored in a single contiguous
+ * row-major {@code float[]} block.
+ * <p>
+ * This is the single precision counterpart of
+ * {@link DenseNumberVectorRelation}, used for float-valued input data, which
+ * then only needs half the memory and memory bandwidth.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public interface DenseFloatVectorRelation extends Relation<NumberVector> {
+  /**
+   * Get the dimensionality of all vectors.
+   *
+   * @return Dimensionality
+   */
+  int getDimensionality();
+
+  /**
+   * Get the shared, row-major data block.
+   * <p>
+   * Do <b>not</b> modify the returned array.
+   *
+   * @return Data block
+   */
+  float[] getData();
+
+  /**
+   * Get the offset of the first coordinate of an object in the data block.
+   *
+   * @param id Object ID
+   * @return Offset in {@link #getData()}
+   */
+  int getOffset(DBIDRef id);
+
+  /**
+   * Get a single coordinate of an object.
+   *
+   * @param id Object ID
+   * @param dimension Dimension
+   * @return Value
+   */
+  default float floatValue(DBIDRef id, int dimension) {
+    return getData()[getOffset(id) + dimension];
+  }
+}
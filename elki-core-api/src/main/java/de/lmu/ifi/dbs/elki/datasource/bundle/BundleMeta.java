@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Store the package metadata in an array list. While this is a trivial class,
@@ -64,4 +66,25 @@ public class BundleMeta extends ArrayList<SimpleTypeInformation<?>> {
   public BundleMeta(SimpleTypeInformation<?>... types) {
     super(Arrays.asList(types));
   }
+
+  /**
+   * Find the only column matching a type restriction, e.g. the vector column
+   * of a stream.
+   *
+   * @param type Type restriction
+   * @return Column number, or -1 if no column matches
+   * @throws AbortException if more than one column matches
+   */
+  public int findUniqueColumn(TypeInformation type) {
+    int col = -1;
+    for(int i = 0; i < size(); i++) {
+      if(type.isAssignableFromType(get(i))) {
+        if(col >= 0) {
+          throw new AbortException("More than one column of type " + type + ".");
+        }
+        col = i;
+      }
+    }
+    return col;
+  }
 }
\ No newline at end of file
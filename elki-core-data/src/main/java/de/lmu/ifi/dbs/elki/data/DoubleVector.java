@@ -88,6 +88,16 @@ public class DoubleVector implements NumberVector {
     return values.length;
   }
 
+  /**
+   * Low-level access to the element array, for optimized distance
+   * computations. Do <b>not</b> modify the array!
+   *
+   * @return Array access
+   */
+  public double[] getArrayRef() {
+    return values;
+  }
+
   @Override
   public double doubleValue(int dimension) {
     return values[dimension];
@@ -86,6 +86,16 @@ public class FloatVector implements NumberVector {
     return values.length;
   }
 
+  /**
+   * Low-level access to the element array, for optimized distance
+   * computations. Do <b>not</b> modify the array!
+   *
+   * @return Array access
+   */
+  public float[] getArrayRef() {
+    return values;
+  }
+
   @Deprecated
   @Override
   public Float getValue(int dimension) {
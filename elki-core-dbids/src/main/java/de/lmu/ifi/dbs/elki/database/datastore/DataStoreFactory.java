@@ -35,6 +35,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
  * @apiviz.has WritableDataStore oneway - - «create»
  * @apiviz.has WritableIntegerDataStore oneway - - «create»
  * @apiviz.has WritableDoubleDataStore oneway - - «create»
+ * @apiviz.has WritableFloatDataStore oneway - - «create»
  * @apiviz.has WritableDBIDDataStore oneway - - «create»
  * @apiviz.has WritableRecordStore oneway - - «create»
  */
@@ -112,6 +113,27 @@ public interface DataStoreFactory {
    */
    WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints, double def);
 
+  /**
+   * Make a new single precision storage, to associate the given ids with a
+   * float value.
+   * 
+   * @param ids DBIDs to store data for
+   * @param hints Hints for the storage manager
+   * @return new data store
+   */
+  WritableFloatDataStore makeFloatStorage(DBIDs ids, int hints);
+
+  /**
+   * Make a new single precision storage, to associate the given ids with a
+   * float value.
+   * 
+   * @param ids DBIDs to store data for
+   * @param hints Hints for the storage manager
+   * @param def Default value
+   * @return new data store
+   */
+  WritableFloatDataStore makeFloatStorage(DBIDs ids, int hints, float def);
+
   /**
    * Make a new storage, to associate the given ids with an object of class
    * dataclass.
@@ -95,6 +95,31 @@ public final class DataStoreUtil {
     return DataStoreFactory.FACTORY.makeDoubleStorage(ids, hints, def);
   }
 
+  /**
+   * Make a new single precision storage, to associate the given ids with a
+   * float value.
+   *
+   * @param ids DBIDs to store data for
+   * @param hints Hints for the storage manager
+   * @return new data store
+   */
+  public static WritableFloatDataStore makeFloatStorage(DBIDs ids, int hints) {
+    return DataStoreFactory.FACTORY.makeFloatStorage(ids, hints);
+  }
+
+  /**
+   * Make a new single precision storage, to associate the given ids with a
+   * float value.
+   *
+   * @param ids DBIDs to store data for
+   * @param hints Hints for the storage manager
+   * @param def Default value
+   * @return new data store
+   */
+  public static WritableFloatDataStore makeFloatStorage(DBIDs ids, int hints, float def) {
+    return DataStoreFactory.FACTORY.makeFloatStorage(ids, hints, def);
+  }
+
   /**
    * Make a new storage, to associate the given ids with an object of class
    * dataclass.
@@ -0,0 +1,45 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Data store for single precision values, at half the memory of a
+ * {@link DoubleDataStore}. Values are widened to double on access.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public interface FloatDataStore extends DoubleDataStore {
+  /**
+   * Retrieves a value from the storage.
+   *
+   * @param id Database ID.
+   * @return Float value
+   */
+  float floatValue(DBIDRef id);
+
+  @Override
+  default double doubleValue(DBIDRef id) {
+    return floatValue(id);
+  }
+}
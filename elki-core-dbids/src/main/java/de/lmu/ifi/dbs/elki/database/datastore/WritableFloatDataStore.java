@@ -0,0 +1,57 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Data store specialized for single precision values.
+ * <p>
+ * This can be used as a drop-in replacement for a
+ * {@link WritableDoubleDataStore} when single precision is sufficient (e.g.
+ * for caching distances to float-valued data); values stored with
+ * {@link #putDouble} are rounded to the nearest float.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public interface WritableFloatDataStore extends FloatDataStore, WritableDoubleDataStore {
+  /**
+   * Associates the specified value with the specified id in this storage. If
+   * the storage previously contained a value for the id, the previous value is
+   * replaced by the specified value.
+   *
+   * @param id Database ID.
+   * @param value Value to store.
+   * @return previous value
+   */
+  float putFloat(DBIDRef id, float value);
+
+  @Override
+  default double putDouble(DBIDRef id, double value) {
+    return putFloat(id, (float) value);
+  }
+
+  @Override
+  default double put(DBIDRef id, double value) {
+    return putFloat(id, (float) value);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.memory;
+
+import de.lmu.ifi.dbs.elki.database.datastore.WritableFloatDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
+
+/**
+ * Writable data store for float values.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MapIntegerDBIDFloatStore implements WritableFloatDataStore {
+  /**
+   * Data storage.
+   */
+  private Int2FloatOpenHashMap map;
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   */
+  public MapIntegerDBIDFloatStore(int size) {
+    this(size, Float.NaN);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param size Expected size
+   * @param def Default value
+   */
+  public MapIntegerDBIDFloatStore(int size, float def) {
+    super();
+    map = new Int2FloatOpenHashMap(size);
+    map.defaultReturnValue(def);
+  }
+
+  @Override
+  @Deprecated
+  public Double get(DBIDRef id) {
+    return Double.valueOf(map.get(DBIDUtil.asInteger(id)));
+  }
+
+  @Override
+  public float floatValue(DBIDRef id) {
+    return map.get(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  @Deprecated
+  public Double put(DBIDRef id, Double value) {
+    return Double.valueOf(map.put(DBIDUtil.asInteger(id), value.floatValue()));
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    map.remove(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public float putFloat(DBIDRef id, float value) {
+    return map.put(DBIDUtil.asInteger(id), value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, double value) {
+    map.addTo(DBIDUtil.asInteger(id), (float) value);
+  }
+
+  @Override
+  public void clear() {
+    map.clear();
+  }
+
+  @Override
+  public void destroy() {
+    map.clear();
+    map = null;
+  }
+}
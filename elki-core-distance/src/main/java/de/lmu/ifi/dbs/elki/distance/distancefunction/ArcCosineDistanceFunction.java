@@ -75,7 +75,7 @@ public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFuncti
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = Math.acos(VectorUtil.cosAngle(v1, v2));
+    double d = Math.acos(DenseVectorDistanceUtil.isSupported(v1, v2) ? DenseVectorDistanceUtil.cosAngle(v1, v2) : VectorUtil.cosAngle(v1, v2));
     return d > 0 ? d : 0; // Avoid NaN
   }
 
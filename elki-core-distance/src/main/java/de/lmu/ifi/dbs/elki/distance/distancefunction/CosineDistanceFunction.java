@@ -75,7 +75,7 @@ public class CosineDistanceFunction implements SpatialPrimitiveDistanceFunction<
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.cosAngle(v1, v2);
+    double d = DenseVectorDistanceUtil.isSupported(v1, v2) ? DenseVectorDistanceUtil.cosAngle(v1, v2) : VectorUtil.cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
@@ -0,0 +1,573 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+
+import net.jafama.FastMath;
+
+/**
+ * Optimized distance computations on the arrays of {@link DoubleVector} and
+ * {@link FloatVector}.
+ * <p>
+ * This avoids the virtual {@link NumberVector#doubleValue} call for every
+ * dimension. The main loops are unrolled with independent accumulators, which
+ * allows the CPU to overlap the additions, and the JIT compiler to use vector
+ * instructions for the differences. Because of the different order of the
+ * additions, results may differ from the generic loops in the last bits.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public final class DenseVectorDistanceUtil {
+  /**
+   * Fake constructor. Do not instantiate, use static methods.
+   */
+  private DenseVectorDistanceUtil() {
+    // Do not instantiate - utility class.
+  }
+
+  /**
+   * Test if both vectors are backed by arrays supported by this class.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return {@code true} if both are {@link DoubleVector} or
+   *         {@link FloatVector}
+   */
+  public static boolean isSupported(SpatialComparable v1, SpatialComparable v2) {
+    return (v1 instanceof DoubleVector || v1 instanceof FloatVector) && (v2 instanceof DoubleVector || v2 instanceof FloatVector);
+  }
+
+  /**
+   * Squared Euclidean distance.
+   * <p>
+   * Both vectors must be supported, see {@link #isSupported}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof DoubleVector) {
+      final double[] a1 = ((DoubleVector) v1).getArrayRef();
+      return v2 instanceof DoubleVector ? squaredEuclidean(a1, ((DoubleVector) v2).getArrayRef()) : squaredEuclidean(((FloatVector) v2).getArrayRef(), a1);
+    }
+    final float[] a1 = ((FloatVector) v1).getArrayRef();
+    return v2 instanceof FloatVector ? squaredEuclidean(a1, ((FloatVector) v2).getArrayRef()) : squaredEuclidean(a1, ((DoubleVector) v2).getArrayRef());
+  }
+
+  /**
+   * Manhattan distance.
+   * <p>
+   * Both vectors must be supported, see {@link #isSupported}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof DoubleVector) {
+      final double[] a1 = ((DoubleVector) v1).getArrayRef();
+      return v2 instanceof DoubleVector ? manhattan(a1, ((DoubleVector) v2).getArrayRef()) : manhattan(((FloatVector) v2).getArrayRef(), a1);
+    }
+    final float[] a1 = ((FloatVector) v1).getArrayRef();
+    return v2 instanceof FloatVector ? manhattan(a1, ((FloatVector) v2).getArrayRef()) : manhattan(a1, ((DoubleVector) v2).getArrayRef());
+  }
+
+  /**
+   * Maximum distance.
+   * <p>
+   * Both vectors must be supported, see {@link #isSupported}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof DoubleVector) {
+      final double[] a1 = ((DoubleVector) v1).getArrayRef();
+      return v2 instanceof DoubleVector ? maximum(a1, ((DoubleVector) v2).getArrayRef()) : maximum(((FloatVector) v2).getArrayRef(), a1);
+    }
+    final float[] a1 = ((FloatVector) v1).getArrayRef();
+    return v2 instanceof FloatVector ? maximum(a1, ((FloatVector) v2).getArrayRef()) : maximum(a1, ((DoubleVector) v2).getArrayRef());
+  }
+
+  /**
+   * Cosine of the angle between two vectors.
+   * <p>
+   * Both vectors must be supported, see {@link #isSupported}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(NumberVector v1, NumberVector v2) {
+    if(v1 instanceof DoubleVector) {
+      final double[] a1 = ((DoubleVector) v1).getArrayRef();
+      return v2 instanceof DoubleVector ? cosAngle(a1, ((DoubleVector) v2).getArrayRef()) : cosAngle(((FloatVector) v2).getArrayRef(), a1);
+    }
+    final float[] a1 = ((FloatVector) v1).getArrayRef();
+    return v2 instanceof FloatVector ? cosAngle(a1, ((FloatVector) v2).getArrayRef()) : cosAngle(a1, ((DoubleVector) v2).getArrayRef());
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(double[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = v1[d] - v2[d], d1 = v1[d + 1] - v2[d + 1];
+      final double d2 = v1[d + 2] - v2[d + 2], d3 = v1[d + 3] - v2[d + 3];
+      agg0 += d0 * d0;
+      agg1 += d1 * d1;
+      agg2 += d2 * d2;
+      agg3 += d3 * d3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = v1[d] - v2[d];
+      agg0 += d0 * d0;
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      final double x = v1[d];
+      agg += x * x;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = v2[d];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(float[] v1, float[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = (double) v1[d] - v2[d], d1 = (double) v1[d + 1] - v2[d + 1];
+      final double d2 = (double) v1[d + 2] - v2[d + 2], d3 = (double) v1[d + 3] - v2[d + 3];
+      agg0 += d0 * d0;
+      agg1 += d1 * d1;
+      agg2 += d2 * d2;
+      agg3 += d3 * d3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = (double) v1[d] - v2[d];
+      agg0 += d0 * d0;
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      final double x = v1[d];
+      agg += x * x;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = v2[d];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(float[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = v1[d] - v2[d], d1 = v1[d + 1] - v2[d + 1];
+      final double d2 = v1[d + 2] - v2[d + 2], d3 = v1[d + 3] - v2[d + 3];
+      agg0 += d0 * d0;
+      agg1 += d1 * d1;
+      agg2 += d2 * d2;
+      agg3 += d3 * d3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = v1[d] - v2[d];
+      agg0 += d0 * d0;
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      final double x = v1[d];
+      agg += x * x;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = v2[d];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(double[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      agg0 += Math.abs(v1[d] - v2[d]);
+      agg1 += Math.abs(v1[d + 1] - v2[d + 1]);
+      agg2 += Math.abs(v1[d + 2] - v2[d + 2]);
+      agg3 += Math.abs(v1[d + 3] - v2[d + 3]);
+    }
+    for(; d < mindim; d++) {
+      agg0 += Math.abs(v1[d] - v2[d]);
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      agg += Math.abs(v1[d]);
+    }
+    for(d = mindim; d < dim2; d++) {
+      agg += Math.abs(v2[d]);
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(float[] v1, float[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      agg0 += Math.abs((double) v1[d] - v2[d]);
+      agg1 += Math.abs((double) v1[d + 1] - v2[d + 1]);
+      agg2 += Math.abs((double) v1[d + 2] - v2[d + 2]);
+      agg3 += Math.abs((double) v1[d + 3] - v2[d + 3]);
+    }
+    for(; d < mindim; d++) {
+      agg0 += Math.abs((double) v1[d] - v2[d]);
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      agg += Math.abs(v1[d]);
+    }
+    for(d = mindim; d < dim2; d++) {
+      agg += Math.abs(v2[d]);
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(float[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      agg0 += Math.abs(v1[d] - v2[d]);
+      agg1 += Math.abs(v1[d + 1] - v2[d + 1]);
+      agg2 += Math.abs(v1[d + 2] - v2[d + 2]);
+      agg3 += Math.abs(v1[d + 3] - v2[d + 3]);
+    }
+    for(; d < mindim; d++) {
+      agg0 += Math.abs(v1[d] - v2[d]);
+    }
+    double agg = (agg0 + agg1) + (agg2 + agg3);
+    for(d = mindim; d < dim1; d++) {
+      agg += Math.abs(v1[d]);
+    }
+    for(d = mindim; d < dim2; d++) {
+      agg += Math.abs(v2[d]);
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(double[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = Math.abs(v1[d] - v2[d]), d1 = Math.abs(v1[d + 1] - v2[d + 1]);
+      final double d2 = Math.abs(v1[d + 2] - v2[d + 2]), d3 = Math.abs(v1[d + 3] - v2[d + 3]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+      agg1 = d1 > agg1 ? d1 : agg1;
+      agg2 = d2 > agg2 ? d2 : agg2;
+      agg3 = d3 > agg3 ? d3 : agg3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = Math.abs(v1[d] - v2[d]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+    }
+    double agg = Math.max(Math.max(agg0, agg1), Math.max(agg2, agg3));
+    for(d = mindim; d < dim1; d++) {
+      final double x = Math.abs(v1[d]);
+      agg = x > agg ? x : agg;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = Math.abs(v2[d]);
+      agg = x > agg ? x : agg;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(float[] v1, float[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = Math.abs((double) v1[d] - v2[d]), d1 = Math.abs((double) v1[d + 1] - v2[d + 1]);
+      final double d2 = Math.abs((double) v1[d + 2] - v2[d + 2]), d3 = Math.abs((double) v1[d + 3] - v2[d + 3]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+      agg1 = d1 > agg1 ? d1 : agg1;
+      agg2 = d2 > agg2 ? d2 : agg2;
+      agg3 = d3 > agg3 ? d3 : agg3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = Math.abs((double) v1[d] - v2[d]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+    }
+    double agg = Math.max(Math.max(agg0, agg1), Math.max(agg2, agg3));
+    for(d = mindim; d < dim1; d++) {
+      final double x = Math.abs(v1[d]);
+      agg = x > agg ? x : agg;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = Math.abs(v2[d]);
+      agg = x > agg ? x : agg;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(float[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~3;
+    double agg0 = 0., agg1 = 0., agg2 = 0., agg3 = 0.;
+    int d = 0;
+    for(; d < end; d += 4) {
+      final double d0 = Math.abs(v1[d] - v2[d]), d1 = Math.abs(v1[d + 1] - v2[d + 1]);
+      final double d2 = Math.abs(v1[d + 2] - v2[d + 2]), d3 = Math.abs(v1[d + 3] - v2[d + 3]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+      agg1 = d1 > agg1 ? d1 : agg1;
+      agg2 = d2 > agg2 ? d2 : agg2;
+      agg3 = d3 > agg3 ? d3 : agg3;
+    }
+    for(; d < mindim; d++) {
+      final double d0 = Math.abs(v1[d] - v2[d]);
+      agg0 = d0 > agg0 ? d0 : agg0;
+    }
+    double agg = Math.max(Math.max(agg0, agg1), Math.max(agg2, agg3));
+    for(d = mindim; d < dim1; d++) {
+      final double x = Math.abs(v1[d]);
+      agg = x > agg ? x : agg;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double x = Math.abs(v2[d]);
+      agg = x > agg ? x : agg;
+    }
+    return agg;
+  }
+
+  /**
+   * Cosine of the angle between two vectors, as in
+   * {@link VectorUtil#cosAngle}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(double[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~1;
+    double cross0 = 0., cross1 = 0., l10 = 0., l11 = 0., l20 = 0., l21 = 0.;
+    int d = 0;
+    for(; d < end; d += 2) {
+      final double r10 = v1[d], r20 = v2[d], r11 = v1[d + 1], r21 = v2[d + 1];
+      cross0 += r10 * r20;
+      cross1 += r11 * r21;
+      l10 += r10 * r10;
+      l11 += r11 * r11;
+      l20 += r20 * r20;
+      l21 += r21 * r21;
+    }
+    double cross = cross0 + cross1, l1 = l10 + l11, l2 = l20 + l21;
+    if(d < mindim) {
+      final double r1 = v1[d], r2 = v2[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(d = mindim; d < dim1; d++) {
+      final double r1 = v1[d];
+      l1 += r1 * r1;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double r2 = v2[d];
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Cosine of the angle between two vectors, as in
+   * {@link VectorUtil#cosAngle}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(float[] v1, float[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~1;
+    double cross0 = 0., cross1 = 0., l10 = 0., l11 = 0., l20 = 0., l21 = 0.;
+    int d = 0;
+    for(; d < end; d += 2) {
+      final double r10 = v1[d], r20 = v2[d], r11 = v1[d + 1], r21 = v2[d + 1];
+      cross0 += r10 * r20;
+      cross1 += r11 * r21;
+      l10 += r10 * r10;
+      l11 += r11 * r11;
+      l20 += r20 * r20;
+      l21 += r21 * r21;
+    }
+    double cross = cross0 + cross1, l1 = l10 + l11, l2 = l20 + l21;
+    if(d < mindim) {
+      final double r1 = v1[d], r2 = v2[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(d = mindim; d < dim1; d++) {
+      final double r1 = v1[d];
+      l1 += r1 * r1;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double r2 = v2[d];
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Cosine of the angle between two vectors, as in
+   * {@link VectorUtil#cosAngle}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(float[] v1, double[] v2) {
+    final int dim1 = v1.length, dim2 = v2.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2, end = mindim & ~1;
+    double cross0 = 0., cross1 = 0., l10 = 0., l11 = 0., l20 = 0., l21 = 0.;
+    int d = 0;
+    for(; d < end; d += 2) {
+      final double r10 = v1[d], r20 = v2[d], r11 = v1[d + 1], r21 = v2[d + 1];
+      cross0 += r10 * r20;
+      cross1 += r11 * r21;
+      l10 += r10 * r10;
+      l11 += r11 * r11;
+      l20 += r20 * r20;
+      l21 += r21 * r21;
+    }
+    double cross = cross0 + cross1, l1 = l10 + l11, l2 = l20 + l21;
+    if(d < mindim) {
+      final double r1 = v1[d], r2 = v2[d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    for(d = mindim; d < dim1; d++) {
+      final double r1 = v1[d];
+      l1 += r1 * r1;
+    }
+    for(d = mindim; d < dim2; d++) {
+      final double r2 = v2[d];
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+}
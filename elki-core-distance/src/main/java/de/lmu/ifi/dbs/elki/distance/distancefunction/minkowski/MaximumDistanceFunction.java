@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DenseVectorDistanceUtil;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 
@@ -106,6 +107,9 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    if(DenseVectorDistanceUtil.isSupported(v1, v2)) {
+      return DenseVectorDistanceUtil.maximum(v1, v2);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -127,6 +131,9 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
 
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
+    if(DenseVectorDistanceUtil.isSupported(mbr1, mbr2)) {
+      return distance((NumberVector) mbr1, (NumberVector) mbr2);
+    }
     final int dim1 = mbr1.getDimensionality(), dim2 = mbr2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
 
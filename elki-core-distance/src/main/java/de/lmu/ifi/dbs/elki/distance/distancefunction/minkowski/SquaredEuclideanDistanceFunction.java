@@ -131,6 +131,9 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    if(DenseVectorDistanceUtil.isSupported(v1, v2)) {
+      return DenseVectorDistanceUtil.squaredEuclidean(v1, v2);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -166,6 +169,9 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
 
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
+    if(DenseVectorDistanceUtil.isSupported(mbr1, mbr2)) {
+      return distance((NumberVector) mbr1, (NumberVector) mbr2);
+    }
     final int dim1 = mbr1.getDimensionality(), dim2 = mbr2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
 
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.IntegerVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Test the optimized distance computations against the generic versions.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class DenseVectorDistanceUtilTest {
+  @Test
+  public void testConsistency() {
+    assertFalse(DenseVectorDistanceUtil.isSupported(DoubleVector.wrap(new double[1]), new IntegerVector(new int[1])));
+    Random r = new Random(0L);
+    List<PrimitiveDistanceFunction<? super NumberVector>> dists = Arrays.asList( //
+        SquaredEuclideanDistanceFunction.STATIC, EuclideanDistanceFunction.STATIC, //
+        ManhattanDistanceFunction.STATIC, MaximumDistanceFunction.STATIC, //
+        CosineDistanceFunction.STATIC, ArcCosineDistanceFunction.STATIC);
+    for(int i = 0; i < 200; i++) {
+      // Integer values, so that float vectors are exact.
+      int[] a = randomInts(r, 1 + r.nextInt(17)), b = randomInts(r, 1 + r.nextInt(17));
+      NumberVector ia = new IntegerVector(a), ib = new IntegerVector(b);
+      NumberVector[] va = { toDouble(a), toFloat(a) }, vb = { toDouble(b), toFloat(b) };
+      for(PrimitiveDistanceFunction<? super NumberVector> dist : dists) {
+        final double expect = dist.distance(ia, ib);
+        for(NumberVector x : va) {
+          for(NumberVector y : vb) {
+            assertTrue(DenseVectorDistanceUtil.isSupported(x, y));
+            assertEquals(dist.toString(), expect, dist.distance(x, y), 1e-12 * (1 + Math.abs(expect)));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate random integers.
+   *
+   * @param r Random generator
+   * @param dim Dimensionality
+   * @return Values
+   */
+  private static int[] randomInts(Random r, int dim) {
+    int[] v = new int[dim];
+    for(int d = 0; d < dim; d++) {
+      v[d] = r.nextInt(201) - 100;
+    }
+    return v;
+  }
+
+  /**
+   * Convert to a double vector.
+   *
+   * @param v Values
+   * @return Vector
+   */
+  private static DoubleVector toDouble(int[] v) {
+    double[] x = new double[v.length];
+    for(int d = 0; d < v.length; d++) {
+      x[d] = v[d];
+    }
+    return DoubleVector.wrap(x);
+  }
+
+  /**
+   * Convert to a float vector.
+   *
+   * @param v Values
+   * @return Vector
+   */
+  private static FloatVector toFloat(int[] v) {
+    float[] x = new float[v.length];
+    for(int d = 0; d < v.length; d++) {
+      x[d] = v[d];
+    }
+    return new FloatVector(x);
+  }
+}
@@ -21,16 +21,16 @@
 package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
- * 
- * TODO: make configurable how many threads are used.
+ * Core for parallel processing in ELKI, based on a work-stealing
+ * {@link ForkJoinPool}.
+ * <p>
+ * The static core uses all available processors; to use fewer threads for a
+ * particular task, create a separate core with the desired parallelism.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -49,12 +49,12 @@ public class ParallelCore {
   /**
    * Executor service.
    */
-  ThreadPoolExecutor executor;
+  ForkJoinPool pool;
 
   /**
    * Number of connected submitters.
    */
-  private AtomicInteger connected = new AtomicInteger(0);
+  private int connected = 0;
 
   /**
    * Maximum number of processors to use.
@@ -63,10 +63,12 @@ public class ParallelCore {
 
   /**
    * Constructor.
+   * 
+   * @param processors Number of threads to use
    */
-  protected ParallelCore(int processors) {
+  public ParallelCore(int processors) {
     super();
-    this.processors = processors;
+    this.processors = Math.max(1, processors);
   }
 
   /**
@@ -84,7 +86,7 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return processors;
   }
 
   /**
@@ -95,38 +97,40 @@ public class ParallelCore {
    * @return Future to observe completion
    */
   public <T> Future<T> submit(Callable<T> task) {
-    return executor.submit(task);
+    return pool.submit(task);
+  }
+
+  /**
+   * Submit a fork-join task to the executor core.
+   * 
+   * @param task Submitted task
+   * 
+   * @return The task, to observe completion
+   */
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    return pool.submit(task);
   }
 
   /**
    * Connect to the executor.
    */
-  public void connect() {
-    if(executor == null) {
-      synchronized(this) {
-        if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-          executor.allowCoreThreadTimeOut(true);
-        }
-      }
-    }
-    int c = this.connected.incrementAndGet();
-    if(c == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
+  public synchronized void connect() {
+    if(pool == null) {
+      pool = new ForkJoinPool(processors);
     }
+    ++connected;
   }
 
   /**
    * Disconnect to the executor.
+   * <p>
+   * Idle threads of the static core terminate automatically; other cores
+   * release their pool when the last submitter disconnects.
    */
-  public void disconnect() {
-    int c = this.connected.decrementAndGet();
-    if(c == 0) {
-      synchronized(this) {
-        executor.allowCoreThreadTimeOut(true);
-        executor.setCorePoolSize(0);
-      }
+  public synchronized void disconnect() {
+    if(--connected == 0 && this != STATIC) {
+      pool.shutdown();
+      pool = null;
     }
   }
 }
@@ -23,22 +23,34 @@ package de.lmu.ifi.dbs.elki.parallel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 
 /**
  * Class to run processors in parallel, on all available cores.
- *
- * TODO: add progress
+ * <p>
+ * The ID range is split adaptively into blocks, which are then distributed to
+ * the threads of a work-stealing pool. Ranges are only split further while
+ * the local queue of a thread runs low, so that threads that finish early can
+ * steal the remaining work of slower threads (e.g. when the cost per object is
+ * very skewed). Each thread uses one instance of every processor for all the
+ * blocks it processes.
+ * <p>
+ * If the calling thread is interrupted, or a processor fails, the remaining
+ * blocks are cancelled.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -47,6 +59,22 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  * @apiviz.uses ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Minimum number of objects per block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of objects processed between checks for cancellation and progress
+   * updates.
+   */
+  private static final int CHUNKSIZE = 64;
+
+  /**
+   * Number of surplus tasks in the local queue, before we stop splitting.
+   */
+  private static final int SURPLUS = 2;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -61,33 +89,85 @@ public final class ParallelExecutor {
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    run(ParallelCore.getCore(), ids, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs, with progress logging.
+   *
+   * @param ids IDs to process
+   * @param prog Progress to increment (may be {@code null})
+   * @param log Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static void run(DBIDs ids, FiniteProgress prog, Logging log, Processor... procs) {
+    run(ParallelCore.getCore(), ids, prog, log, procs);
+  }
+
+  /**
+   * Run a task using the given parallel core.
+   *
+   * @param core Parallel core, e.g. {@code new ParallelCore(4)} to use only
+   *        four threads
+   * @param ids IDs to process
+   * @param prog Progress to increment (may be {@code null})
+   * @param log Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static void run(ParallelCore core, DBIDs ids, FiniteProgress prog, Logging log, Processor... procs) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    if(size == 0) {
+      return;
+    }
+    // Minimum block size, so that we still get several blocks per thread.
+    final int minsize = Math.max(MIN_BLOCKSIZE, size / (core.getParallelism() << 6));
+    RunState state = new RunState(aids, procs, prog, log);
+    invoke(core, new BlockArrayRunner(state, 0, size, minsize), state);
+    state.cleanup();
+  }
+
+  /**
+   * Run a task on consecutive blocks of an index range, using all available
+   * CPUs. Each block is processed by exactly one thread.
+   *
+   * @param size Number of elements
+   * @param blocksize Block size
+   * @param task Task to run on each block
+   */
+  public static void runBlocks(int size, int blocksize, BlockTask task) {
+    final int numblocks = (size + blocksize - 1) / blocksize;
     ParallelCore core = ParallelCore.getCore();
-    core.connect();
-    try {
-      // TODO: try different strategies anyway!
-      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-      final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
+    if(numblocks <= 1 || core.getParallelism() <= 1) {
+      for(int start = 0; start < size; start += blocksize) {
+        task.process(start, Math.min(start + blocksize, size));
       }
+      return;
+    }
+    Cancellation cancel = new Cancellation();
+    invoke(core, new BlockTaskRunner(task, cancel, 0, numblocks, blocksize, size), cancel);
+  }
 
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
-      }
+  /**
+   * Invoke a task on a parallel core, and wait for its completion.
+   *
+   * @param core Parallel core
+   * @param task Task to run
+   * @param cancel Cancellation flag
+   */
+  private static void invoke(ParallelCore core, ForkJoinTask<?> task, Cancellation cancel) {
+    core.connect();
+    try {
+      core.submit(task).get();
     }
     catch(ExecutionException e) {
-      throw new RuntimeException("Processor execution failed.", e);
+      cancel.cancel();
+      throw new RuntimeException("Processor execution failed.", e.getCause());
     }
-    catch(InterruptedException e) {
+    catch(InterruptedException | CancellationException e) {
+      cancel.cancel();
+      task.cancel(true);
+      Thread.currentThread().interrupt();
       throw new RuntimeException("Parallel execution interrupted.");
     }
     finally {
@@ -96,69 +176,180 @@ public final class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * Task processing a block of consecutive indexes.
    *
    * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface BlockTask {
+    /**
+     * Process a block.
+     *
+     * @param start Start index (inclusive)
+     * @param end End index (exclusive)
+     */
+    void process(int start, int end);
+  }
+
+  /**
+   * Shared cancellation flag.
    *
-   * @apiviz.uses Processor
+   * @author Erich Schubert
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  private static class Cancellation {
     /**
-     * Array IDs to process
+     * Cancellation flag.
      */
-    private ArrayDBIDs ids;
+    private volatile boolean cancelled = false;
 
     /**
-     * Start position
+     * Cancel all remaining work.
      */
-    private int start;
+    void cancel() {
+      cancelled = true;
+    }
 
     /**
-     * End position
+     * Check for cancellation.
+     *
+     * @return {@code true} when cancelled
      */
-    private int end;
+    boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+  /**
+   * State shared by all blocks of a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has WorkerState
+   */
+  private static class RunState extends Cancellation {
+    /**
+     * Array IDs to process
+     */
+    final ArrayDBIDs ids;
 
     /**
      * The processor masters that own the instances.
      */
-    private Processor[] procs;
+    final Processor[] procs;
 
     /**
-     * Variables map.
+     * Progress, may be {@code null}.
      */
-    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+    final FiniteProgress prog;
+
+    /**
+     * Logger for progress.
+     */
+    final Logging log;
+
+    /**
+     * Worker state of the current thread.
+     */
+    final ThreadLocal<WorkerState> local = new ThreadLocal<>();
+
+    /**
+     * All worker states, for cleanup.
+     */
+    final ConcurrentLinkedQueue<WorkerState> all = new ConcurrentLinkedQueue<>();
 
     /**
      * Constructor.
      *
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
      * @param procs Processors to run
+     * @param prog Progress
+     * @param log Logger for progress
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
-      super();
+    RunState(ArrayDBIDs ids, Processor[] procs, FiniteProgress prog, Logging log) {
       this.ids = ids;
-      this.start = start;
-      this.end = end;
       this.procs = procs;
+      this.prog = prog;
+      this.log = log;
     }
 
-    @Override
-    public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
-      for(int i = 0; i < procs.length; i++) {
-        instances[i] = procs[i].instantiate(this);
+    /**
+     * Acquire the worker state of the current thread.
+     * <p>
+     * If the state is still in use (because the thread joined a nested task,
+     * and began working on another block of this run), a fresh state is used.
+     *
+     * @return Worker state
+     */
+    WorkerState acquire() {
+      WorkerState state = local.get();
+      if(state == null || state.active) {
+        state = new WorkerState(procs);
+        all.add(state);
+        if(local.get() == null) {
+          local.set(state);
+        }
+      }
+      state.active = true;
+      return state;
+    }
+
+    /**
+     * Report progress.
+     *
+     * @param processed Number of objects processed
+     */
+    void progress(int processed) {
+      if(prog != null) {
+        prog.incrementProcessed(processed, log);
       }
-      for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+    }
+
+    /**
+     * Cleanup all processor instances.
+     */
+    void cleanup() {
+      for(WorkerState state : all) {
+        for(int i = 0; i < procs.length; i++) {
+          procs[i].cleanup(state.instances[i]);
         }
       }
-      for(int i = 0; i < instances.length; i++) {
-        procs[i].cleanup(instances[i]);
+      all.clear();
+    }
+  }
+
+  /**
+   * Processor instances and shared variables of a single worker thread.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses Processor
+   */
+  private static class WorkerState implements Executor {
+    /**
+     * Processor instances.
+     */
+    final Processor.Instance[] instances;
+
+    /**
+     * Variables map.
+     */
+    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+
+    /**
+     * Flag to detect reentrant use.
+     */
+    boolean active = false;
+
+    /**
+     * Constructor.
+     *
+     * @param procs Processors
+     */
+    WorkerState(Processor[] procs) {
+      instances = new Processor.Instance[procs.length];
+      for(int i = 0; i < procs.length; i++) {
+        instances[i] = procs[i].instantiate(this);
       }
-      return ids;
     }
 
     @Override
@@ -172,4 +363,169 @@ public final class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Run for an array part, without step size.
+   * <p>
+   * The range is split in halves while it is large enough, and the local task
+   * queue is short; the other threads can then steal the forked halves.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses Processor
+   */
+  protected static class BlockArrayRunner extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shared state of this run.
+     */
+    private final transient RunState state;
+
+    /**
+     * Start position
+     */
+    private final int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Minimum size of a block.
+     */
+    private final int minsize;
+
+    /**
+     * Constructor.
+     *
+     * @param state Shared state
+     * @param start Starting position
+     * @param end End position
+     * @param minsize Minimum block size
+     */
+    protected BlockArrayRunner(RunState state, int start, int end, int minsize) {
+      super();
+      this.state = state;
+      this.start = start;
+      this.end = end;
+      this.minsize = minsize;
+    }
+
+    @Override
+    protected void compute() {
+      List<BlockArrayRunner> forked = null;
+      while(end - start >= minsize << 1 && getSurplusQueuedTaskCount() <= SURPLUS) {
+        final int mid = (start + end) >>> 1;
+        BlockArrayRunner right = new BlockArrayRunner(state, mid, end, minsize);
+        right.fork();
+        (forked = forked != null ? forked : new ArrayList<>()).add(right);
+        end = mid;
+      }
+      process();
+      if(forked != null) {
+        for(int i = forked.size() - 1; i >= 0; i--) {
+          forked.get(i).join();
+        }
+      }
+    }
+
+    /**
+     * Process the remaining range.
+     */
+    private void process() {
+      final WorkerState worker = state.acquire();
+      try {
+        final Processor.Instance[] instances = worker.instances;
+        DBIDArrayIter iter = state.ids.iter().seek(start);
+        for(int pos = start; pos < end && !state.isCancelled();) {
+          final int chunkstart = pos, stop = Math.min(pos + CHUNKSIZE, end);
+          for(; pos < stop; pos++, iter.advance()) {
+            for(int i = 0; i < instances.length; i++) {
+              instances[i].map(iter);
+            }
+          }
+          state.progress(stop - chunkstart);
+        }
+      }
+      catch(RuntimeException | Error e) {
+        state.cancel();
+        throw e;
+      }
+      finally {
+        worker.active = false;
+      }
+    }
+  }
+
+  /**
+   * Run a block task on a range of blocks, splitting it recursively.
+   *
+   * @author Erich Schubert
+   */
+  private static class BlockTaskRunner extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Task to run.
+     */
+    private final transient BlockTask task;
+
+    /**
+     * Cancellation flag.
+     */
+    private final transient Cancellation cancel;
+
+    /**
+     * Block range, block size, and total size.
+     */
+    private final int first, last, blocksize, size;
+
+    /**
+     * Constructor.
+     *
+     * @param task Task to run
+     * @param cancel Cancellation flag
+     * @param first First block
+     * @param last Last block (exclusive)
+     * @param blocksize Block size
+     * @param size Total size
+     */
+    BlockTaskRunner(BlockTask task, Cancellation cancel, int first, int last, int blocksize, int size) {
+      this.task = task;
+      this.cancel = cancel;
+      this.first = first;
+      this.last = last;
+      this.blocksize = blocksize;
+      this.size = size;
+    }
+
+    @Override
+    protected void compute() {
+      if(last - first > 1) {
+        final int mid = (first + last) >>> 1;
+        invokeAll(new BlockTaskRunner(task, cancel, first, mid, blocksize, size), //
+            new BlockTaskRunner(task, cancel, mid, last, blocksize, size));
+        return;
+      }
+      if(cancel.isCancelled()) {
+        return;
+      }
+      try {
+        final int start = first * blocksize;
+        task.process(start, Math.min(start + blocksize, size));
+      }
+      catch(RuntimeException | Error e) {
+        cancel.cancel();
+        throw e;
+      }
+    }
+  }
 }
@@ -0,0 +1,338 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.datastructures.arrays;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Storage for a strictly lower triangular matrix, e.g. of pairwise distances,
+ * where the entry \((x,y)\) with \(y&lt;x\) is stored at position
+ * {@code triangleSize(x) + y}.
+ * <p>
+ * The values are stored in chunks of fixed size, addressed by a long index,
+ * so that matrixes with more than \(2^{31}\) entries can be stored. Values can
+ * be stored in single precision, which halves the memory requirements, and
+ * off-heap (outside of the Java heap, using direct buffers).
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public abstract class TriangularMatrix {
+  /**
+   * Default chunk size: \(2^{27}\) entries, i.e. 1 GB for doubles.
+   */
+  public static final int DEFAULT_CHUNK_BITS = 27;
+
+  /**
+   * Number of rows and columns.
+   */
+  protected final int size;
+
+  /**
+   * Number of entries.
+   */
+  protected final long length;
+
+  /**
+   * Chunk size in bits.
+   */
+  protected final int shift;
+
+  /**
+   * Mask to get the offset within a chunk.
+   */
+  protected final long mask;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of rows and columns
+   * @param chunkbits Chunk size in bits
+   */
+  protected TriangularMatrix(int size, int chunkbits) {
+    this.size = size;
+    this.length = triangleSize(size);
+    this.shift = chunkbits;
+    this.mask = (1L << chunkbits) - 1;
+  }
+
+  /**
+   * Allocate a new matrix.
+   *
+   * @param size Number of rows and columns
+   * @param singlePrecision Store values as float
+   * @param offHeap Store values outside of the Java heap
+   * @return New matrix
+   */
+  public static TriangularMatrix newMatrix(int size, boolean singlePrecision, boolean offHeap) {
+    return newMatrix(size, singlePrecision, offHeap, DEFAULT_CHUNK_BITS);
+  }
+
+  /**
+   * Allocate a new matrix, with a custom chunk size.
+   *
+   * @param size Number of rows and columns
+   * @param singlePrecision Store values as float
+   * @param offHeap Store values outside of the Java heap
+   * @param chunkbits Chunk size in bits, at most {@link #DEFAULT_CHUNK_BITS}
+   * @return New matrix
+   */
+  public static TriangularMatrix newMatrix(int size, boolean singlePrecision, boolean offHeap, int chunkbits) {
+    if(chunkbits < 1 || chunkbits > DEFAULT_CHUNK_BITS) {
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkbits);
+    }
+    return singlePrecision ? //
+        (offHeap ? new FloatBuffers(size, chunkbits) : new FloatArrays(size, chunkbits)) : //
+        (offHeap ? new DoubleBuffers(size, chunkbits) : new DoubleArrays(size, chunkbits));
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(int x) {
+    return (x * (x - 1L)) >>> 1;
+  }
+
+  /**
+   * Get the number of rows and columns.
+   *
+   * @return Matrix size
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the number of entries stored.
+   *
+   * @return Number of entries
+   */
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Compute the position of an entry.
+   *
+   * @param x First index
+   * @param y Second index, must be different from x
+   * @return Position
+   */
+  public static long offset(int x, int y) {
+    return y < x ? triangleSize(x) + y : triangleSize(y) + x;
+  }
+
+  /**
+   * Get the value of an entry, with 0 on the diagonal.
+   *
+   * @param x First index
+   * @param y Second index
+   * @return Value
+   */
+  public double get(int x, int y) {
+    return x != y ? get(offset(x, y)) : 0.;
+  }
+
+  /**
+   * Get the value at the given position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  public abstract double get(long pos);
+
+  /**
+   * Set the value at the given position.
+   *
+   * @param pos Position
+   * @param val New value
+   */
+  public abstract void set(long pos, double val);
+
+  /**
+   * Number of chunks needed.
+   *
+   * @return Number of chunks
+   */
+  protected int numChunks() {
+    return (int) ((length + mask) >>> shift);
+  }
+
+  /**
+   * Size of a chunk.
+   *
+   * @param i Chunk number
+   * @return Size
+   */
+  protected int chunkSize(int i) {
+    return (int) Math.min(mask + 1, length - ((long) i << shift));
+  }
+
+  /**
+   * On-heap storage with double precision.
+   *
+   * @author agent
+   */
+  private static class DoubleArrays extends TriangularMatrix {
+    /**
+     * Data chunks.
+     */
+    private final double[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Matrix size
+     * @param chunkbits Chunk size in bits
+     */
+    DoubleArrays(int size, int chunkbits) {
+      super(size, chunkbits);
+      chunks = new double[numChunks()][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new double[chunkSize(i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> shift)][(int) (pos & mask)] = val;
+    }
+  }
+
+  /**
+   * On-heap storage with single precision.
+   *
+   * @author agent
+   */
+  private static class FloatArrays extends TriangularMatrix {
+    /**
+     * Data chunks.
+     */
+    private final float[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Matrix size
+     * @param chunkbits Chunk size in bits
+     */
+    FloatArrays(int size, int chunkbits) {
+      super(size, chunkbits);
+      chunks = new float[numChunks()][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new float[chunkSize(i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> shift)][(int) (pos & mask)] = (float) val;
+    }
+  }
+
+  /**
+   * Off-heap storage with double precision.
+   *
+   * @author agent
+   */
+  private static class DoubleBuffers extends TriangularMatrix {
+    /**
+     * Data chunks.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Matrix size
+     * @param chunkbits Chunk size in bits
+     */
+    DoubleBuffers(int size, int chunkbits) {
+      super(size, chunkbits);
+      chunks = new DoubleBuffer[numChunks()];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = ByteBuffer.allocateDirect(chunkSize(i) << 3).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)].get((int) (pos & mask));
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> shift)].put((int) (pos & mask), val);
+    }
+  }
+
+  /**
+   * Off-heap storage with single precision.
+   *
+   * @author agent
+   */
+  private static class FloatBuffers extends TriangularMatrix {
+    /**
+     * Data chunks.
+     */
+    private final FloatBuffer[] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Matrix size
+     * @param chunkbits Chunk size in bits
+     */
+    FloatBuffers(int size, int chunkbits) {
+      super(size, chunkbits);
+      chunks = new FloatBuffer[numChunks()];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = ByteBuffer.allocateDirect(chunkSize(i) << 2).order(ByteOrder.nativeOrder()).asFloatBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)].get((int) (pos & mask));
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> shift)].put((int) (pos & mask), (float) val);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.utilities.datastructures.arrays;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the chunked triangular matrix.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class TriangularMatrixTest {
+  @Test
+  public void testDouble() {
+    testMatrix(TriangularMatrix.newMatrix(37, false, false, 5), 0.);
+  }
+
+  @Test
+  public void testFloat() {
+    testMatrix(TriangularMatrix.newMatrix(37, true, false, 5), 1e-6);
+  }
+
+  @Test
+  public void testDoubleOffHeap() {
+    testMatrix(TriangularMatrix.newMatrix(37, false, true, 5), 0.);
+  }
+
+  @Test
+  public void testFloatOffHeap() {
+    testMatrix(TriangularMatrix.newMatrix(37, true, true, 5), 1e-6);
+  }
+
+  @Test
+  public void testTriangleSize() {
+    assertEquals(0L, TriangularMatrix.triangleSize(1));
+    assertEquals(6L, TriangularMatrix.triangleSize(4));
+    // Beyond the integer range:
+    assertEquals(100000L * 99999L / 2, TriangularMatrix.triangleSize(100000));
+    assertEquals(TriangularMatrix.triangleSize(7) + 3, TriangularMatrix.offset(7, 3));
+    assertEquals(TriangularMatrix.offset(7, 3), TriangularMatrix.offset(3, 7));
+  }
+
+  /**
+   * Fill the matrix and verify the stored values.
+   *
+   * @param mat Matrix
+   * @param delta Tolerance
+   */
+  private void testMatrix(TriangularMatrix mat, double delta) {
+    final int size = mat.getSize();
+    assertEquals("Wrong length.", TriangularMatrix.triangleSize(size), mat.length());
+    long pos = 0;
+    for(int x = 0; x < size; x++) {
+      for(int y = 0; y < x; y++, pos++) {
+        mat.set(pos, Math.sqrt(x * 100 + y));
+      }
+    }
+    for(int x = 0; x < size; x++) {
+      assertEquals("Diagonal not zero.", 0., mat.get(x, x), 0.);
+      for(int y = 0; y < x; y++) {
+        final double exp = Math.sqrt(x * 100 + y);
+        assertEquals("Value differs.", exp, mat.get(x, y), exp * delta);
+        assertEquals("Not symmetric.", mat.get(x, y), mat.get(y, x), 0.);
+      }
+    }
+  }
+}
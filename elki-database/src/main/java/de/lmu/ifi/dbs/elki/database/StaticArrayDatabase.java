@@ -22,15 +22,23 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDenseFloatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDenseNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
@@ -41,7 +49,10 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +91,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store number vector fields in a single contiguous array.
+   */
+  protected boolean dense;
+
   /**
    * Constructor.
    *
@@ -87,10 +103,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param dense Store number vector fields in a single contiguous array
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories, boolean dense) {
     super();
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
+    this.dense = dense;
 
     // Add indexes.
     if(indexFactories != null) {
@@ -145,17 +173,26 @@ public class StaticArrayDatabase extends AbstractDatabase {
         SimpleTypeInformation<?> meta = bundle.meta(i);
         @SuppressWarnings("unchecked")
         SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        Relation<?> relation;
+        if(dense && ids instanceof DBIDRange && isDenseVectorField(meta)) {
+          final int dim = ((VectorFieldTypeInformation<?>) meta).getDimensionality();
+          relation = FloatVector.class.equals(meta.getRestrictionClass()) ? //
+              makeDenseFloatRelation((DBIDRange) ids, dim, bundle, i) : //
+              makeDenseRelation((DBIDRange) ids, dim, bundle, i);
+        }
+        else {
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
         for(IndexFactory<?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          if(factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object> ofact = (IndexFactory<Object>) factory;
             @SuppressWarnings("unchecked")
@@ -176,6 +213,66 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Test whether a column can be stored as a dense vector block.
+   *
+   * @param meta Column type
+   * @return {@code true} for fixed-dimensional, non-sparse number vectors
+   */
+  private static boolean isDenseVectorField(SimpleTypeInformation<?> meta) {
+    return meta instanceof VectorFieldTypeInformation //
+        && TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta) //
+        && !SparseNumberVector.class.isAssignableFrom(meta.getRestrictionClass());
+  }
+
+  /**
+   * Copy a number vector column into a contiguous array.
+   *
+   * @param ids Object IDs
+   * @param dim Dimensionality
+   * @param bundle Data bundle
+   * @param col Column
+   * @return Dense relation
+   */
+  private static MaterializedDenseNumberVectorRelation makeDenseRelation(DBIDRange ids, int dim, MultipleObjectsBundle bundle, int col) {
+    final int size = ids.size();
+    if((long) size * dim > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Data set is too large for dense storage: " + size + " x " + dim);
+    }
+    double[] data = new double[size * dim];
+    for(int i = 0, off = 0; i < size; i++, off += dim) {
+      NumberVector vec = (NumberVector) bundle.data(i, col);
+      for(int d = 0; d < dim; d++) {
+        data[off + d] = vec.doubleValue(d);
+      }
+    }
+    return new MaterializedDenseNumberVectorRelation(ids, null, dim, data);
+  }
+
+  /**
+   * Copy a float vector column into a contiguous single precision array.
+   *
+   * @param ids Object IDs
+   * @param dim Dimensionality
+   * @param bundle Data bundle
+   * @param col Column
+   * @return Dense relation
+   */
+  private static MaterializedDenseFloatVectorRelation makeDenseFloatRelation(DBIDRange ids, int dim, MultipleObjectsBundle bundle, int col) {
+    final int size = ids.size();
+    if((long) size * dim > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Data set is too large for dense storage: " + size + " x " + dim);
+    }
+    float[] data = new float[size * dim];
+    for(int i = 0, off = 0; i < size; i++, off += dim) {
+      NumberVector vec = (NumberVector) bundle.data(i, col);
+      for(int d = 0; d < dim; d++) {
+        data[off + d] = vec.floatValue(d);
+      }
+    }
+    return new MaterializedDenseFloatVectorRelation(ids, null, dim, data);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -194,11 +291,24 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     protected DatabaseConnection databaseConnection = null;
 
+    /**
+     * Flag to store number vector fields in a single contiguous array.
+     * <p>
+     * Key: {@code -db.dense}
+     * </p>
+     */
+    public static final OptionID DENSE_ID = new OptionID("db.dense", "Store number vector fields in a single contiguous array (static, saves memory and improves linear scans).");
+
     /**
      * Indexes to add.
      */
     private Collection<IndexFactory<?>> indexFactories;
 
+    /**
+     * Store number vector fields in a single contiguous array.
+     */
+    protected boolean dense = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -212,11 +322,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      Flag denseF = new Flag(DENSE_ID);
+      if(config.grab(denseF)) {
+        dense = denseF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, dense);
     }
   }
 }
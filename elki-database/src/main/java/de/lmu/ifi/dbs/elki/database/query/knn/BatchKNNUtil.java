@@ -0,0 +1,143 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+
+/**
+ * Batch kNN queries for index structures: the queries are processed in the
+ * spatial order of the index (so consecutive queries visit the same nodes),
+ * in blocks distributed across threads.
+ * <p>
+ * For metric distances, the kNN distance of the previous query plus the
+ * distance between the two queries bounds the kNN distance of the next query,
+ * and is used to prune the search from the start.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public final class BatchKNNUtil {
+  /**
+   * Number of queries per block.
+   */
+  private static final int QUERY_BLOCK = 64;
+
+  /**
+   * Relative slack of the pruning bound, to account for rounding errors.
+   */
+  private static final double BOUND_SLACK = 1e-10;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BatchKNNUtil() {
+    // Do not instantiate
+  }
+
+  /**
+   * kNN search with an initial upper bound of the kNN distance.
+   *
+   * @author agent
+   *
+   * @param <O> Object type
+   */
+  @FunctionalInterface
+  public interface BoundedKNNSearch<O> {
+    /**
+     * Find the k nearest neighbors.
+     *
+     * @param obj Query object
+     * @param k Number of neighbors
+     * @param bound Upper bound of the kNN distance (at least k objects are
+     *        within this distance)
+     * @return kNN list
+     */
+    KNNList search(O obj, int k, double bound);
+  }
+
+  /**
+   * Order the queries by their position in the index.
+   *
+   * @param ids Query ids
+   * @param positions Position of each object in the index (e.g. the leaf
+   *        order)
+   * @return Query offsets, in index order
+   */
+  public static int[] spatialOrder(ArrayDBIDs ids, IntegerDataStore positions) {
+    final int size = ids.size();
+    long[] keys = new long[size];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      keys[it.getOffset()] = ((long) positions.intValue(it) << 32) | it.getOffset();
+    }
+    Arrays.sort(keys);
+    int[] order = new int[size];
+    for(int i = 0; i < size; i++) {
+      order[i] = (int) keys[i];
+    }
+    return order;
+  }
+
+  /**
+   * Run a batch of kNN queries, in parallel.
+   *
+   * @param relation Data relation
+   * @param ids Query ids
+   * @param order Processing order of the queries
+   * @param k Number of neighbors
+   * @param metric Metric distance query to bound the kNN distance, may be
+   *        {@code null}
+   * @param search Bounded kNN search of the index
+   * @param <O> Object type
+   * @return kNN lists, in the order of the query ids
+   */
+  public static <O> List<KNNList> batchKNN(Relation<? extends O> relation, ArrayDBIDs ids, int[] order, int k, DistanceQuery<O> metric, BoundedKNNSearch<O> search) {
+    final KNNList[] result = new KNNList[ids.size()];
+    ParallelExecutor.runBlocks(ids.size(), QUERY_BLOCK, (start, end) -> {
+      DBIDArrayIter it = ids.iter();
+      O prev = null;
+      double prevk = Double.POSITIVE_INFINITY;
+      for(int i = start; i < end; i++) {
+        final int off = order[i];
+        final O obj = relation.get(it.seek(off));
+        double bound = Double.POSITIVE_INFINITY;
+        if(prev != null && prevk < Double.POSITIVE_INFINITY) {
+          bound = (prevk + metric.distance(prev, obj)) * (1. + BOUND_SLACK);
+        }
+        final KNNList knn = search.search(obj, k, bound);
+        result[off] = knn;
+        if(metric != null) {
+          prev = obj;
+          prevk = knn.getKNNDistance();
+        }
+      }
+    });
+    return Arrays.asList(result);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+
+/**
+ * Index structure that can expose its hierarchy for a {@link DualTreeKNNJoin}.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has DualTreeKNNJoin.Node
+ */
+public interface DualTreeIndex {
+  /**
+   * Build the node hierarchy for a dual-tree join.
+   * <p>
+   * All indexed objects are appended to {@code ids} in leaf order; each node
+   * covers a contiguous range of this array, which is partitioned by the
+   * ranges of its children. Bounds are computed by the join, so any hierarchy
+   * yields correct results, but a good partitioning is needed for pruning.
+   *
+   * @param distanceFunction Distance function of the join
+   * @param ids Output array for the object ids, initially empty
+   * @return Root node, or {@code null} if the hierarchy is not suitable for
+   *         this distance function
+   */
+  DualTreeKNNJoin.Node getJoinHierarchy(DistanceFunction<?> distanceFunction, ArrayModifiableDBIDs ids);
+}
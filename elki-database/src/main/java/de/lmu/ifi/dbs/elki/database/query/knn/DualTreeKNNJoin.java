@@ -0,0 +1,633 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * All-k-nearest-neighbors self-join, by a simultaneous traversal of the index
+ * hierarchy as query and as reference tree ("dual-tree").
+ * <p>
+ * For each pair of query and reference node, a lower bound of the distances
+ * is computed: bounding boxes are used for spatial distance functions,
+ * bounding balls for other metrics. The pair is pruned if this bound exceeds
+ * the largest kNN distance of the objects in the query node. The hierarchy
+ * only needs to partition the data, see {@link DualTreeIndex}; all bounds are
+ * computed here.
+ * <p>
+ * Query subtrees are processed in parallel. Only the kNN heaps of the query
+ * objects are modified, so the threads do not need to synchronize.
+ * <p>
+ * Reference:
+ * <p>
+ * A. G. Gray, A. W. Moore<br>
+ * 'N-Body' Problems in Statistical Learning<br>
+ * Advances in Neural Information Processing Systems 13 (NIPS 2000)
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has Node
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "A. G. Gray, A. W. Moore", //
+    title = "'N-Body' Problems in Statistical Learning", //
+    booktitle = "Advances in Neural Information Processing Systems 13 (NIPS 2000)", //
+    url = "http://papers.nips.cc/paper/1835-n-body-problems-in-statistical-learning", //
+    bibkey = "DBLP:conf/nips/GrayM00")
+public class DualTreeKNNJoin<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(DualTreeKNNJoin.class);
+
+  /**
+   * Minimum number of query objects per parallel task.
+   */
+  private static final int MIN_TASK_SIZE = 1024;
+
+  /**
+   * Smaller nodes are processed as leaves.
+   */
+  private static final int MIN_LEAF_SIZE = 32;
+
+  /**
+   * Distance query.
+   */
+  private final DistanceQuery<O> distanceQuery;
+
+  /**
+   * Primitive distance function, to use the cached objects; may be
+   * {@code null}.
+   */
+  private final PrimitiveDistanceFunction<? super O> primitive;
+
+  /**
+   * Spatial distance function, for bounding boxes; may be {@code null}.
+   */
+  private final SpatialPrimitiveDistanceFunction<? super O> spatial;
+
+  /**
+   * Metric distance: use bounding balls, and the triangle inequality for kNN
+   * distance bounds.
+   */
+  private final boolean metric;
+
+  /**
+   * Object ids, in leaf order.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Objects, in leaf order (for primitive distances only).
+   */
+  private final List<O> objs;
+
+  /**
+   * Root of the hierarchy.
+   */
+  private final Node root;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query
+   * @param ids Object ids, in leaf order
+   * @param root Root of the hierarchy
+   */
+  @SuppressWarnings("unchecked")
+  public DualTreeKNNJoin(DistanceQuery<O> distanceQuery, ArrayDBIDs ids, Node root) {
+    super();
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    this.distanceQuery = distanceQuery;
+    this.primitive = df instanceof PrimitiveDistanceFunction ? (PrimitiveDistanceFunction<? super O>) df : null;
+    this.spatial = df instanceof SpatialPrimitiveDistanceFunction ? (SpatialPrimitiveDistanceFunction<? super O>) df : null;
+    this.metric = df.isMetric();
+    this.ids = ids;
+    this.root = root;
+    if(primitive != null) {
+      Relation<? extends O> relation = distanceQuery.getRelation();
+      objs = new ArrayList<>(ids.size());
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        objs.add(relation.get(it));
+      }
+    }
+    else {
+      objs = null;
+    }
+  }
+
+  /**
+   * Find an index of the relation that supports dual-tree joins.
+   *
+   * @param distanceQuery Distance query
+   * @param <O> Object type
+   * @return Join, or {@code null} if no suitable index was found.
+   */
+  public static <O> DualTreeKNNJoin<O> instantiate(DistanceQuery<O> distanceQuery) {
+    Relation<? extends O> relation = distanceQuery.getRelation();
+    for(It<DualTreeIndex> it = relation.getHierarchy().iterChildrenReverse(relation).filter(DualTreeIndex.class); it.valid(); it.advance()) {
+      DualTreeKNNJoin<O> join = instantiate(distanceQuery, it.get());
+      if(join != null) {
+        return join;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Prepare a dual-tree join using the given index.
+   *
+   * @param distanceQuery Distance query
+   * @param index Index to use
+   * @param <O> Object type
+   * @return Join, or {@code null} if the index or distance is not supported.
+   */
+  public static <O> DualTreeKNNJoin<O> instantiate(DistanceQuery<O> distanceQuery, DualTreeIndex index) {
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    // Without bounds, we could not prune anything.
+    if(!(df instanceof SpatialPrimitiveDistanceFunction) && !df.isMetric()) {
+      return null;
+    }
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(distanceQuery.getRelation().size());
+    Node root = index.getJoinHierarchy(df, ids);
+    return root != null ? new DualTreeKNNJoin<>(distanceQuery, ids, root) : null;
+  }
+
+  /**
+   * Get the ids processed by the join.
+   *
+   * @return Object ids
+   */
+  public ArrayDBIDs getDBIDs() {
+    return ids;
+  }
+
+  /**
+   * Compute the k nearest neighbors of every object.
+   *
+   * @param k Number of neighbors
+   * @param storage Output storage, must cover all ids of the join
+   */
+  public void run(int k, WritableDataStore<? super KNNList> storage) {
+    run(k, null, storage);
+  }
+
+  /**
+   * Compute the k nearest neighbors of the given query objects. All indexed
+   * objects are still candidate neighbors, but query subtrees without query
+   * objects are skipped.
+   *
+   * @param k Number of neighbors
+   * @param queries Query objects (must be indexed), {@code null} for all
+   * @param storage Output storage, must cover the query objects
+   */
+  public void run(int k, DBIDs queries, WritableDataStore<? super KNNList> storage) {
+    final int size = ids.size();
+    if(size == 0) {
+      return;
+    }
+    prepare(root, ids.iter(), ids.iter());
+    final KNNHeap[] heaps = new KNNHeap[size];
+    // Ranges have a fast contains, otherwise use a hash set.
+    final DBIDs qset = queries == null || queries instanceof DBIDRange ? queries : DBIDUtil.ensureSet(queries);
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < size; i++) {
+      heaps[i] = qset == null || qset.contains(it.seek(i)) ? DBIDUtil.newHeap(k) : null;
+    }
+    if(qset != null) {
+      markQueries(root, heaps);
+    }
+    List<Node> tasks = new ArrayList<>();
+    collectTasks(root, Math.max(MIN_TASK_SIZE, size >>> 6), tasks);
+    int total = 0;
+    for(Node q : tasks) {
+      total += q.end - q.start;
+    }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Dual-tree kNN join", total, LOG) : null;
+    ParallelExecutor.runBlocks(tasks.size(), 1, (start, end) -> {
+      Worker worker = new Worker(heaps);
+      for(int i = start; i < end; i++) {
+        final Node q = tasks.get(i);
+        worker.join(q, root);
+        if(prog != null) {
+          prog.incrementProcessed(q.end - q.start, LOG);
+        }
+      }
+    });
+    LOG.ensureCompleted(prog);
+    for(int i = 0; i < size; i++) {
+      if(heaps[i] != null) {
+        storage.put(it.seek(i), heaps[i].toKNNList());
+        heaps[i] = null;
+      }
+    }
+  }
+
+  /**
+   * Exclude the query subtrees without query objects, by setting their kNN
+   * distance bound to negative infinity.
+   *
+   * @param node Current node
+   * @param heaps kNN heaps, {@code null} for non-query objects
+   * @return {@code true} if the node contains a query object
+   */
+  private static boolean markQueries(Node node, KNNHeap[] heaps) {
+    boolean found = false;
+    if(node.leaf) {
+      for(int i = node.start; i < node.end && !found; i++) {
+        found = heaps[i] != null;
+      }
+    }
+    else {
+      for(Node child : node.children) {
+        found |= markQueries(child, heaps);
+      }
+    }
+    if(!found) {
+      node.bound = Double.NEGATIVE_INFINITY;
+    }
+    return found;
+  }
+
+  /**
+   * Collect the query subtrees to process in parallel.
+   *
+   * @param node Current node
+   * @param maxsize Maximum task size
+   * @param tasks Output list
+   */
+  private static void collectTasks(Node node, int maxsize, List<Node> tasks) {
+    if(node.bound == Double.NEGATIVE_INFINITY) {
+      return; // No query objects.
+    }
+    if(node.leaf || node.end - node.start <= maxsize) {
+      tasks.add(node);
+      return;
+    }
+    for(Node child : node.children) {
+      collectTasks(child, maxsize, tasks);
+    }
+  }
+
+  /**
+   * Compute the bounding boxes and/or balls, bottom-up.
+   *
+   * @param node Current node
+   * @param a First iterator
+   * @param b Second iterator
+   */
+  private void prepare(Node node, DBIDArrayIter a, DBIDArrayIter b) {
+    assert node.start < node.end : "Empty nodes are not allowed.";
+    node.leaf = node.children == null || node.end - node.start <= MIN_LEAF_SIZE;
+    if(!node.leaf) {
+      for(Node child : node.children) {
+        prepare(child, a, b);
+      }
+    }
+    node.bound = node.minkdist = Double.POSITIVE_INFINITY;
+    if(spatial != null) {
+      if(node.leaf) {
+        node.box = new ModifiableHyperBoundingBox((SpatialComparable) objs.get(node.start));
+        for(int i = node.start + 1; i < node.end; i++) {
+          node.box.extend((SpatialComparable) objs.get(i));
+        }
+      }
+      else {
+        node.box = new ModifiableHyperBoundingBox(node.children[0].box);
+        for(int i = 1; i < node.children.length; i++) {
+          node.box.extend(node.children[i].box);
+        }
+      }
+    }
+    if(metric) {
+      double r = 0.;
+      if(node.leaf) {
+        for(int i = node.start; i < node.end; i++) {
+          r = Math.max(r, i != node.center ? distance(node.center, i, a, b) : 0.);
+        }
+      }
+      else {
+        // Triangle inequality, via the centers of the children:
+        for(Node child : node.children) {
+          r = Math.max(r, child.center != node.center ? distance(node.center, child.center, a, b) + child.radius : child.radius);
+        }
+      }
+      node.radius = r;
+      node.diameter = 2. * r;
+    }
+  }
+
+  /**
+   * Compute the distance of two objects.
+   *
+   * @param i First offset
+   * @param j Second offset
+   * @param a Iterator for the first object
+   * @param b Iterator for the second object
+   * @return Distance
+   */
+  private double distance(int i, int j, DBIDArrayIter a, DBIDArrayIter b) {
+    return primitive != null ? primitive.distance(objs.get(i), objs.get(j)) : distanceQuery.distance(a.seek(i), b.seek(j));
+  }
+
+  /**
+   * Processing state of a single thread.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  private class Worker {
+    /**
+     * kNN heaps, in leaf order.
+     */
+    private final KNNHeap[] heaps;
+
+    /**
+     * Iterators for DBID-based distances.
+     */
+    private final DBIDArrayIter a = ids.iter(), b = ids.iter();
+
+    /**
+     * Constructor.
+     *
+     * @param heaps kNN heaps
+     */
+    Worker(KNNHeap[] heaps) {
+      this.heaps = heaps;
+    }
+
+    /**
+     * Process a pair of nodes that could not be pruned.
+     *
+     * @param q Query node
+     * @param r Reference node
+     */
+    void join(Node q, Node r) {
+      if(q.leaf) {
+        if(r.leaf) {
+          baseCase(q, r);
+        }
+        else {
+          descend(q, r);
+        }
+        return;
+      }
+      double max = 0., min = Double.POSITIVE_INFINITY;
+      for(Node qc : q.children) {
+        if(r.leaf) {
+          if(minDist(qc, r) <= qc.bound) {
+            join(qc, r);
+          }
+        }
+        else {
+          descend(qc, r);
+        }
+        max = Math.max(max, qc.bound);
+        min = Math.min(min, qc.minkdist);
+      }
+      q.updateBound(max, min);
+    }
+
+    /**
+     * Process the children of the reference node, closest first.
+     *
+     * @param q Query node
+     * @param r Reference node
+     */
+    private void descend(Node q, Node r) {
+      final int n = r.children.length;
+      double[] dists = new double[n];
+      int[] order = new int[n];
+      for(int i = 0; i < n; i++) {
+        final Node rc = r.children[i];
+        // Visit the node containing the query node first, as self-join.
+        dists[i] = rc.start <= q.start && q.end <= rc.end ? -1. : minDist(q, rc);
+        order[i] = i;
+      }
+      DoubleIntegerArrayQuickSort.sort(dists, order, n);
+      for(int i = 0; i < n && dists[i] <= q.bound; i++) {
+        join(q, r.children[order[i]]);
+      }
+    }
+
+    /**
+     * Compare all objects of two leaf nodes.
+     *
+     * @param q Query node
+     * @param r Reference node
+     */
+    private void baseCase(Node q, Node r) {
+      double max = 0., min = Double.POSITIVE_INFINITY;
+      for(int i = q.start; i < q.end; i++) {
+        final KNNHeap heap = heaps[i];
+        if(heap == null) {
+          continue; // Not a query object.
+        }
+        double kdist = heap.getKNNDistance();
+        if(kdist == Double.POSITIVE_INFINITY || minDist(i, r) <= kdist) {
+          for(int j = r.start; j < r.end; j++) {
+            final double d = distance(i, j, a, b);
+            if(d <= kdist) {
+              kdist = heap.insert(d, b.seek(j));
+            }
+          }
+        }
+        max = Math.max(max, kdist);
+        min = Math.min(min, kdist);
+      }
+      q.updateBound(max, min);
+    }
+
+    /**
+     * Lower bound of the distances between two nodes.
+     *
+     * @param q Query node
+     * @param r Reference node
+     * @return Lower bound
+     */
+    private double minDist(Node q, Node r) {
+      if(spatial != null) {
+        return spatial.minDist(q.box, r.box);
+      }
+      if(metric) { // Bounding balls
+        final double d = distance(q.center, r.center, a, b) - q.radius - r.radius;
+        return d > 0. ? d : 0.;
+      }
+      return 0.;
+    }
+
+    /**
+     * Lower bound of the distances from an object to a node.
+     *
+     * @param i Object offset
+     * @param r Reference node
+     * @return Lower bound
+     */
+    private double minDist(int i, Node r) {
+      if(spatial != null) {
+        return spatial.minDist((SpatialComparable) objs.get(i), r.box);
+      }
+      if(metric) {
+        final double d = distance(i, r.center, a, b) - r.radius;
+        return d > 0. ? d : 0.;
+      }
+      return 0.;
+    }
+  }
+
+  /**
+   * Node of the join hierarchy.
+   *
+   * @author agent
+   */
+  public static class Node {
+    /**
+     * Range of objects covered, in leaf order.
+     */
+    final int start, end;
+
+    /**
+     * Child nodes, {@code null} for leaves.
+     */
+    final Node[] children;
+
+    /**
+     * Offset of the center object, for bounding balls.
+     */
+    final int center;
+
+    /**
+     * Process as leaf: actual leaves, and small subtrees.
+     */
+    boolean leaf;
+
+    /**
+     * Bounding box (spatial distances).
+     */
+    ModifiableHyperBoundingBox box;
+
+    /**
+     * Radius of the bounding ball around the center (metric distances).
+     */
+    double radius;
+
+    /**
+     * Diameter of the node (metric distances only).
+     */
+    double diameter = Double.POSITIVE_INFINITY;
+
+    /**
+     * Upper bound of the kNN distances of the objects in this node.
+     */
+    double bound = Double.POSITIVE_INFINITY;
+
+    /**
+     * Minimum kNN distance of the objects in this node.
+     */
+    double minkdist = Double.POSITIVE_INFINITY;
+
+    /**
+     * Constructor.
+     *
+     * @param start First object (inclusive)
+     * @param end Last object (exclusive)
+     * @param children Child nodes, {@code null} for leaves
+     */
+    public Node(int start, int end, Node[] children) {
+      this(start, end, children, start);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param start First object (inclusive)
+     * @param end Last object (exclusive)
+     * @param children Child nodes, {@code null} for leaves
+     * @param center Offset of a central object (e.g. the routing object)
+     */
+    public Node(int start, int end, Node[] children, int center) {
+      super();
+      assert start <= center && center < end;
+      this.start = start;
+      this.end = end;
+      this.children = children;
+      this.center = center;
+    }
+
+    /**
+     * Update the kNN distance bound of the node: for metrics, the kNN distance
+     * of any object is at most the kNN distance of another object in the node
+     * plus the diameter.
+     *
+     * @param max Maximum kNN distance
+     * @param min Minimum kNN distance
+     */
+    void updateBound(double max, double min) {
+      bound = Math.min(max, min + diameter);
+      minkdist = min;
+    }
+
+    /**
+     * Get the offset of the center object.
+     *
+     * @return Center offset
+     */
+    public int getCenter() {
+      return center;
+    }
+
+    /**
+     * Test for leaf nodes.
+     *
+     * @return {@code true} if this is a leaf node
+     */
+    public boolean isLeaf() {
+      return children == null;
+    }
+  }
+}
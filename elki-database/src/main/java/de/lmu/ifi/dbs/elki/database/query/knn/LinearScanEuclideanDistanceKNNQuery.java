@@ -24,7 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -32,6 +35,8 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DenseFloatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.DenseNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
@@ -82,6 +87,18 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    * @return Heap
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
+    if(relation instanceof DenseNumberVectorRelation) {
+      final DenseNumberVectorRelation dense = (DenseNumberVectorRelation) relation;
+      if(dense.getDimensionality() == obj.getDimensionality()) {
+        return linearScanDense(dense, iter, obj.toArray(), heap);
+      }
+    }
+    if(relation instanceof DenseFloatVectorRelation) {
+      final DenseFloatVectorRelation dense = (DenseFloatVectorRelation) relation;
+      if(dense.getDimensionality() == obj.getDimensionality()) {
+        return linearScanDense(dense, iter, obj.toArray(), heap);
+      }
+    }
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
@@ -94,17 +111,95 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     return heap;
   }
 
+  /**
+   * Main loop of the linear scan, reading the coordinates directly from a
+   * dense data block.
+   *
+   * @param relation Data relation
+   * @param iter ID iterator
+   * @param obj Query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private static KNNHeap linearScanDense(DenseNumberVectorRelation relation, DBIDIter iter, final double[] obj, KNNHeap heap) {
+    final double[] data = relation.getData();
+    final int dim = obj.length;
+    double max = Double.POSITIVE_INFINITY;
+    while(iter.valid()) {
+      final int off = relation.getOffset(iter);
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = obj[d] - data[off + d];
+        agg += delta * delta;
+      }
+      if(agg <= max) {
+        max = heap.insert(agg, iter);
+      }
+      iter.advance();
+    }
+    return heap;
+  }
+
+  /**
+   * Main loop of the linear scan, reading the coordinates directly from a
+   * dense single precision data block.
+   *
+   * @param relation Data relation
+   * @param iter ID iterator
+   * @param obj Query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private static KNNHeap linearScanDense(DenseFloatVectorRelation relation, DBIDIter iter, final double[] obj, KNNHeap heap) {
+    final float[] data = relation.getData();
+    final int dim = obj.length;
+    double max = Double.POSITIVE_INFINITY;
+    while(iter.valid()) {
+      final int off = relation.getOffset(iter);
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = obj[d] - data[off + d];
+        agg += delta * delta;
+      }
+      if(agg <= max) {
+        max = heap.insert(agg, iter);
+      }
+      iter.advance();
+    }
+    return heap;
+  }
+
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final Relation<? extends O> relation = getRelation();
     final int size = ids.size();
     final List<KNNHeap> heaps = new ArrayList<>(size);
-    List<O> objs = new ArrayList<>(size);
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+    for(int i = 0; i < size; i++) {
       heaps.add(DBIDUtil.newHeap(k));
-      objs.add(relation.get(iter));
     }
-    linearScanBatchKNN(objs, heaps);
+    final SimpleTypeInformation<?> type = relation.getDataTypeInformation();
+    if(type instanceof VectorFieldTypeInformation && ((VectorFieldTypeInformation<?>) type).mindim() == ((VectorFieldTypeInformation<?>) type).maxdim()) {
+      // Fixed dimensionality: copy the query objects into a flat array.
+      final int dim = ((VectorFieldTypeInformation<?>) type).mindim();
+      double[] qdata = new double[size * dim];
+      List<O> objs = new ArrayList<>(size);
+      int off = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off += dim) {
+        O obj = relation.get(iter);
+        for(int d = 0; d < dim; d++) {
+          qdata[off + d] = obj.doubleValue(d);
+        }
+        objs.add(obj);
+      }
+      linearScanBatchKNN(qdata, dim, objs, heaps);
+    }
+    else {
+      List<O> objs = new ArrayList<>(size);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        objs.add(relation.get(iter));
+      }
+      linearScanBatchKNN(objs, heaps);
+    }
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -123,17 +218,126 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     final Relation<? extends O> relation = getRelation();
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = squared.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    runBatch(objs.size(), relation.size(), (qstart, qend) -> {
+      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+        O candidate = relation.get(iter);
+        for(int index = qstart; index < qend; index++) {
+          final KNNHeap heap = heaps.get(index);
+          final double dist = squared.distance(objs.get(index), candidate);
+          if(dist <= heap.getKNNDistance()) {
+            heap.insert(dist, iter);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Perform a blocked linear scan batch kNN, for fixed dimensionality.
+   * <p>
+   * This uses the expansion
+   * \(||x-y||^2=||x||^2+||y||^2-2\langle x,y\rangle\)
+   * to find candidates, then recomputes their exact distance (the expansion
+   * is prone to cancellation for close points) the same way as the single
+   * queries, so that both yield identical results.
+   *
+   * @param qdata Query objects, row-major
+   * @param dim Dimensionality
+   * @param objs Query objects
+   * @param heaps Heaps array
+   */
+  private void linearScanBatchKNN(double[] qdata, int dim, List<O> objs, List<KNNHeap> heaps) {
+    final Relation<? extends O> relation = getRelation();
+    final ArrayDBIDs cands = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[] qnorms = squaredNorms(qdata, dim);
+    final DenseNumberVectorRelation dense = relation instanceof DenseNumberVectorRelation ? (DenseNumberVectorRelation) relation : null;
+    runBatch(heaps.size(), cands.size(), (qstart, qend) -> {
+      final int csize = cands.size(), tsize = Math.min(CANDIDATE_BLOCK, csize);
+      final DBIDArrayIter iter = cands.iter();
+      // Without a dense data block, copy the candidates into a tile:
+      final double[] cdata = dense != null ? dense.getData() : new double[tsize * dim];
+      final double[] cnorms = new double[tsize];
+      final int[] coffs = new int[tsize];
+      for(int cstart = 0; cstart < csize; cstart += CANDIDATE_BLOCK) {
+        final int cend = Math.min(cstart + CANDIDATE_BLOCK, csize);
+        for(iter.seek(cstart); iter.getOffset() < cend; iter.advance()) {
+          final int c = iter.getOffset() - cstart;
+          if(dense != null) {
+            coffs[c] = dense.getOffset(iter);
+          }
+          else {
+            final O vec = relation.get(iter);
+            final int coff = coffs[c] = c * dim;
+            for(int d = 0; d < dim; d++) {
+              cdata[coff + d] = vec.doubleValue(d);
+            }
+          }
+          cnorms[c] = squaredNorm(cdata, coffs[c], dim);
+        }
+        for(int q = qstart, qoff = qstart * dim; q < qend; q++, qoff += dim) {
+          final KNNHeap heap = heaps.get(q);
+          final double qnorm = qnorms[q];
+          double max = heap.getKNNDistance();
+          for(int c = 0; c < cend - cstart; c++) {
+            final int coff = coffs[c];
+            double dot = 0.;
+            for(int d = 0; d < dim; d++) {
+              dot += qdata[qoff + d] * cdata[coff + d];
+            }
+            // Skip, unless within the slack for rounding errors of the expansion:
+            if(qnorm + cnorms[c] - 2 * dot - (qnorm + cnorms[c]) * 1e-10 > max) {
+              continue;
+            }
+            iter.seek(cstart + c);
+            double dist = 0.;
+            if(dense != null) {
+              for(int d = 0; d < dim; d++) {
+                final double delta = qdata[qoff + d] - cdata[coff + d];
+                dist += delta * delta;
+              }
+            }
+            else {
+              dist = SquaredEuclideanDistanceFunction.STATIC.distance(objs.get(q), relation.get(iter));
+            }
+            if(dist <= max) {
+              max = heap.insert(dist, iter);
+            }
+          }
         }
       }
+    });
+  }
+
+  /**
+   * Compute the squared norms of all rows of a data block.
+   *
+   * @param data Row-major data
+   * @param dim Dimensionality
+   * @return Squared norms
+   */
+  private static double[] squaredNorms(double[] data, int dim) {
+    final int n = dim > 0 ? data.length / dim : 0;
+    double[] norms = new double[n];
+    for(int i = 0, off = 0; i < n; i++, off += dim) {
+      norms[i] = squaredNorm(data, off, dim);
+    }
+    return norms;
+  }
+
+  /**
+   * Compute the squared norm of a single row.
+   *
+   * @param data Row-major data
+   * @param off Offset
+   * @param dim Dimensionality
+   * @return Squared norm
+   */
+  private static double squaredNorm(double[] data, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double v = data[off + d];
+      agg += v * v;
     }
+    return agg;
   }
-}
\ No newline at end of file
+}
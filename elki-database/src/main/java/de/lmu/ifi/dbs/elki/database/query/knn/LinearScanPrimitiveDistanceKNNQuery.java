@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -33,6 +34,7 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 
 /**
  * Instance of this query for a particular database.
@@ -47,6 +49,21 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * @apiviz.uses PrimitiveDistanceFunction
  */
 public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Number of queries processed together by one thread.
+   */
+  protected static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of candidates loaded together, to reuse them across queries.
+   */
+  protected static final int CANDIDATE_BLOCK = 256;
+
+  /**
+   * Minimum number of distance computations to use multiple threads.
+   */
+  protected static final long PARALLEL_THRESHOLD = 1L << 20;
+
   /**
    * Unboxed distance function.
    */
@@ -117,24 +134,68 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
 
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
+   * <p>
+   * The queries are processed in blocks of {@link #QUERY_BLOCK} (in parallel,
+   * for large enough batches), and the candidates are loaded in blocks of
+   * {@link #CANDIDATE_BLOCK}. Every heap is only modified by one thread.
    * 
    * @param objs Objects list
    * @param heaps Heaps array
    */
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
-    final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
     final Relation<? extends O> relation = getRelation();
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
+    final ArrayDBIDs cands = DBIDUtil.ensureArray(relation.getDBIDs());
+    runBatch(objs.size(), cands.size(), (start, end) -> linearScanBatchBlock(relation, cands, objs, heaps, start, end));
+  }
+
+  /**
+   * Run a batch of queries in blocks, in parallel if large enough.
+   *
+   * @param numqueries Number of queries
+   * @param numcands Number of candidates
+   * @param task Task to process a block of queries
+   */
+  protected static void runBatch(int numqueries, int numcands, ParallelExecutor.BlockTask task) {
+    if(numqueries * (long) numcands < PARALLEL_THRESHOLD) {
+      task.process(0, numqueries);
+      return;
+    }
+    ParallelExecutor.runBlocks(numqueries, QUERY_BLOCK, task);
+  }
+
+  /**
+   * Process one block of queries.
+   *
+   * @param relation Data relation
+   * @param cands Candidates
+   * @param objs Query objects
+   * @param heaps Query heaps
+   * @param qstart First query
+   * @param qend Query end (exclusive)
+   */
+  private void linearScanBatchBlock(Relation<? extends O> relation, ArrayDBIDs cands, List<O> objs, List<KNNHeap> heaps, int qstart, int qend) {
+    final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
+    final int csize = cands.size();
+    final DBIDArrayIter iter = cands.iter();
+    final Object[] tile = new Object[Math.min(CANDIDATE_BLOCK, csize)];
+    for(int cstart = 0; cstart < csize; cstart += CANDIDATE_BLOCK) {
+      final int cend = Math.min(cstart + CANDIDATE_BLOCK, csize);
+      for(iter.seek(cstart); iter.getOffset() < cend; iter.advance()) {
+        tile[iter.getOffset() - cstart] = relation.get(iter);
+      }
+      for(int index = qstart; index < qend; index++) {
+        final O obj = objs.get(index);
         final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+        double max = heap.getKNNDistance();
+        for(int c = cstart; c < cend; c++) {
+          @SuppressWarnings("unchecked")
+          final O candidate = (O) tile[c - cstart];
+          final double dist = rawdist.distance(obj, candidate);
+          if(dist <= max) {
+            max = heap.insert(dist, iter.seek(c));
+          }
         }
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -27,6 +27,8 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DenseFloatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.DenseNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import net.jafama.FastMath;
@@ -99,6 +101,20 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     // This should be more precise, but slower:
     // upper = MathUtil.floatToDoubleUpper((float)range);
     final double sqrange = upper * upper;
+    if(relation instanceof DenseNumberVectorRelation) {
+      final DenseNumberVectorRelation dense = (DenseNumberVectorRelation) relation;
+      if(dense.getDimensionality() == obj.getDimensionality()) {
+        linearScanDense(dense, iter, obj.toArray(), range, sqrange, result);
+        return;
+      }
+    }
+    if(relation instanceof DenseFloatVectorRelation) {
+      final DenseFloatVectorRelation dense = (DenseFloatVectorRelation) relation;
+      if(dense.getDimensionality() == obj.getDimensionality()) {
+        linearScanDense(dense, iter, obj.toArray(), range, sqrange, result);
+        return;
+      }
+    }
     while(iter.valid()) {
       final double sqdistance = squared.distance(obj, relation.get(iter));
       if(sqdistance <= sqrange) {
@@ -110,4 +126,66 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
       iter.advance();
     }
   }
+
+  /**
+   * Main loop for linear scan, reading the coordinates directly from a dense
+   * data block.
+   * 
+   * @param relation Data relation
+   * @param iter Iterator
+   * @param obj Query object
+   * @param range Query radius
+   * @param sqrange Squared (and slightly increased) query radius
+   * @param result Output data structure
+   */
+  private static void linearScanDense(DenseNumberVectorRelation relation, DBIDIter iter, double[] obj, double range, double sqrange, ModifiableDoubleDBIDList result) {
+    final double[] data = relation.getData();
+    final int dim = obj.length;
+    while(iter.valid()) {
+      final int off = relation.getOffset(iter);
+      double sqdistance = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = obj[d] - data[off + d];
+        sqdistance += delta * delta;
+      }
+      if(sqdistance <= sqrange) {
+        final double dist = FastMath.sqrt(sqdistance);
+        if(dist <= range) { // double check, as we increased the radius above
+          result.add(dist, iter);
+        }
+      }
+      iter.advance();
+    }
+  }
+
+  /**
+   * Main loop for linear scan, reading the coordinates directly from a dense
+   * single precision data block.
+   * 
+   * @param relation Data relation
+   * @param iter Iterator
+   * @param obj Query object
+   * @param range Query radius
+   * @param sqrange Squared (and slightly increased) query radius
+   * @param result Output data structure
+   */
+  private static void linearScanDense(DenseFloatVectorRelation relation, DBIDIter iter, double[] obj, double range, double sqrange, ModifiableDoubleDBIDList result) {
+    final float[] data = relation.getData();
+    final int dim = obj.length;
+    while(iter.valid()) {
+      final int off = relation.getOffset(iter);
+      double sqdistance = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = obj[d] - data[off + d];
+        sqdistance += delta * delta;
+      }
+      if(sqdistance <= sqrange) {
+        final double dist = FastMath.sqrt(sqdistance);
+        if(dist <= range) { // double check, as we increased the radius above
+          result.add(dist, iter);
+        }
+      }
+      iter.advance();
+    }
+  }
 }
@@ -0,0 +1,301 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Static relation storing fixed-dimensional vectors in a single row-major
+ * {@code float[]} array, the single precision variant of
+ * {@link MaterializedDenseNumberVectorRelation}.
+ * <p>
+ * {@link #get} returns flyweight views onto the shared array, which are cheap
+ * to create, but must not be modified. Because the views are not
+ * {@link FloatVector} instances, the data type of this relation is
+ * {@link NumberVector}.
+ * <p>
+ * The total number of values is limited to the maximum Java array size.
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.composedOf View
+ */
+public class MaterializedDenseFloatVectorRelation extends AbstractRelation<NumberVector> implements DenseFloatVectorRelation {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MaterializedDenseFloatVectorRelation.class);
+
+  /**
+   * Data type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Row-major data storage.
+   */
+  private final float[] data;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param name Name
+   * @param dim Dimensionality
+   * @param data Row-major data, of length {@code ids.size() * dim}
+   */
+  public MaterializedDenseFloatVectorRelation(DBIDRange ids, String name, int dim, float[] data) {
+    super();
+    assert (data.length == ids.size() * (long) dim) : "Data block has the wrong size.";
+    this.type = new VectorFieldTypeInformation<>(ViewFactory.STATIC, dim);
+    this.ids = ids;
+    this.name = name;
+    this.dim = dim;
+    this.data = data;
+  }
+
+  /**
+   * Copy the vectors of an existing relation into a dense relation.
+   *
+   * @param ids IDs
+   * @param name Name
+   * @param dim Dimensionality
+   * @param relation Relation to copy
+   * @return Dense relation
+   */
+  public static MaterializedDenseFloatVectorRelation copy(DBIDRange ids, String name, int dim, Relation<? extends NumberVector> relation) {
+    if((long) ids.size() * dim > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Data set is too large for a single data array: " + ids.size() + " x " + dim);
+    }
+    float[] data = new float[ids.size() * dim];
+    int off = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), off += dim) {
+      NumberVector vec = relation.get(it);
+      for(int d = 0; d < dim; d++) {
+        data[off + d] = vec.floatValue(d);
+      }
+    }
+    return new MaterializedDenseFloatVectorRelation(ids, name, dim, data);
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return new View(data, ids.getOffset(id) * dim, dim);
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public float[] getData() {
+    return data;
+  }
+
+  @Override
+  public int getOffset(DBIDRef id) {
+    return ids.getOffset(id) * dim;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public SimpleTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Flyweight view of a single row of the data array.
+   *
+   * @author agent
+   */
+  public static class View implements NumberVector {
+    /**
+     * Shared data array.
+     */
+    private final float[] data;
+
+    /**
+     * Offset of the first value.
+     */
+    private final int off;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param data Shared data array
+     * @param off Offset of the first value
+     * @param dim Dimensionality
+     */
+    public View(float[] data, int off, int dim) {
+      this.data = data;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return data[off + dimension];
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return data[off + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) data[off + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        ret[d] = data[off + d];
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int i = 0; i < dim; i++) {
+        featureLine.append(data[off + i]);
+        if(i + 1 < dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * Vector factory for the relation type; new vectors are {@link FloatVector}s.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  private static class ViewFactory implements NumberVector.Factory<NumberVector> {
+    /**
+     * Static instance.
+     */
+    private static final ViewFactory STATIC = new ViewFactory();
+
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return FloatVector.FACTORY.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return FloatVector.FACTORY.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public NumberVector newNumberVector(double[] values) {
+      return FloatVector.FACTORY.newNumberVector(values);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return null; // Views cannot be serialized.
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+}
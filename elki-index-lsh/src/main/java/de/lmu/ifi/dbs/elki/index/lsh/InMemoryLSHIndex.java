@@ -21,14 +21,15 @@
 package de.lmu.ifi.dbs.elki.index.lsh;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -51,7 +52,6 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraint
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 /**
  * Locality Sensitive Hashing.
@@ -85,6 +85,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table (multi-probe LSH).
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -93,15 +98,28 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table.
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes);
   }
 
   @Override
@@ -111,6 +129,9 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
   /**
    * Instance of a LSH index for a single relation.
+   * <p>
+   * Each hash table is stored in a packed (CSR) layout: an offset array with
+   * one entry per bucket, and an array of object offsets sorted by bucket.
    *
    * @author Erich Schubert
    *
@@ -123,25 +144,43 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * Indexed objects, addressed by their offset.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Start of each bucket in {@link #buckets}, per hash table.
      */
-    ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
+    int[][] offsets;
+
+    /**
+     * Object offsets, sorted by bucket, per hash table.
+     */
+    int[][] buckets;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    private int probes;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
+     * @param probes Number of buckets to probe in each table
      */
-    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
     }
 
     @Override
@@ -157,57 +196,73 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new Int2ObjectOpenHashMap<DBIDs>(numberOfBuckets));
-      }
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      offsets = new int[numhash][];
+      buckets = new int[numhash][];
 
       // TODO: We assume all hash functions have the same dimensionality.
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      // Bucket of each object, per table
+      int[][] codes = new int[numhash][size];
+      for(int i = 0; i < numhash; i++) {
+        offsets[i] = new int[numberOfBuckets + 1];
+      }
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
         V obj = relation.get(iter);
+        final int off = iter.getOffset();
         for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
+          // Get the initial (unbounded) hash code, reduce to hash table size
+          final int bucket = bucket(hashfunctions.get(i).hashObject(obj, buf));
+          codes[i][off] = bucket;
+          ++offsets[i][bucket + 1];
         }
         LOG.incrementProcessed(progress);
       }
       LOG.ensureCompleted(progress);
+      // Pack the tables (counting sort by bucket):
+      for(int i = 0; i < numhash; i++) {
+        final int[] start = offsets[i], code = codes[i];
+        for(int b = 0; b < numberOfBuckets; b++) {
+          start[b + 1] += start[b];
+        }
+        final int[] pos = Arrays.copyOf(start, numberOfBuckets);
+        final int[] table = buckets[i] = new int[size];
+        for(int off = 0; off < size; off++) {
+          table[pos[code[off]]++] = off;
+        }
+        codes[i] = null;
+      }
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
         for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          for(DBIDs set : table.values()) {
-            final int size = set.size();
-            min = size < min ? size : min;
-            max = size > max ? size : max;
+          final int[] start = offsets[i];
+          for(int b = 0; b < numberOfBuckets; b++) {
+            final int bsize = start[b + 1] - start[b];
+            if(bsize > 0) {
+              min = bsize < min ? bsize : min;
+              max = bsize > max ? bsize : max;
+            }
           }
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", numhash));
       }
     }
 
+    /**
+     * Reduce a hash code to the hash table size.
+     *
+     * @param hash Hash code
+     * @return Bucket number
+     */
+    private int bucket(int hash) {
+      final int bucket = hash % numberOfBuckets;
+      return bucket < 0 ? bucket + numberOfBuckets : bucket;
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -242,31 +297,43 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     }
 
     /**
-     * Get the candidates: points which have at least one hash bucket in common.
-     * 
+     * Get the candidates: points which have at least one probed hash bucket in
+     * common with the query.
+     *
      * @param obj Query object
-     * @return Candidates
+     * @return Sorted offsets of the candidates, without duplicates
      */
-    protected DBIDs getCandidates(V obj) {
-      ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
+    protected int[] getCandidates(V obj) {
+      final int numhash = hashfunctions.size();
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] hashes = new int[probes];
+      int[] cands = new int[16];
+      int size = 0;
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
-          if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+        final int[] start = offsets[i], table = buckets[i];
+        final int nump = hashfunctions.get(i).hashProbes(obj, buf, hashes);
+        for(int p = 0; p < nump; p++) {
+          final int bucket = bucket(hashes[p]);
+          final int begin = start[bucket], end = start[bucket + 1];
+          if(begin == end) {
+            continue;
           }
-          candidates.addDBIDs(cur);
+          if(size + end - begin > cands.length) {
+            cands = Arrays.copyOf(cands, Math.max(cands.length << 1, size + end - begin));
+          }
+          System.arraycopy(table, begin, cands, size, end - begin);
+          size += end - begin;
+        }
+      }
+      // Remove duplicates:
+      Arrays.sort(cands, 0, size);
+      int n = 0;
+      for(int j = 0; j < size; j++) {
+        if(n == 0 || cands[n - 1] != cands[j]) {
+          cands[n++] = cands[j];
         }
       }
-      return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
+      return Arrays.copyOf(cands, n);
     }
 
     /**
@@ -288,14 +355,15 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
       @Override
       public KNNList getKNNForObject(V obj, int k) {
-        DBIDs candidates = getCandidates(obj);
+        int[] candidates = getCandidates(obj);
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
-          final double dist = distanceQuery.distance(obj, iter);
-          super.incRefinements(1);
-          heap.insert(dist, iter);
+        DBIDVar var = DBIDUtil.newVar();
+        for(int off : candidates) {
+          final double dist = distanceQuery.distance(obj, ids.assignVar(off, var));
+          heap.insert(dist, var);
         }
+        super.incRefinements(candidates.length);
         return heap.toKNNList();
       }
     }
@@ -319,15 +387,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
       @Override
       public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
-        DBIDs candidates = getCandidates(obj);
+        int[] candidates = getCandidates(obj);
         // Refine.
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
-          final double dist = distanceQuery.distance(obj, iter);
-          super.incRefinements(1);
+        DBIDVar var = DBIDUtil.newVar();
+        for(int off : candidates) {
+          final double dist = distanceQuery.distance(obj, ids.assignVar(off, var));
           if(dist <= range) {
-            result.add(dist, iter);
+            result.add(dist, var);
           }
         }
+        super.incRefinements(candidates.length);
       }
     }
   }
@@ -355,6 +424,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each hash table (multi-probe LSH).
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH), if supported by the hash functions.");
+
     /**
      * LSH hash function family to use.
      */
@@ -370,6 +444,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -390,11 +469,17 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
@@ -46,6 +46,23 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the buckets to probe for a query, for
+   * multi-probe LSH. The first value must be the hash value of the object
+   * itself, followed by nearby buckets in order of increasing distance.
+   * <p>
+   * The default implementation only returns the object's own hash value.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param probes Output array, its length is the maximum number of probes.
+   * @return Number of hash values produced
+   */
+  default int hashProbes(V obj, double[] buf, int[] probes) {
+    probes[0] = hashObject(obj, buf);
+    return 1;
+  }
+
   /**
    * Get the number of projections performed.
    *
@@ -20,10 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.projection.random.RandomProjectionFamily;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -118,6 +120,101 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  /**
+   * Query-directed multi-probe sequence: perturb the bin of each projection by
+   * -1 or +1, and enumerate the perturbation sets in increasing order of the
+   * squared distance of the query to the perturbed bin boundaries, using the
+   * shift/expand scheme of Lv et al.
+   */
+  @Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+      title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+      booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+      url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+      bibkey = "DBLP:conf/vldb/LvJWCL07")
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] probes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length;
+    // Perturbation 2i moves to bin ai-1, 2i+1 to bin ai+1.
+    final double[] scores = new double[num << 1];
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double v = (buf[i] + shift[i]) * iwidth;
+      final int ai = (int) Math.floor(v);
+      final double f = v - ai;
+      scores[i << 1] = f * f;
+      scores[(i << 1) + 1] = (1 - f) * (1 - f);
+      t1sum += (randoms1[i] & MASK32) * ai; // unsigned math!
+    }
+    probes[0] = fastModPrime(t1sum);
+    if(probes.length == 1) {
+      return 1;
+    }
+    // Sort perturbations by score (insertion sort, the arrays are tiny).
+    final int np = num << 1;
+    final int[] order = new int[np];
+    for(int i = 0; i < np; i++) {
+      final double s = scores[i];
+      int j = i;
+      for(; j > 0 && scores[order[j - 1]] > s; j--) {
+        order[j] = order[j - 1];
+      }
+      order[j] = i;
+    }
+    // Perturbation sets, as ascending positions in the sorted order.
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+    heap.add(scores[order[0]], new int[] { 0 });
+    int n = 1;
+    while(n < probes.length && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < np) {
+        final double cl = scores[order[last]], cn = scores[order[last + 1]];
+        // Shift: replace the largest element with the next.
+        int[] shifted = Arrays.copyOf(set, set.length);
+        shifted[set.length - 1] = last + 1;
+        heap.add(score - cl + cn, shifted);
+        // Expand: add the next element.
+        int[] expanded = Arrays.copyOf(set, set.length + 1);
+        expanded[set.length] = last + 1;
+        heap.add(score + cn, expanded);
+      }
+      if(!isValidPerturbation(order, set)) {
+        continue;
+      }
+      long h = t1sum;
+      for(int j = 0; j < set.length; j++) {
+        final int pj = order[set[j]];
+        final long r = randoms1[pj >>> 1] & MASK32; // unsigned math!
+        h += ((pj & 1) == 0) ? -r : r;
+      }
+      probes[n++] = fastModPrime(h);
+    }
+    return n;
+  }
+
+  /**
+   * A perturbation set is valid if it does not move any projection twice.
+   *
+   * @param order Perturbations, sorted by score
+   * @param set Perturbation set, as positions in the sorted order
+   * @return {@code true} when valid
+   */
+  private static boolean isValidPerturbation(int[] order, int[] set) {
+    for(int j = 1; j < set.length; j++) {
+      final int dim = order[set[j]] >>> 1;
+      for(int k = 0; k < j; k++) {
+        if((order[set[k]] >>> 1) == dim) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
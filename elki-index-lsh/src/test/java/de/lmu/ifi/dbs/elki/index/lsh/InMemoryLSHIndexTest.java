@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+/**
+ * Unit test for the in-memory LSH index, with and without multi-probing.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class InMemoryLSHIndexTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // size of the data set
+  int shoulds = 330;
+
+  // number of kNN to query
+  int k = 10;
+
+  @Test
+  public void testHashProbes() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    EuclideanHashFunctionFamily family = new ELKIBuilder<>(EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 0L) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .1) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3) //
+        .build();
+    LocalitySensitiveHashFunction<? super NumberVector> hashfunc = family.generateHashFunctions(rel, 1).get(0);
+    double[] buf = new double[hashfunc.getNumberOfProjections()];
+    int[] probes = new int[10];
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector vec = rel.get(it);
+      int n = hashfunc.hashProbes(vec, buf, probes);
+      assertEquals("Not enough probes", probes.length, n);
+      assertEquals("First probe is not the object's bucket.", hashfunc.hashObject(vec), probes[0]);
+      IntOpenHashSet seen = new IntOpenHashSet();
+      for(int i = 0; i < n; i++) {
+        assertTrue("Duplicate probe.", seen.add(probes[i]));
+      }
+    }
+  }
+
+  @Test
+  public void testMultiProbeRecall() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+    double single = recall(rel, dq, lin, 1);
+    double multi = recall(rel, dq, lin, 8);
+    assertEquals("Recall with one probe has changed.", 0.87697, single, 1e-5);
+    assertEquals("Recall with multi-probing has changed.", 0.94667, multi, 1e-5);
+  }
+
+  /**
+   * Compute the kNN recall of an LSH index with two hash tables.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param lin Exact kNN query
+   * @param probes Number of probes
+   * @return Recall
+   */
+  private double recall(Relation<DoubleVector> rel, DistanceQuery<DoubleVector> dq, KNNQuery<DoubleVector> lin, int probes) {
+    InMemoryLSHIndex<DoubleVector>.Instance index = new ELKIBuilder<InMemoryLSHIndex<DoubleVector>>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 0L) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .1) //
+        .with(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3) //
+        .with(InMemoryLSHIndex.Parameterizer.L_ID, 2) //
+        .with(InMemoryLSHIndex.Parameterizer.PROBES_ID, probes) //
+        .build().instantiate(rel);
+    index.initialize();
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq, k);
+    int found = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      HashSetModifiableDBIDs exact = DBIDUtil.newHashSet(lin.getKNNForDBID(it, k));
+      for(DBIDIter nn = knnq.getKNNForDBID(it, k).iter(); nn.valid(); nn.advance()) {
+        found += exact.contains(nn) ? 1 : 0;
+      }
+    }
+    return found / (double) (rel.size() * k);
+  }
+}
@@ -35,6 +35,7 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeKNNJoin;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -53,6 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
  * distances) to each database object.
  * <p>
  * Used for example by {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF}.
+ * <p>
+ * If the relation has an index supporting {@link DualTreeKNNJoin}, all
+ * neighbors are computed with a single join instead of one query per object.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -115,10 +119,15 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
       log.statistics(new LongStatistic(this.getClass().getName() + ".k", k));
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
-    FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
+    // Use a dual-tree join, if the relation has a suitable index:
+    DualTreeKNNJoin<O> join = DualTreeKNNJoin.instantiate(getDistanceQuery());
+    FiniteProgress progress = join == null && getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
     // Try bulk
     List<? extends KNNList> kNNList = null;
-    if(usebulk) {
+    if(join != null) {
+      join.run(k, storage);
+    }
+    else if(usebulk) {
       kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
       if(kNNList != null) {
         int i = 0;
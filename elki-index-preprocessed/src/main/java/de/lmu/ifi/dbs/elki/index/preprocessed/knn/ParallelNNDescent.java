@@ -0,0 +1,697 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Parallel variant of {@link NNDescent}, using compact primitive arrays.
+ * <p>
+ * The neighbor heaps are stored in flat arrays indexed by the object offset,
+ * and the candidate sets of each iteration are bounded arrays, instead of hash
+ * sets per object. The local joins, which perform all distance computations,
+ * run in parallel; heap updates are synchronized on lock stripes. Sampling and
+ * the reverse neighbor computation are linear in the data size and run
+ * sequentially, using a single random generator.
+ * <p>
+ * Because concurrent heap updates may occur in any order, the result of a
+ * parallel run is not exactly reproducible (but of the same quality).
+ * <p>
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br>
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br>
+ * Proc. 20th Int. Conf. on World Wide Web (WWW'11)
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong, C. Moses, K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th Int. Conf. on World Wide Web (WWW'11)", //
+    url = "https://doi.org/10.1145/1963405.1963487", //
+    bibkey = "DBLP:conf/www/DongCL11")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of lock stripes, must be a power of two.
+   */
+  private static final int LOCK_STRIPES = 1 << 12;
+
+  /**
+   * Number of objects per parallel block.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Early termination parameter
+   */
+  private final double delta;
+
+  /**
+   * Sample rate
+   */
+  private final double rho;
+
+  /**
+   * Maximum number of iterations
+   */
+  private final int iterations;
+
+  /**
+   * Do not use initial neighbors
+   */
+  private final boolean noInitialNeighbors;
+
+  /**
+   * Heap size (k - 1, as the query point is added in the end).
+   */
+  private int kk;
+
+  /**
+   * Neighbor heaps, kk entries per object, with max-heap order.
+   */
+  private int[] nbrs;
+
+  /**
+   * Neighbor distances.
+   */
+  private double[] dists;
+
+  /**
+   * Flags of neighbors not yet used in a local join.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Number of neighbors in each heap.
+   */
+  private int[] counts;
+
+  /**
+   * Lock stripes for the heaps.
+   */
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  /**
+   * Distance computations.
+   */
+  private final AtomicLong distComputations = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param noInitialNeighbors Do not use initial neighbors
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+    super(relation, distanceFunction, k);
+    this.rnd = rnd;
+    this.delta = delta;
+    this.rho = rho;
+    this.noInitialNeighbors = noInitialNeighbors;
+    this.iterations = iterations;
+    for(int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  @Override
+  protected void preprocess() {
+    final String prefix = getClass().getName();
+    final long starttime = System.currentTimeMillis();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final Random random = rnd.getSingleThreadedRandom();
+    // to add query point itself in the end, internally (k-1) is used
+    kk = Math.min(k - 1, size - 1);
+    // Sample size
+    final int items = Math.min((int) Math.ceil(rho * kk), size - 1);
+    // All per-object arrays are flat, indexed by int offsets.
+    if((long) size * ((long) kk + items) > Integer.MAX_VALUE) {
+      throw new AbortException("The neighbor and candidate arrays of " + size + " objects with k=" + k + " and rho=" + rho + " exceed the Java maximum array size. Use NNDescent instead.");
+    }
+    nbrs = new int[size * kk];
+    dists = new double[size * kk];
+    isnew = new boolean[size * kk];
+    counts = new int[size];
+
+    // Candidate lists of the local join: forward and reverse samples.
+    // All old forward neighbors are kept, only the reverse lists are sampled.
+    final int cap = items << 1, ocap = kk + items;
+    final int[] newc = new int[size * cap], oldc = new int[size * ocap];
+    final int[] newn = new int[size], oldn = new int[size];
+    // Reverse samples, and number of reverse neighbors seen.
+    final int[] rnew = new int[size * items], rold = new int[size * items];
+    final int[] rnewn = new int[size], roldn = new int[size];
+
+    // Initial random candidates:
+    long counter_all = 0;
+    {
+      DBIDVar a = DBIDUtil.newVar(), b = DBIDUtil.newVar();
+      for(int i = 0; i < size; i++) {
+        newn[i] = sampleOthers(i, size, items, random, newc, i * cap);
+        if(!noInitialNeighbors) {
+          ids.assignVar(i, a);
+          for(int j = 0; j < newn[i]; j++) {
+            final int o = newc[i * cap + j];
+            insert(i, o, distanceQuery.distance(a, ids.assignVar(o, b)), false);
+          }
+          counter_all += newn[i];
+        }
+        // Random reverse neighbors, too.
+        rnewn[i] = sampleOthers(i, size, items, random, rnew, i * items);
+      }
+      distComputations.addAndGet(counter_all);
+    }
+    // Merge the initial reverse samples:
+    for(int i = 0; i < size; i++) {
+      newn[i] = merge(newc, i * cap, newn[i], rnew, i * items, rnewn[i]);
+    }
+
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("NNDescent iteration", LOG) : null;
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      // Local joins, in parallel:
+      final AtomicLong updates = new AtomicLong(), counter = new AtomicLong();
+      ParallelExecutor.runBlocks(size, BLOCKSIZE, (start, end) -> {
+        DBIDVar a = DBIDUtil.newVar(), b = DBIDUtil.newVar();
+        long u = 0, c = 0;
+        for(int i = start; i < end; i++) {
+          final int nbase = i * cap, obase = i * ocap, nn = newn[i], no = oldn[i];
+          for(int x = 0; x < nn; x++) {
+            final int p = newc[nbase + x];
+            ids.assignVar(p, a);
+            // new X new, each pair once
+            for(int y = x + 1; y < nn; y++) {
+              final int q = newc[nbase + y];
+              final double d = distanceQuery.distance(a, ids.assignVar(q, b));
+              u += (insert(p, q, d, true) ? 1 : 0) + (insert(q, p, d, true) ? 1 : 0);
+            }
+            // new X old
+            for(int y = 0; y < no; y++) {
+              final int q = oldc[obase + y];
+              if(p != q) {
+                final double d = distanceQuery.distance(a, ids.assignVar(q, b));
+                u += (insert(p, q, d, true) ? 1 : 0) + (insert(q, p, d, true) ? 1 : 0);
+              }
+            }
+          }
+          c += (nn * (nn - 1L) >>> 1) + nn * (long) no;
+        }
+        updates.addAndGet(u);
+        counter.addAndGet(c);
+      });
+      counter_all += counter.get();
+      distComputations.addAndGet(counter.get());
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", updates.get() / (double) (kk * (long) size)));
+      }
+      LOG.incrementProcessed(progress);
+      if(updates.get() <= delta * kk * size) {
+        LOG.verbose("NNDescent terminated because the update rate got smaller than delta.");
+        break;
+      }
+      // Build the candidates for the next iteration:
+      buildCandidates(size, items, random, newc, newn, oldc, oldn, rnew, rnewn, rold, roldn);
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("NNDescent terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+    // Convert to kNN lists, adding the query point itself.
+    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
+    DBIDVar var = DBIDUtil.newVar();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset(), base = i * kk;
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0, it);
+      for(int j = 0; j < counts[i]; j++) {
+        heap.insert(dists[base + j], ids.assignVar(nbrs[base + j], var));
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    // Release memory
+    nbrs = null;
+    dists = null;
+    isnew = null;
+    counts = null;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".iterations", iter));
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", System.currentTimeMillis() - starttime));
+    }
+  }
+
+  /**
+   * Build the candidate lists for the next local join: a sample of the new
+   * neighbors, all old neighbors, and samples of the reverse neighbors.
+   *
+   * @param size Data set size
+   * @param items Sample size
+   * @param random Random generator
+   * @param newc New candidates (output)
+   * @param newn Number of new candidates (output)
+   * @param oldc Old candidates (output)
+   * @param oldn Number of old candidates (output)
+   * @param rnew Reverse new neighbor samples (scratch)
+   * @param rnewn Reverse new neighbors seen (scratch)
+   * @param rold Reverse old neighbor samples (scratch)
+   * @param roldn Reverse old neighbors seen (scratch)
+   */
+  private void buildCandidates(int size, int items, Random random, int[] newc, int[] newn, int[] oldc, int[] oldn, int[] rnew, int[] rnewn, int[] rold, int[] roldn) {
+    final int cap = items << 1, ocap = kk + items;
+    Arrays.fill(rnewn, 0);
+    Arrays.fill(roldn, 0);
+    for(int i = 0; i < size; i++) {
+      final int base = i * kk, cbase = i * cap, obase = i * ocap, cnt = counts[i];
+      int nn = 0, no = 0, seen = 0;
+      for(int j = 0; j < cnt; j++) {
+        final int o = nbrs[base + j];
+        if(!isnew[base + j]) {
+          oldc[obase + no++] = o;
+          reservoir(rold, o * items, roldn, o, items, i, random);
+          continue;
+        }
+        // Reservoir sample of the new neighbors:
+        ++seen;
+        if(nn < items) {
+          newc[cbase + nn++] = base + j; // Position, to clear the flag below
+        }
+        else {
+          final int r = random.nextInt(seen);
+          if(r < items) {
+            newc[cbase + r] = base + j;
+          }
+        }
+      }
+      // Clear the flags of the sampled new neighbors:
+      for(int j = 0; j < nn; j++) {
+        final int pos = newc[cbase + j];
+        isnew[pos] = false;
+        newc[cbase + j] = nbrs[pos];
+        reservoir(rnew, nbrs[pos] * items, rnewn, nbrs[pos], items, i, random);
+      }
+      newn[i] = nn;
+      oldn[i] = no;
+    }
+    for(int i = 0; i < size; i++) {
+      newn[i] = merge(newc, i * cap, newn[i], rnew, i * items, Math.min(rnewn[i], items));
+      oldn[i] = merge(oldc, i * ocap, oldn[i], rold, i * items, Math.min(roldn[i], items));
+    }
+  }
+
+  /**
+   * Add to a bounded reservoir sample.
+   *
+   * @param sample Sample storage
+   * @param off Offset of the sample of this object
+   * @param seen Counters of elements seen
+   * @param o Object the sample belongs to
+   * @param items Sample size
+   * @param v Value to add
+   * @param random Random generator
+   */
+  private static void reservoir(int[] sample, int off, int[] seen, int o, int items, int v, Random random) {
+    final int n = seen[o]++;
+    if(n < items) {
+      sample[off + n] = v;
+    }
+    else {
+      final int r = random.nextInt(n + 1);
+      if(r < items) {
+        sample[off + r] = v;
+      }
+    }
+  }
+
+  /**
+   * Append the elements of a second list, skipping duplicates.
+   *
+   * @param a Target array
+   * @param aoff Offset in target
+   * @param an Number of elements in target
+   * @param b Source array
+   * @param boff Offset in source
+   * @param bn Number of elements in source
+   * @return New number of elements in the target
+   */
+  private static int merge(int[] a, int aoff, int an, int[] b, int boff, int bn) {
+    outer: for(int j = 0; j < bn; j++) {
+      final int v = b[boff + j];
+      for(int i = 0; i < an; i++) {
+        if(a[aoff + i] == v) {
+          continue outer;
+        }
+      }
+      a[aoff + an++] = v;
+    }
+    return an;
+  }
+
+  /**
+   * Sample distinct objects other than the given one.
+   *
+   * @param self Object to exclude
+   * @param size Data set size
+   * @param num Number of samples
+   * @param random Random generator
+   * @param out Output array
+   * @param off Output offset
+   * @return Number of samples
+   */
+  private static int sampleOthers(int self, int size, int num, Random random, int[] out, int off) {
+    if(num >= size - 1) {
+      for(int i = 0, j = 0; i < size; i++) {
+        if(i != self) {
+          out[off + j++] = i;
+        }
+      }
+      return size - 1;
+    }
+    int n = 0;
+    outer: while(n < num) {
+      final int c = random.nextInt(size);
+      if(c == self) {
+        continue;
+      }
+      for(int i = 0; i < n; i++) {
+        if(out[off + i] == c) {
+          continue outer;
+        }
+      }
+      out[off + n++] = c;
+    }
+    return n;
+  }
+
+  /**
+   * Insert a candidate into the neighbor heap of an object.
+   *
+   * @param p Object
+   * @param q Candidate neighbor
+   * @param d Distance
+   * @param flag Flag as new neighbor
+   * @return {@code true} if the heap was modified
+   */
+  private boolean insert(int p, int q, double d, boolean flag) {
+    final int base = p * kk;
+    // Unsynchronized pre-check; rechecked below.
+    if(counts[p] == kk && d >= dists[base]) {
+      return false;
+    }
+    synchronized(locks[p & (LOCK_STRIPES - 1)]) {
+      final int cnt = counts[p];
+      if(cnt == kk && d >= dists[base]) {
+        return false;
+      }
+      for(int i = 0; i < cnt; i++) {
+        if(nbrs[base + i] == q) {
+          return false;
+        }
+      }
+      if(cnt < kk) {
+        // Heapify up
+        int pos = cnt;
+        while(pos > 0) {
+          final int parent = (pos - 1) >>> 1;
+          if(dists[base + parent] >= d) {
+            break;
+          }
+          move(base + parent, base + pos);
+          pos = parent;
+        }
+        put(base + pos, q, d, flag);
+        counts[p] = cnt + 1;
+        return true;
+      }
+      // Replace the top element, and heapify down
+      int pos = 0;
+      while(true) {
+        int child = (pos << 1) + 1;
+        if(child >= kk) {
+          break;
+        }
+        if(child + 1 < kk && dists[base + child + 1] > dists[base + child]) {
+          ++child;
+        }
+        if(d >= dists[base + child]) {
+          break;
+        }
+        move(base + child, base + pos);
+        pos = child;
+      }
+      put(base + pos, q, d, flag);
+      return true;
+    }
+  }
+
+  /**
+   * Move a heap entry.
+   *
+   * @param from Source position
+   * @param to Target position
+   */
+  private void move(int from, int to) {
+    nbrs[to] = nbrs[from];
+    dists[to] = dists[from];
+    isnew[to] = isnew[from];
+  }
+
+  /**
+   * Store a heap entry.
+   *
+   * @param pos Position
+   * @param q Neighbor
+   * @param d Distance
+   * @param flag New flag
+   */
+  private void put(int pos, int q, double d, boolean flag) {
+    nbrs[pos] = q;
+    dists[pos] = d;
+    isnew[pos] = flag;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(getClass().getName() + ".distance-computations", distComputations.get()));
+  }
+
+  @Override
+  public String getLongName() {
+    return "Parallel NNDescent kNN";
+  }
+
+  @Override
+  public String getShortName() {
+    return "parallel-nn-descent-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return super.getKNNQuery(distanceQuery, hints);
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author agent
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Do not use initial neighbors
+     */
+    private final boolean noInitialNeighbors;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distanceFunction distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param noInitialNeighbors Do not use initial neighbors
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+      super(k, distanceFunction);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.noInitialNeighbors = noInitialNeighbors;
+      this.iterations = iterations;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distanceFunction, k, rnd, delta, rho, noInitialNeighbors, iterations);
+    }
+
+    /**
+     * Parameterization class, using the same options as {@link NNDescent}.
+     *
+     * @author agent
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * No initial neighbors
+       */
+      private boolean noInitialNeighbors;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        RandomParameter rndP = new RandomParameter(NNDescent.Factory.Parameterizer.SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.getValue();
+        }
+        DoubleParameter rhoP = new DoubleParameter(NNDescent.Factory.Parameterizer.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.getValue();
+        }
+        Flag initialP = new Flag(NNDescent.Factory.Parameterizer.INITIAL_ID);
+        if(config.grab(initialP)) {
+          noInitialNeighbors = initialP.isTrue();
+        }
+        IntParameter iterP = new IntParameter(NNDescent.Factory.Parameterizer.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          iterations = iterP.getValue();
+        }
+      }
+
+      @Override
+      protected ParallelNNDescent.Factory<O> makeInstance() {
+        return new ParallelNNDescent.Factory<>(k, distanceFunction, rnd, delta, rho, noInitialNeighbors, iterations);
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the parallel NNDescent.
+ * <p>
+ * Note: NNDescent is approximate, and the parallel variant depends on thread
+ * scheduling. Hence we only require a minimum recall compared to a linear
+ * scan, rather than identical results.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ParallelNNDescentTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testPreprocessor() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    // get linear queries
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    // get preprocessed queries
+    ParallelNNDescent<DoubleVector> preproc = new ELKIBuilder<ParallelNNDescent.Factory<DoubleVector>>(ParallelNNDescent.Factory.class) //
+        .with(ParallelNNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistanceFunction()) //
+        .with(ParallelNNDescent.Factory.K_ID, k) //
+        .with(NNDescent.Factory.Parameterizer.SEED_ID, 0) //
+        .with(NNDescent.Factory.Parameterizer.DELTA_ID, 0.1) //
+        .with(NNDescent.Factory.Parameterizer.RHO_ID, 0.5) //
+        .build().instantiate(rel);
+    KNNQuery<DoubleVector> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    // add as index
+    db.getHierarchy().add(rel, preproc);
+    assertFalse("Preprocessor knn query class incorrect.", preproc_knn_query instanceof LinearScanDistanceKNNQuery);
+
+    // test queries
+    testRecall(rel, lin_knn_query, preproc_knn_query, k, 0.95);
+    // also test partial queries, forward only
+    testRecall(rel, lin_knn_query, preproc_knn_query, k / 2, 0.95);
+  }
+
+  /**
+   * Test the recall of approximate kNN queries.
+   *
+   * @param rel Relation
+   * @param lin_knn_query Exact query
+   * @param preproc_knn_query Approximate query
+   * @param k k
+   * @param minrecall Minimum recall required
+   */
+  static void testRecall(Relation<DoubleVector> rel, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k, double minrecall) {
+    long found = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList lin_knn = lin_knn_query.getKNNForDBID(it, k);
+      KNNList pre_knn = preproc_knn_query.getKNNForDBID(it, k);
+      assertEquals("Query object not returned first.", 0., pre_knn.iter().doubleValue(), 0.);
+      found += DBIDUtil.intersectionSize(DBIDUtil.newHashSet(lin_knn), DBIDUtil.newHashSet(pre_knn));
+      total += lin_knn.size();
+    }
+    final double recall = found / (double) total;
+    assertTrue("Recall too low: " + recall, recall >= minrecall);
+  }
+}
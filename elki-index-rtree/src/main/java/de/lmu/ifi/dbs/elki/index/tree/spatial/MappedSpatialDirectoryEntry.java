@@ -0,0 +1,153 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+
+/**
+ * Directory entry that reads its bounding box directly from a buffer, e.g., a
+ * memory mapped page, instead of copying it. The buffer layout is the one
+ * written by {@link SpatialDirectoryEntry#writeExternal}.
+ * <p>
+ * This entry is read-only.
+ * 
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedSpatialDirectoryEntry extends SpatialDirectoryEntry {
+  /**
+   * Serial version.
+   */
+  private static final long serialVersionUID = 1;
+
+  /**
+   * Buffer to read from.
+   */
+  private final transient ByteBuffer buffer;
+
+  /**
+   * Offset of this entry in the buffer.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer Buffer to read from
+   * @param offset Offset of the entry
+   */
+  public MappedSpatialDirectoryEntry(ByteBuffer buffer, int offset) {
+    super();
+    this.buffer = buffer;
+    this.offset = offset;
+    this.dim = buffer.getInt(offset + 4);
+  }
+
+  /**
+   * Size of this entry in the buffer.
+   * 
+   * @return Size in bytes
+   */
+  public int getByteSize() {
+    return 8 + (dim << 4);
+  }
+
+  @Override
+  public int getPageID() {
+    return buffer.getInt(offset);
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double getMin(int dimension) {
+    assert (dimension >= 0 && dimension < dim);
+    return buffer.getDouble(offset + 8 + (dimension << 3));
+  }
+
+  @Override
+  public double getMax(int dimension) {
+    assert (dimension >= 0 && dimension < dim);
+    return buffer.getDouble(offset + 8 + ((dim + dimension) << 3));
+  }
+
+  @Override
+  public boolean hasMBR() {
+    return true;
+  }
+
+  @Override
+  public void setMBR(ModifiableHyperBoundingBox mbr) {
+    throw new UnsupportedOperationException("Mapped entries are read-only.");
+  }
+
+  @Override
+  public boolean extendMBR(SpatialComparable responsibleMBR) {
+    throw new UnsupportedOperationException("Mapped entries are read-only.");
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(getPageID());
+    out.writeInt(dim);
+    for(int d = 0; d < dim; d++) {
+      out.writeDouble(getMin(d));
+    }
+    for(int d = 0; d < dim; d++) {
+      out.writeDouble(getMax(d));
+    }
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) {
+    throw new UnsupportedOperationException("Mapped entries are read-only.");
+  }
+
+  @Override
+  public String toString() {
+    return "MappedSpatialDirectoryEntry(" + getPageID() + ")";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    // Note: we deliberately use the ID only for comparison.
+    return this == o || (o != null && getClass() == o.getClass() && getPageID() == ((MappedSpatialDirectoryEntry) o).getPageID());
+  }
+
+  @Override
+  public int hashCode() {
+    return getPageID();
+  }
+}
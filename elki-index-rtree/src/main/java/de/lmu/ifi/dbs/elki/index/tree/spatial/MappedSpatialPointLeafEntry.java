@@ -0,0 +1,139 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+
+/**
+ * Leaf entry that reads its values directly from a buffer, e.g., a memory
+ * mapped page, instead of copying them. The buffer layout is the one written
+ * by {@link SpatialPointLeafEntry#writeExternal}.
+ * <p>
+ * This entry is read-only.
+ * 
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedSpatialPointLeafEntry extends SpatialPointLeafEntry {
+  /**
+   * Serial version.
+   */
+  private static final long serialVersionUID = 1;
+
+  /**
+   * Buffer to read from.
+   */
+  private final transient ByteBuffer buffer;
+
+  /**
+   * Offset of this entry in the buffer.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer Buffer to read from
+   * @param offset Offset of the entry
+   */
+  public MappedSpatialPointLeafEntry(ByteBuffer buffer, int offset) {
+    super();
+    this.buffer = buffer;
+    this.offset = offset;
+    this.dim = buffer.getInt(offset + 4);
+  }
+
+  /**
+   * Size of this entry in the buffer.
+   * 
+   * @return Size in bytes
+   */
+  public int getByteSize() {
+    return 8 + (dim << 3);
+  }
+
+  @Override
+  public DBID getDBID() {
+    return DBIDUtil.importInteger(buffer.getInt(offset));
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    assert (dimension >= 0 && dimension < dim);
+    return buffer.getDouble(offset + 8 + (dimension << 3));
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) doubleValue(dimension);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] values = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      values[d] = doubleValue(d);
+    }
+    return values;
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(buffer.getInt(offset));
+    out.writeInt(dim);
+    for(int d = 0; d < dim; d++) {
+      out.writeDouble(doubleValue(d));
+    }
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) {
+    throw new UnsupportedOperationException("Mapped entries are read-only.");
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    // Compare ID only.
+    return this == obj || (obj != null && this.getClass() == obj.getClass() && //
+        DBIDUtil.equal(getDBID(), ((MappedSpatialPointLeafEntry) obj).getDBID()));
+  }
+
+  @Override
+  public int hashCode() {
+    return getDBID().hashCode();
+  }
+}
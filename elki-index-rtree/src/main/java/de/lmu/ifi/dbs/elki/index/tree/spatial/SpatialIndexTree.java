@@ -22,7 +22,13 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial;
 
 import java.util.List;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeIndex;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeKNNJoin;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.IndexTree;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 
 /**
@@ -37,7 +43,7 @@ import de.lmu.ifi.dbs.elki.persistent.PageFile;
  * @param <N> Node type
  * @param <E> Entry type
  */
-public abstract class SpatialIndexTree<N extends SpatialNode<N, E>, E extends SpatialEntry> extends IndexTree<N, E> {
+public abstract class SpatialIndexTree<N extends SpatialNode<N, E>, E extends SpatialEntry> extends IndexTree<N, E> implements DualTreeIndex {
   /**
    * Constructor.
    *
@@ -62,4 +68,34 @@ public abstract class SpatialIndexTree<N extends SpatialNode<N, E>, E extends Sp
    *         index
    */
   public abstract List<E> getLeaves();
-}
\ No newline at end of file
+
+  @Override
+  public DualTreeKNNJoin.Node getJoinHierarchy(DistanceFunction<?> distanceFunction, ArrayModifiableDBIDs ids) {
+    if(!(distanceFunction instanceof SpatialPrimitiveDistanceFunction) || getRoot().getNumEntries() == 0) {
+      return null;
+    }
+    return getJoinHierarchy(getRoot(), ids);
+  }
+
+  /**
+   * Build the join hierarchy of a subtree.
+   *
+   * @param node Current node
+   * @param ids Output ids
+   * @return Join node
+   */
+  private DualTreeKNNJoin.Node getJoinHierarchy(N node, ArrayModifiableDBIDs ids) {
+    final int start = ids.size(), num = node.getNumEntries();
+    if(node.isLeaf()) {
+      for(int i = 0; i < num; i++) {
+        ids.add(((LeafEntry) node.getEntry(i)).getDBID());
+      }
+      return new DualTreeKNNJoin.Node(start, ids.size(), null);
+    }
+    DualTreeKNNJoin.Node[] children = new DualTreeKNNJoin.Node[num];
+    for(int i = 0; i < num; i++) {
+      children[i] = getJoinHierarchy(getNode(node.getEntry(i)), ids);
+    }
+    return new DualTreeKNNJoin.Node(start, ids.size(), children);
+  }
+}
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
@@ -31,6 +32,8 @@ import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialUtil;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
 import de.lmu.ifi.dbs.elki.index.tree.Entry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.MappedSpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.MappedSpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialNode;
@@ -260,4 +263,37 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Initializes this node from a buffer, without copying the entries. The
+   * entries read their values from the buffer on demand, and cannot be
+   * modified.
+   * <p>
+   * Only valid for nodes that use the default entries, c.f.
+   * {@link de.lmu.ifi.dbs.elki.persistent.ByteBufferPage}.
+   *
+   * @param buffer Buffer to read from
+   */
+  @SuppressWarnings("unchecked")
+  public void readBuffer(ByteBuffer buffer) {
+    int pos = readHeader(buffer);
+    final int capacity = buffer.getInt(pos);
+    pos += 4;
+    if(isLeaf()) {
+      entries = (E[]) new SpatialPointLeafEntry[capacity];
+      for(int i = 0; i < numEntries; i++) {
+        MappedSpatialPointLeafEntry s = new MappedSpatialPointLeafEntry(buffer, pos);
+        entries[i] = (E) s;
+        pos += s.getByteSize();
+      }
+    }
+    else {
+      entries = (E[]) new SpatialDirectoryEntry[capacity];
+      for(int i = 0; i < numEntries; i++) {
+        MappedSpatialDirectoryEntry s = new MappedSpatialDirectoryEntry(buffer, pos);
+        entries[i] = (E) s;
+        pos += s.getByteSize();
+      }
+    }
+  }
+}
@@ -88,7 +88,9 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   @Override
   public void initialize() {
     super.initialize();
-    insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    if(!initialized) { // Not loaded from an existing file.
+      insertAll(relation.getDBIDs()); // Will check for actual bulk load!
+    }
   }
 
   /**
@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
 
 /**
  * Represents a node in an R*-Tree.
@@ -29,7 +30,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNod
  * @author Elke Achtert
  * @since 0.1
  */
-public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> {
+public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> implements ByteBufferPage {
   private static final long serialVersionUID = 1;
 
   /**
@@ -0,0 +1,1174 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest
+ * neighbor search.
+ * <p>
+ * Every object is a node of the bottom layer, and of each higher layer with
+ * exponentially decreasing probability. Queries greedily descend the sparse
+ * upper layers, then run a bounded best-first search on the bottom layer.
+ * Neighbors are chosen with the diversity heuristic of the original
+ * publication.
+ * <p>
+ * The graph is built in parallel, which makes the result depend on thread
+ * scheduling; use the sequential flag for a reproducible graph. Deleted objects
+ * are only marked as such: they remain in the graph to navigate (keeping a
+ * reference to the object), but are no longer returned.
+ * <p>
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br>
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br>
+ * CoRR abs/1603.09320
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has HNSWKNNQuery
+ * @apiviz.has HNSWRangeQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "CoRR abs/1603.09320", //
+    url = "http://arxiv.org/abs/1603.09320", //
+    bibkey = "DBLP:journals/corr/MalkovY16")
+public class HNSW<O> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O>, DynamicIndex {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSW.class);
+
+  /**
+   * Number of lock stripes for the neighbor lists, must be a power of two.
+   */
+  private static final int LOCK_STRIPES = 1 << 10;
+
+  /**
+   * Number of nodes inserted per parallel task.
+   */
+  private static final int BLOCKSIZE = 64;
+
+  /**
+   * Distance function of the graph.
+   */
+  protected DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Distance query, on the data relation.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Number of neighbors linked on insertion, and maximum number of neighbors
+   * in the upper layers.
+   */
+  protected int m;
+
+  /**
+   * Maximum number of neighbors in the bottom layer.
+   */
+  protected int m0;
+
+  /**
+   * Candidate list size used during construction.
+   */
+  protected int efConstruction;
+
+  /**
+   * Candidate list size used for queries.
+   */
+  protected int efSearch;
+
+  /**
+   * Normalization of the random level generation.
+   */
+  private double levelMult;
+
+  /**
+   * Random generator for the levels.
+   */
+  private Random random;
+
+  /**
+   * Insert objects in parallel.
+   */
+  private boolean parallel;
+
+  /**
+   * Node to DBID mapping.
+   */
+  private ArrayModifiableDBIDs nodeids;
+
+  /**
+   * DBID to node mapping.
+   */
+  private WritableIntegerDataStore nodeOf;
+
+  /**
+   * Neighbor lists, indexed by node and level. The first element of each list
+   * is the number of neighbors.
+   */
+  private int[][][] links;
+
+  /**
+   * Bit set of deleted nodes.
+   */
+  private long[] deleted;
+
+  /**
+   * Objects of deleted nodes, which remain in the graph for routing while the
+   * database may already have removed them. Allocated on the first deletion.
+   */
+  private Object[] removed;
+
+  /**
+   * Number of nodes.
+   */
+  private int numNodes = 0;
+
+  /**
+   * Number of deleted nodes.
+   */
+  private int numDeleted = 0;
+
+  /**
+   * Entry point, a node on the top level.
+   */
+  private int entry = -1;
+
+  /**
+   * Top level of the graph.
+   */
+  private int maxLevel = -1;
+
+  /**
+   * Lock stripes for the neighbor lists.
+   */
+  private final Object[] locks;
+
+  /**
+   * Lock for the entry point.
+   */
+  private final Object globalLock = new Object();
+
+  /**
+   * Pool of search states, to reuse the visited markers.
+   */
+  private final ConcurrentLinkedQueue<Searcher> searchers = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Distance computations performed.
+   */
+  private final AtomicLong distComputations = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param m Number of neighbors
+   * @param efConstruction Candidate list size for construction
+   * @param efSearch Candidate list size for queries
+   * @param random Random generator for the levels
+   * @param parallel Build the graph in parallel
+   */
+  public HNSW(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, Random random, boolean parallel) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.distanceQuery = distanceFunction.instantiate(relation);
+    this.m = m;
+    this.m0 = m << 1;
+    this.efConstruction = efConstruction;
+    this.efSearch = efSearch;
+    this.levelMult = 1. / FastMath.log(m);
+    this.random = random;
+    this.parallel = parallel;
+    this.locks = new Object[LOCK_STRIPES];
+    for(int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  @Override
+  public void initialize() {
+    if(links != null) {
+      LOG.warning("Index was already initialized!");
+      return;
+    }
+    final DBIDs ids = relation.getDBIDs();
+    final int size = ids.size();
+    nodeids = DBIDUtil.newArray(size);
+    nodeOf = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+    links = new int[Math.max(size, 16)][][];
+    deleted = new long[(links.length + 63) >>> 6];
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      allocate(it);
+    }
+    if(size == 0) {
+      return;
+    }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building HNSW graph", size, LOG) : null;
+    // Insert the first block sequentially, to have a graph to start from.
+    final int first = parallel ? Math.min(size, BLOCKSIZE) : size;
+    Searcher s = acquire();
+    for(int i = 0; i < first; i++) {
+      insertNode(i, s);
+      LOG.incrementProcessed(prog);
+    }
+    release(s);
+    if(first < size) {
+      ParallelExecutor.runBlocks(size - first, BLOCKSIZE, (start, end) -> {
+        Searcher ps = acquire();
+        try {
+          for(int i = first + start, e = first + end; i < e; i++) {
+            insertNode(i, ps);
+          }
+        }
+        finally {
+          release(ps);
+        }
+        if(prog != null) {
+          prog.incrementProcessed(end - start, LOG);
+        }
+      });
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Allocate a new node, and choose its random level.
+   *
+   * @param id Object
+   * @return Node number
+   */
+  private int allocate(DBIDRef id) {
+    final int node = numNodes++;
+    if(node == links.length) {
+      links = Arrays.copyOf(links, node + (node >>> 1));
+      deleted = Arrays.copyOf(deleted, (links.length + 63) >>> 6);
+    }
+    nodeids.add(id);
+    nodeOf.putInt(id, node);
+    final int level = (int) (-FastMath.log(1. - random.nextDouble()) * levelMult);
+    final int[][] l = links[node] = new int[level + 1][];
+    l[0] = new int[m0 + 1];
+    for(int i = 1; i <= level; i++) {
+      l[i] = new int[m + 1];
+    }
+    return node;
+  }
+
+  /**
+   * Link a node into the graph.
+   *
+   * @param q Node to insert
+   * @param s Search state
+   */
+  private void insertNode(int q, Searcher s) {
+    final int level = links[q].length - 1;
+    final int ep, top;
+    synchronized(globalLock) {
+      ep = entry;
+      top = maxLevel;
+      if(ep < 0) {
+        entry = q;
+        maxLevel = level;
+        return;
+      }
+      // A new top level is rare: block other insertions meanwhile.
+      if(level > top) {
+        linkNode(q, level, ep, top, s);
+        entry = q;
+        maxLevel = level;
+        return;
+      }
+    }
+    linkNode(q, level, ep, top, s);
+  }
+
+  /**
+   * Search the neighbors of a node, and connect them.
+   *
+   * @param q Node to insert
+   * @param level Level of the new node
+   * @param ep Entry point
+   * @param top Level of the entry point
+   * @param s Search state
+   */
+  private void linkNode(int q, int level, int ep, int top, Searcher s) {
+    final O obj = s.get(q);
+    double epd = s.distance(obj, ep);
+    for(int lc = top; lc > level; lc--) {
+      ep = greedySearch(obj, ep, epd, lc, s);
+      epd = s.bestd;
+    }
+    for(int lc = Math.min(top, level); lc >= 0; lc--) {
+      searchLayer(obj, ep, epd, efConstruction, lc, s, q, false);
+      final int nc = s.drainResults();
+      ep = s.cids[0];
+      epd = s.cdists[0];
+      final int nsel = selectNeighbors(s.cids, s.cdists, nc, m, s);
+      synchronized(locks[q & (LOCK_STRIPES - 1)]) {
+        final int[] l = links[q][lc];
+        System.arraycopy(s.cids, 0, l, 1, nsel);
+        l[0] = nsel;
+      }
+      final int maxm = lc == 0 ? m0 : m;
+      for(int i = 0; i < nsel; i++) {
+        addLink(s.cids[i], q, s.cdists[i], lc, maxm, s);
+      }
+    }
+  }
+
+  /**
+   * Add a reverse link, and prune the neighbor list if it overflows.
+   *
+   * @param e Node to add the link to
+   * @param q New neighbor
+   * @param dq Distance of the new neighbor
+   * @param lc Level
+   * @param maxm Maximum number of neighbors
+   * @param s Search state
+   */
+  private void addLink(int e, int q, double dq, int lc, int maxm, Searcher s) {
+    synchronized(locks[e & (LOCK_STRIPES - 1)]) {
+      final int[] l = links[e][lc];
+      final int cnt = l[0];
+      for(int i = 1; i <= cnt; i++) {
+        if(l[i] == q) {
+          return;
+        }
+      }
+      if(cnt < maxm) {
+        l[cnt + 1] = q;
+        l[0] = cnt + 1;
+        return;
+      }
+      // Overflow: choose the new neighbors with the heuristic.
+      final DoubleIntegerMinHeap heap = s.cand;
+      heap.clear();
+      heap.add(dq, q);
+      for(int i = 1; i <= cnt; i++) {
+        heap.add(s.distance(e, l[i]), l[i]);
+      }
+      final int n = heap.size();
+      s.ensurePruneCapacity(n);
+      for(int i = 0; i < n; i++, heap.poll()) {
+        s.pids[i] = heap.peekValue();
+        s.pdists[i] = heap.peekKey();
+      }
+      final int nsel = selectNeighbors(s.pids, s.pdists, n, maxm, s);
+      System.arraycopy(s.pids, 0, l, 1, nsel);
+      l[0] = nsel;
+    }
+  }
+
+  /**
+   * Select diverse neighbors: a candidate is only kept if it is closer to the
+   * query than to all previously selected neighbors.
+   *
+   * @param ids Candidates, sorted by distance; the selection is moved to the
+   *        front
+   * @param dists Candidate distances
+   * @param n Number of candidates
+   * @param max Maximum number of neighbors
+   * @param s Search state
+   * @return Number of selected neighbors
+   */
+  private int selectNeighbors(int[] ids, double[] dists, int n, int max, Searcher s) {
+    int c = 0;
+    outer: for(int i = 0; i < n && c < max; i++) {
+      final int e = ids[i];
+      final double de = dists[i];
+      for(int j = 0; j < c; j++) {
+        if(s.distance(e, ids[j]) < de) {
+          continue outer;
+        }
+      }
+      ids[c] = e;
+      dists[c] = de;
+      c++;
+    }
+    return c;
+  }
+
+  /**
+   * Greedy search for the nearest neighbor on one level.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epd Entry point distance
+   * @param lc Level
+   * @param s Search state, receives the best distance
+   * @return Nearest node found
+   */
+  private int greedySearch(O obj, int ep, double epd, int lc, Searcher s) {
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+      final int cnt = s.copyLinks(ep, lc);
+      for(int i = 0; i < cnt; i++) {
+        final int nb = s.buf[i];
+        final double d = s.distance(obj, nb);
+        if(d < epd) {
+          epd = d;
+          ep = nb;
+          changed = true;
+        }
+      }
+    }
+    s.bestd = epd;
+    return ep;
+  }
+
+  /**
+   * Best-first search on one level, keeping the ef best candidates in the
+   * result heap of the search state.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epd Entry point distance
+   * @param ef Number of candidates to keep
+   * @param lc Level
+   * @param s Search state
+   * @param exclude Node to exclude, or -1
+   * @param skipDeleted Exclude deleted nodes from the results
+   */
+  private void searchLayer(O obj, int ep, double epd, int ef, int lc, Searcher s, int exclude, boolean skipDeleted) {
+    s.begin();
+    if(exclude >= 0) {
+      s.visit(exclude);
+    }
+    s.visit(ep);
+    final DoubleIntegerMinHeap cand = s.cand;
+    final DoubleIntegerMaxHeap res = s.res;
+    cand.add(epd, ep);
+    if(!skipDeleted || !isDeleted(ep)) {
+      res.add(epd, ep);
+    }
+    while(!cand.isEmpty()) {
+      final double cd = cand.peekKey();
+      if(res.size() >= ef && cd > res.peekKey()) {
+        break;
+      }
+      final int c = cand.peekValue();
+      cand.poll();
+      final int cnt = s.copyLinks(c, lc);
+      for(int i = 0; i < cnt; i++) {
+        final int nb = s.buf[i];
+        if(!s.visit(nb)) {
+          continue;
+        }
+        final double d = s.distance(obj, nb);
+        if(res.size() < ef || d < res.peekKey()) {
+          cand.add(d, nb);
+          if(!skipDeleted || !isDeleted(nb)) {
+            res.add(d, nb, ef);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Descend from the entry point to the bottom level.
+   *
+   * @param obj Query object
+   * @param s Search state, receives the entry point distance
+   * @return Entry point on the bottom level, or -1 if the graph is empty
+   */
+  private int descend(O obj, Searcher s) {
+    int ep, top;
+    synchronized(globalLock) {
+      ep = entry;
+      top = maxLevel;
+    }
+    if(ep < 0) {
+      return -1;
+    }
+    double epd = s.distance(obj, ep);
+    for(int lc = top; lc > 0; lc--) {
+      ep = greedySearch(obj, ep, epd, lc, s);
+      epd = s.bestd;
+    }
+    s.bestd = epd;
+    return ep;
+  }
+
+  /**
+   * Test whether a node was deleted.
+   *
+   * @param node Node
+   * @return {@code true} when deleted
+   */
+  private boolean isDeleted(int node) {
+    return (deleted[node >>> 6] & (1L << node)) != 0L;
+  }
+
+  /**
+   * Get a search state from the pool.
+   *
+   * @return Search state
+   */
+  private Searcher acquire() {
+    Searcher s = searchers.poll();
+    return s != null ? s : new Searcher();
+  }
+
+  /**
+   * Return a search state to the pool.
+   *
+   * @param s Search state
+   */
+  private void release(Searcher s) {
+    distComputations.addAndGet(s.dists);
+    s.dists = 0;
+    searchers.add(s);
+  }
+
+  @Override
+  public synchronized void insert(DBIDRef id) {
+    final int node = nodeOf.intValue(id);
+    if(node >= 0) {
+      if(isDeleted(node)) { // Revive
+        deleted[node >>> 6] &= ~(1L << node);
+        removed[node] = null;
+        --numDeleted;
+      }
+      return;
+    }
+    Searcher s = acquire();
+    insertNode(allocate(id), s);
+    release(s);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(links == null) {
+      initialize();
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public synchronized boolean delete(DBIDRef id) {
+    final int node = nodeOf.intValue(id);
+    if(node < 0 || isDeleted(node)) {
+      return false;
+    }
+    // Keep the object, as the node is still used for routing.
+    if(removed == null || removed.length < links.length) {
+      removed = removed == null ? new Object[links.length] : Arrays.copyOf(removed, links.length);
+    }
+    removed[node] = relation.get(id);
+    deleted[node >>> 6] |= 1L << node;
+    ++numDeleted;
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    if(!this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    return new HNSWKNNQuery(distanceQuery);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    if(!this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      return null;
+    }
+    return new HNSWRangeQuery(distanceQuery);
+  }
+
+  @Override
+  public void logStatistics() {
+    final String prefix = this.getClass().getName();
+    long edges = 0;
+    for(int i = 0; i < numNodes; i++) {
+      edges += links[i][0][0];
+    }
+    LOG.statistics(new LongStatistic(prefix + ".nodes", numNodes));
+    LOG.statistics(new LongStatistic(prefix + ".deleted", numDeleted));
+    LOG.statistics(new LongStatistic(prefix + ".levels", maxLevel + 1));
+    LOG.statistics(new DoubleStatistic(prefix + ".mean-degree", numNodes > 0 ? edges / (double) numNodes : 0.));
+    LOG.statistics(new LongStatistic(prefix + ".distance-computations", distComputations.get()));
+  }
+
+  @Override
+  public String getLongName() {
+    return "Hierarchical Navigable Small World Graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "hnsw";
+  }
+
+  /**
+   * Search state of a single thread.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  private class Searcher {
+    /**
+     * Visited markers, compared to the current epoch.
+     */
+    int[] visited = new int[0];
+
+    /**
+     * Current epoch.
+     */
+    int epoch = 0;
+
+    /**
+     * Candidates to expand.
+     */
+    DoubleIntegerMinHeap cand = new DoubleIntegerMinHeap();
+
+    /**
+     * Best results.
+     */
+    DoubleIntegerMaxHeap res = new DoubleIntegerMaxHeap();
+
+    /**
+     * Copy of a neighbor list.
+     */
+    int[] buf = new int[m0];
+
+    /**
+     * Sorted results.
+     */
+    int[] cids = new int[0];
+
+    /**
+     * Distances of the sorted results.
+     */
+    double[] cdists = new double[0];
+
+    /**
+     * Buffer for pruning neighbor lists.
+     */
+    int[] pids = new int[m0 + 1];
+
+    /**
+     * Distances for pruning neighbor lists.
+     */
+    double[] pdists = new double[m0 + 1];
+
+    /**
+     * Object references.
+     */
+    DBIDVar var = DBIDUtil.newVar(), var2 = DBIDUtil.newVar();
+
+    /**
+     * Distance of the last greedy search.
+     */
+    double bestd;
+
+    /**
+     * Distance computations.
+     */
+    long dists = 0;
+
+    /**
+     * Begin a new search.
+     */
+    void begin() {
+      if(visited.length < numNodes) {
+        visited = new int[links.length];
+        epoch = 0;
+      }
+      if(++epoch == Integer.MAX_VALUE) {
+        Arrays.fill(visited, 0);
+        epoch = 1;
+      }
+      cand.clear();
+      res.clear();
+    }
+
+    /**
+     * Mark a node as visited.
+     *
+     * @param node Node
+     * @return {@code false} if the node had been visited before
+     */
+    boolean visit(int node) {
+      if(visited[node] == epoch) {
+        return false;
+      }
+      visited[node] = epoch;
+      return true;
+    }
+
+    /**
+     * Copy the neighbors of a node into {@link #buf}.
+     *
+     * @param node Node
+     * @param lc Level
+     * @return Number of neighbors
+     */
+    int copyLinks(int node, int lc) {
+      synchronized(locks[node & (LOCK_STRIPES - 1)]) {
+        final int[] l = links[node][lc];
+        final int cnt = l[0];
+        System.arraycopy(l, 1, buf, 0, cnt);
+        return cnt;
+      }
+    }
+
+    /**
+     * Move the results into {@link #cids} and {@link #cdists}, sorted by
+     * distance.
+     *
+     * @return Number of results
+     */
+    int drainResults() {
+      final int n = res.size();
+      if(cids.length < n) {
+        cids = new int[n];
+        cdists = new double[n];
+      }
+      for(int i = n - 1; i >= 0; i--, res.poll()) {
+        cids[i] = res.peekValue();
+        cdists[i] = res.peekKey();
+      }
+      return n;
+    }
+
+    /**
+     * Ensure the pruning buffers are large enough.
+     *
+     * @param n Required size
+     */
+    void ensurePruneCapacity(int n) {
+      if(pids.length < n) {
+        pids = new int[n];
+        pdists = new double[n];
+      }
+    }
+
+    /**
+     * Get the object of a node.
+     *
+     * @param node Node
+     * @return Object
+     */
+    @SuppressWarnings("unchecked")
+    O get(int node) {
+      return isDeleted(node) ? (O) removed[node] : relation.get(nodeids.assignVar(node, var));
+    }
+
+    /**
+     * Compute the distance of an object to a node.
+     *
+     * @param obj Object
+     * @param node Node
+     * @return Distance
+     */
+    double distance(O obj, int node) {
+      ++dists;
+      return isDeleted(node) ? distanceQuery.distance(obj, get(node)) : distanceQuery.distance(obj, nodeids.assignVar(node, var));
+    }
+
+    /**
+     * Compute the distance of two nodes.
+     *
+     * @param a First node
+     * @param b Second node
+     * @return Distance
+     */
+    double distance(int a, int b) {
+      ++dists;
+      return isDeleted(a) || isDeleted(b) ? distanceQuery.distance(get(a), get(b)) : distanceQuery.distance(nodeids.assignVar(a, var), nodeids.assignVar(b, var2));
+    }
+  }
+
+  /**
+   * kNN query class.
+   *
+   * @author agent
+   */
+  public class HNSWKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap heap = DBIDUtil.newHeap(k);
+      final Searcher s = acquire();
+      try {
+        final int ep = descend(obj, s);
+        if(ep < 0) {
+          return heap.toKNNList();
+        }
+        searchLayer(obj, ep, s.bestd, Math.max(efSearch, k), 0, s, -1, numDeleted > 0);
+        for(DoubleIntegerMaxHeap res = s.res; !res.isEmpty(); res.poll()) {
+          heap.insert(res.peekKey(), nodeids.assignVar(res.peekValue(), s.var));
+        }
+      }
+      finally {
+        release(s);
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Range query class.
+   * <p>
+   * Expands all candidates within the query radius, but at least the
+   * {@code efSearch} nearest candidates found, to escape local minima.
+   *
+   * @author agent
+   */
+  public class HNSWRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWRangeQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      final Searcher s = acquire();
+      try {
+        final int ep = descend(obj, s);
+        if(ep < 0) {
+          return;
+        }
+        final double epd = s.bestd;
+        s.begin();
+        s.visit(ep);
+        final DoubleIntegerMinHeap cand = s.cand;
+        final DoubleIntegerMaxHeap res = s.res;
+        cand.add(epd, ep);
+        res.add(epd, ep);
+        if(epd <= range && !isDeleted(ep)) {
+          result.add(epd, nodeids.assignVar(ep, s.var));
+        }
+        while(!cand.isEmpty()) {
+          double bound = res.size() < efSearch ? Double.POSITIVE_INFINITY : Math.max(range, res.peekKey());
+          if(cand.peekKey() > bound) {
+            break;
+          }
+          final int c = cand.peekValue();
+          cand.poll();
+          final int cnt = s.copyLinks(c, 0);
+          for(int i = 0; i < cnt; i++) {
+            final int nb = s.buf[i];
+            if(!s.visit(nb)) {
+              continue;
+            }
+            final double d = s.distance(obj, nb);
+            if(d <= range && !isDeleted(nb)) {
+              result.add(d, nodeids.assignVar(nb, s.var));
+            }
+            if(d <= bound) {
+              cand.add(d, nb);
+              res.add(d, nb, efSearch);
+              bound = res.size() < efSearch ? Double.POSITIVE_INFINITY : Math.max(range, res.peekKey());
+            }
+          }
+        }
+      }
+      finally {
+        release(s);
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author agent
+   *
+   * @apiviz.has HNSW
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Distance function of the graph.
+     */
+    protected DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Number of neighbors.
+     */
+    protected int m;
+
+    /**
+     * Candidate list size used during construction.
+     */
+    protected int efConstruction;
+
+    /**
+     * Candidate list size used for queries.
+     */
+    protected int efSearch;
+
+    /**
+     * Random generator for the levels.
+     */
+    protected RandomFactory random;
+
+    /**
+     * Build the graph in parallel.
+     */
+    protected boolean parallel;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param m Number of neighbors
+     * @param efConstruction Candidate list size for construction
+     * @param efSearch Candidate list size for queries
+     * @param random Random generator for the levels
+     * @param parallel Build the graph in parallel
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory random, boolean parallel) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.efSearch = efSearch;
+      this.random = random;
+      this.parallel = parallel;
+    }
+
+    @Override
+    public HNSW<O> instantiate(Relation<O> relation) {
+      return new HNSW<>(relation, distanceFunction, m, efConstruction, efSearch, random.getSingleThreadedRandom(), parallel);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function of the graph.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distancefunction", "Distance function to build the graph with.");
+
+      /**
+       * Number of neighbors per node (twice as many on the bottom layer).
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Number of neighbors to link on insertion; nodes keep at most this many neighbors on the upper layers, and twice as many on the bottom layer.");
+
+      /**
+       * Candidate list size during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efConstruction", "Candidate list size used during construction. Larger values give a better graph, but slower construction.");
+
+      /**
+       * Candidate list size for queries.
+       */
+      public static final OptionID EF_SEARCH_ID = new OptionID("hnsw.efSearch", "Candidate list size used for queries (at least k). Larger values give a higher recall, but slower queries.");
+
+      /**
+       * Random generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the node levels.");
+
+      /**
+       * Build the graph with a single thread.
+       */
+      public static final OptionID SEQUENTIAL_ID = new OptionID("hnsw.sequential", "Build the graph with a single thread, for reproducible results.");
+
+      /**
+       * Distance function of the graph.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Number of neighbors.
+       */
+      protected int m;
+
+      /**
+       * Candidate list size used during construction.
+       */
+      protected int efConstruction;
+
+      /**
+       * Candidate list size used for queries.
+       */
+      protected int efSearch;
+
+      /**
+       * Random generator for the levels.
+       */
+      protected RandomFactory random;
+
+      /**
+       * Build the graph in parallel.
+       */
+      protected boolean parallel;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distanceFunctionP)) {
+          distanceFunction = distanceFunctionP.instantiateClass(config);
+        }
+        IntParameter mP = new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        if(config.grab(mP)) {
+          m = mP.intValue();
+        }
+        IntParameter efConstructionP = new IntParameter(EF_CONSTRUCTION_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efConstructionP)) {
+          efConstruction = efConstructionP.intValue();
+        }
+        IntParameter efSearchP = new IntParameter(EF_SEARCH_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efSearchP)) {
+          efSearch = efSearchP.intValue();
+        }
+        RandomParameter randomP = new RandomParameter(SEED_ID);
+        if(config.grab(randomP)) {
+          random = randomP.getValue();
+        }
+        Flag sequentialF = new Flag(SEQUENTIAL_ID);
+        if(config.grab(sequentialF)) {
+          parallel = sequentialF.isFalse();
+        }
+      }
+
+      @Override
+      protected HNSW.Factory<O> makeInstance() {
+        return new HNSW.Factory<>(distanceFunction, m, efConstruction, efSearch, random, parallel);
+      }
+    }
+  }
+}
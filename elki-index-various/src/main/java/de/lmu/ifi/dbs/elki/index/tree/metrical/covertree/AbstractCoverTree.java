@@ -127,6 +127,16 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
     return (int) Math.ceil(FastMath.log(d) * invLogExpansion);
   }
 
+  /**
+   * Number of insertions into a subtree before it is rebuilt.
+   *
+   * @param size Size of the subtree when built
+   * @return Insertion budget
+   */
+  protected int insertionBudget(int size) {
+    return Math.max(truncate, size >>> 1);
+  }
+
   /**
    * Find maximum in a list via scanning.
    * 
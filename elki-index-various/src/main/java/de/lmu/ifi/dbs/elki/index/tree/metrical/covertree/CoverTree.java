@@ -21,11 +21,18 @@
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
 import java.util.ArrayList;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
@@ -34,11 +41,15 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.BatchKNNUtil;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeIndex;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeKNNJoin;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -63,7 +74,10 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  * <p>
- * TODO: allow insertions and removals, as in the original publication.
+ * Insertions descend into the closest child that covers the new object, or
+ * add it as singleton of the first node without such a child. Deleting a
+ * routing object rebuilds its subtree. Subtrees are also rebuilt once they
+ * received more insertions than half their size.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -76,7 +90,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
     booktitle = "In Proc. 23rd Int. Conf. Machine Learning (ICML 2006)", //
     url = "https://doi.org/10.1145/1143844.1143857", //
     bibkey = "DBLP:conf/icml/BeygelzimerKL06")
-public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O>, DynamicIndex, DualTreeIndex {
   /**
    * Class logger.
    */
@@ -87,6 +101,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
    */
   private Node root = null;
 
+  /**
+   * Position of each object in the tree, for ordering batch queries.
+   */
+  private WritableIntegerDataStore positions = null;
+
   /**
    * Constructor.
    *
@@ -127,6 +146,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
      */
     ArrayList<Node> children;
 
+    /**
+     * Remaining insertions before this subtree is rebuilt.
+     */
+    int budget;
+
     /**
      * Expansion scale.
      */
@@ -180,7 +204,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
   @Override
   public void initialize() {
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    if(LOG.isVerbose() && root != null) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -227,10 +251,13 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     final double max = maxDistance(elems);
     final int scale = Math.min(distToScale(max) - 1, maxScale);
     final int nextScale = scale - 1;
+    final int budget = insertionBudget(elems.size() + 1);
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, parentDist, elems);
+      Node leaf = new Node(cur, max, parentDist, elems);
+      leaf.budget = budget;
+      return leaf;
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -242,6 +269,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max, parentDist);
+    node.budget = budget;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
@@ -279,6 +307,214 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     return node;
   }
 
+  @Override
+  public void insert(DBIDRef id) {
+    positions = null;
+    if(root == null) {
+      root = new Node(id, 0., 0., DBIDUtil.newDistanceDBIDList(0));
+      root.budget = insertionBudget(1);
+      return;
+    }
+    Node cur = root, parent = null, rebuild = null, rebuildParent = null;
+    double d = distance(id, cur.singletons.iter());
+    while(true) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      if(--cur.budget < 0 && rebuild == null) {
+        rebuild = cur;
+        rebuildParent = parent;
+      }
+      if(cur.isLeaf()) {
+        cur.singletons.add(d, id);
+        break;
+      }
+      // Find the closest child that covers the new object:
+      final DoubleDBIDListIter it = cur.singletons.iter();
+      Node best = null;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(Node c : cur.children) {
+        if(Math.abs(d - c.parentDist) > c.maxDist) {
+          continue; // Not covered, by the triangle inequality.
+        }
+        final DoubleDBIDListIter f = c.singletons.iter();
+        final double cd = DBIDUtil.equal(f, it) ? d : distance(id, f);
+        if(cd <= c.maxDist && cd < bestd) {
+          best = c;
+          bestd = cd;
+        }
+      }
+      if(best == null) {
+        cur.singletons.add(d, id);
+        break;
+      }
+      parent = cur;
+      cur = best;
+      d = bestd;
+    }
+    if(rebuild != null) {
+      replace(rebuildParent, rebuild, rebuild(rebuild, rebuildParent, null));
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(root == null) {
+      positions = null;
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(root == null) {
+      return false;
+    }
+    final double d = distance(id, root.singletons.iter());
+    // Second pass without pruning, in case of numerical issues.
+    if(delete(root, null, id, d, true) || delete(root, null, id, d, false)) {
+      positions = null;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Remove an object from a subtree.
+   *
+   * @param cur Current node
+   * @param parent Parent node, or {@code null}
+   * @param id Object to remove
+   * @param d Distance to the routing object of the current node
+   * @param prune Use the cover radius for pruning
+   * @return {@code true} if the object was found
+   */
+  private boolean delete(Node cur, Node parent, DBIDRef id, double d, boolean prune) {
+    final DoubleDBIDListIter it = cur.singletons.iter();
+    if(DBIDUtil.equal(it, id)) {
+      replace(parent, cur, rebuild(cur, parent, id));
+      return true;
+    }
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.singletons.removeSwap(it.getOffset());
+        return true;
+      }
+    }
+    if(cur.isLeaf()) {
+      return false;
+    }
+    final DoubleDBIDListIter r = cur.singletons.iter();
+    for(Node c : cur.children) {
+      if(prune && Math.abs(d - c.parentDist) > c.maxDist) {
+        continue;
+      }
+      final DoubleDBIDListIter f = c.singletons.iter();
+      final double cd = DBIDUtil.equal(f, r) ? d : distance(id, f);
+      if((!prune || cd <= c.maxDist) && delete(c, cur, id, cd, prune)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rebuild a subtree, using the bulk load.
+   *
+   * @param node Subtree root
+   * @param parent Parent node, or {@code null}
+   * @param exclude Object to leave out, may be {@code null}
+   * @return New subtree, {@code null} if empty
+   */
+  private Node rebuild(Node node, Node parent, DBIDRef exclude) {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    collect(node, ids);
+    // Keep the routing object, if possible:
+    DBIDVar r = DBIDUtil.newVar(node.singletons.iter());
+    double parentDist = node.parentDist;
+    if(exclude != null && DBIDUtil.equal(r, exclude)) {
+      r.unset();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(!DBIDUtil.equal(it, exclude)) {
+          r.set(it);
+          break;
+        }
+      }
+      if(!r.isSet()) {
+        return null;
+      }
+      parentDist = parent != null ? distance(parent.singletons.iter(), r) : 0.;
+    }
+    ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(ids.size());
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, r) && (exclude == null || !DBIDUtil.equal(it, exclude))) {
+        elems.add(distance(r, it), it);
+      }
+    }
+    return bulkConstruct(r, Integer.MAX_VALUE, parentDist, elems);
+  }
+
+  /**
+   * Collect all objects of a subtree.
+   *
+   * @param cur Subtree root
+   * @param ids Output
+   */
+  private void collect(Node cur, ArrayModifiableDBIDs ids) {
+    if(cur.isLeaf()) {
+      ids.addDBIDs(cur.singletons);
+      return;
+    }
+    // Routing object is also stored in a child, or as singleton.
+    for(DoubleDBIDListIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+      ids.add(it);
+    }
+    for(Node c : cur.children) {
+      collect(c, ids);
+    }
+  }
+
+  /**
+   * Replace a subtree.
+   *
+   * @param parent Parent node, or {@code null} for the root
+   * @param old Old subtree
+   * @param rep New subtree, may be {@code null}
+   */
+  private void replace(Node parent, Node old, Node rep) {
+    if(parent == null) {
+      root = rep;
+      return;
+    }
+    final int i = parent.children.indexOf(old);
+    if(rep != null) {
+      parent.children.set(i, rep);
+      return;
+    }
+    parent.children.remove(i);
+    if(!parent.children.isEmpty()) {
+      return;
+    }
+    // The parent becomes a leaf; its routing object is also a singleton.
+    final DoubleDBIDListIter r = parent.singletons.iter();
+    for(DoubleDBIDListIter it = parent.singletons.iter().advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, r)) {
+        parent.singletons.removeSwap(it.getOffset());
+        break;
+      }
+    }
+    parent.children = null;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -301,6 +537,83 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     }
   }
 
+  /**
+   * Get the position of each object in a depth-first traversal of the tree.
+   *
+   * @return Positions
+   */
+  protected synchronized WritableIntegerDataStore getPositions() {
+    if(positions == null) {
+      positions = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP, -1);
+      int pos = 0;
+      ArrayList<Node> stack = new ArrayList<>();
+      if(root != null) {
+        stack.add(root);
+      }
+      while(!stack.isEmpty()) {
+        final Node cur = stack.remove(stack.size() - 1);
+        for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+          if(positions.intValue(it) < 0) {
+            positions.putInt(it, pos++);
+          }
+        }
+        if(!cur.isLeaf()) {
+          for(int i = cur.children.size() - 1; i >= 0; i--) {
+            stack.add(cur.children.get(i));
+          }
+        }
+      }
+    }
+    return positions;
+  }
+
+  @Override
+  public DualTreeKNNJoin.Node getJoinHierarchy(DistanceFunction<?> distanceFunction, ArrayModifiableDBIDs ids) {
+    if(!this.distanceFunction.equals(distanceFunction) || root == null) {
+      return null;
+    }
+    return getJoinHierarchy(root, ids, DBIDUtil.newVar());
+  }
+
+  /**
+   * Build the join hierarchy of a subtree. The routing object is used as
+   * center; the singletons of inner nodes become an additional leaf.
+   *
+   * @param cur Current node
+   * @param ids Output ids
+   * @param tmp Temporary variable
+   * @return Join node
+   */
+  private DualTreeKNNJoin.Node getJoinHierarchy(Node cur, ArrayModifiableDBIDs ids, DBIDVar tmp) {
+    final int start = ids.size();
+    if(cur.isLeaf()) {
+      ids.addDBIDs(cur.singletons); // Routing object is first.
+      return new DualTreeKNNJoin.Node(start, ids.size(), null, start);
+    }
+    final DoubleDBIDListIter routing = cur.singletons.iter();
+    final int numsingletons = cur.singletons.size() - 1;
+    DualTreeKNNJoin.Node[] children = new DualTreeKNNJoin.Node[cur.children.size() + (numsingletons > 0 ? 1 : 0)];
+    int center = -1;
+    for(int i = 0; i < cur.children.size(); i++) {
+      children[i] = getJoinHierarchy(cur.children.get(i), ids, tmp);
+      if(center < 0 && DBIDUtil.equal(routing, ids.assignVar(children[i].getCenter(), tmp))) {
+        center = children[i].getCenter();
+      }
+    }
+    if(numsingletons > 0) {
+      final int sstart = ids.size();
+      for(DoubleDBIDListIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+        if(center < 0 && DBIDUtil.equal(routing, it)) {
+          center = ids.size();
+        }
+        ids.add(it);
+      }
+      children[children.length - 1] = new DualTreeKNNJoin.Node(sstart, ids.size(), null);
+    }
+    assert center >= 0 : "Routing object not found in subtree.";
+    return new DualTreeKNNJoin.Node(start, ids.size(), children, center);
+  }
+
   @Override
   public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     // Query on the relation we index
@@ -353,6 +666,9 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
@@ -410,12 +726,36 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
 
     @Override
     public KNNList getKNNForObject(O obj, int k) {
+      return getKNNForObject(obj, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Batch kNN queries are processed in tree order, in parallel.
+     */
+    @Override
+    public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      final int[] order = BatchKNNUtil.spatialOrder(ids, getPositions());
+      return BatchKNNUtil.batchKNN(relation, ids, order, k, distanceQuery, this::getKNNForObject);
+    }
+
+    /**
+     * Find the k nearest neighbors, given an upper bound of the kNN distance.
+     *
+     * @param obj Query object
+     * @param k Number of neighbors
+     * @param bound Upper bound of the kNN distance
+     * @return kNN list
+     */
+    private KNNList getKNNForObject(O obj, int k, double bound) {
       if(k < 1) {
         throw new IllegalArgumentException("At least one object has to be requested!");
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      if(root == null) {
+        return knnList.toKNNList();
+      }
+      double d_k = bound;
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -430,7 +770,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
         final double d = prio + cur.maxDist; // Restore distance to center.
         pq.poll(); // Remove
 
-        if(knnList.size() >= k && prio > d_k) {
+        if(prio > d_k) {
           continue;
         }
 
@@ -452,7 +792,8 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
         else { // Leaf node
           // Consider routing object, too:
           if(d <= d_k) {
-            d_k = knnList.insert(d, it); // First element is a candidate now
+            // First element is a candidate now
+            d_k = Math.min(d_k, knnList.insert(d, it));
           }
         }
         it.advance(); // Skip routing object.
@@ -461,7 +802,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
           if(d - it.doubleValue() <= d_k) {
             final double d2 = distance(obj, it);
             if(d2 <= d_k) {
-              d_k = knnList.insert(d2, it);
+              d_k = Math.min(d_k, knnList.insert(d2, it));
             }
           }
           it.advance();
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -41,6 +42,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -66,7 +68,8 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * In Proc. 23rd International Conference on Machine Learning (ICML).
  * </p>
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * Insertions and removals work as in {@link CoverTree}, including the
+ * periodic rebuilding of subtrees.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -75,7 +78,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * @apiviz.has CoverTreeKNNQuery
  */
 @Priority(Priority.RECOMMENDED)
-public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -121,6 +124,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
      */
     ArrayList<Node> children;
 
+    /**
+     * Remaining insertions before this subtree is rebuilt.
+     */
+    int budget;
+
     /**
      * Constructor.
      *
@@ -163,7 +171,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
   @Override
   public void initialize() {
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    if(LOG.isVerbose() && root != null) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -210,10 +218,13 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     final double max = maxDistance(elems);
     final int scale = Math.min(distToScale(max) - 1, maxScale);
     final int nextScale = scale - 1;
+    final int budget = insertionBudget(elems.size() + 1);
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, elems);
+      Node leaf = new Node(cur, max, elems);
+      leaf.budget = budget;
+      return leaf;
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -225,6 +236,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max);
+    node.budget = budget;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
@@ -262,6 +274,199 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     return node;
   }
 
+  @Override
+  public void insert(DBIDRef id) {
+    if(root == null) {
+      root = new Node(id, 0., DBIDUtil.newDistanceDBIDList(0));
+      root.budget = insertionBudget(1);
+      return;
+    }
+    Node cur = root, parent = null, rebuild = null, rebuildParent = null;
+    double d = distance(id, cur.singletons.iter());
+    while(true) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      if(--cur.budget < 0 && rebuild == null) {
+        rebuild = cur;
+        rebuildParent = parent;
+      }
+      if(cur.isLeaf()) {
+        cur.singletons.add(id);
+        break;
+      }
+      // Find the closest child that covers the new object:
+      final DBIDIter it = cur.singletons.iter();
+      Node best = null;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(Node c : cur.children) {
+        final DBIDIter f = c.singletons.iter();
+        final double cd = DBIDUtil.equal(f, it) ? d : distance(id, f);
+        if(cd <= c.maxDist && cd < bestd) {
+          best = c;
+          bestd = cd;
+        }
+      }
+      if(best == null) {
+        cur.singletons.add(id);
+        break;
+      }
+      parent = cur;
+      cur = best;
+      d = bestd;
+    }
+    if(rebuild != null) {
+      replace(rebuildParent, rebuild, rebuild(rebuild, null));
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(root == null) {
+      return false;
+    }
+    final double d = distance(id, root.singletons.iter());
+    // Second pass without pruning, in case of numerical issues.
+    return delete(root, null, id, d, true) || delete(root, null, id, d, false);
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Remove an object from a subtree.
+   *
+   * @param cur Current node
+   * @param parent Parent node, or {@code null}
+   * @param id Object to remove
+   * @param d Distance to the routing object of the current node
+   * @param prune Use the cover radius for pruning
+   * @return {@code true} if the object was found
+   */
+  private boolean delete(Node cur, Node parent, DBIDRef id, double d, boolean prune) {
+    final DBIDArrayIter it = cur.singletons.iter();
+    if(DBIDUtil.equal(it, id)) {
+      replace(parent, cur, rebuild(cur, id));
+      return true;
+    }
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.singletons.remove(it.getOffset());
+        return true;
+      }
+    }
+    if(cur.isLeaf()) {
+      return false;
+    }
+    final DBIDIter r = cur.singletons.iter();
+    for(Node c : cur.children) {
+      final DBIDIter f = c.singletons.iter();
+      final double cd = DBIDUtil.equal(f, r) ? d : distance(id, f);
+      if((!prune || cd <= c.maxDist) && delete(c, cur, id, cd, prune)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rebuild a subtree, using the bulk load.
+   *
+   * @param node Subtree root
+   * @param exclude Object to leave out, may be {@code null}
+   * @return New subtree, {@code null} if empty
+   */
+  private Node rebuild(Node node, DBIDRef exclude) {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    collect(node, ids);
+    // Keep the routing object, if possible:
+    DBIDVar r = DBIDUtil.newVar(node.singletons.iter());
+    if(exclude != null && DBIDUtil.equal(r, exclude)) {
+      r.unset();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        if(!DBIDUtil.equal(it, exclude)) {
+          r.set(it);
+          break;
+        }
+      }
+      if(!r.isSet()) {
+        return null;
+      }
+    }
+    ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(ids.size());
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, r) && (exclude == null || !DBIDUtil.equal(it, exclude))) {
+        elems.add(distance(r, it), it);
+      }
+    }
+    return bulkConstruct(r, Integer.MAX_VALUE, elems);
+  }
+
+  /**
+   * Collect all objects of a subtree.
+   *
+   * @param cur Subtree root
+   * @param ids Output
+   */
+  private void collect(Node cur, ArrayModifiableDBIDs ids) {
+    if(cur.isLeaf()) {
+      ids.addDBIDs(cur.singletons);
+      return;
+    }
+    // Routing object is also stored in a child, or as singleton.
+    for(DBIDIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+      ids.add(it);
+    }
+    for(Node c : cur.children) {
+      collect(c, ids);
+    }
+  }
+
+  /**
+   * Replace a subtree.
+   *
+   * @param parent Parent node, or {@code null} for the root
+   * @param old Old subtree
+   * @param rep New subtree, may be {@code null}
+   */
+  private void replace(Node parent, Node old, Node rep) {
+    if(parent == null) {
+      root = rep;
+      return;
+    }
+    final int i = parent.children.indexOf(old);
+    if(rep != null) {
+      parent.children.set(i, rep);
+      return;
+    }
+    parent.children.remove(i);
+    if(!parent.children.isEmpty()) {
+      return;
+    }
+    // The parent becomes a leaf; its routing object is also a singleton.
+    final DBIDIter r = parent.singletons.iter();
+    for(DBIDArrayIter it = parent.singletons.iter().advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, r)) {
+        parent.singletons.remove(it.getOffset());
+        break;
+      }
+    }
+    parent.children = null;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -335,6 +540,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       DBIDVar r = DBIDUtil.newVar();
@@ -391,6 +599,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
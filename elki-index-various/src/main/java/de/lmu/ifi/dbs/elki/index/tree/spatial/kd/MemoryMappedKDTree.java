@@ -0,0 +1,930 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.WeightedNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Static k-d-tree with a flat memory layout that can be stored to a file, and
+ * memory-mapped when loading it again instead of rebuilding the tree.
+ * <p>
+ * The tree is implicit in the order of the data (as in
+ * {@link SmallMemoryKDTree}): the median element of each range is the
+ * splitting element, and the left and right halves are the subtrees. For each
+ * splitting element, the split dimension (of maximum spread) is stored. A copy
+ * of the coordinates is kept in tree order, so queries never need to access
+ * the relation. Subtrees are built in parallel.
+ * <p>
+ * File layout (little endian): a header of {@value #HEADER_SIZE} bytes (magic,
+ * version, size, dimensionality, leaf size), the offsets of the objects in the
+ * relation (int) in tree order, the split dimensions (short), and the
+ * coordinates (double) in tree order. The stored offsets refer to the order of
+ * the relation, so the data must be loaded in the same order. When the file
+ * does not match the data, the tree is rebuilt and the file overwritten.
+ * <p>
+ * Reference:
+ * <p>
+ * J. L. Bentley<br>
+ * Multidimensional binary search trees used for associative searching<br>
+ * Communications of the ACM 18(9)
+ *
+ * @author agent
+ * @since 0.7.5
+ *
+ * @apiviz.has KDTreeKNNQuery
+ * @apiviz.has KDTreeRangeQuery
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley", //
+    title = "Multidimensional binary search trees used for associative searching", //
+    booktitle = "Communications of the ACM 18(9)", //
+    url = "https://doi.org/10.1145/361002.361007", //
+    bibkey = "DBLP:journals/cacm/Bentley75")
+public class MemoryMappedKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(MemoryMappedKDTree.class);
+
+  /**
+   * Magic number of the file format ("KDTR").
+   */
+  static final int MAGIC = 0x4B445452;
+
+  /**
+   * File format version.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Size of the file header.
+   */
+  static final int HEADER_SIZE = 32;
+
+  /**
+   * Number of elements in each buffer chunk (memory maps are limited to 2 GB).
+   */
+  private static final int CHUNK_SHIFT = 27, CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+  /**
+   * Minimum size of subtrees to build in parallel.
+   */
+  private static final int PARALLEL_MIN_SIZE = 1 << 14;
+
+  /**
+   * Distance types supported.
+   */
+  private static final int EUCLIDEAN = 0, SQUARED = 1, MANHATTAN = 2, MAXIMUM = 3, LPNORM = 4;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  int leafsize;
+
+  /**
+   * File to store the tree, may be {@code null}.
+   */
+  File file;
+
+  /**
+   * Indexed objects, by offset.
+   */
+  ArrayDBIDs ids;
+
+  /**
+   * Number of objects.
+   */
+  int size;
+
+  /**
+   * The number of dimensions.
+   */
+  int dims;
+
+  /**
+   * Object offsets, in tree order.
+   */
+  IntBuffer[] perm;
+
+  /**
+   * Split dimension of each splitting element.
+   */
+  ShortBuffer[] split;
+
+  /**
+   * Coordinates, in tree order.
+   */
+  DoubleBuffer[] coords;
+
+  /**
+   * Whether the tree was loaded from the file.
+   */
+  boolean loaded = false;
+
+  /**
+   * Counter for distance computations.
+   */
+  final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   * @param file File to store the tree, may be {@code null}
+   */
+  public MemoryMappedKDTree(Relation<O> relation, int leafsize, File file) {
+    super(relation);
+    this.leafsize = leafsize;
+    this.file = file;
+    assert (leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    size = ids.size();
+    dims = RelationUtil.dimensionality(relation);
+    if((long) size * dims > Integer.MAX_VALUE || dims > Short.MAX_VALUE) {
+      throw new AbortException("Data set too large for " + getLongName());
+    }
+    if(file != null && file.exists()) {
+      try {
+        if(load()) {
+          loaded = true;
+          return;
+        }
+      }
+      catch(IOException e) {
+        LOG.warning("Could not load k-d-tree from " + file + ": " + e.getMessage());
+      }
+    }
+    build();
+    if(file != null) {
+      try {
+        write();
+      }
+      catch(IOException e) {
+        throw new AbortException("I/O error in writing the k-d-tree: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Build the tree in memory.
+   */
+  private void build() {
+    final int[] p = new int[size];
+    final short[] s = new short[size];
+    // Copy the data, in relation order:
+    final double[] data = new double[size * dims];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final NumberVector v = relation.get(it);
+      final int off = it.getOffset(), base = off * dims;
+      for(int d = 0; d < dims; d++) {
+        data[base + d] = v.doubleValue(d);
+      }
+      p[off] = off;
+    }
+    // Build the top levels, then the independent subtrees in parallel.
+    final int minpar = Math.max(PARALLEL_MIN_SIZE, size >>> 6);
+    final ArrayList<int[]> tasks = new ArrayList<>();
+    buildTop(p, s, data, 0, size, minpar, tasks);
+    ParallelExecutor.runBlocks(tasks.size(), 1, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final int[] range = tasks.get(i);
+        buildTree(p, s, data, range[0], range[1]);
+      }
+    });
+    // Reorder the coordinates into tree order:
+    final double[] sorted = new double[size * dims];
+    for(int i = 0, j = 0; i < size; i++, j += dims) {
+      System.arraycopy(data, p[i] * dims, sorted, j, dims);
+    }
+    perm = new IntBuffer[numChunks(size)];
+    split = new ShortBuffer[perm.length];
+    for(int c = 0; c < perm.length; c++) {
+      final int start = c << CHUNK_SHIFT, len = Math.min(size - start, 1 << CHUNK_SHIFT);
+      perm[c] = IntBuffer.wrap(p, start, len).slice();
+      split[c] = ShortBuffer.wrap(s, start, len).slice();
+    }
+    coords = new DoubleBuffer[numChunks(size * dims)];
+    for(int c = 0; c < coords.length; c++) {
+      final int start = c << CHUNK_SHIFT, len = Math.min(size * dims - start, 1 << CHUNK_SHIFT);
+      coords[c] = DoubleBuffer.wrap(sorted, start, len).slice();
+    }
+  }
+
+  /**
+   * Build the top of the tree, collecting subtrees to build in parallel.
+   *
+   * @param p Permutation
+   * @param s Split dimensions
+   * @param data Data, in relation order
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @param minpar Size of subtrees to build in parallel
+   * @param tasks Output list of subtrees
+   */
+  private void buildTop(int[] p, short[] s, double[] data, int left, int right, int minpar, ArrayList<int[]> tasks) {
+    if(right - left <= leafsize) {
+      return;
+    }
+    if(right - left <= minpar) {
+      tasks.add(new int[] { left, right });
+      return;
+    }
+    final int middle = splitNode(p, s, data, left, right);
+    buildTop(p, s, data, left, middle, minpar, tasks);
+    buildTop(p, s, data, middle + 1, right, minpar, tasks);
+  }
+
+  /**
+   * Recursively build a subtree by partial sorting.
+   *
+   * @param p Permutation
+   * @param s Split dimensions
+   * @param data Data, in relation order
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   */
+  private void buildTree(int[] p, short[] s, double[] data, int left, int right) {
+    if(right - left <= leafsize) {
+      return;
+    }
+    final int middle = splitNode(p, s, data, left, right);
+    buildTree(p, s, data, left, middle);
+    buildTree(p, s, data, middle + 1, right);
+  }
+
+  /**
+   * Split a node at the median of the dimension of largest spread.
+   *
+   * @param p Permutation
+   * @param s Split dimensions
+   * @param data Data, in relation order
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @return Position of the splitting element
+   */
+  private int splitNode(int[] p, short[] s, double[] data, int left, int right) {
+    int best = 0;
+    double bestspread = Double.NEGATIVE_INFINITY;
+    for(int d = 0; d < dims; d++) {
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for(int i = left; i < right; i++) {
+        final double v = data[p[i] * dims + d];
+        min = v < min ? v : min;
+        max = v > max ? v : max;
+      }
+      if(max - min > bestspread) {
+        bestspread = max - min;
+        best = d;
+      }
+    }
+    final int middle = (left + right) >>> 1;
+    quickSelect(p, data, best, left, right - 1, middle);
+    s[middle] = (short) best;
+    return middle;
+  }
+
+  /**
+   * Partially sort the permutation, such that the element at position k is
+   * in its sorted position.
+   *
+   * @param p Permutation
+   * @param data Data, in relation order
+   * @param d Dimension
+   * @param lo First position (inclusive)
+   * @param hi Last position (inclusive)
+   * @param k Position to select
+   */
+  private void quickSelect(int[] p, double[] data, int d, int lo, int hi, int k) {
+    while(hi > lo) {
+      // Median of three pivot
+      final int mid = (lo + hi) >>> 1;
+      if(data[p[mid] * dims + d] < data[p[lo] * dims + d]) {
+        swap(p, lo, mid);
+      }
+      if(data[p[hi] * dims + d] < data[p[lo] * dims + d]) {
+        swap(p, lo, hi);
+      }
+      if(data[p[hi] * dims + d] < data[p[mid] * dims + d]) {
+        swap(p, mid, hi);
+      }
+      final double pivot = data[p[mid] * dims + d];
+      int i = lo, j = hi;
+      while(i <= j) {
+        while(data[p[i] * dims + d] < pivot) {
+          ++i;
+        }
+        while(data[p[j] * dims + d] > pivot) {
+          --j;
+        }
+        if(i <= j) {
+          swap(p, i++, j--);
+        }
+      }
+      if(k <= j) {
+        hi = j;
+      }
+      else if(k >= i) {
+        lo = i;
+      }
+      else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Swap two entries.
+   *
+   * @param p Array
+   * @param i First position
+   * @param j Second position
+   */
+  private static void swap(int[] p, int i, int j) {
+    final int t = p[i];
+    p[i] = p[j];
+    p[j] = t;
+  }
+
+  /**
+   * Write the tree to the file.
+   *
+   * @throws IOException on I/O errors
+   */
+  private void write() throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+      buf.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(dims).putInt(leafsize);
+      while(buf.position() < HEADER_SIZE) {
+        buf.put((byte) 0);
+      }
+      for(int i = 0; i < size; i++) {
+        buf = flushIfFull(channel, buf, 4);
+        buf.putInt(perm[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK));
+      }
+      for(int i = 0; i < size; i++) {
+        buf = flushIfFull(channel, buf, 2);
+        buf.putShort(split[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK));
+      }
+      // Align to 8 bytes
+      for(int i = (int) (coordsStart(size) - splitStart(size) - 2L * size); i > 0; i--) {
+        buf = flushIfFull(channel, buf, 1);
+        buf.put((byte) 0);
+      }
+      for(int i = 0, e = size * dims; i < e; i++) {
+        buf = flushIfFull(channel, buf, 8);
+        buf.putDouble(coords[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK));
+      }
+      buf.flip();
+      while(buf.hasRemaining()) {
+        channel.write(buf);
+      }
+    }
+  }
+
+  /**
+   * Write the buffer if it cannot hold the next value.
+   *
+   * @param channel Output channel
+   * @param buf Buffer
+   * @param next Size of the next value
+   * @return Buffer
+   * @throws IOException on I/O errors
+   */
+  private static ByteBuffer flushIfFull(FileChannel channel, ByteBuffer buf, int next) throws IOException {
+    if(buf.remaining() < next) {
+      buf.flip();
+      while(buf.hasRemaining()) {
+        channel.write(buf);
+      }
+      buf.clear();
+    }
+    return buf;
+  }
+
+  /**
+   * Load the tree from the file, if it matches the data.
+   *
+   * @return {@code true} when loaded successfully
+   * @throws IOException on I/O errors
+   */
+  private boolean load() throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      if(raf.length() < HEADER_SIZE) {
+        LOG.warning("k-d-tree file " + file + " is truncated, rebuilding.");
+        return false;
+      }
+      ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+        LOG.warning("k-d-tree file " + file + " has an unsupported format, rebuilding.");
+        return false;
+      }
+      final int fsize = header.getInt(), fdims = header.getInt(), fleafsize = header.getInt();
+      if(fsize != size || fdims != dims || fleafsize < 1 || raf.length() != coordsStart(size) + 8L * size * dims) {
+        LOG.warning("k-d-tree file " + file + " does not match the data set, rebuilding.");
+        return false;
+      }
+      perm = new IntBuffer[numChunks(size)];
+      split = new ShortBuffer[perm.length];
+      for(int c = 0; c < perm.length; c++) {
+        final long start = (long) c << CHUNK_SHIFT;
+        final int len = (int) Math.min(size - start, 1 << CHUNK_SHIFT);
+        perm[c] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + 4 * start, 4L * len).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        split[c] = channel.map(MapMode.READ_ONLY, splitStart(size) + 2 * start, 2L * len).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+      }
+      coords = new DoubleBuffer[numChunks(size * dims)];
+      for(int c = 0; c < coords.length; c++) {
+        final long start = (long) c << CHUNK_SHIFT;
+        final int len = (int) Math.min((long) size * dims - start, 1 << CHUNK_SHIFT);
+        coords[c] = channel.map(MapMode.READ_ONLY, coordsStart(size) + 8 * start, 8L * len).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+      }
+      leafsize = fleafsize;
+    }
+    // Spot check that the data was loaded in the same order:
+    DBIDVar var = DBIDUtil.newVar();
+    for(int i = 0, step = Math.max(1, size >>> 4); i < size; i += step) {
+      final NumberVector v = relation.get(ids.assignVar(perm(i), var));
+      for(int d = 0, base = i * dims; d < dims; d++) {
+        if(v.doubleValue(d) != coord(base + d)) {
+          LOG.warning("k-d-tree file " + file + " does not match the data set, rebuilding.");
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Number of chunks needed.
+   *
+   * @param len Number of elements
+   * @return Number of chunks
+   */
+  private static int numChunks(int len) {
+    return Math.max(1, (int) ((len + (long) CHUNK_MASK) >>> CHUNK_SHIFT));
+  }
+
+  /**
+   * File position of the split dimensions.
+   *
+   * @param size Data set size
+   * @return Position
+   */
+  private static long splitStart(int size) {
+    return HEADER_SIZE + 4L * size;
+  }
+
+  /**
+   * File position of the coordinates, aligned to 8 bytes.
+   *
+   * @param size Data set size
+   * @return Position
+   */
+  private static long coordsStart(int size) {
+    return (splitStart(size) + 2L * size + 7) & ~7L;
+  }
+
+  /**
+   * Get the object offset at a tree position.
+   *
+   * @param i Position
+   * @return Offset in the relation
+   */
+  private int perm(int i) {
+    return perm[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+  }
+
+  /**
+   * Get the split dimension at a tree position.
+   *
+   * @param i Position
+   * @return Split dimension
+   */
+  private int split(int i) {
+    return split[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+  }
+
+  /**
+   * Get a coordinate.
+   *
+   * @param i Index (position * dims + dimension)
+   * @return Coordinate value
+   */
+  private double coord(int i) {
+    return coords[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+  }
+
+  @Override
+  public String getLongName() {
+    return "memory-mapped kd-tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "mapped-kd-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Count distance computations.
+   *
+   * @param n Number of computations
+   */
+  protected void countDistanceComputations(int n) {
+    if(distcalc != null) {
+      distcalc.increment(n);
+    }
+  }
+
+  /**
+   * Get the distance type supported by the tree.
+   *
+   * @param df Distance function
+   * @return Distance type, or -1
+   */
+  private static int distanceType(DistanceFunction<?> df) {
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return SQUARED;
+    }
+    if(df instanceof LPNormDistanceFunction && !(df instanceof WeightedNumberVectorDistanceFunction)) {
+      final double p = ((LPNormDistanceFunction) df).getP();
+      return p == 2. ? EUCLIDEAN : p == 1. ? MANHATTAN : p == Double.POSITIVE_INFINITY ? MAXIMUM : LPNORM;
+    }
+    return -1;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    final int type = distanceType(distanceQuery.getDistanceFunction());
+    return type < 0 ? null : new KDTreeKNNQuery(distanceQuery, type);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    final int type = distanceType(distanceQuery.getDistanceFunction());
+    return type < 0 ? null : new KDTreeRangeQuery(distanceQuery, type);
+  }
+
+  /**
+   * Compute the distance to a stored point.
+   *
+   * @param type Distance type
+   * @param p Exponent for general Lp norms
+   * @param q Query coordinates
+   * @param pos Tree position
+   * @return Distance
+   */
+  private double distance(int type, double p, double[] q, int pos) {
+    final int base = pos * dims;
+    double agg = 0.;
+    switch(type){
+    case EUCLIDEAN:
+    case SQUARED:
+      for(int d = 0; d < dims; d++) {
+        final double v = q[d] - coord(base + d);
+        agg += v * v;
+      }
+      return type == SQUARED ? agg : Math.sqrt(agg);
+    case MANHATTAN:
+      for(int d = 0; d < dims; d++) {
+        agg += Math.abs(q[d] - coord(base + d));
+      }
+      return agg;
+    case MAXIMUM:
+      for(int d = 0; d < dims; d++) {
+        final double v = Math.abs(q[d] - coord(base + d));
+        agg = v > agg ? v : agg;
+      }
+      return agg;
+    default:
+      for(int d = 0; d < dims; d++) {
+        agg += Math.pow(Math.abs(q[d] - coord(base + d)), p);
+      }
+      return Math.pow(agg, 1. / p);
+    }
+  }
+
+  /**
+   * kNN query for the k-d-tree.
+   *
+   * @author agent
+   */
+  public class KDTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Distance type.
+     */
+    private final int type;
+
+    /**
+     * Exponent of general Lp norms.
+     */
+    private final double p;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param type Distance type
+     */
+    public KDTreeKNNQuery(DistanceQuery<O> distanceQuery, int type) {
+      super(distanceQuery);
+      this.type = type;
+      this.p = type == LPNORM ? ((LPNormDistanceFunction) distanceQuery.getDistanceFunction()).getP() : 2.;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      final double[] q = obj.toArray();
+      kdKNNSearch(0, size, q, knns, DBIDUtil.newVar(), Double.POSITIVE_INFINITY);
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the kd-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param query Query coordinates
+     * @param knns kNN heap
+     * @param var Variable for DBIDs
+     * @param maxdist Current upper bound of kNN distance.
+     * @return New upper bound of kNN distance.
+     */
+    private double kdKNNSearch(int left, int right, double[] query, KNNHeap knns, DBIDVar var, double maxdist) {
+      if(right - left <= leafsize) {
+        for(int i = left; i < right; i++) {
+          final double dist = distance(type, p, query, i);
+          if(dist <= maxdist) {
+            maxdist = knns.insert(dist, ids.assignVar(perm(i), var));
+          }
+        }
+        countDistanceComputations(right - left);
+        return maxdist;
+      }
+      final int middle = (left + right) >>> 1, axis = split(middle);
+      final double delta = coord(middle * dims + axis) - query[axis];
+      final double axisdist = type == SQUARED ? delta * delta : Math.abs(delta);
+      // Descend into the closer side first:
+      final boolean onleft = delta >= 0;
+      if(onleft ? left < middle : middle + 1 < right) {
+        maxdist = onleft ? kdKNNSearch(left, middle, query, knns, var, maxdist) //
+            : kdKNNSearch(middle + 1, right, query, knns, var, maxdist);
+      }
+      if(axisdist <= maxdist) {
+        final double dist = distance(type, p, query, middle);
+        countDistanceComputations(1);
+        if(dist <= maxdist) {
+          maxdist = knns.insert(dist, ids.assignVar(perm(middle), var));
+        }
+        if(axisdist <= maxdist && (onleft ? middle + 1 < right : left < middle)) {
+          maxdist = onleft ? kdKNNSearch(middle + 1, right, query, knns, var, maxdist) //
+              : kdKNNSearch(left, middle, query, knns, var, maxdist);
+        }
+      }
+      return maxdist;
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   *
+   * @author agent
+   */
+  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Distance type.
+     */
+    private final int type;
+
+    /**
+     * Exponent of general Lp norms.
+     */
+    private final double p;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param type Distance type
+     */
+    public KDTreeRangeQuery(DistanceQuery<O> distanceQuery, int type) {
+      super(distanceQuery);
+      this.type = type;
+      this.p = type == LPNORM ? ((LPNormDistanceFunction) distanceQuery.getDistanceFunction()).getP() : 2.;
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      kdRangeSearch(0, size, obj.toArray(), result, DBIDUtil.newVar(), range);
+    }
+
+    /**
+     * Perform a range search on the kd-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param query Query coordinates
+     * @param res Result list
+     * @param var Variable for DBIDs
+     * @param radius Query radius
+     */
+    private void kdRangeSearch(int left, int right, double[] query, ModifiableDoubleDBIDList res, DBIDVar var, double radius) {
+      if(right - left <= leafsize) {
+        for(int i = left; i < right; i++) {
+          final double dist = distance(type, p, query, i);
+          if(dist <= radius) {
+            res.add(dist, ids.assignVar(perm(i), var));
+          }
+        }
+        countDistanceComputations(right - left);
+        return;
+      }
+      final int middle = (left + right) >>> 1, axis = split(middle);
+      final double delta = coord(middle * dims + axis) - query[axis];
+      final boolean close = (type == SQUARED ? delta * delta : Math.abs(delta)) <= radius;
+      if(close) {
+        final double dist = distance(type, p, query, middle);
+        countDistanceComputations(1);
+        if(dist <= radius) {
+          res.add(dist, ids.assignVar(perm(middle), var));
+        }
+      }
+      if(left < middle && (delta >= 0 || close)) {
+        kdRangeSearch(left, middle, query, res, var, radius);
+      }
+      if(middle + 1 < right && (delta <= 0 || close)) {
+        kdRangeSearch(middle + 1, right, query, res, var, radius);
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author agent
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has MemoryMappedKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "mappedkd" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * File to store the tree, may be {@code null}.
+     */
+    File file;
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     * @param file File to store the tree, may be {@code null}
+     */
+    public Factory(int leafsize, File file) {
+      super();
+      this.leafsize = leafsize;
+      this.file = file;
+    }
+
+    @Override
+    public MemoryMappedKDTree<O> instantiate(Relation<O> relation) {
+      return new MemoryMappedKDTree<>(relation, leafsize, file);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author agent
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+      /**
+       * File to store the tree in, and to load it from when it exists.
+       */
+      public static final OptionID FILE_ID = new OptionID("kd.file", "File to store the k-d-tree in, and to memory-map it from on later runs.");
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      /**
+       * File to store the tree, may be {@code null}.
+       */
+      File file;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter leafP = new IntParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 16) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(leafP)) {
+          leafsize = leafP.intValue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(leafsize, file);
+      }
+    }
+  }
+}
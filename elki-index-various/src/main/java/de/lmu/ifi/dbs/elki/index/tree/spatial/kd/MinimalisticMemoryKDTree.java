@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
@@ -39,24 +41,31 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFun
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ArrayModifiableDBIDs} to sort the data in a
- * serialized tree.
+ * Simple implementation of an in-memory K-D-tree. It is very simple and memory
+ * efficient: all it uses is one {@link ArrayModifiableDBIDs} to sort the data
+ * in a serialized tree.
+ * <p>
+ * Updates use the logarithmic method of Bentley and Saxe, as in
+ * {@link SmallMemoryKDTree}: inserted objects form additional subtrees, which
+ * are merged when they grow; deleted objects are only marked until their
+ * subtree is rebuilt.
  * <p>
  * Reference:
  * <p>
@@ -64,6 +73,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * Multidimensional binary search trees used for associative searching<br>
  * Communications of the ACM 18(9)
  * <p>
+ * J. L. Bentley, J. B. Saxe<br>
+ * Decomposable Searching Problems I: Static-to-Dynamic Transformation<br>
+ * Journal of Algorithms 1(4)
+ * <p>
  * The version {@link SmallMemoryKDTree} uses 3x more memory, but is
  * considerably faster because it keeps a local copy of the attribute values,
  * thus reducing the number of accesses to the relation substantially. In
@@ -83,7 +96,12 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
     booktitle = "Communications of the ACM 18(9)", //
     url = "https://doi.org/10.1145/361002.361007", //
     bibkey = "DBLP:journals/cacm/Bentley75")
-public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+@Reference(authors = "J. L. Bentley, J. B. Saxe", //
+    title = "Decomposable Searching Problems I: Static-to-Dynamic Transformation", //
+    booktitle = "Journal of Algorithms 1(4)", //
+    url = "https://doi.org/10.1016/0196-6774(80)90015-2", //
+    bibkey = "DBLP:journals/jal/BentleyS80")
+public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O>, DynamicIndex {
   /**
    * Class logger
    */
@@ -94,6 +112,33 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
    */
   ArrayModifiableDBIDs sorted = null;
 
+  /**
+   * Start offsets of the subtrees in {@link #sorted}, in decreasing size. Each
+   * subtree ends where the next begins.
+   */
+  int[] segments = new int[0];
+
+  /**
+   * Number of subtrees.
+   */
+  int numsegments = 0;
+
+  /**
+   * Offsets of deleted objects, {@code null} if there are none.
+   */
+  long[] deleted = null;
+
+  /**
+   * Number of deleted objects still in {@link #sorted}.
+   */
+  int numdeleted = 0;
+
+  /**
+   * Splitting values of deleted objects that are still used as splitting
+   * elements, because their vectors are no longer in the relation.
+   */
+  Int2DoubleOpenHashMap deletedSplits = null;
+
   /**
    * The number of dimensions.
    */
@@ -139,14 +184,237 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
   public void initialize() {
     sorted = DBIDUtil.newArray(relation.getDBIDs());
     dims = RelationUtil.dimensionality(relation);
-    final VectorUtil.SortDBIDsBySingleDimension comp;
-    if(objaccess != null) {
-      comp = new CountSortAccesses(objaccess, relation);
+    rebuild();
+  }
+
+  /**
+   * Get a comparator for building the tree.
+   *
+   * @return Comparator
+   */
+  private SortDBIDsBySingleDimension comparator() {
+    return objaccess != null ? new CountSortAccesses(objaccess, relation) : new VectorUtil.SortDBIDsBySingleDimension(relation);
+  }
+
+  /**
+   * Rebuild the tree as a single subtree, removing deleted objects.
+   */
+  private void rebuild() {
+    compact(0);
+    numsegments = 0;
+    if(sorted.size() > 0) {
+      addSegment(0);
+      buildTree(0, sorted.size(), 0, comparator());
     }
-    else {
-      comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
+  }
+
+  /**
+   * Add a subtree at the end.
+   *
+   * @param start Start offset
+   */
+  private void addSegment(int start) {
+    if(numsegments == segments.length) {
+      segments = Arrays.copyOf(segments, (numsegments << 1) + 1);
+    }
+    segments[numsegments++] = start;
+  }
+
+  /**
+   * End offset of a subtree.
+   *
+   * @param i Subtree number
+   * @return End offset (exclusive)
+   */
+  int segmentEnd(int i) {
+    return i + 1 < numsegments ? segments[i + 1] : sorted.size();
+  }
+
+  /**
+   * Test if an object was deleted.
+   *
+   * @param off Offset
+   * @return {@code true} if deleted
+   */
+  boolean isDeleted(int off) {
+    return deleted != null && BitsUtil.get(deleted, off);
+  }
+
+  /**
+   * Remove the deleted objects from the end of the array.
+   *
+   * @param start First offset to compact
+   */
+  private void compact(int start) {
+    if(numdeleted == 0) {
+      return;
+    }
+    final int size = sorted.size();
+    int w = start;
+    for(int r = start; r < size; r++) {
+      if(BitsUtil.get(deleted, r)) {
+        BitsUtil.clearI(deleted, r);
+        --numdeleted;
+        if(deletedSplits != null) {
+          deletedSplits.remove(r);
+        }
+        continue;
+      }
+      if(w < r) {
+        sorted.swap(w, r);
+      }
+      ++w;
+    }
+    while(sorted.size() > w) {
+      sorted.remove(sorted.size() - 1);
+    }
+    if(numdeleted == 0) {
+      deleted = null;
+      deletedSplits = null;
     }
-    buildTree(0, sorted.size(), 0, comp);
+  }
+
+  /**
+   * Find the splitting axis of an offset within a subtree.
+   *
+   * @param left Subtree begin
+   * @param right Subtree end (exclusive)
+   * @param off Offset
+   * @return Splitting axis, or -1 if the offset is in a leaf
+   */
+  private int splitAxis(int left, int right, int off) {
+    for(int axis = 0; right - left > leafsize; axis = (axis + 1) % dims) {
+      final int middle = (left + right) >>> 1;
+      if(off == middle) {
+        return axis;
+      }
+      if(off < middle) {
+        right = middle;
+      }
+      else {
+        left = middle + 1;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(dims < 0) {
+      dims = relation.get(id).getDimensionality();
+    }
+    final int start = sorted.size();
+    sorted.add(id);
+    merge(start);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(ids.isEmpty()) {
+      return;
+    }
+    if(dims < 0) {
+      dims = relation.get(ids.iter()).getDimensionality();
+    }
+    final int start = sorted.size();
+    sorted.addDBIDs(ids);
+    merge(start);
+  }
+
+  /**
+   * Add the objects from the given offset as new subtree, and merge it with
+   * its predecessors while it has at least half their size.
+   *
+   * @param start First new object
+   */
+  private void merge(int start) {
+    final int size = sorted.size();
+    while(numsegments > 0 && (size - start) << 1 >= start - segments[numsegments - 1]) {
+      start = segments[--numsegments];
+    }
+    compact(start);
+    if(start < sorted.size()) {
+      addSegment(start);
+      buildTree(start, sorted.size(), 0, comparator());
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    final O obj = relation.get(id);
+    final DBIDArrayIter iter = sorted.iter();
+    for(int i = 0; i < numsegments; i++) {
+      final int off = find(segments[i], segmentEnd(i), 0, obj, id, iter);
+      if(off < 0) {
+        continue;
+      }
+      if(deleted == null) {
+        deleted = BitsUtil.zero(sorted.size());
+      }
+      else if((off >>> 6) >= deleted.length) {
+        deleted = BitsUtil.copy(deleted, sorted.size());
+      }
+      BitsUtil.setI(deleted, off);
+      ++numdeleted;
+      // Keep the splitting value, the tree structure still depends on it.
+      final int axis = splitAxis(segments[i], segmentEnd(i), off);
+      if(axis >= 0) {
+        if(deletedSplits == null) {
+          deletedSplits = new Int2DoubleOpenHashMap();
+        }
+        deletedSplits.put(off, obj.doubleValue(axis));
+      }
+      if(numdeleted << 1 > sorted.size()) {
+        rebuild();
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Find the offset of an object in a subtree.
+   *
+   * @param left Subtree begin
+   * @param right Subtree end (exclusive)
+   * @param axis Current splitting axis
+   * @param obj Object
+   * @param id Object id
+   * @param iter Iterator variable
+   * @return Offset, or -1 if not found
+   */
+  private int find(int left, int right, int axis, O obj, DBIDRef id, DBIDArrayIter iter) {
+    if(right - left <= leafsize) {
+      for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+        if(DBIDUtil.equal(iter, id) && !isDeleted(iter.getOffset())) {
+          return iter.getOffset();
+        }
+      }
+      return -1;
+    }
+    final int middle = (left + right) >>> 1;
+    final boolean live = !isDeleted(middle);
+    if(live && DBIDUtil.equal(iter.seek(middle), id)) {
+      return middle;
+    }
+    final double delta = (live ? relation.get(iter).doubleValue(axis) : deletedSplits.get(middle)) - obj.doubleValue(axis);
+    countObjectAccess();
+    final int next = (axis + 1) % dims;
+    int off = -1;
+    if(delta >= 0 && left < middle) {
+      off = find(left, middle, next, obj, id, iter);
+    }
+    if(off < 0 && delta <= 0 && middle + 1 < right) {
+      off = find(middle + 1, right, next, obj, id, iter);
+    }
+    return off;
   }
 
   /**
@@ -300,7 +568,11 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     @Override
     public KNNList getKNNForObject(O obj, int k) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      final DBIDArrayIter iter = sorted.iter();
+      double maxdist = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < numsegments; i++) {
+        maxdist = kdKNNSearch(segments[i], segmentEnd(i), 0, obj, knns, iter, maxdist);
+      }
       return knns.toKNNList();
     }
 
@@ -319,6 +591,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DBIDArrayIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter.getOffset())) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -331,11 +606,12 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      final boolean live = !isDeleted(middle);
+      O split = live ? relation.get(iter.seek(middle)) : null;
       countObjectAccess();
 
       // Distance to axis:
-      final double delta = split.doubleValue(axis) - query.doubleValue(axis);
+      final double delta = (live ? split.doubleValue(axis) : deletedSplits.get(middle)) - query.doubleValue(axis);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
 
@@ -345,12 +621,14 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        double dist = norm.distance(query, split);
-        countDistanceComputation();
-        if(dist <= maxdist) {
-          assert (iter.getOffset() == middle);
-          knns.insert(dist, iter /* .seek(middle) */);
-          maxdist = knns.getKNNDistance();
+        if(live) {
+          double dist = norm.distance(query, split);
+          countDistanceComputation();
+          if(dist <= maxdist) {
+            assert (iter.getOffset() == middle);
+            knns.insert(dist, iter /* .seek(middle) */);
+            maxdist = knns.getKNNDistance();
+          }
         }
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
@@ -365,7 +643,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(Math.abs(delta) <= maxdist && live) {
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -382,7 +660,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(Math.abs(delta) <= maxdist && live) {
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
@@ -423,7 +701,10 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
-      kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
+      final DBIDArrayIter iter = sorted.iter();
+      for(int i = 0; i < numsegments; i++) {
+        kdRangeSearch(segments[i], segmentEnd(i), 0, obj, result, iter, range);
+      }
     }
 
     /**
@@ -440,6 +721,9 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DBIDArrayIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter.getOffset())) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -451,11 +735,12 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       }
       // Look at current node:
       final int middle = (left + right) >>> 1;
-      O split = relation.get(iter.seek(middle));
+      final boolean live = !isDeleted(middle);
+      O split = live ? relation.get(iter.seek(middle)) : null;
       countObjectAccess();
 
       // Distance to axis:
-      final double delta = split.doubleValue(axis) - query.doubleValue(axis);
+      final double delta = (live ? split.doubleValue(axis) : deletedSplits.get(middle)) - query.doubleValue(axis);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
       final boolean close = (Math.abs(delta) <= radius);
@@ -464,7 +749,7 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
       final int next = (axis + 1) % dims;
 
       // Current object:
-      if(close) {
+      if(close && live) {
         double dist = norm.distance(query, split);
         countDistanceComputation();
         if(dist <= radius) {
@@ -20,12 +20,22 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.BatchKNNUtil;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeIndex;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeKNNJoin;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -33,16 +43,19 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.Norm;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -50,10 +63,15 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Simple implementation of a static in-memory K-D-tree. Does not support
- * dynamic updates or anything, but also is very simple and memory efficient:
- * all it uses is one {@link ModifiableDoubleDBIDList} to sort the data in a
- * serialized tree and store the current attribute value.
+ * Simple implementation of an in-memory K-D-tree. It is very simple and memory
+ * efficient: all it uses is one {@link ModifiableDoubleDBIDList} to sort the
+ * data in a serialized tree and store the current attribute value.
+ * <p>
+ * Updates use the logarithmic method of Bentley and Saxe: inserted objects are
+ * appended as additional subtrees of decreasing size, and a subtree is merged
+ * with its predecessor (and rebuilt) once it has at least half its size.
+ * Deleted objects are only marked, and removed when their subtree is rebuilt;
+ * if half of the objects are deleted, the whole tree is rebuilt.
  * <p>
  * It needs about 3 times as much memory as {@link MinimalisticMemoryKDTree} but
  * it is also considerably faster because it does not need to lookup this value
@@ -65,6 +83,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * Multidimensional binary search trees used for associative searching<br>
  * Communications of the ACM 18(9)
  * <p>
+ * J. L. Bentley, J. B. Saxe<br>
+ * Decomposable Searching Problems I: Static-to-Dynamic Transformation<br>
+ * Journal of Algorithms 1(4)
+ * <p>
  * TODO: add support for weighted Minkowski distances.
  *
  * @author Erich Schubert
@@ -79,7 +101,12 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
     booktitle = "Communications of the ACM 18(9)", //
     url = "https://doi.org/10.1145/361002.361007", //
     bibkey = "DBLP:journals/cacm/Bentley75")
-public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+@Reference(authors = "J. L. Bentley, J. B. Saxe", //
+    title = "Decomposable Searching Problems I: Static-to-Dynamic Transformation", //
+    booktitle = "Journal of Algorithms 1(4)", //
+    url = "https://doi.org/10.1016/0196-6774(80)90015-2", //
+    bibkey = "DBLP:journals/jal/BentleyS80")
+public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O>, DynamicIndex, DualTreeIndex {
   /**
    * Class logger
    */
@@ -90,6 +117,27 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
    */
   ModifiableDoubleDBIDList sorted = null;
 
+  /**
+   * Start offsets of the subtrees in {@link #sorted}, in decreasing size. Each
+   * subtree ends where the next begins.
+   */
+  int[] segments = new int[0];
+
+  /**
+   * Number of subtrees.
+   */
+  int numsegments = 0;
+
+  /**
+   * Offsets of deleted objects, {@code null} if there are none.
+   */
+  long[] deleted = null;
+
+  /**
+   * Number of deleted objects still in {@link #sorted}.
+   */
+  int numdeleted = 0;
+
   /**
    * The number of dimensions.
    */
@@ -100,6 +148,11 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
    */
   int leafsize;
 
+  /**
+   * Position of each object in the tree, for ordering batch queries.
+   */
+  private WritableIntegerDataStore positions = null;
+
   /**
    * Counter for comparisons.
    */
@@ -138,7 +191,195 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       sorted.add(Double.NaN, it);
     }
-    buildTree(0, sorted.size(), 0, sorted.iter());
+    rebuild();
+  }
+
+  /**
+   * Rebuild the tree as a single subtree, removing deleted objects.
+   */
+  private void rebuild() {
+    compact(0);
+    numsegments = 0;
+    if(sorted.size() > 0) {
+      addSegment(0);
+      buildTree(0, sorted.size(), 0, sorted.iter());
+    }
+    positions = null;
+  }
+
+  /**
+   * Add a subtree at the end.
+   *
+   * @param start Start offset
+   */
+  private void addSegment(int start) {
+    if(numsegments == segments.length) {
+      segments = Arrays.copyOf(segments, (numsegments << 1) + 1);
+    }
+    segments[numsegments++] = start;
+  }
+
+  /**
+   * End offset of a subtree.
+   *
+   * @param i Subtree number
+   * @return End offset (exclusive)
+   */
+  int segmentEnd(int i) {
+    return i + 1 < numsegments ? segments[i + 1] : sorted.size();
+  }
+
+  /**
+   * Test if an object was deleted.
+   *
+   * @param off Offset
+   * @return {@code true} if deleted
+   */
+  boolean isDeleted(int off) {
+    return deleted != null && BitsUtil.get(deleted, off);
+  }
+
+  /**
+   * Remove the deleted objects from the end of the array.
+   *
+   * @param start First offset to compact
+   */
+  private void compact(int start) {
+    if(numdeleted == 0) {
+      return;
+    }
+    final int size = sorted.size();
+    int w = start;
+    for(int r = start; r < size; r++) {
+      if(BitsUtil.get(deleted, r)) {
+        BitsUtil.clearI(deleted, r);
+        --numdeleted;
+        continue;
+      }
+      if(w < r) {
+        sorted.swap(w, r);
+      }
+      ++w;
+    }
+    while(sorted.size() > w) {
+      sorted.remove(sorted.size() - 1);
+    }
+    if(numdeleted == 0) {
+      deleted = null;
+    }
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(dims < 0) {
+      dims = relation.get(id).getDimensionality();
+    }
+    final int start = sorted.size();
+    sorted.add(Double.NaN, id);
+    merge(start);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(ids.isEmpty()) {
+      return;
+    }
+    if(dims < 0) {
+      dims = relation.get(ids.iter()).getDimensionality();
+    }
+    final int start = sorted.size();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      sorted.add(Double.NaN, it);
+    }
+    merge(start);
+  }
+
+  /**
+   * Add the objects from the given offset as new subtree, and merge it with
+   * its predecessors while it has at least half their size.
+   *
+   * @param start First new object
+   */
+  private void merge(int start) {
+    final int size = sorted.size();
+    while(numsegments > 0 && (size - start) << 1 >= start - segments[numsegments - 1]) {
+      start = segments[--numsegments];
+    }
+    compact(start);
+    if(start < sorted.size()) {
+      addSegment(start);
+      buildTree(start, sorted.size(), 0, sorted.iter());
+    }
+    positions = null;
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    final O obj = relation.get(id);
+    final DoubleDBIDListIter iter = sorted.iter();
+    for(int i = 0; i < numsegments; i++) {
+      final int off = find(segments[i], segmentEnd(i), 0, obj, id, iter);
+      if(off < 0) {
+        continue;
+      }
+      if(deleted == null) {
+        deleted = BitsUtil.zero(sorted.size());
+      }
+      else if((off >>> 6) >= deleted.length) {
+        deleted = BitsUtil.copy(deleted, sorted.size());
+      }
+      BitsUtil.setI(deleted, off);
+      ++numdeleted;
+      positions = null;
+      if(numdeleted << 1 > sorted.size()) {
+        rebuild();
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Find the offset of an object in a subtree.
+   *
+   * @param left Subtree begin
+   * @param right Subtree end (exclusive)
+   * @param axis Current splitting axis
+   * @param obj Object
+   * @param id Object id
+   * @param iter Iterator variable
+   * @return Offset, or -1 if not found
+   */
+  private int find(int left, int right, int axis, O obj, DBIDRef id, DoubleDBIDListIter iter) {
+    if(right - left <= leafsize) {
+      for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+        if(DBIDUtil.equal(iter, id) && !isDeleted(iter.getOffset())) {
+          return iter.getOffset();
+        }
+      }
+      return -1;
+    }
+    final int middle = (left + right) >>> 1;
+    if(DBIDUtil.equal(iter.seek(middle), id) && !isDeleted(middle)) {
+      return middle;
+    }
+    final double delta = iter.doubleValue() - obj.doubleValue(axis);
+    final int next = (axis + 1) % dims;
+    int off = -1;
+    if(delta >= 0 && left < middle) {
+      off = find(left, middle, next, obj, id, iter);
+    }
+    if(off < 0 && delta <= 0 && middle + 1 < right) {
+      off = find(middle + 1, right, next, obj, id, iter);
+    }
+    return off;
   }
 
   /**
@@ -173,6 +414,86 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
     }
   }
 
+  /**
+   * Get the position of each object in the tree.
+   *
+   * @return Positions
+   */
+  protected synchronized WritableIntegerDataStore getPositions() {
+    if(positions == null) {
+      positions = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP, -1);
+      for(DoubleDBIDListIter it = sorted.iter(); it.valid(); it.advance()) {
+        if(!isDeleted(it.getOffset())) {
+          positions.putInt(it, it.getOffset());
+        }
+      }
+    }
+    return positions;
+  }
+
+  @Override
+  public DualTreeKNNJoin.Node getJoinHierarchy(DistanceFunction<?> distanceFunction, ArrayModifiableDBIDs ids) {
+    if(!(distanceFunction instanceof SpatialPrimitiveDistanceFunction)) {
+      return null;
+    }
+    // Deleted objects are skipped, without modifying the tree.
+    final int[] rank = numdeleted > 0 ? new int[sorted.size() + 1] : null;
+    for(DoubleDBIDListIter it = sorted.iter(); it.valid(); it.advance()) {
+      final int off = it.getOffset();
+      if(rank != null) {
+        rank[off + 1] = rank[off] + (isDeleted(off) ? 0 : 1);
+        if(isDeleted(off)) {
+          continue;
+        }
+      }
+      ids.add(it);
+    }
+    if(ids.isEmpty()) {
+      return null;
+    }
+    if(numsegments == 1) {
+      return getJoinHierarchy(rank, 0, 0, sorted.size());
+    }
+    List<DualTreeKNNJoin.Node> children = new ArrayList<>(numsegments);
+    for(int i = 0; i < numsegments; i++) {
+      DualTreeKNNJoin.Node child = getJoinHierarchy(rank, segments[i], segments[i], segmentEnd(i));
+      if(child != null) {
+        children.add(child);
+      }
+    }
+    return children.size() == 1 ? children.get(0) : //
+        new DualTreeKNNJoin.Node(0, ids.size(), children.toArray(new DualTreeKNNJoin.Node[children.size()]));
+  }
+
+  /**
+   * Build the join hierarchy of a subtree. The split object is added to the
+   * right subtree, so that nodes are contiguous.
+   *
+   * @param rank Number of objects not deleted before each offset, {@code null}
+   *        if there are no deleted objects
+   * @param start First object of the node (the preceding split object, or
+   *        left)
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @return Join node, {@code null} if all objects were deleted
+   */
+  private DualTreeKNNJoin.Node getJoinHierarchy(int[] rank, int start, int left, int right) {
+    final int rstart = rank != null ? rank[start] : start;
+    final int rend = rank != null ? rank[right] : right;
+    if(rstart == rend) {
+      return null;
+    }
+    if(right - left <= leafsize) {
+      return new DualTreeKNNJoin.Node(rstart, rend, null);
+    }
+    // left < middle, as leafsize >= 1
+    final int middle = (left + right) >>> 1;
+    DualTreeKNNJoin.Node c1 = getJoinHierarchy(rank, start, left, middle);
+    DualTreeKNNJoin.Node c2 = getJoinHierarchy(rank, middle, middle + 1, right);
+    return c1 == null ? c2 : c2 == null ? c1 : //
+        new DualTreeKNNJoin.Node(rstart, rend, new DualTreeKNNJoin.Node[] { c1, c2 });
+  }
+
   @Override
   public String getLongName() {
     return "kd-tree";
@@ -267,11 +588,36 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
 
     @Override
     public KNNList getKNNForObject(O obj, int k) {
+      return getKNNForObject(obj, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Find the k nearest neighbors, given an upper bound of the kNN distance.
+     *
+     * @param obj Query object
+     * @param k Number of neighbors
+     * @param bound Upper bound of the kNN distance
+     * @return kNN list
+     */
+    private KNNList getKNNForObject(O obj, int k, double bound) {
       final KNNHeap knns = DBIDUtil.newHeap(k);
-      kdKNNSearch(0, sorted.size(), 0, obj, knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      final DoubleDBIDListIter iter = sorted.iter();
+      for(int i = 0; i < numsegments; i++) {
+        bound = kdKNNSearch(segments[i], segmentEnd(i), 0, obj, knns, iter, bound);
+      }
       return knns.toKNNList();
     }
 
+    /**
+     * Batch kNN queries are processed in tree order, in parallel.
+     */
+    @Override
+    public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      final int[] order = BatchKNNUtil.spatialOrder(ids, getPositions());
+      final DistanceQuery<O> metric = norm.isMetric() ? distanceQuery : null;
+      return BatchKNNUtil.batchKNN(relation, ids, order, k, metric, this::getKNNForObject);
+    }
+
     /**
      * Perform a kNN search on the kd-tree.
      *
@@ -287,13 +633,15 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DoubleDBIDListIter iter, double maxdist) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter.getOffset())) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
           if(dist <= maxdist) {
-            knns.insert(dist, iter);
+            maxdist = Math.min(maxdist, knns.insert(dist, iter));
           }
-          maxdist = knns.getKNNDistance();
         }
         return maxdist;
       }
@@ -302,7 +650,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
 
       // Distance to axis:
       final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
-      assert (iter.doubleValue() == relation.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + relation.get(iter).doubleValue(axis) + " " + relation.get(iter);
+      assert (isDeleted(middle) || iter.doubleValue() == relation.get(iter).doubleValue(axis)) : "Tree inconsistent " + left + " < " + middle + " < " + right + ": " + iter.doubleValue() + " != " + relation.get(iter).doubleValue(axis) + " " + relation.get(iter);
       final boolean onleft = (delta >= 0);
       final boolean onright = (delta <= 0);
 
@@ -312,14 +660,15 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
       // Exact match chance (delta == 0)!
       // process first, then descend both sides.
       if(onleft && onright) {
-        O split = relation.get(iter.seek(middle));
-        countObjectAccess();
-        double dist = norm.distance(query, split);
-        countDistanceComputation();
-        if(dist <= maxdist) {
-          assert (iter.getOffset() == middle);
-          knns.insert(dist, iter /* .seek(middle) */);
-          maxdist = knns.getKNNDistance();
+        if(!isDeleted(middle)) {
+          O split = relation.get(iter.seek(middle));
+          countObjectAccess();
+          double dist = norm.distance(query, split);
+          countDistanceComputation();
+          if(dist <= maxdist) {
+            assert (iter.getOffset() == middle);
+            maxdist = Math.min(maxdist, knns.insert(dist, iter /* .seek(middle) */));
+          }
         }
         if(left < middle) {
           maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
@@ -334,15 +683,14 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
             maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(Math.abs(delta) <= maxdist && !isDeleted(middle)) {
             O split = relation.get(iter.seek(middle));
             countObjectAccess();
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
               assert (iter.getOffset() == middle);
-              knns.insert(dist, iter /* .seek(middle) */);
-              maxdist = knns.getKNNDistance();
+              maxdist = Math.min(maxdist, knns.insert(dist, iter /* .seek(middle) */));
             }
           }
           if((middle + 1 < right) && (Math.abs(delta) <= maxdist)) {
@@ -354,15 +702,14 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
             maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
           }
           // Look at splitting element (unless already above):
-          if(Math.abs(delta) <= maxdist) {
+          if(Math.abs(delta) <= maxdist && !isDeleted(middle)) {
             O split = relation.get(iter.seek(middle));
             countObjectAccess();
             double dist = norm.distance(query, split);
             countDistanceComputation();
             if(dist <= maxdist) {
               iter.seek(middle);
-              knns.insert(dist, iter);
-              maxdist = knns.getKNNDistance();
+              maxdist = Math.min(maxdist, knns.insert(dist, iter));
             }
           }
           if((left < middle) && (Math.abs(delta) <= maxdist)) {
@@ -398,7 +745,10 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
-      kdRangeSearch(0, sorted.size(), 0, obj, result, sorted.iter(), range);
+      final DoubleDBIDListIter iter = sorted.iter();
+      for(int i = 0; i < numsegments; i++) {
+        kdRangeSearch(segments[i], segmentEnd(i), 0, obj, result, iter, range);
+      }
     }
 
     /**
@@ -415,6 +765,9 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          if(isDeleted(iter.getOffset())) {
+            continue;
+          }
           double dist = norm.distance(query, relation.get(iter));
           countObjectAccess();
           countDistanceComputation();
@@ -437,7 +790,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
       final int next = (axis + 1) % dims;
 
       // Current object:
-      if(close) {
+      if(close && !isDeleted(middle)) {
         O split = relation.get(iter.seek(middle));
         countObjectAccess();
         double dist = norm.distance(query, split);
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the HNSW graph index.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class HNSWTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link HNSW} built in parallel.
+   */
+  @Test
+  public void testHNSW() {
+    HNSW.Factory<?> factory = new ELKIBuilder<>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0).build();
+    testExactEuclidean(factory, HNSW.HNSWKNNQuery.class, HNSW.HNSWRangeQuery.class);
+    testSinglePoint(factory, HNSW.HNSWKNNQuery.class, HNSW.HNSWRangeQuery.class);
+  }
+
+  /**
+   * Test {@link HNSW} built sequentially, with small neighbor lists.
+   */
+  @Test
+  public void testHNSWSequential() {
+    HNSW.Factory<?> factory = new ELKIBuilder<>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.M_ID, 4) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0) //
+        .with(HNSW.Factory.Parameterizer.SEQUENTIAL_ID).build();
+    testExactEuclidean(factory, HNSW.HNSWKNNQuery.class, HNSW.HNSWRangeQuery.class);
+    testSinglePoint(factory, HNSW.HNSWKNNQuery.class, HNSW.HNSWRangeQuery.class);
+  }
+
+  /**
+   * Test {@link HNSW} with new objects inserted into a dynamic database.
+   */
+  @Test
+  public void testHNSWDynamic() {
+    HNSW.Factory<?> factory = new ELKIBuilder<>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0).build();
+    testDynamic(factory, HNSW.HNSWKNNQuery.class);
+  }
+
+  /**
+   * Deleted objects must no longer be returned.
+   */
+  @Test
+  public void testDelete() {
+    double[][] data = new double[200][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { i % 20, i / 20 };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    HNSW.Factory<DoubleVector> factory = new ELKIBuilder<HNSW.Factory<DoubleVector>>(HNSW.Factory.class) //
+        .with(HNSW.Factory.Parameterizer.SEED_ID, 0).build();
+    HNSW<DoubleVector> index = factory.instantiate(rel);
+    index.initialize();
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq);
+    DBIDIter first = rel.iterDBIDs();
+    KNNList before = knnq.getKNNForDBID(first, 1);
+    assertTrue("Object is not its own nearest neighbor.", DBIDUtil.equal(before.iter(), first));
+    assertTrue(index.delete(first));
+    assertFalse("Deleted twice.", index.delete(first));
+    KNNList after = knnq.getKNNForDBID(first, 3);
+    for(DBIDIter it = after.iter(); it.valid(); it.advance()) {
+      assertFalse("Deleted object returned.", DBIDUtil.equal(it, first));
+    }
+    assertEquals("Wrong distance after deletion.", 1., after.iter().doubleValue(), 0.);
+    index.insert(first);
+    assertTrue("Object not revived.", DBIDUtil.equal(knnq.getKNNForDBID(first, 1).iter(), first));
+  }
+}
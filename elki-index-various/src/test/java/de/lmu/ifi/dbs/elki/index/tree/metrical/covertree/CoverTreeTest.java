@@ -42,5 +42,7 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
         .with(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
     testExactEuclidean(factory, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
     testSinglePoint(factory, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
+    testBulkKNN(factory, CoverTree.CoverTreeKNNQuery.class);
+    testDynamic(factory, CoverTree.CoverTreeKNNQuery.class);
   }
 }
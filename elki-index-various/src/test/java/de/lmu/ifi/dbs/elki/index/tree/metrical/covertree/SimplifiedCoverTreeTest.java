@@ -42,5 +42,6 @@ public class SimplifiedCoverTreeTest extends AbstractIndexStructureTest {
         .with(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
     testExactEuclidean(factory, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
     testSinglePoint(factory, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
+    testDynamic(factory, SimplifiedCoverTree.CoverTreeKNNQuery.class);
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the memory-mapped k-d-tree index.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MemoryMappedKDTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link MemoryMappedKDTree} in memory.
+   */
+  @Test
+  public void testMemoryMappedKDTree() {
+    MemoryMappedKDTree.Factory<?> factory = new ELKIBuilder<>(MemoryMappedKDTree.Factory.class).build();
+    testExactEuclidean(factory, MemoryMappedKDTree.KDTreeKNNQuery.class, MemoryMappedKDTree.KDTreeRangeQuery.class);
+    testSinglePoint(factory, MemoryMappedKDTree.KDTreeKNNQuery.class, MemoryMappedKDTree.KDTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link MemoryMappedKDTree} stored to and loaded from a file.
+   *
+   * @throws IOException on errors.
+   */
+  @Test
+  public void testPersistent() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    assertTrue(file.delete());
+    MemoryMappedKDTree.Factory<?> factory = new ELKIBuilder<>(MemoryMappedKDTree.Factory.class) //
+        .with(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 4) //
+        .with(MemoryMappedKDTree.Factory.Parameterizer.FILE_ID, file) //
+        .build();
+    // First run builds and writes the tree, second run loads it.
+    testExactEuclidean(factory, MemoryMappedKDTree.KDTreeKNNQuery.class, MemoryMappedKDTree.KDTreeRangeQuery.class);
+    assertTrue("Tree was not written.", file.length() > MemoryMappedKDTree.HEADER_SIZE);
+    testExactEuclidean(factory, MemoryMappedKDTree.KDTreeKNNQuery.class, MemoryMappedKDTree.KDTreeRangeQuery.class);
+
+    Relation<DoubleVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600).getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    MemoryMappedKDTree<DoubleVector> tree = new MemoryMappedKDTree<>(rel, 4, file);
+    tree.initialize();
+    assertTrue("Tree was not loaded from the file.", tree.loaded);
+    // A different data set must not use the stored tree.
+    Relation<DoubleVector> other = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/3clusters-and-noise-2d.csv", 330).getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    MemoryMappedKDTree<DoubleVector> tree2 = new MemoryMappedKDTree<>(other, 4, file);
+    tree2.initialize();
+    assertFalse("Tree of a different data set was loaded.", tree2.loaded);
+  }
+}
@@ -20,8 +20,34 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.DualTreeKNNJoin;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -40,5 +66,46 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     SmallMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
     testExactEuclidean(factory, SmallMemoryKDTree.KDTreeKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
     testSinglePoint(factory, SmallMemoryKDTree.KDTreeKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
+    testBulkKNN(factory, SmallMemoryKDTree.KDTreeKNNQuery.class);
+    testDynamic(factory, SmallMemoryKDTree.KDTreeKNNQuery.class);
+  }
+
+  /**
+   * Test the dual-tree join with deleted objects that are not yet removed from
+   * the tree.
+   */
+  @Test
+  public void testJoinWithDeletions() {
+    Relation<DoubleVector> input = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600).getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    List<DoubleVector> vecs = new ArrayList<>(input.size());
+    for(DBIDIter it = input.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(input.get(it));
+    }
+    SmallMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
+    HashmapDatabase db = new HashmapDatabase(null, Arrays.asList(factory));
+    db.initialize();
+    ArrayModifiableDBIDs all = DBIDUtil.newArray(db.insert(MultipleObjectsBundle.makeSimple(input.getDataTypeInformation(), vecs)));
+    // Delete every third object, which is less than the rebuild threshold.
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    for(DBIDArrayIter it = all.iter(); it.valid(); it.advance(3)) {
+      del.add(it);
+    }
+    db.delete(del);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    DualTreeKNNJoin<DoubleVector> join = DualTreeKNNJoin.instantiate(dist);
+    assertNotNull("No join for the k-d-tree", join);
+    assertEquals("Deleted objects in the join", rep.size(), join.getDBIDs().size());
+    final int k = 10;
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(rep.getDBIDs(), DataStoreFactory.HINT_TEMP, KNNList.class);
+    join.run(k, knns);
+    LinearScanDistanceKNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dist);
+    for(DBIDIter it = rep.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expect = lin.getKNNForDBID(it, k), got = knns.get(it);
+      assertEquals("Wrong result size", expect.size(), got.size());
+      for(DoubleDBIDListIter e = expect.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Distance does not match", e.doubleValue(), g.doubleValue(), 1e-15);
+      }
+    }
   }
 }
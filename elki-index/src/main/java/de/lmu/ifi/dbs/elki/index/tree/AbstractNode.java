@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -143,6 +144,21 @@ public abstract class AbstractNode<E extends Entry> extends AbstractExternalizab
     // Entries will be read in subclasses
   }
 
+  /**
+   * Reads the id of this node and the numEntries from a buffer, in the layout
+   * written by {@link #writeExternal}.
+   *
+   * @param buffer Buffer, c.f.
+   *        {@link de.lmu.ifi.dbs.elki.persistent.ByteBufferPage}
+   * @return Position after the header
+   */
+  protected int readHeader(ByteBuffer buffer) {
+    setPageID(buffer.getInt(0));
+    isLeaf = buffer.get(4) != 0;
+    numEntries = buffer.getInt(5);
+    return 9;
+  }
+
   /**
    * Returns a string representation of this node.
    *
@@ -0,0 +1,45 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pages that can be initialized directly from a buffer, such as a memory
+ * mapped file, without deserializing their contents.
+ * 
+ * @author agent
+ * @since 0.7.5
+ */
+public interface ByteBufferPage extends ExternalizablePage {
+  /**
+   * Initialize the page from a buffer, containing the data written by
+   * {@link #writeExternal} in {@link java.io.DataOutput} encoding.
+   * <p>
+   * The buffer will not be modified while the page is in use, so the page may
+   * keep a reference to it, and read its contents on demand instead of
+   * copying them. The page data starts at index 0; use the absolute get
+   * methods only, as the buffer may be shared.
+   * 
+   * @param buffer Buffer
+   */
+  void readBuffer(ByteBuffer buffer);
+}
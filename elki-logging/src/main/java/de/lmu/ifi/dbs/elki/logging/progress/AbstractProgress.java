@@ -141,6 +141,19 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by more than one, e.g. after processing
+   * a block of objects.
+   * 
+   * @param increment Number of objects processed
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int increment, Logging logger) {
+    if(testLoggingRate(this.processed.addAndGet(increment))) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    *
@@ -21,6 +21,7 @@
 package de.lmu.ifi.dbs.elki.persistent;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 /**
  * Abstract base class for the page file API for both caches and true page files
@@ -46,10 +47,22 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
    * Constructor.
    */
   public AbstractPageFile() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param concurrent Use thread safe access counters
+   */
+  protected AbstractPageFile(boolean concurrent) {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    if(log.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      this.readAccess = concurrent ? new AtomicLongCounter(prefix + ".reads") : log.newCounter(prefix + ".reads");
+      this.writeAccess = concurrent ? new AtomicLongCounter(prefix + ".writes") : log.newCounter(prefix + ".writes");
+    }
   }
 
   /**
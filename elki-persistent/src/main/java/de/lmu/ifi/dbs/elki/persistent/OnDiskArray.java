@@ -36,14 +36,22 @@ import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
  * This can be used to implement various fixed size record-based data
  * structures. The file format is designed to have a fixed-size header followed
  * by the actual data.
+ * <p>
+ * The data is mapped into memory in multiple segments, so files can be larger
+ * than 2 GB. Records never span two segments. Reading records does not
+ * require synchronization, so multiple threads can read concurrently.
+ * <p>
+ * When the file is resized, the segments are mapped again, but the old
+ * segments are not unmapped explicitly, as concurrent readers may still use
+ * them; they are released by the garbage collector. Reads concurrent to a
+ * resize may see the old or the new contents. Only {@link #close()} unmaps
+ * the segments, and must not run concurrently to reads.
  * 
  * @author Erich Schubert
  * @since 0.2
  * 
  * @apiviz.composedOf RandomAccessFile
  */
-// TODO: ensure file doesn't become to big - check for overflows in recordsize *
-// numrecs + headersize
 public class OnDiskArray implements AutoCloseable {
   /**
    * Serial version.
@@ -52,7 +60,7 @@ public class OnDiskArray implements AutoCloseable {
    * incompatible way: This will modify the file magic, and thus prevent
    * applications from reading incompatible files.
    */
-  private static final long serialVersionUID = 7586497243452875056L;
+  private static final long serialVersionUID = 7586497243452875057L;
 
   /**
    * Magic number used to identify files.
@@ -60,8 +68,8 @@ public class OnDiskArray implements AutoCloseable {
   protected int magic;
 
   /**
-   * Size of the header in the file. Note that the internal header is four
-   * integers already.
+   * Size of the header in the file. Note that the internal header is three
+   * integers and a long already.
    */
   private int headersize;
 
@@ -73,7 +81,17 @@ public class OnDiskArray implements AutoCloseable {
   /**
    * Number of records in the file.
    */
-  private int numrecs;
+  private long numrecs;
+
+  /**
+   * Number of records per mapped segment.
+   */
+  private int segrecs;
+
+  /**
+   * Maximum size of a single mapped segment, in bytes.
+   */
+  private final int segmentsize;
 
   /**
    * File name.
@@ -96,14 +114,19 @@ public class OnDiskArray implements AutoCloseable {
   private boolean writable;
 
   /**
-   * The memory mapped buffer.
+   * The memory mapped segments.
    */
-  private MappedByteBuffer map;
+  private volatile MappedByteBuffer[] maps;
+
+  /**
+   * Default maximum size of a single mapped segment.
+   */
+  static final int SEGMENT_SIZE = 1 << 30;
 
   /**
    * Size of the classes header size.
    */
-  private static final int INTERNAL_HEADER_SIZE = 4 * ByteArrayUtil.SIZE_INT;
+  private static final int INTERNAL_HEADER_SIZE = 3 * ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_LONG;
 
   /**
    * Position of file size (in records).
@@ -120,7 +143,23 @@ public class OnDiskArray implements AutoCloseable {
    * @param initialsize Initial file size (in records)
    * @throws IOException on IO errors
    */
-  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, int initialsize) throws IOException {
+  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, long initialsize) throws IOException {
+    this(filename, magicseed, extraheadersize, recordsize, initialsize, SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor to write a new file.
+   * 
+   * @param filename File name to be opened.
+   * @param magicseed Magic number to derive real magic from.
+   * @param extraheadersize header size NOT including the internal header
+   * @param recordsize Record size
+   * @param initialsize Initial file size (in records)
+   * @param segmentsize Maximum size of a mapped segment, in bytes
+   * @throws IOException on IO errors
+   */
+  OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, long initialsize, int segmentsize) throws IOException {
+    this.segmentsize = segmentsize;
     this.magic = mixMagic((int) serialVersionUID, magicseed);
     this.headersize = extraheadersize + INTERNAL_HEADER_SIZE;
     this.recordsize = recordsize;
@@ -152,7 +191,7 @@ public class OnDiskArray implements AutoCloseable {
       // TODO: more appropriate exception class?
       throw new IOException("File position doesn't match when writing file size.");
     }
-    file.writeInt(initialsize);
+    file.writeLong(initialsize);
 
     // we should have written the complete internal header now.
     if (file.getFilePointer() != INTERNAL_HEADER_SIZE) {
@@ -180,6 +219,22 @@ public class OnDiskArray implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, boolean writable) throws IOException {
+    this(filename, magicseed, extraheadersize, recordsize, writable, SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor to open an existing file.
+   * 
+   * @param filename File name to be opened.
+   * @param magicseed Magic number to derive real magic from.
+   * @param extraheadersize header size NOT including the internal header
+   * @param recordsize Record size
+   * @param writable flag to open the file writable
+   * @param segmentsize Maximum size of a mapped segment, in bytes
+   * @throws IOException on IO errors
+   */
+  OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, boolean writable, int segmentsize) throws IOException {
+    this.segmentsize = segmentsize;
     this.magic = mixMagic((int) serialVersionUID, magicseed);
     this.headersize = extraheadersize + INTERNAL_HEADER_SIZE;
     this.recordsize = recordsize;
@@ -209,6 +264,7 @@ public class OnDiskArray implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskArray(File filename, int magicseed, int extraheadersize, boolean writable) throws IOException {
+    this.segmentsize = SEGMENT_SIZE;
     this.magic = mixMagic((int) serialVersionUID, magicseed);
     this.headersize = extraheadersize + INTERNAL_HEADER_SIZE;
     this.filename = filename;
@@ -232,12 +288,29 @@ public class OnDiskArray implements AutoCloseable {
    * @throws IOException on mapping error.
    */
   private synchronized void mapArray() throws IOException {
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    // Do not unmap the old segments: readers may still use them.
+    segrecs = Math.max(1, segmentsize / recordsize);
+    final int nseg = (int) ((numrecs + segrecs - 1) / segrecs);
+    MappedByteBuffer[] newmaps = new MappedByteBuffer[nseg];
     MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
-    map = file.getChannel().map(mode, headersize, recordsize * numrecs);
+    for(int i = 0; i < nseg; i++) {
+      final long first = (long) i * segrecs;
+      final long len = Math.min(segrecs, numrecs - first) * recordsize;
+      newmaps[i] = file.getChannel().map(mode, indexToFileposition(first), len);
+    }
+    maps = newmaps;
+  }
+
+  /**
+   * Unmap all segments.
+   */
+  private void unmapArray() {
+    if(maps != null) {
+      for(MappedByteBuffer map : maps) {
+        ByteArrayUtil.unmapByteBuffer(map);
+      }
+      maps = null;
+    }
   }
 
   /**
@@ -277,7 +350,7 @@ public class OnDiskArray implements AutoCloseable {
     if (file.getFilePointer() != HEADER_POS_SIZE) {
       throw new IOException("Incorrect file position when reading header.");
     }
-    this.numrecs = file.readInt();
+    this.numrecs = file.readLong();
     if (numrecs < 0 || file.length() != indexToFileposition(numrecs)) {
       throw new IOException("File size and number of records do not agree.");
     }
@@ -321,14 +394,14 @@ public class OnDiskArray implements AutoCloseable {
    * @param newsize New file size.
    * @throws IOException on IO errors
    */
-  public synchronized void resizeFile(int newsize) throws IOException {
+  public synchronized void resizeFile(long newsize) throws IOException {
     if (!writable) {
       throw new IOException("File is not writeable!");
     }
     // update the number of records
     this.numrecs = newsize;
     file.seek(HEADER_POS_SIZE);
-    file.writeInt(numrecs);
+    file.writeLong(numrecs);
 
     // resize file
     file.setLength(indexToFileposition(numrecs));
@@ -342,16 +415,47 @@ public class OnDiskArray implements AutoCloseable {
    * @return Byte buffer for the record
    * @throws IOException on IO errors
    */
-  public synchronized ByteBuffer getRecordBuffer(int index) throws IOException {
+  public ByteBuffer getRecordBuffer(long index) throws IOException {
+    if (index < 0 || index >= numrecs) {
+      throw new IOException("Access beyond end of file.");
+    }
+    // Use an independent view, so we do not need to synchronize.
+    final int seg = (int) (index / segrecs), pos = (int) (index - (long) seg * segrecs) * recordsize;
+    ByteBuffer buf = maps[seg].duplicate();
+    buf.limit(pos + recordsize).position(pos);
+    return buf.slice();
+  }
+
+  /**
+   * Read a double value from the beginning of a record, without allocating a
+   * buffer view.
+   * 
+   * @param index Record index
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public double getDouble(long index) throws IOException {
     if (index < 0 || index >= numrecs) {
       throw new IOException("Access beyond end of file.");
     }
-    // Adjust buffer view
-    synchronized (map) {
-      map.limit(recordsize * (index + 1));
-      map.position(recordsize * index);
-      return map.slice();
+    final int seg = (int) (index / segrecs);
+    return maps[seg].getDouble((int) (index - (long) seg * segrecs) * recordsize);
+  }
+
+  /**
+   * Read a float value from the beginning of a record, without allocating a
+   * buffer view.
+   * 
+   * @param index Record index
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public float getFloat(long index) throws IOException {
+    if (index < 0 || index >= numrecs) {
+      throw new IOException("Access beyond end of file.");
     }
+    final int seg = (int) (index / segrecs);
+    return maps[seg].getFloat((int) (index - (long) seg * segrecs) * recordsize);
   }
 
   /**
@@ -410,10 +514,7 @@ public class OnDiskArray implements AutoCloseable {
    */
   public synchronized void close() throws IOException {
     writable = false;
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    unmapArray();
     if (lock != null) {
       lock.release();
       lock = null;
@@ -426,7 +527,7 @@ public class OnDiskArray implements AutoCloseable {
    * 
    * @return Number of records in the file.
    */
-  public int getNumRecords() {
+  public long getNumRecords() {
     return numrecs;
   }
 
@@ -436,7 +537,7 @@ public class OnDiskArray implements AutoCloseable {
    * @param size Size
    * @throws IOException
    */
-  public void ensureSize(int size) throws IOException {
+  public void ensureSize(long size) throws IOException {
     if (size > getNumRecords()) {
       resizeFile(size);
     }
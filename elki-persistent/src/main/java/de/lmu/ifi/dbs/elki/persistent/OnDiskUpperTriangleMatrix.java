@@ -27,6 +27,8 @@ import java.nio.ByteBuffer;
 /**
  * Class representing an upper triangle matrix backed by an on-disk array of
  * O((n+1)*n/2) size
+ * <p>
+ * Reading from the matrix does not require synchronization.
  * 
  * @apiviz.composedOf OnDiskArray
  * 
@@ -65,7 +67,22 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, boolean writable) throws IOException {
-    array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, writable);
+    this(filename, magicseed, extraheadersize, recordsize, writable, OnDiskArray.SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor to access an existing array.
+   * 
+   * @param filename File name
+   * @param magicseed Magic number
+   * @param extraheadersize Size of extra header data
+   * @param recordsize Record size
+   * @param writable flag to open writable
+   * @param segmentsize Maximum size of a mapped segment, in bytes
+   * @throws IOException on IO errors
+   */
+  OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, boolean writable, int segmentsize) throws IOException {
+    array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, writable, segmentsize);
     ByteBuffer header = array.getExtraHeader();
     this.matrixsize = header.getInt();
     if(arraysize(matrixsize) != array.getNumRecords()) {
@@ -84,11 +101,23 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, int matrixsize) throws IOException {
-    if(matrixsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
+    this(filename, magicseed, extraheadersize, recordsize, matrixsize, OnDiskArray.SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor to access a new array.
+   * 
+   * @param filename File name
+   * @param magicseed Magic number
+   * @param extraheadersize Size of extra header data
+   * @param recordsize Record size
+   * @param matrixsize Size of matrix to store
+   * @param segmentsize Maximum size of a mapped segment, in bytes
+   * @throws IOException on IO errors
+   */
+  OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, int matrixsize, int segmentsize) throws IOException {
     this.matrixsize = matrixsize;
-    array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, arraysize(matrixsize));
+    array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, arraysize(matrixsize), segmentsize);
     ByteBuffer header = array.getExtraHeader();
     header.putInt(this.matrixsize);
   }
@@ -100,9 +129,6 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public synchronized void resizeMatrix(int newsize) throws IOException {
-    if(newsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
     if(!array.isWritable()) {
       throw new IOException("Can't resize a read-only array.");
     }
@@ -118,8 +144,8 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param matrixsize size of the matrix
    * @return size of the array
    */
-  private static int arraysize(int matrixsize) {
-    return (matrixsize * (matrixsize + 1)) >> 1;
+  private static long arraysize(int matrixsize) {
+    return (matrixsize * (matrixsize + 1L)) >>> 1;
   }
 
   /**
@@ -129,11 +155,8 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param y Second coordinate
    * @return Linear offset
    */
-  private int computeOffset(int x, int y) {
-    if(y > x) {
-      return computeOffset(y, x);
-    }
-    return ((x * (x + 1)) >> 1) + y;
+  private static long computeOffset(int x, int y) {
+    return x >= y ? ((x * (x + 1L)) >>> 1) + y : ((y * (y + 1L)) >>> 1) + x;
   }
 
   /**
@@ -144,13 +167,44 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @return Byte buffer for the record
    * @throws IOException on IO errors
    */
-  public synchronized ByteBuffer getRecordBuffer(int x, int y) throws IOException {
+  public ByteBuffer getRecordBuffer(int x, int y) throws IOException {
     if(x >= matrixsize || y >= matrixsize) {
       throw new ArrayIndexOutOfBoundsException();
     }
     return array.getRecordBuffer(computeOffset(x, y));
   }
-  
+
+  /**
+   * Read a double value.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public double getDouble(int x, int y) throws IOException {
+    if(x >= matrixsize || y >= matrixsize) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return array.getDouble(computeOffset(x, y));
+  }
+
+  /**
+   * Read a float value.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @return Value
+   * @throws IOException on IO errors
+   */
+  public float getFloat(int x, int y) throws IOException {
+    if(x >= matrixsize || y >= matrixsize) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return array.getFloat(computeOffset(x, y));
+  }
+
+
   /**
    * Close the matrix file.
    * 
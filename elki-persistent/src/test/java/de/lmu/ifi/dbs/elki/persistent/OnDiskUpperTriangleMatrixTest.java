@@ -26,6 +26,7 @@ import static org.junit.Assert.assertEquals;
 import java.io.File;
 import java.io.IOException;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -50,7 +51,7 @@ public class OnDiskUpperTriangleMatrixTest {
     final int recsize = 3;
     int matsize = 2;
     // Only applicable to the version we are testing.
-    final int ODR_HEADER_SIZE = 4 * 4 + 4;
+    final int ODR_HEADER_SIZE = 3 * 4 + 8 + 4;
     OnDiskUpperTriangleMatrix array = new OnDiskUpperTriangleMatrix(file, 1, extraheadersize, recsize, matsize);
     byte[] record1 = { 31, 41, 59 };
     byte[] record2 = { 26, 53, 58 };
@@ -92,4 +93,84 @@ public class OnDiskUpperTriangleMatrixTest {
     file.delete(); // Note: probably fails on Windows.
     // We cannot reliably delete mmaped files on Windows, apparently.
   }
+
+  /**
+   * Test records in multiple mapped segments, using a tiny segment size.
+   *
+   * @throws IOException on errors.
+   */
+  @Test
+  public void testSegments() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete(); // Must not exist yet.
+
+    // 8 records per segment, not a multiple of the row length.
+    final int segsize = 8 * 8;
+    int matsize = 20;
+    OnDiskUpperTriangleMatrix array = new OnDiskUpperTriangleMatrix(file, 1, 0, 8, matsize, segsize);
+    for(int x = 0; x < matsize; x++) {
+      for(int y = 0; y <= x; y++) {
+        array.getRecordBuffer(x, y).putDouble(x * 1000 + y);
+      }
+    }
+    // Resizing adds segments.
+    array.resizeMatrix(matsize = 23);
+    for(int x = 20; x < matsize; x++) {
+      for(int y = 0; y <= x; y++) {
+        array.getRecordBuffer(x, y).putDouble(x * 1000 + y);
+      }
+    }
+    array.close();
+
+    OnDiskUpperTriangleMatrix roarray = new OnDiskUpperTriangleMatrix(file, 1, 0, 8, false, segsize);
+    assertEquals("Matrix size incorrect.", matsize, roarray.getMatrixSize());
+    for(int x = 0; x < matsize; x++) {
+      for(int y = 0; y <= x; y++) {
+        assertEquals("Value incorrect.", x * 1000 + y, roarray.getDouble(x, y), 0.);
+        assertEquals("Value incorrect.", x * 1000 + y, roarray.getDouble(y, x), 0.);
+        assertEquals("Value incorrect.", x * 1000 + y, roarray.getRecordBuffer(y, x).getDouble(), 0.);
+      }
+    }
+    roarray.close();
+    // Opening with the default segment size must give the same results.
+    roarray = new OnDiskUpperTriangleMatrix(file, 1, 0, 8, false);
+    assertEquals("Value incorrect.", 22021., roarray.getDouble(21, 22), 0.);
+    roarray.close();
+
+    file.delete();
+  }
+
+  /**
+   * Test a matrix larger than 2 GB, which needs multiple mapped segments.
+   * The file is sparse, so this needs little disk space on most systems.
+   * <p>
+   * This creates a 2.5 GB file, and thus is not run by default.
+   *
+   * @throws IOException on errors.
+   */
+  @Ignore
+  @Test
+  public void testLargeMatrix() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    file.delete(); // Must not exist yet.
+
+    final int matsize = 25000; // 312 million doubles
+    OnDiskUpperTriangleMatrix array = new OnDiskUpperTriangleMatrix(file, 1, 0, 8, matsize);
+    array.getRecordBuffer(0, 0).putDouble(1.);
+    array.getRecordBuffer(matsize - 1, 1).putDouble(2.);
+    array.getRecordBuffer(matsize - 1, matsize - 1).putDouble(3.);
+    array.close();
+
+    OnDiskUpperTriangleMatrix roarray = new OnDiskUpperTriangleMatrix(file, 1, 0, 8, false);
+    assertEquals("Matrix size incorrect.", matsize, roarray.getMatrixSize());
+    assertEquals("Value incorrect.", 1., roarray.getDouble(0, 0), 0.);
+    assertEquals("Value incorrect.", 2., roarray.getDouble(1, matsize - 1), 0.);
+    assertEquals("Value incorrect.", 3., roarray.getRecordBuffer(matsize - 1, matsize - 1).getDouble(), 0.);
+    assertEquals("Value incorrect.", 0., roarray.getDouble(matsize - 2, matsize - 3), 0.);
+    roarray.close();
+
+    file.delete();
+  }
 }
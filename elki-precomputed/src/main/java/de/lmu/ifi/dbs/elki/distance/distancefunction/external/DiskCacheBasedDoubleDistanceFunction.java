@@ -86,7 +86,7 @@ public class DiskCacheBasedDoubleDistanceFunction extends AbstractDBIDRangeDista
     }
 
     try {
-      return cache.getRecordBuffer(i1, i2).getDouble();
+      return cache.getDouble(i1, i2);
     }
     catch(IOException e) {
       throw new RuntimeException("Read error when loading distance " + i1 + "," + i2 + " from cache file.", e);
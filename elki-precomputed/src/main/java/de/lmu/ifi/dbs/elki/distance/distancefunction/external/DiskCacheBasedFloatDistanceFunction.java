@@ -86,7 +86,7 @@ public class DiskCacheBasedFloatDistanceFunction extends AbstractDBIDRangeDistan
     }
 
     try {
-      return cache.getRecordBuffer(i1, i2).getFloat();
+      return cache.getFloat(i1, i2);
     }
     catch(IOException e) {
       throw new RuntimeException("Read error when loading distance " + i1 + "," + i2 + " from cache file.", e);
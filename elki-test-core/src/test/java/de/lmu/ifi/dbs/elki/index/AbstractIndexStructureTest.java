@@ -23,20 +23,26 @@ package de.lmu.ifi.dbs.elki.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -251,4 +257,100 @@ public abstract class AbstractIndexStructureTest {
       assertTrue("Wrong range result", DBIDUtil.equal(range.iter(), first));
     }
   }
+
+  /**
+   * Test batch kNN queries against a linear scan.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery Expected kNN query class
+   */
+  protected void testBulkKNN(IndexFactory<?> factory, Class<?> expectKNNQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, factory);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+    LinearScanDistanceKNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dist);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rep.getDBIDs());
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, k);
+    assertEquals("Wrong number of results", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList expect = lin.getKNNForDBID(it, k), got = bulk.get(i);
+      assertEquals("Wrong result size", expect.size(), got.size());
+      DoubleDBIDListIter e = expect.iter(), g = got.iter();
+      for(; e.valid(); e.advance(), g.advance()) {
+        assertEquals("Distance does not match", e.doubleValue(), g.doubleValue(), 1e-15);
+      }
+    }
+  }
+
+  /**
+   * Test an index with insertions and deletions against a linear scan.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery Expected kNN query class
+   */
+  protected void testDynamic(IndexFactory<?> factory, Class<?> expectKNNQuery) {
+    Relation<DoubleVector> input = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds).getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    List<DoubleVector> vecs = new ArrayList<>(input.size());
+    for(DBIDIter it = input.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(input.get(it));
+    }
+    HashmapDatabase db = new HashmapDatabase(null, Arrays.asList(factory));
+    db.initialize();
+    // Insert in batches of varying size, and single objects:
+    ArrayModifiableDBIDs all = DBIDUtil.newArray(vecs.size());
+    for(int start = 0, step = 1; start < vecs.size(); start += step, step = step < 64 ? step << 1 : 1) {
+      final int end = Math.min(start + step, vecs.size());
+      all.addDBIDs(db.insert(MultipleObjectsBundle.makeSimple(input.getDataTypeInformation(), vecs.subList(start, end))));
+    }
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertDynamicQueries(db, rep, expectKNNQuery);
+    // Delete every third object, and reinsert some of them:
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    List<DoubleVector> reinsert = new ArrayList<>();
+    for(DBIDArrayIter it = all.iter(); it.valid(); it.advance(3)) {
+      del.add(it);
+      if((it.getOffset() & 1) == 0) {
+        reinsert.add(rep.get(it));
+      }
+    }
+    db.delete(del);
+    assertEquals("Wrong size after deletion", vecs.size() - del.size(), rep.size());
+    assertDynamicQueries(db, rep, expectKNNQuery);
+    db.insert(MultipleObjectsBundle.makeSimple(input.getDataTypeInformation(), reinsert));
+    assertDynamicQueries(db, rep, expectKNNQuery);
+    // Delete almost everything:
+    ArrayModifiableDBIDs rest = DBIDUtil.newArray(rep.getDBIDs());
+    db.delete(rest.slice(k, rest.size()));
+    assertDynamicQueries(db, rep, expectKNNQuery);
+  }
+
+  /**
+   * Compare kNN and range queries of a dynamic database to a linear scan.
+   *
+   * @param db Database
+   * @param rep Relation
+   * @param expectKNNQuery Expected kNN query class
+   */
+  private void assertDynamicQueries(Database db, Relation<DoubleVector> rep, Class<?> expectKNNQuery) {
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps);
+    LinearScanDistanceKNNQuery<DoubleVector> linknn = new LinearScanDistanceKNNQuery<>(dist);
+    LinearScanDistanceRangeQuery<DoubleVector> linrange = new LinearScanDistanceRangeQuery<>(dist);
+    for(DBIDIter it = rep.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expect = linknn.getKNNForDBID(it, k), got = knnq.getKNNForDBID(it, k);
+      assertEquals("Wrong kNN result size", expect.size(), got.size());
+      for(DoubleDBIDListIter e = expect.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("kNN distance does not match", e.doubleValue(), g.doubleValue(), 1e-15);
+      }
+      assertEquals("Wrong range result size", linrange.getRangeForDBID(it, eps).size(), rangeq.getRangeForDBID(it, eps).size());
+    }
+  }
 }
@@ -141,7 +141,7 @@ public class DeLiClu<V extends NumberVector> extends AbstractDistanceBasedAlgori
     if(LOG.isVerbose()) {
       LOG.verbose("Performing kNN join");
     }
-    DataStore<KNNList> knns = new KNNJoin<V, DeLiCluNode, DeLiCluEntry>(distFunction, minpts).run(index, relation.getDBIDs());
+    DataStore<KNNList> knns = new KNNJoin<V>(distFunction, minpts).run(relation, index, relation.getDBIDs());
     DBIDs ids = relation.getDBIDs();
     final int size = ids.size();
 
@@ -24,12 +24,11 @@ import de.lmu.ifi.dbs.elki.algorithm.KNNJoin;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
- * Class to materialize the kNN using a spatial join on an R-tree.
+ * Class to materialize the kNN using a dual-tree join on a hierarchical index,
+ * such as an R-tree.
  *
  * @author Erich Schubert
  * @since 0.5.0
@@ -56,7 +55,7 @@ public class KNNJoinMaterializeKNNPreprocessor<V extends NumberVector> extends A
   @Override
   protected void preprocess() {
     // Run KNNJoin
-    KNNJoin<V, ?, ?> knnjoin = new KNNJoin<V, RStarTreeNode, SpatialEntry>(distanceFunction, k);
+    KNNJoin<V> knnjoin = new KNNJoin<>(distanceFunction, k);
     storage = knnjoin.run(relation, relation.getDBIDs());
   }
 
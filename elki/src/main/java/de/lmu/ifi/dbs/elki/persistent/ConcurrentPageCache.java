@@ -0,0 +1,443 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * Concurrent page cache, split into independently locked segments.
+ * <p>
+ * Pages are assigned to segments by a hash of the page id. Each segment uses
+ * a primitive hash map from page ids to slots, and CLOCK (second chance)
+ * replacement, i.e. a hit only sets a reference bit instead of reordering a
+ * list. Thus, concurrent readers of different segments do not block each
+ * other, unlike with the single lock of {@link LRUCache}.
+ * <p>
+ * Accesses to the underlying page file are serialized, as page files are
+ * usually not thread safe.
+ * 
+ * @author agent
+ * @since 0.7.5
+ * 
+ * @apiviz.uses PageFile
+ * @apiviz.has Segment
+ * 
+ * @param <P> Page type
+ */
+public class ConcurrentPageCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ConcurrentPageCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Number of segments requested, 0 for automatic.
+   */
+  protected int numsegments;
+
+  /**
+   * The cache segments.
+   */
+  private Segment<P>[] segments;
+
+  /**
+   * Bit mask to choose the segment.
+   */
+  private int mask;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache statistics.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Initializes this cache with the specified parameters.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numsegments Number of segments, 0 for automatic
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ConcurrentPageCache(int cacheSizeBytes, int numsegments, PageFile<P> file) {
+    super(true);
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.numsegments = numsegments;
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      this.hits = new AtomicLongCounter(prefix + ".hits");
+      this.misses = new AtomicLongCounter(prefix + ".misses");
+      this.evictions = new AtomicLongCounter(prefix + ".evictions");
+    }
+  }
+
+  /**
+   * Get the segment of a page.
+   * 
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment<P> segment(int pageID) {
+    // Spread the bits, as page ids are usually consecutive.
+    int h = pageID * 0x9E3779B9;
+    return segments[(h ^ (h >>> 16)) & mask];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      P page = seg.get(pageID);
+      if(page != null) {
+        if(hits != null) {
+          hits.increment();
+        }
+        return page;
+      }
+      if(misses != null) {
+        misses.increment();
+      }
+      synchronized(file) {
+        page = file.readPage(pageID);
+      }
+      if(page != null) {
+        evicted(seg.put(pageID, page));
+      }
+      return page;
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      evicted(seg.put(pageID, page));
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    final Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      seg.remove(pageID);
+    }
+    synchronized(file) {
+      file.deletePage(pageID);
+    }
+  }
+
+  /**
+   * Handle a page evicted from a segment.
+   * 
+   * @param page Evicted page, may be {@code null}
+   */
+  private void evicted(P page) {
+    if(page != null) {
+      expirePage(page);
+      if(evictions != null) {
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   * 
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      synchronized(file) {
+        file.writePage(page);
+      }
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    synchronized(file) {
+      return file.setPageID(page);
+    }
+  }
+
+  @Override
+  public int getNextPageID() {
+    synchronized(file) {
+      return file.getNextPageID();
+    }
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    synchronized(file) {
+      file.setNextPageID(nextPageID);
+    }
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Number of segments: a power of two, with at least 16 pages each.
+    int n = numsegments > 0 ? numsegments : Runtime.getRuntime().availableProcessors() << 2;
+    n = Math.max(1, Math.min(n, cacheSize >>> 4));
+    n = Integer.highestOneBit(n);
+    @SuppressWarnings("unchecked") // Generic array creation
+    Segment<P>[] segments = (Segment<P>[]) new Segment<?>[n];
+    mask = n - 1;
+    for(int i = 0; i < n; i++) {
+      // Distribute the remainder over the first segments.
+      segments[i] = new Segment<>(cacheSize / n + (i < cacheSize % n ? 1 : 0));
+    }
+    this.segments = segments;
+    if(LOG.isDebugging()) {
+      LOG.debug("Concurrent cache size is " + cacheSize + " pages in " + n + " segments.");
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        for(int i = 0; i < seg.size; i++) {
+          expirePage(seg.page(i));
+        }
+        seg.clear();
+      }
+    }
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.clear();
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single segment of the cache, using CLOCK replacement.
+   * <p>
+   * Not thread safe; the caller must synchronize on the segment.
+   * 
+   * @author agent
+   * 
+   * @param <P> Page type
+   */
+  private static class Segment<P extends Page> {
+    /**
+     * Map from page ids to slots.
+     */
+    private final Int2IntOpenHashMap index;
+
+    /**
+     * Page ids in each slot.
+     */
+    private final int[] ids;
+
+    /**
+     * Pages in each slot.
+     */
+    private final Object[] pages;
+
+    /**
+     * Reference bits of each slot.
+     */
+    private final boolean[] referenced;
+
+    /**
+     * Number of used slots.
+     */
+    int size = 0;
+
+    /**
+     * Position of the clock hand.
+     */
+    private int hand = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity Capacity in pages
+     */
+    Segment(int capacity) {
+      index = new Int2IntOpenHashMap(capacity);
+      index.defaultReturnValue(-1);
+      ids = new int[capacity];
+      pages = new Object[capacity];
+      referenced = new boolean[capacity];
+    }
+
+    /**
+     * Get a page.
+     * 
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    P get(int pageID) {
+      final int slot = index.get(pageID);
+      if(slot < 0) {
+        return null;
+      }
+      referenced[slot] = true;
+      return (P) pages[slot];
+    }
+
+    /**
+     * Put a page into the segment, evicting a page if necessary.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     * @return Evicted page, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    P put(int pageID, P page) {
+      P evicted = null;
+      int slot = index.get(pageID);
+      if(slot < 0) {
+        if(size < ids.length) {
+          slot = size++;
+        }
+        else {
+          // Advance the clock hand to the first page without reference bit.
+          while(referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % ids.length;
+          }
+          slot = hand;
+          hand = (hand + 1) % ids.length;
+          index.remove(ids[slot]);
+          evicted = (P) pages[slot];
+        }
+        index.put(pageID, slot);
+        ids[slot] = pageID;
+      }
+      pages[slot] = page;
+      referenced[slot] = true;
+      return evicted;
+    }
+
+    /**
+     * Remove a page from the segment, without writing it.
+     * 
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      final int slot = index.remove(pageID);
+      if(slot < 0) {
+        return;
+      }
+      // Move the last slot into the gap.
+      final int last = --size;
+      if(slot != last) {
+        ids[slot] = ids[last];
+        pages[slot] = pages[last];
+        referenced[slot] = referenced[last];
+        index.put(ids[slot], slot);
+      }
+      pages[last] = null;
+      referenced[last] = false;
+      hand = hand < size ? hand : 0;
+    }
+
+    /**
+     * Get the page in a slot.
+     * 
+     * @param slot Slot number
+     * @return Page
+     */
+    @SuppressWarnings("unchecked")
+    P page(int slot) {
+      return (P) pages[slot];
+    }
+
+    /**
+     * Empty the segment.
+     */
+    void clear() {
+      index.clear();
+      for(int i = 0; i < size; i++) {
+        pages[i] = null;
+        referenced[i] = false;
+      }
+      size = 0;
+      hand = 0;
+    }
+  }
+}
@@ -24,16 +24,21 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Page file factory for memory page files.
+ * <p>
+ * Optionally, a {@link ConcurrentPageCache} can be used instead of the
+ * {@link LRUCache}, which allows concurrent queries on the paged index.
  * 
  * @author Erich Schubert
  * @since 0.6.0
  * 
  * @apiviz.has LRUCache
+ * @apiviz.has ConcurrentPageCache
  * @apiviz.composedOf PageFileFactory
  * 
  * @param <P> Page type
@@ -49,6 +54,11 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
    */
   private int cacheSize;
 
+  /**
+   * Use the concurrent cache.
+   */
+  private boolean concurrent;
+
   /**
    * Constructor.
    * 
@@ -56,15 +66,27 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
    * @param cacheSize Size of cache, in bytes.
    */
   public LRUCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize) {
+    this(pageFileFactory, cacheSize, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   * @param concurrent Use the concurrent cache
+   */
+  public LRUCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize, boolean concurrent) {
     super();
     this.cacheSize = cacheSize;
     this.pageFileFactory = pageFileFactory;
+    this.concurrent = concurrent;
   }
 
   @Override
   public PageFile<P> newPageFile(Class<P> cls) {
     PageFile<P> inner = pageFileFactory.newPageFile(cls);
-    return new LRUCache<>(cacheSize, inner);
+    return concurrent ? new ConcurrentPageCache<>(cacheSize, 0, inner) : new LRUCache<>(cacheSize, inner);
   }
 
   @Override
@@ -100,6 +122,15 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
      */
     public static final OptionID PAGEFILE_ID = new OptionID("pagefile.pagefile", "The backing pagefile for the cache.");
 
+    /**
+     * Flag to use a segmented cache with CLOCK replacement, which supports
+     * concurrent access.
+     * <p>
+     * Key: {@code -pagefile.concurrent}
+     * </p>
+     */
+    public static final OptionID CONCURRENT_ID = new OptionID("pagefile.concurrent", "Use a segmented cache with CLOCK replacement, for concurrent access.");
+
     /**
      * Inner page file factory.
      */
@@ -110,6 +141,11 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
      */
     protected int cacheSize;
 
+    /**
+     * Use the concurrent cache.
+     */
+    protected boolean concurrent;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -123,11 +159,16 @@ public class LRUCachePageFileFactory<P extends Page> implements PageFileFactory<
       if(config.grab(cacheSizeP)) {
         cacheSize = cacheSizeP.getValue();
       }
+
+      Flag concurrentF = new Flag(CONCURRENT_ID);
+      if(config.grab(concurrentF)) {
+        concurrent = concurrentF.isTrue();
+      }
     }
 
     @Override
     protected LRUCachePageFileFactory<Page> makeInstance() {
-      return new LRUCachePageFileFactory<>(pageFileFactory, cacheSize);
+      return new LRUCachePageFileFactory<>(pageFileFactory, cacheSize, concurrent);
     }
   }
 }
@@ -0,0 +1,663 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page file that memory-maps the index file, in segments of multiple pages.
+ * <p>
+ * Pages are read directly from the mapped buffer, without copying them into
+ * temporary arrays and without the overhead of {@link ObjectInputStream}. Thus,
+ * a cache miss is usually served from the operating system's page cache, and
+ * produces much less garbage than with {@link PersistentPageFile}. Reads do
+ * not modify shared state, so concurrent readers are supported.
+ * <p>
+ * When an existing file is opened read-only, pages implementing
+ * {@link ByteBufferPage} are read without copying: their entries are views on
+ * the mapped buffer. This is not done in read-write mode, where a page may be
+ * overwritten while such views are still in use.
+ * <p>
+ * Note: the pages are stored in a compact binary format, which is not
+ * compatible with files written by {@link PersistentPageFile}.
+ * 
+ * @author agent
+ * @since 0.7.5
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Target size of a mapped segment in bytes.
+   */
+  private static final int SEGMENT_BYTES = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Read-only mode.
+   */
+  private final boolean readonly;
+
+  /**
+   * Mapped segments.
+   */
+  private ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+
+  /**
+   * Number of pages per segment.
+   */
+  private int pagesPerSegment;
+
+  /**
+   * File offset of the first page.
+   */
+  private long base;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName File name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    this(pageSize, fileName, pageclass, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName File name
+   * @param pageclass the class of pages to be used
+   * @param readonly Open an existing file read-only
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass, boolean readonly) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    this.readonly = readonly;
+    File f = new File(fileName);
+    existed = f.exists();
+    if(readonly && !existed) {
+      throw new AbortException("Page file " + fileName + " does not exist, and cannot be opened read-only.");
+    }
+    try {
+      file = new RandomAccessFile(f, readonly ? "r" : "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+  }
+
+  /**
+   * Get a buffer positioned at the given page, limited to the page size.
+   * <p>
+   * The buffer is a duplicate, and may be used independently of other threads.
+   * 
+   * @param pageID Page id
+   * @return Buffer
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final int segnum = pageID / pagesPerSegment;
+    final int pos = (pageID - segnum * pagesPerSegment) * pageSize;
+    ByteBuffer buf = segment(segnum).duplicate();
+    buf.limit(pos + pageSize).position(pos);
+    return buf;
+  }
+
+  /**
+   * Get a segment, mapping it (and growing the file) if necessary.
+   * 
+   * @param segnum Segment number
+   * @return Mapped segment
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer segment(int segnum) throws IOException {
+    while(segments.size() <= segnum) {
+      final long segsize = (long) pagesPerSegment * pageSize;
+      final long offset = base + segments.size() * segsize;
+      segments.add(readonly ? //
+          file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segsize, file.length() - offset)) : //
+          file.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, segsize));
+    }
+    return segments.get(segnum);
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      ByteBuffer buf = pageBuffer(pageID);
+      if(buf.getInt() == EMPTY_PAGE) {
+        return null;
+      }
+      P page = pageclass.getDeclaredConstructor().newInstance();
+      if(readonly && page instanceof ByteBufferPage) {
+        ((ByteBufferPage) page).readBuffer(buf.slice());
+        return page;
+      }
+      page.readExternal(new BufferInput(buf));
+      return page;
+    }
+    catch(ReflectiveOperationException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException | BufferUnderflowException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    checkWritable();
+    try {
+      // put id to empty pages list
+      super.deletePage(pageID);
+      countWrite();
+      pageBuffer(pageID).putInt(EMPTY_PAGE);
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    checkWritable();
+    try {
+      countWrite();
+      ByteBuffer buf = pageBuffer(pageID);
+      buf.putInt(FILLED_PAGE);
+      page.writeExternal(new BufferOutput(buf));
+      page.setDirty(false);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize, e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Closes this file.
+   */
+  @Override
+  public void close() {
+    try {
+      if(readonly) {
+        segments.clear();
+        file.close();
+        return;
+      }
+      for(MappedByteBuffer seg : segments) {
+        seg.force();
+      }
+      // The buffers remain mapped until they are garbage collected, so we must
+      // not shrink the file here. The unused space of the last segment is
+      // removed when the file is opened the next time.
+      segments.clear();
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // write the list of empty pages to the end of the file
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Clears this PageFile.
+   */
+  @Override
+  public void clear() {
+    checkWritable();
+    try {
+      // Mark all pages as empty, as we cannot shrink a mapped file.
+      for(int i = 0; i < nextPageID; i++) {
+        pageBuffer(i).putInt(EMPTY_PAGE);
+      }
+      nextPageID = 0;
+      emptyPages.clear();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Fail if the file was opened read-only.
+   */
+  private void checkWritable() {
+    if(readonly) {
+      throw new UnsupportedOperationException("Page file was opened read-only.");
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      this.header = header;
+      this.pageSize = header.getPageSize();
+      this.base = (long) header.getReservedPages() * pageSize;
+      this.pagesPerSegment = Math.max(1, SEGMENT_BYTES / pageSize);
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+          if(!readonly) {
+            // Strip the empty pages list, it will be rewritten on close.
+            file.setLength(base + (long) nextPageID * pageSize);
+          }
+        }
+        else { // must scan complete file
+          final int numpages = (int) ((file.length() - base) / pageSize);
+          for(int i = 0; i < numpages; i++) {
+            final int type = pageBuffer(i).getInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+          // Unused pages at the end of the last segment are not empty pages.
+          setNextPageID(nextPageID);
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+    // Return "new file" status
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Read primitive values directly from a byte buffer.
+   * <p>
+   * Objects (which are rarely used in pages) are serialized with Java
+   * serialization, prefixed by their length.
+   * 
+   * @author agent
+   */
+  private static class BufferInput implements ObjectInput {
+    /**
+     * Buffer to read from.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Buffer to read from
+     */
+    BufferInput(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+      readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+      if(buf.remaining() < len) {
+        throw new EOFException();
+      }
+      buf.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+      n = Math.min(n, buf.remaining());
+      buf.position(buf.position() + n);
+      return n;
+    }
+
+    @Override
+    public boolean readBoolean() {
+      return buf.get() != 0;
+    }
+
+    @Override
+    public byte readByte() {
+      return buf.get();
+    }
+
+    @Override
+    public int readUnsignedByte() {
+      return buf.get() & 0xFF;
+    }
+
+    @Override
+    public short readShort() {
+      return buf.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() {
+      return buf.getShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() {
+      return buf.getChar();
+    }
+
+    @Override
+    public int readInt() {
+      return buf.getInt();
+    }
+
+    @Override
+    public long readLong() {
+      return buf.getLong();
+    }
+
+    @Override
+    public float readFloat() {
+      return buf.getFloat();
+    }
+
+    @Override
+    public double readDouble() {
+      return buf.getDouble();
+    }
+
+    @Override
+    public String readLine() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+      byte[] b = new byte[readUnsignedShort()];
+      readFully(b);
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object readObject() throws ClassNotFoundException, IOException {
+      byte[] b = new byte[readInt()];
+      readFully(b);
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+        return ois.readObject();
+      }
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b) {
+      return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if(!buf.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) {
+      return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Write primitive values directly to a byte buffer.
+   * 
+   * @author agent
+   */
+  private static class BufferOutput implements ObjectOutput {
+    /**
+     * Buffer to write to.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Buffer to write to
+     */
+    BufferOutput(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public void write(int b) {
+      buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+      buf.put(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buf.put(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+      buf.put((byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v) {
+      buf.put((byte) v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+      buf.putShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+      buf.putChar((char) v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+      buf.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+      buf.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+      buf.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) {
+      buf.putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) {
+      for(int i = 0; i < s.length(); i++) {
+        buf.put((byte) s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeChars(String s) {
+      for(int i = 0; i < s.length(); i++) {
+        buf.putChar(s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      if(b.length > 0xFFFF) {
+        throw new IOException("String too long.");
+      }
+      writeShort(b.length);
+      write(b);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        oos.writeObject(obj);
+      }
+      writeInt(baos.size());
+      write(baos.toByteArray());
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to do.
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+}
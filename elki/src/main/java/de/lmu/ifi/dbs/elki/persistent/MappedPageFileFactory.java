@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Page file factory for memory-mapped page files.
+ * 
+ * @author agent
+ * @since 0.7.5
+ * 
+ * @apiviz.has MappedPageFile
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFileFactory<P extends ExternalizablePage> extends AbstractPageFileFactory<P> {
+  /**
+   * File name.
+   */
+  private String fileName;
+
+  /**
+   * Open an existing file read-only.
+   */
+  private boolean readonly;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize Page size
+   * @param fileName File name
+   */
+  public MappedPageFileFactory(int pageSize, String fileName) {
+    this(pageSize, fileName, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param readonly Open an existing file read-only
+   */
+  public MappedPageFileFactory(int pageSize, String fileName, boolean readonly) {
+    super(pageSize);
+    this.fileName = fileName;
+    this.readonly = readonly;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    if(fileName == null) {
+      throw new AbortException("Disk-backed page file may only be instantiated once!");
+    }
+    MappedPageFile<P> pfile = new MappedPageFile<>(pageSize, fileName, cls, readonly);
+    fileName = null; // To avoid double instantiation.
+    return pfile;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractPageFileFactory.Parameterizer<ExternalizablePage> {
+    /**
+     * Open an existing page file read-only, and read pages without copying.
+     */
+    public static final OptionID READONLY_ID = new OptionID("pagefile.readonly", "Open an existing page file read-only, and read pages without copying where supported.");
+
+    /**
+     * File name.
+     */
+    private String fileName;
+
+    /**
+     * Open an existing file read-only.
+     */
+    private boolean readonly;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter fileNameP = new FileParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(fileNameP)) {
+        fileName = fileNameP.getValue().getPath();
+      }
+      Flag readonlyF = new Flag(READONLY_ID);
+      if(config.grab(readonlyF)) {
+        readonly = readonlyF.isTrue();
+      }
+    }
+
+    @Override
+    protected MappedPageFileFactory<ExternalizablePage> makeInstance() {
+      return new MappedPageFileFactory<>(pageSize, fileName, readonly);
+    }
+  }
+}
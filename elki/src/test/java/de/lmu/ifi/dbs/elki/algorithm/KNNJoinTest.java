@@ -20,6 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -28,19 +31,28 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -55,6 +67,9 @@ public class KNNJoinTest {
   // the following values depend on the data set used!
   String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
 
+  // larger data set, for comparing with a linear scan
+  static final String UNITTEST_LARGE = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
   // size of the data set
   int shoulds = 20;
 
@@ -134,6 +149,98 @@ public class KNNJoinTest {
     doKNNJoin(spatparams);
   }
 
+  /**
+   * Test {@link SmallMemoryKDTree} using a file based database connection.
+   */
+  @Test
+  public void testKNNJoinKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    doKNNJoin(spatparams);
+  }
+
+  /**
+   * Compare the join on a larger data set with a linear scan.
+   */
+  @Test
+  public void testKNNJoinExact() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(UNITTEST_LARGE, 330, spatparams);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertExact(relation, relation.getDBIDs(), ManhattanDistanceFunction.STATIC, new KNNJoin<>(ManhattanDistanceFunction.STATIC, 10).run(relation));
+
+    spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(UNITTEST_LARGE, 330, spatparams);
+    relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertExact(relation, relation.getDBIDs(), EuclideanDistanceFunction.STATIC, new KNNJoin<>(EuclideanDistanceFunction.STATIC, 10).run(relation));
+  }
+
+  /**
+   * Test the join with bounding balls, on a {@link CoverTree}.
+   */
+  @Test
+  public void testKNNJoinCoverTree() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(UNITTEST_LARGE, 330);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    // Euclidean distance, but not a spatial distance function:
+    AbstractNumberVectorDistanceFunction dist = new AbstractNumberVectorDistanceFunction() {
+      @Override
+      public double distance(NumberVector o1, NumberVector o2) {
+        return EuclideanDistanceFunction.STATIC.distance(o1, o2);
+      }
+
+      @Override
+      public boolean isMetric() {
+        return true;
+      }
+    };
+    CoverTree<NumberVector> tree = new CoverTree<>(relation, dist, 1.3, 5);
+    tree.initialize();
+    Relation<KNNList> result = new MaterializedRelation<>(null, null, TypeUtil.KNNLIST, new KNNJoin<>(dist, 10).run(relation, tree, relation.getDBIDs()), relation.getDBIDs());
+    assertExact(relation, relation.getDBIDs(), dist, result);
+  }
+
+  /**
+   * Join only a subset of the objects with all objects.
+   */
+  @Test
+  public void testKNNJoinSubset() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(UNITTEST_LARGE, 330, spatparams);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    for(DBIDArrayIter it = DBIDUtil.ensureArray(relation.getDBIDs()).iter(); it.valid(); it.advance(7)) {
+      ids.add(it);
+    }
+    WritableDataStore<KNNList> knns = new KNNJoin<>(EuclideanDistanceFunction.STATIC, 10).run(relation, ids);
+    assertExact(relation, ids, EuclideanDistanceFunction.STATIC, new MaterializedRelation<>(null, null, TypeUtil.KNNLIST, knns, ids));
+    assertNull("Non-query object was joined.", knns.get(DBIDUtil.ensureArray(relation.getDBIDs()).iter().seek(1)));
+  }
+
+  /**
+   * Compare a 10NN join result with a linear scan.
+   *
+   * @param relation Data relation
+   * @param ids Query objects
+   * @param distance Distance function
+   * @param result Join result
+   */
+  void assertExact(Relation<NumberVector> relation, DBIDs ids, DistanceFunction<? super NumberVector> distance, Relation<KNNList> result) {
+    KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(distance.instantiate(relation));
+    for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
+      KNNList exp = knnq.getKNNForDBID(id, 10), act = result.get(id);
+      assertEquals("kNN size", exp.size(), act.size());
+      DoubleDBIDListIter ie = exp.iter(), ia = act.iter();
+      for(; ie.valid(); ie.advance(), ia.advance()) {
+        assertEquals("kNN distance", ie.doubleValue(), ia.doubleValue(), 1e-15);
+      }
+    }
+  }
+
   /**
    * Actual test routine.
    *
@@ -145,7 +252,7 @@ public class KNNJoinTest {
 
     // Euclidean
     {
-      KNNJoin<DoubleVector, ?, ?> knnjoin = new KNNJoin<DoubleVector, RStarTreeNode, SpatialEntry>(EuclideanDistanceFunction.STATIC, 2);
+      KNNJoin<DoubleVector> knnjoin = new KNNJoin<>(EuclideanDistanceFunction.STATIC, 2);
       Relation<KNNList> result = knnjoin.run(db);
 
       MeanVariance meansize = new MeanVariance();
@@ -157,7 +264,7 @@ public class KNNJoinTest {
     }
     // Manhattan
     {
-      KNNJoin<DoubleVector, ?, ?> knnjoin = new KNNJoin<DoubleVector, RStarTreeNode, SpatialEntry>(ManhattanDistanceFunction.STATIC, 2);
+      KNNJoin<DoubleVector> knnjoin = new KNNJoin<>(ManhattanDistanceFunction.STATIC, 2);
       Relation<KNNList> result = knnjoin.run(db);
 
       MeanVariance meansize = new MeanVariance();
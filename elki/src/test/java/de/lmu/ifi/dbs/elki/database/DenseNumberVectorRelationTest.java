@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DenseFloatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.DenseNumberVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test that loads a data file into a dense relation, and compares the
+ * query results to the regular relation.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class DenseNumberVectorRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testDenseQueries() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addFlag(StaticArrayDatabase.Parameterizer.DENSE_ID);
+    Database ddb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+
+    Relation<NumberVector> drel = ddb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a dense relation.", drel instanceof DenseNumberVectorRelation);
+    assertQueriesEqual(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD), drel);
+  }
+
+  @Test
+  public void testDenseFloatQueries() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.FACTORY);
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+    params = new ListParameterization();
+    params.addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.FACTORY);
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addFlag(StaticArrayDatabase.Parameterizer.DENSE_ID);
+    Database ddb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+
+    Relation<NumberVector> drel = ddb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a dense float relation.", drel instanceof DenseFloatVectorRelation);
+    assertQueriesEqual(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD), drel);
+  }
+
+  /**
+   * Compare the contents and query results of two relations.
+   *
+   * @param rel Regular relation
+   * @param drel Dense relation
+   */
+  private static void assertQueriesEqual(Relation<NumberVector> rel, Relation<NumberVector> drel) {
+    assertEquals("Size does not match.", rel.size(), drel.size());
+
+    DBIDIter it = rel.iterDBIDs(), dit = drel.iterDBIDs();
+    for(; it.valid() && dit.valid(); it.advance(), dit.advance()) {
+      assertTrue("DBIDs do not match.", DBIDUtil.equal(it, dit));
+      NumberVector v = rel.get(it), dv = drel.get(dit);
+      assertEquals("Dimensionality does not match.", v.getDimensionality(), dv.getDimensionality());
+      for(int d = 0; d < v.getDimensionality(); d++) {
+        assertEquals("Values do not match.", v.doubleValue(d), dv.doubleValue(d), 0.);
+      }
+    }
+
+    KNNQuery<NumberVector> knnq = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, 10);
+    KNNQuery<NumberVector> dknnq = QueryUtil.getKNNQuery(drel, EuclideanDistanceFunction.STATIC, 10);
+    RangeQuery<NumberVector> rangeq = QueryUtil.getRangeQuery(rel, EuclideanDistanceFunction.STATIC);
+    RangeQuery<NumberVector> drangeq = QueryUtil.getRangeQuery(drel, EuclideanDistanceFunction.STATIC);
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList knn = knnq.getKNNForDBID(iter, 10), dknn = dknnq.getKNNForDBID(iter, 10);
+      assertListEquals(knn, dknn);
+      double r = knn.getKNNDistance();
+      assertListEquals(rangeq.getRangeForDBID(iter, r), drangeq.getRangeForDBID(iter, r));
+    }
+  }
+
+  /**
+   * Compare two result lists.
+   *
+   * @param l1 First list
+   * @param l2 Second list
+   */
+  private static void assertListEquals(DoubleDBIDList l1, DoubleDBIDList l2) {
+    assertEquals("Result sizes do not match.", l1.size(), l2.size());
+    for(DoubleDBIDListIter i1 = l1.iter(), i2 = l2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distances do not match.", i1.doubleValue(), i2.doubleValue(), 1e-15);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the batch kNN queries of the Euclidean linear scan against the single
+ * queries.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class LinearScanEuclideanDistanceKNNQueryTest {
+  /**
+   * Data file, large enough to use multiple threads.
+   */
+  public static final String filename = AbstractSimpleAlgorithmTest.UNITTEST + "outlier-axis-subspaces-6d.ascii";
+
+  @Test
+  public void testBulkKNN() {
+    testBulk(AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 1345));
+  }
+
+  @Test
+  public void testBulkKNNDense() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addFlag(StaticArrayDatabase.Parameterizer.DENSE_ID);
+    testBulk(AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, 1345, params));
+  }
+
+  @Test
+  public void testBulkKNNVariableDimensionality() {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(500);
+    WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, DoubleVector.class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = new double[2 + rnd.nextInt(2)];
+      for(int d = 0; d < v.length; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      store.put(it, DoubleVector.wrap(v));
+    }
+    VectorFieldTypeInformation<DoubleVector> type = new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 2, 3, DoubleVector.VARIABLE_SERIALIZER);
+    Relation<DoubleVector> rel = new MaterializedRelation<>("variable", "variable", type, store, ids);
+    testBulk(rel, new LinearScanEuclideanDistanceKNNQuery<>(new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC)));
+  }
+
+  /**
+   * Compare bulk and single queries.
+   *
+   * @param db Database
+   */
+  private void testBulk(Database db) {
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    KNNQuery<NumberVector> knnq = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, 10);
+    assertTrue("Unexpected query class.", knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+    testBulk(rel, knnq);
+  }
+
+  /**
+   * Compare bulk and single queries.
+   *
+   * @param rel Relation
+   * @param knnq kNN query
+   */
+  private <O> void testBulk(Relation<O> rel, KNNQuery<O> knnq) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 10);
+    assertEquals("Wrong number of results.", ids.size(), bulk.size());
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      KNNList single = knnq.getKNNForDBID(it, 10), batch = bulk.get(it.getOffset());
+      assertEquals("Result sizes do not match.", single.size(), batch.size());
+      for(DoubleDBIDListIter i1 = single.iter(), i2 = batch.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("Distances do not match.", i1.doubleValue(), i2.doubleValue(), 0.);
+      }
+    }
+  }
+}
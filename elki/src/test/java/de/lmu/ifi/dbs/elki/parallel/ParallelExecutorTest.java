@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test the work-stealing parallel executor.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ParallelExecutorTest {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExecutorTest.class);
+
+  /**
+   * Test that every object is processed exactly once, and every instance is
+   * cleaned up.
+   */
+  @Test
+  public void testProcessAll() {
+    final int size = 10007;
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    CountingProcessor proc = new CountingProcessor(ids, size);
+    FiniteProgress prog = new FiniteProgress("Test", size, LOG);
+    ParallelExecutor.run(new ParallelCore(3), ids, prog, LOG, proc);
+    for(int i = 0; i < size; i++) {
+      assertEquals("Object not processed exactly once.", 1, proc.seen[i].get());
+    }
+    assertEquals("Progress incomplete.", size, prog.getProcessed());
+    assertTrue("No instances.", proc.instances.get() > 0);
+    assertEquals("Instances not cleaned up.", proc.instances.get(), proc.cleanups.get());
+  }
+
+  /**
+   * Test that a failing processor aborts the run.
+   */
+  @Test
+  public void testFailure() {
+    final int size = 10000;
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    CountingProcessor proc = new CountingProcessor(ids, size);
+    proc.failat = 5000;
+    try {
+      ParallelExecutor.run(new ParallelCore(2), ids, null, null, proc);
+      fail("Exception expected.");
+    }
+    catch(RuntimeException e) {
+      assertTrue("Wrong cause.", e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * Test processing of blocks.
+   */
+  @Test
+  public void testRunBlocks() {
+    final int size = 1001;
+    final AtomicInteger[] seen = new AtomicInteger[size];
+    for(int i = 0; i < size; i++) {
+      seen[i] = new AtomicInteger();
+    }
+    ParallelExecutor.runBlocks(size, 10, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        seen[i].incrementAndGet();
+      }
+    });
+    for(int i = 0; i < size; i++) {
+      assertEquals("Index not processed exactly once.", 1, seen[i].get());
+    }
+  }
+
+  /**
+   * Processor counting the objects seen.
+   *
+   * @author agent
+   */
+  private static class CountingProcessor implements Processor {
+    /**
+     * ID range.
+     */
+    DBIDRange ids;
+
+    /**
+     * Number of times each object was seen.
+     */
+    AtomicInteger[] seen;
+
+    /**
+     * Number of instances and cleanups.
+     */
+    AtomicInteger instances = new AtomicInteger(), cleanups = new AtomicInteger();
+
+    /**
+     * Offset to fail at, or -1.
+     */
+    int failat = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param ids ID range
+     * @param size Size
+     */
+    CountingProcessor(DBIDRange ids, int size) {
+      this.ids = ids;
+      this.seen = new AtomicInteger[size];
+      for(int i = 0; i < size; i++) {
+        seen[i] = new AtomicInteger();
+      }
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      instances.incrementAndGet();
+      return new Instance() {
+        @Override
+        public void map(DBIDRef id) {
+          final int off = ids.getOffset(id);
+          if(off == failat) {
+            throw new IllegalStateException("Requested failure.");
+          }
+          seen[off].incrementAndGet();
+        }
+      };
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      cleanups.incrementAndGet();
+    }
+  }
+}
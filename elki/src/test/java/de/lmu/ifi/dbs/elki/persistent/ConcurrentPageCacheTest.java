@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the concurrent page cache.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class ConcurrentPageCacheTest {
+  /**
+   * Page size.
+   */
+  private static final int PAGESIZE = 100;
+
+  /**
+   * Test eviction and write back of pages.
+   */
+  @Test
+  public void testWriteBack() {
+    MemoryPageFile<TestPage> backing = new MemoryPageFile<>(PAGESIZE);
+    ConcurrentPageCache<TestPage> cache = new ConcurrentPageCache<>(64 * PAGESIZE, 4, backing);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    final int n = 500;
+    for(int i = 0; i < n; i++) {
+      assertEquals("Unexpected page id.", i, cache.writePage(new TestPage(i)));
+    }
+    // Evicted pages must have been written to the backing file.
+    int inbacking = 0;
+    for(int i = 0; i < n; i++) {
+      inbacking += backing.readPage(i) != null ? 1 : 0;
+    }
+    assertEquals("Evicted pages not written.", n - 64, inbacking);
+    for(int i = 0; i < n; i++) {
+      TestPage page = cache.readPage(i);
+      assertNotNull("Page missing: " + i, page);
+      assertEquals("Wrong page.", i, page.value);
+    }
+    cache.deletePage(7);
+    cache.flush();
+    for(int i = 0; i < n; i++) {
+      TestPage page = backing.readPage(i);
+      if(i == 7) {
+        assertEquals("Deleted page was written.", null, page);
+        continue;
+      }
+      assertNotNull("Page not written: " + i, page);
+      assertFalse("Page still dirty: " + i, page.isDirty());
+    }
+  }
+
+  /**
+   * Test concurrent reads.
+   *
+   * @throws InterruptedException on interruption
+   */
+  @Test
+  public void testConcurrentReads() throws InterruptedException {
+    MemoryPageFile<TestPage> backing = new MemoryPageFile<>(PAGESIZE);
+    final ConcurrentPageCache<TestPage> cache = new ConcurrentPageCache<>(50 * PAGESIZE, 0, backing);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    final int n = 200;
+    for(int i = 0; i < n; i++) {
+      cache.writePage(new TestPage(i));
+    }
+    final AtomicInteger errors = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for(int t = 0; t < 4; t++) {
+      final int seed = t;
+      Thread th = new Thread(() -> {
+        for(int j = 0; j < 10000; j++) {
+          int i = (j * 31 + seed * 17) % n;
+          TestPage page = cache.readPage(i);
+          if(page == null || page.value != i) {
+            errors.incrementAndGet();
+          }
+        }
+      });
+      threads.add(th);
+      th.start();
+    }
+    for(Thread th : threads) {
+      th.join();
+    }
+    assertEquals("Concurrent reads failed.", 0, errors.get());
+  }
+
+  /**
+   * Trivial page for testing.
+   *
+   * @author agent
+   */
+  private static class TestPage implements Page {
+    /**
+     * Page id.
+     */
+    int id = -1;
+
+    /**
+     * Dirty flag.
+     */
+    boolean dirty;
+
+    /**
+     * Payload.
+     */
+    int value;
+
+    /**
+     * Constructor.
+     *
+     * @param value Payload
+     */
+    TestPage(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+  }
+}
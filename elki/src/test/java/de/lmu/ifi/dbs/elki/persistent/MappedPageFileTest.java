@@ -0,0 +1,269 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.MappedSpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.MappedSpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test the memory-mapped page file.
+ *
+ * @author agent
+ * @since 0.7.5
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Page size.
+   */
+  private static final int PAGESIZE = 256;
+
+  /**
+   * Test writing, deleting and reopening pages.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testReopen() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    tmp.delete();
+    try {
+      MappedPageFile<TestPage> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      for(int i = 0; i < 100; i++) {
+        assertEquals("Unexpected page id.", i, file.writePage(new TestPage(i)));
+      }
+      file.deletePage(42);
+      TestPage p = file.readPage(7);
+      assertEquals("Wrong payload.", 7, p.value);
+      assertEquals("Wrong string.", "page 7", p.label);
+      assertArrayEquals("Wrong data.", new double[] { 7, 3.5 }, p.data, 0.);
+      file.close();
+
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      assertEquals("Next page id not restored.", 100, file.getNextPageID());
+      assertNull("Deleted page was read.", file.readPage(42));
+      for(int i = 0; i < 100; i++) {
+        if(i != 42) {
+          assertEquals("Wrong payload.", i, file.readPage(i).value);
+        }
+      }
+      // Deleted page must be reused.
+      assertEquals("Empty page not reused.", 42, file.writePage(new TestPage(1)));
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test clearing a file.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testClear() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    tmp.delete();
+    try {
+      MappedPageFile<TestPage> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      for(int i = 0; i < 10; i++) {
+        file.writePage(new TestPage(i));
+      }
+      file.clear();
+      assertNull("Page not cleared.", file.readPage(3));
+      assertEquals("Next page id not reset.", 0, file.writePage(new TestPage(1)));
+      file.close();
+
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), TestPage.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      assertEquals("Next page id not restored.", 1, file.getNextPageID());
+      assertEquals("Wrong payload.", 1, file.readPage(0).value);
+      assertEquals("Unused page reused.", 1, file.writePage(new TestPage(2)));
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test reading R*-tree nodes from a read-only file, without copying.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testReadOnly() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    tmp.delete();
+    try {
+      MappedPageFile<RStarTreeNode> file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      RStarTreeNode leaf = new RStarTreeNode(5, true);
+      for(int i = 0; i < 4; i++) {
+        leaf.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i + 10), new double[] { i, -i, .5 * i }));
+      }
+      RStarTreeNode dir = new RStarTreeNode(3, false);
+      dir.addDirectoryEntry(new SpatialDirectoryEntry(0, new ModifiableHyperBoundingBox(new double[] { 0, -3 }, new double[] { 3, 0 })));
+      dir.addDirectoryEntry(new SpatialDirectoryEntry(7, new ModifiableHyperBoundingBox(new double[] { 1, 2 }, new double[] { 4, 5 })));
+      assertEquals("Unexpected page id.", 0, file.writePage(leaf));
+      assertEquals("Unexpected page id.", 1, file.writePage(dir));
+      file.close();
+
+      file = new MappedPageFile<>(PAGESIZE, tmp.getPath(), RStarTreeNode.class, true);
+      file.initialize(new DefaultPageHeader(PAGESIZE));
+      RStarTreeNode rleaf = file.readPage(0);
+      assertTrue("Not a leaf.", rleaf.isLeaf());
+      assertEquals("Wrong capacity.", 5, rleaf.getCapacity());
+      assertEquals("Wrong number of entries.", 4, rleaf.getNumEntries());
+      for(int i = 0; i < 4; i++) {
+        SpatialEntry e = rleaf.getEntry(i);
+        assertTrue("Entry was copied.", e instanceof MappedSpatialPointLeafEntry);
+        MappedSpatialPointLeafEntry le = (MappedSpatialPointLeafEntry) e;
+        assertEquals("Wrong id.", i + 10, DBIDUtil.asInteger(le.getDBID()));
+        assertArrayEquals("Wrong values.", new double[] { i, -i, .5 * i }, le.toArray(), 0.);
+      }
+      RStarTreeNode rdir = file.readPage(1);
+      assertEquals("Wrong page id.", 1, rdir.getPageID());
+      assertEquals("Wrong number of entries.", 2, rdir.getNumEntries());
+      SpatialEntry e = rdir.getEntry(1);
+      assertTrue("Entry was copied.", e instanceof MappedSpatialDirectoryEntry);
+      assertEquals("Wrong child.", 7, ((MappedSpatialDirectoryEntry) e).getPageID());
+      assertEquals("Wrong min.", 2, e.getMin(1), 0.);
+      assertEquals("Wrong max.", 4, e.getMax(0), 0.);
+      file.close();
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Test the R*-tree on a mapped page file.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    File tmp = File.createTempFile("elki-mapped", ".idx");
+    tmp.delete();
+    try {
+      RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+          .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp.getPath()) //
+          .build();
+      testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Trivial page for testing.
+   *
+   * @author agent
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * Payload.
+     */
+    int value;
+
+    /**
+     * String payload.
+     */
+    String label;
+
+    /**
+     * Array payload.
+     */
+    double[] data;
+
+    /**
+     * Constructor for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Payload
+     */
+    TestPage(int value) {
+      super();
+      this.value = value;
+      this.label = "page " + value;
+      this.data = new double[] { value, 3.5 };
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeInt(value);
+      out.writeUTF(label);
+      out.writeObject(data);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readInt();
+      label = in.readUTF();
+      data = (double[]) in.readObject();
+    }
+  }
+}